@@ -19,6 +19,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 
+import static gov.cms.ab2d.common.service.JobService.ZIPFORMAT;
 import static gov.cms.ab2d.common.util.Constants.ORGANIZATION;
 import static gov.cms.ab2d.common.util.Constants.FILE_LOG;
 import static gov.cms.ab2d.common.util.Constants.JOB_LOG;
@@ -30,6 +31,8 @@ import static gov.cms.ab2d.common.util.Constants.REQUEST_ID;
 @Slf4j
 @SuppressWarnings("PMD.TooManyStaticImports")
 public class FileDownloadCommon {
+    private static final String ZIP_SUFFIX = ".zip";
+
     private final JobService jobService;
     private final LogManager eventLogger;
 
@@ -42,7 +45,9 @@ public class FileDownloadCommon {
 
         log.info("Sending " + filename + " file to client");
 
-        response.setHeader(HttpHeaders.CONTENT_TYPE, NDJSON_FIRE_CONTENT_TYPE);
+        // Jobs requesting zip output produce compressed files
+        String contentType = filename.endsWith(ZIP_SUFFIX) ? ZIPFORMAT : NDJSON_FIRE_CONTENT_TYPE;
+        response.setHeader(HttpHeaders.CONTENT_TYPE, contentType);
 
         try (OutputStream out = response.getOutputStream(); FileInputStream in = new FileInputStream(downloadResource.getFile())) {
             IOUtils.copy(in, out);
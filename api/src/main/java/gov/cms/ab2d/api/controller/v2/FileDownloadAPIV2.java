@@ -35,6 +35,7 @@ import static gov.cms.ab2d.api.controller.common.ApiText.JOB_ID;
 import static gov.cms.ab2d.api.controller.common.ApiText.APPLICATION_JSON;
 import static gov.cms.ab2d.api.controller.common.ApiText.NOT_FOUND;
 import static gov.cms.ab2d.api.util.Constants.GENERIC_FHIR_ERR_MSG;
+import static gov.cms.ab2d.common.service.JobService.ZIPFORMAT;
 import static gov.cms.ab2d.common.util.Constants.API_PREFIX_V2;
 import static gov.cms.ab2d.common.util.Constants.FHIR_PREFIX;
 import static gov.cms.ab2d.common.util.Constants.NDJSON_FIRE_CONTENT_TYPE;
@@ -57,8 +58,8 @@ public class FileDownloadAPIV2 {
     })
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = DNLD_DESC,
-                headers = {@Header(name = CONTENT_TYPE, description = CONTENT_TYPE_DESC + NDJSON_FIRE_CONTENT_TYPE)},
-                content = @Content(mediaType = NDJSON_FIRE_CONTENT_TYPE)
+                headers = {@Header(name = CONTENT_TYPE, description = CONTENT_TYPE_DESC + NDJSON_FIRE_CONTENT_TYPE + " or " + ZIPFORMAT)},
+                content = {@Content(mediaType = NDJSON_FIRE_CONTENT_TYPE), @Content(mediaType = ZIPFORMAT)}
             ),
             @ApiResponse(responseCode = "404", description = NOT_FOUND + GENERIC_FHIR_ERR_MSG, content =
                 @Content(mediaType = APPLICATION_JSON, schema = @Schema(ref = "#/components/schemas/OperationOutcome"))
@@ -66,7 +67,7 @@ public class FileDownloadAPIV2 {
      }
     )
     @ResponseStatus(value = HttpStatus.OK)
-    @GetMapping(value = "/Job/{jobUuid}/file/{filename}", produces = { NDJSON_FIRE_CONTENT_TYPE })
+    @GetMapping(value = "/Job/{jobUuid}/file/{filename}", produces = { NDJSON_FIRE_CONTENT_TYPE, ZIPFORMAT })
     public ResponseEntity downloadFile(HttpServletRequest request,
             HttpServletResponse response,
             @PathVariable @NotBlank String jobUuid,
@@ -76,6 +76,9 @@ public class AdminAPIPropertiesTests {
             put(PCP_CORE_POOL_SIZE, 10);
             put(PCP_MAX_POOL_SIZE, 150);
             put(PCP_SCALE_TO_MAX_TIME, 900);
+            put(PCP_JOB_MAX_IN_FLIGHT, 0);
+            put(PCP_SMALL_JOB_SIZE, 10000);
+            put(PCP_SMALL_JOB_WEIGHT, 4);
             put(MAINTENANCE_MODE, "false");
             put(ZIP_SUPPORT_ON, "false");
             put(WORKER_ENGAGEMENT, "engaged");
@@ -99,7 +102,7 @@ public class AdminAPIPropertiesTests {
         ObjectMapper mapper = new ObjectMapper();
         List<PropertiesDTO> propertiesDTOs = mapper.readValue(result, new TypeReference<>() {} );
 
-        assertEquals(12, propertiesDTOs.size());
+        assertEquals(15, propertiesDTOs.size());
         for(PropertiesDTO propertiesDTO : propertiesDTOs) {
             Object value = propertyMap.get(propertiesDTO.getKey());
 
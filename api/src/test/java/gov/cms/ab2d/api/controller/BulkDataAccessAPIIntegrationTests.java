@@ -30,8 +30,11 @@ import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.OffsetDateTime;
 import java.time.ZoneId;
@@ -40,10 +43,14 @@ import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
 
 import static gov.cms.ab2d.api.controller.JobCompletedResponse.CHECKSUM_STRING;
 import static gov.cms.ab2d.api.controller.JobCompletedResponse.CONTENT_LENGTH_STRING;
 import static gov.cms.ab2d.api.controller.common.ApiText.*;
+import static gov.cms.ab2d.common.service.JobService.ZIPFORMAT;
 import static gov.cms.ab2d.common.service.JobServiceImpl.INITIAL_JOB_STATUS_MESSAGE;
 import static gov.cms.ab2d.common.util.Constants.*;
 import static gov.cms.ab2d.common.util.DataSetup.TEST_PDP_CLIENT;
@@ -892,6 +899,55 @@ public class BulkDataAccessAPIIntegrationTests {
         assertFalse(Files.exists(Paths.get(destinationStr + File.separator + testFile)));
     }
 
+    @Test
+    void testDownloadZipFile() throws Exception {
+        MvcResult mvcResult = this.mockMvc.perform(
+                get(API_PREFIX_V1 + FHIR_PREFIX + PATIENT_EXPORT_PATH + "?_type=ExplanationOfBenefit")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header("Authorization", "Bearer " + token))
+                .andReturn();
+
+        String statusUrl = mvcResult.getResponse().getHeader(CONTENT_LOCATION);
+        assertNotNull(statusUrl);
+
+        String testFile = "test.zip";
+
+        Job job = testUtil.createTestJobForDownload(testFile);
+
+        Path destination = Paths.get(tmpJobLocation, job.getJobUuid());
+        Files.createDirectories(destination);
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(destination.resolve(testFile)))) {
+            zip.putNextEntry(new ZipEntry("test.ndjson"));
+            zip.write("{\"test\":\"value\"}".getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+
+        MvcResult mvcResultStatusCall =
+                this.mockMvc.perform(get(statusUrl).contentType(MediaType.APPLICATION_JSON)
+                        .header("Authorization", "Bearer " + token))
+                        .andReturn();
+        String downloadUrl = JsonPath.read(mvcResultStatusCall.getResponse().getContentAsString(),
+                "$.output[0].url");
+        MvcResult downloadFileCall =
+                this.mockMvc.perform(get(downloadUrl).accept(ZIPFORMAT)
+                        .header("Authorization", "Bearer " + token))
+                        .andExpect(status().is(200))
+                        .andExpect(content().contentType(ZIPFORMAT))
+                        .andReturn();
+
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(downloadFileCall.getResponse().getContentAsByteArray()))) {
+            ZipEntry entry = zip.getNextEntry();
+            assertNotNull(entry);
+            assertEquals("test.ndjson", entry.getName());
+
+            String downloadedFile = new String(zip.readAllBytes(), StandardCharsets.UTF_8);
+            assertEquals("value", JsonPath.read(downloadedFile, "$.test"));
+            assertNull(zip.getNextEntry());
+        }
+
+        assertFalse(Files.exists(destination.resolve(testFile)));
+    }
+
     @Test
     void testDownloadMissingFileGenericError() throws Exception {
         MvcResult mvcResult = this.mockMvc.perform(
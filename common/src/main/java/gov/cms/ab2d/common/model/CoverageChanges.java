@@ -0,0 +1,82 @@
+package gov.cms.ab2d.common.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Arrays;
+
+/**
+ * Beneficiaries that changed between the previous search and the current search of a {@link CoveragePeriod}.
+ *
+ * Usually almost every beneficiary is unchanged between weekly searches, so writing only the changes is far cheaper
+ * than writing every beneficiary again. The changes are found in memory by walking the sorted beneficiary ids of
+ * both searches side by side.
+ */
+@Getter
+@AllArgsConstructor
+public class CoverageChanges {
+
+    // Beneficiaries only found by the current search
+    private final IdentifierSet added;
+
+    // Beneficiary ids only found by the previous search
+    private final long[] removed;
+
+    // Beneficiaries found by both searches whose mbis changed, holding the mbis from the current search
+    private final IdentifierSet changedMbis;
+
+    // Beneficiaries found by both searches with the same mbis
+    private final int unchanged;
+
+    /**
+     * Compare the beneficiaries found by two searches
+     *
+     * @param previous beneficiaries found by the previous search
+     * @param current beneficiaries found by the current search
+     */
+    public static CoverageChanges between(IdentifierSet previous, IdentifierSet current) {
+        long[] previousIds = previous.sortedBeneficiaryIds();
+        long[] currentIds = current.sortedBeneficiaryIds();
+
+        IdentifierSet added = new IdentifierSet();
+        IdentifierSet changedMbis = new IdentifierSet();
+        long[] removed = new long[16];
+        int removedCount = 0;
+        int unchanged = 0;
+
+        int previousIdx = 0;
+        int currentIdx = 0;
+        while (previousIdx < previousIds.length || currentIdx < currentIds.length) {
+            if (currentIdx == currentIds.length
+                    || (previousIdx < previousIds.length && previousIds[previousIdx] < currentIds[currentIdx])) {
+                if (removedCount == removed.length) {
+                    removed = Arrays.copyOf(removed, removedCount * 2);
+                }
+                removed[removedCount++] = previousIds[previousIdx++];
+            } else if (previousIdx == previousIds.length || currentIds[currentIdx] < previousIds[previousIdx]) {
+                added.add(current.getBeneficiary(currentIds[currentIdx++]));
+            } else {
+                long beneficiaryId = currentIds[currentIdx];
+                if (current.hasSameMbis(beneficiaryId, previous)) {
+                    unchanged++;
+                } else {
+                    changedMbis.add(current.getBeneficiary(beneficiaryId));
+                }
+                previousIdx++;
+                currentIdx++;
+            }
+        }
+
+        return new CoverageChanges(added, Arrays.copyOf(removed, removedCount), changedMbis, unchanged);
+    }
+
+    @Override
+    public String toString() {
+        return "CoverageChanges{" +
+                "added=" + added.size() +
+                ", removed=" + removed.length +
+                ", changedMbis=" + changedMbis.size() +
+                ", unchanged=" + unchanged +
+                '}';
+    }
+}
@@ -7,7 +7,8 @@ import java.util.*;
 @Getter
 public class CoverageMapping {
 
-    private final Set<Identifiers> beneficiaryIds;
+    // Holds every beneficiary enrolled for the month so keep it compact
+    private final IdentifierSet beneficiaryIds;
 
     private final CoverageSearchEvent coverageSearchEvent;
     private final CoverageSearch coverageSearch;
@@ -18,7 +19,7 @@ public class CoverageMapping {
         this.coverageSearchEvent = event;
         this.coverageSearch = search;
 
-        beneficiaryIds = new HashSet<>();
+        beneficiaryIds = new IdentifierSet();
     }
 
     public Contract getContract() {
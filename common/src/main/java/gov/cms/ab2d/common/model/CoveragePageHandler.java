@@ -0,0 +1,17 @@
+package gov.cms.ab2d.common.model;
+
+/**
+ * Receives pages of coverage as they are read when streaming enrollment for a contract
+ */
+@FunctionalInterface
+public interface CoveragePageHandler {
+
+    /**
+     * Handle a single page of beneficiaries
+     *
+     * @param page the page, the next request is present if more beneficiaries follow and can be used to resume paging
+     * @return true to keep streaming, false to stop streaming without reading any more pages
+     * @throws InterruptedException if interrupted while handing off the page
+     */
+    boolean handle(CoveragePagingResult page) throws InterruptedException;
+}
@@ -3,6 +3,7 @@ package gov.cms.ab2d.common.model;
 import lombok.ToString;
 
 import java.time.OffsetDateTime;
+import java.util.Map;
 import java.util.Optional;
 
 @ToString
@@ -29,11 +30,43 @@ public class CoveragePagingRequest {
      */
     private final Long cursor;
 
+    /**
+     * Version of the contract's coverage pages are read from, resolved once when the first page is read so that
+     * later pages do not look it up again. Null until resolved, empty if pages are read from the database,
+     * otherwise the completed search event of each coverage period held by the snapshot pages are read from.
+     */
+    private final Map<Integer, Long> snapshotVersion;
+
     public CoveragePagingRequest(int pageSize, Long cursor, Contract contract, OffsetDateTime jobStartTime) {
+        this(pageSize, cursor, contract, jobStartTime, null);
+    }
+
+    private CoveragePagingRequest(int pageSize, Long cursor, Contract contract, OffsetDateTime jobStartTime,
+                                  Map<Integer, Long> snapshotVersion) {
         this.contract = contract;
         this.pageSize = pageSize;
         this.cursor = cursor;
         this.jobStartTime = jobStartTime;
+        this.snapshotVersion = snapshotVersion;
+    }
+
+    /**
+     * Request the page starting at another beneficiary keeping everything else about this request
+     *
+     * @param nextCursor internal beneficiary id the next page starts at
+     * @return request for the next page
+     */
+    public CoveragePagingRequest withCursor(Long nextCursor) {
+        return new CoveragePagingRequest(pageSize, nextCursor, contract, jobStartTime, snapshotVersion);
+    }
+
+    /**
+     * @param version completed search event of each coverage period held by the snapshot to read pages from,
+     *                or empty to read pages from the database
+     * @return copy of this request carrying the resolved version
+     */
+    public CoveragePagingRequest withSnapshotVersion(Map<Integer, Long> version) {
+        return new CoveragePagingRequest(pageSize, cursor, contract, jobStartTime, Map.copyOf(version));
     }
 
     public OffsetDateTime getJobStartTime() {
@@ -52,6 +85,17 @@ public class CoveragePagingRequest {
         return Optional.ofNullable(cursor);
     }
 
+    public boolean isSnapshotVersionResolved() {
+        return snapshotVersion != null;
+    }
+
+    /**
+     * @return the resolved version, empty if pages are read from the database or the version is not resolved yet
+     */
+    public Map<Integer, Long> getSnapshotVersion() {
+        return snapshotVersion == null ? Map.of() : snapshotVersion;
+    }
+
     public String getContractNumber() {
         return contract.getContractNumber();
     }
@@ -37,4 +37,11 @@ public class CoverageSearchEvent extends TimestampBase {
 
     @Column
     private String description;
+
+    /**
+     * For IN_PROGRESS searches that only wrote the changes since the previous search, the search event the
+     * coverage was written to. Null when the coverage is stored under this search event.
+     */
+    @Column
+    private Long coverageEventId;
 }
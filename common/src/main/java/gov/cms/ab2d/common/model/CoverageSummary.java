@@ -1,28 +1,141 @@
 package gov.cms.ab2d.common.model;
 
+import gov.cms.ab2d.filter.FilterOutByDate;
 import gov.cms.ab2d.filter.FilterOutByDate.DateRange;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.ToString;
 
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
+import static gov.cms.ab2d.common.util.DateUtil.AB2D_EPOCH_YEAR;
+
 /**
  * Summary of coverage membership for a specific contract over a set of date ranges.
  *
  * This does not necessarily reflect a search over the entire lifetime of a contract only
  * whatever date ranges are included.
+ *
+ * Coverage loaded from the database is kept as a bitmask of months since the AB2D epoch (January 2020) so that
+ * summaries waiting to be processed hold a few longs instead of a list of dates. Date ranges are only built
+ * when {@link #getDateRanges()} is called.
  */
 @Getter
 @ToString
 public class CoverageSummary {
 
+    private static final int MONTHS_PER_WORD = Long.SIZE;
+
     private final Identifiers identifiers;
     private final Contract contract;
+
+    // Bit n is set if the beneficiary is enrolled n months after January 2020
+    @Getter(AccessLevel.NONE)
+    private final long[] enrolledMonths;
+
+    // Date ranges provided directly instead of as months
+    @Getter(AccessLevel.NONE)
     private final List<DateRange> dateRanges;
 
     public CoverageSummary(Identifiers identifiers, Contract contract, List<DateRange> dateRanges) {
+        this(identifiers, contract, null, dateRanges);
+    }
+
+    private CoverageSummary(Identifiers identifiers, Contract contract, long[] enrolledMonths, List<DateRange> dateRanges) {
         this.identifiers = identifiers;
         this.contract = contract;
+        this.enrolledMonths = enrolledMonths;
         this.dateRanges = dateRanges;
     }
+
+    /**
+     * @param enrolledMonths bitmask of months enrolled, see {@link #asEnrolledMonths(int...)}
+     */
+    public static CoverageSummary ofEnrolledMonths(Identifiers identifiers, Contract contract, long[] enrolledMonths) {
+        return new CoverageSummary(identifiers, contract, enrolledMonths, null);
+    }
+
+    /**
+     * Build a bitmask of months enrolled
+     *
+     * @param monthsSinceEpoch months enrolled counted from January 2020 which is zero, none may be negative
+     * @return bitmask with bit n set for each month n
+     */
+    public static long[] asEnrolledMonths(int... monthsSinceEpoch) {
+        int last = 0;
+        for (int month : monthsSinceEpoch) {
+            if (month < 0) {
+                throw new IllegalArgumentException("cannot record enrollment before the AB2D epoch");
+            }
+            last = Math.max(last, month);
+        }
+
+        long[] enrolledMonths = new long[last / MONTHS_PER_WORD + 1];
+        for (int month : monthsSinceEpoch) {
+            enrolledMonths[month / MONTHS_PER_WORD] |= 1L << (month % MONTHS_PER_WORD);
+        }
+        return enrolledMonths;
+    }
+
+    /**
+     * Check whether the beneficiary is enrolled during a month. Summaries built from a bitmask of months are
+     * checked without building any dates, summaries built from date ranges check the first day of the month
+     * since enrollment always covers whole months.
+     *
+     * @param year year of the month
+     * @param month month of the year starting at 1
+     * @return true if the beneficiary is enrolled in the contract that month
+     */
+    public boolean isEnrolled(int year, int month) {
+        if (enrolledMonths == null) {
+            Date startOfMonth = FilterOutByDate.getStartOfMonth(month, year);
+            return dateRanges.stream().anyMatch(range -> range.inRange(startOfMonth));
+        }
+
+        int monthSinceEpoch = (year - AB2D_EPOCH_YEAR) * 12 + month - 1;
+        int word = monthSinceEpoch / MONTHS_PER_WORD;
+        if (monthSinceEpoch < 0 || word >= enrolledMonths.length) {
+            return false;
+        }
+
+        return (enrolledMonths[word] & (1L << (monthSinceEpoch % MONTHS_PER_WORD))) != 0;
+    }
+
+    /**
+     * Get the months the beneficiary is enrolled as date ranges of consecutive months.
+     *
+     * When the summary holds a bitmask the ranges are built on every call so callers checking many claims
+     * should keep the result.
+     *
+     * @return date ranges enrolled in ascending order
+     */
+    public List<DateRange> getDateRanges() {
+        if (enrolledMonths == null) {
+            return dateRanges;
+        }
+
+        List<DateRange> ranges = new ArrayList<>();
+        int totalMonths = enrolledMonths.length * MONTHS_PER_WORD;
+        int begin = -1;
+        for (int month = 0; month <= totalMonths; month++) {
+            boolean enrolled = month < totalMonths
+                    && (enrolledMonths[month / MONTHS_PER_WORD] & (1L << (month % MONTHS_PER_WORD))) != 0;
+
+            if (enrolled && begin < 0) {
+                begin = month;
+            } else if (!enrolled && begin >= 0) {
+                ranges.add(asDateRange(begin, month - 1));
+                begin = -1;
+            }
+        }
+
+        return ranges;
+    }
+
+    private static DateRange asDateRange(int startMonth, int endMonth) {
+        return FilterOutByDate.getDateRange(startMonth % 12 + 1, AB2D_EPOCH_YEAR + startMonth / 12,
+                endMonth % 12 + 1, AB2D_EPOCH_YEAR + endMonth / 12);
+    }
 }
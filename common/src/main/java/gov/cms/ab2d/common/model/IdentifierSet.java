@@ -0,0 +1,315 @@
+package gov.cms.ab2d.common.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.NoSuchElementException;
+
+/**
+ * Set of {@link Identifiers} unique by beneficiary id that is meant to hold every beneficiary enrolled in a
+ * contract for a month, which can be millions of beneficiaries.
+ *
+ * A {@code HashSet<Identifiers>} needs a hash map node, an {@link Identifiers}, a boxed key, a string per MBI, and a
+ * {@link LinkedHashSet} of historic MBIs for every beneficiary. This set instead keeps beneficiary ids in a
+ * long array indexed by an open addressing hash table, and the MBIs of every beneficiary encoded one after another
+ * in a single byte array.
+ *
+ * Like {@link java.util.HashSet} adding a beneficiary that is already present does not change the set.
+ *
+ * {@link Identifiers} are rebuilt when iterating. Code that only needs the raw values, like inserting into the
+ * database, should use {@link #forEachBeneficiary(BeneficiaryConsumer)} instead.
+ *
+ * Not thread safe and does not support removal.
+ */
+public class IdentifierSet extends AbstractSet<Identifiers> {
+
+    /**
+     * Receives the raw values of each beneficiary in the set
+     *
+     * @param <E> exception the consumer may throw
+     */
+    @FunctionalInterface
+    public interface BeneficiaryConsumer<E extends Exception> {
+
+        /**
+         * @param beneficiaryId the beneficiary id
+         * @param currentMbi the current mbi which may be null
+         * @param historicMbis historic mbis separated by commas, null if there are none
+         */
+        void accept(long beneficiaryId, String currentMbi, String historicMbis) throws E;
+    }
+
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final int EMPTY = -1;
+
+    // Each encoded entry starts with a marker for whether the current mbi is present
+    private static final byte NO_CURRENT_MBI = 0;
+    private static final byte CURRENT_MBI = 1;
+    private static final byte SEPARATOR = ',';
+
+    // Beneficiary ids in the order they were added
+    private long[] beneficiaryIds;
+
+    // Encoded mbis of entry n are found from mbiOffsets[n] to mbiOffsets[n + 1]
+    private int[] mbiOffsets;
+    private byte[] mbis;
+
+    // Open addressing hash table holding the position of each beneficiary id, kept at most half full
+    private int[] slots;
+
+    private int size;
+
+    public IdentifierSet() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize number of beneficiaries expected to prevent resizing
+     */
+    public IdentifierSet(int expectedSize) {
+        int capacity = Math.max(16, expectedSize);
+        beneficiaryIds = new long[capacity];
+        mbiOffsets = new int[capacity + 1];
+        mbis = new byte[capacity * 12];
+        slots = newSlots(capacity);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean contains(Object object) {
+        return object instanceof Identifiers && containsBeneficiary(((Identifiers) object).getBeneficiaryId());
+    }
+
+    public boolean containsBeneficiary(long beneficiaryId) {
+        return slots[findSlot(slots, beneficiaryId)] != EMPTY;
+    }
+
+    /**
+     * Add a beneficiary if no beneficiary with the same id is present
+     *
+     * @return true if the beneficiary was added
+     */
+    @Override
+    public boolean add(Identifiers identifiers) {
+        return add(identifiers.getBeneficiaryId(), identifiers.getCurrentMbi(), identifiers.getHistoricMbis());
+    }
+
+    /**
+     * Add a beneficiary if no beneficiary with the same id is present
+     *
+     * @param historicMbis historic mbis in order, may be null or empty
+     * @return true if the beneficiary was added
+     */
+    public boolean add(long beneficiaryId, String currentMbi, Iterable<String> historicMbis) {
+        int slot = findSlot(slots, beneficiaryId);
+        if (slots[slot] != EMPTY) {
+            return false;
+        }
+
+        ensureCapacity();
+        slots[slot] = size;
+        beneficiaryIds[size] = beneficiaryId;
+
+        writeMbis(currentMbi, historicMbis);
+        size++;
+
+        // Rebuild the index after the insert so the slot found above stays valid
+        if (size * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+
+        return true;
+    }
+
+    /**
+     * Find a beneficiary by id
+     *
+     * @return the beneficiary or null if the beneficiary is not in the set
+     */
+    public Identifiers getBeneficiary(long beneficiaryId) {
+        int idx = slots[findSlot(slots, beneficiaryId)];
+        return idx == EMPTY ? null : asIdentifiers(idx);
+    }
+
+    /**
+     * Beneficiary ids in ascending order, used to compare sets by walking both in order
+     */
+    public long[] sortedBeneficiaryIds() {
+        long[] sorted = Arrays.copyOf(beneficiaryIds, size);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Check whether a beneficiary has the same mbis in this set and another set by comparing the encoded mbis
+     *
+     * @return false if the beneficiary is missing from either set or the mbis differ
+     */
+    public boolean hasSameMbis(long beneficiaryId, IdentifierSet other) {
+        int idx = slots[findSlot(slots, beneficiaryId)];
+        int otherIdx = other.slots[other.findSlot(other.slots, beneficiaryId)];
+        if (idx == EMPTY || otherIdx == EMPTY) {
+            return false;
+        }
+
+        return Arrays.equals(mbis, mbiOffsets[idx], mbiOffsets[idx + 1],
+                other.mbis, other.mbiOffsets[otherIdx], other.mbiOffsets[otherIdx + 1]);
+    }
+
+    /**
+     * Visit the raw values of every beneficiary in the order they were added without building {@link Identifiers}
+     */
+    public <E extends Exception> void forEachBeneficiary(BeneficiaryConsumer<E> consumer) throws E {
+        for (int idx = 0; idx < size; idx++) {
+            consumer.accept(beneficiaryIds[idx], currentMbi(idx), historicMbis(idx));
+        }
+    }
+
+    @Override
+    public Iterator<Identifiers> iterator() {
+        return new Iterator<>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public Identifiers next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                Identifiers identifiers = asIdentifiers(next);
+                next++;
+                return identifiers;
+            }
+        };
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        Arrays.fill(slots, EMPTY);
+    }
+
+    private Identifiers asIdentifiers(int idx) {
+        LinkedHashSet<String> historic = new LinkedHashSet<>();
+        String historicMbis = historicMbis(idx);
+        if (historicMbis != null) {
+            historic.addAll(Arrays.asList(historicMbis.split(",")));
+        }
+        return new Identifiers(beneficiaryIds[idx], currentMbi(idx), historic);
+    }
+
+    private String currentMbi(int idx) {
+        int start = mbiOffsets[idx];
+        if (mbis[start] == NO_CURRENT_MBI) {
+            return null;
+        }
+
+        int end = indexOfSeparator(start + 1, mbiOffsets[idx + 1]);
+        return new String(mbis, start + 1, end - start - 1, StandardCharsets.UTF_8);
+    }
+
+    private String historicMbis(int idx) {
+        int end = mbiOffsets[idx + 1];
+        int separator = indexOfSeparator(mbiOffsets[idx] + 1, end);
+        if (separator >= end) {
+            return null;
+        }
+
+        return new String(mbis, separator + 1, end - separator - 1, StandardCharsets.UTF_8);
+    }
+
+    private int indexOfSeparator(int from, int end) {
+        int idx = from;
+        while (idx < end && mbis[idx] != SEPARATOR) {
+            idx++;
+        }
+        return idx;
+    }
+
+    /**
+     * Encode mbis as a marker byte, the current mbi, and then each historic mbi preceded by a comma
+     */
+    private void writeMbis(String currentMbi, Iterable<String> historicMbis) {
+        int offset = mbiOffsets[size];
+
+        offset = write(offset, currentMbi == null ? NO_CURRENT_MBI : CURRENT_MBI);
+        if (currentMbi != null) {
+            offset = write(offset, currentMbi.getBytes(StandardCharsets.UTF_8));
+        }
+
+        if (historicMbis != null) {
+            for (String historicMbi : historicMbis) {
+                offset = write(offset, SEPARATOR);
+                offset = write(offset, historicMbi.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        mbiOffsets[size + 1] = offset;
+    }
+
+    private int write(int offset, byte value) {
+        if (offset == mbis.length) {
+            mbis = Arrays.copyOf(mbis, mbis.length * 2);
+        }
+        mbis[offset] = value;
+        return offset + 1;
+    }
+
+    private int write(int offset, byte[] values) {
+        if (offset + values.length > mbis.length) {
+            mbis = Arrays.copyOf(mbis, Math.max(mbis.length * 2, offset + values.length));
+        }
+        System.arraycopy(values, 0, mbis, offset, values.length);
+        return offset + values.length;
+    }
+
+    private void ensureCapacity() {
+        if (size == beneficiaryIds.length) {
+            beneficiaryIds = Arrays.copyOf(beneficiaryIds, size * 2);
+            mbiOffsets = Arrays.copyOf(mbiOffsets, size * 2 + 1);
+        }
+    }
+
+    private void rehash(int capacity) {
+        int[] rehashed = new int[capacity];
+        Arrays.fill(rehashed, EMPTY);
+        for (int idx = 0; idx < size; idx++) {
+            rehashed[findSlot(rehashed, beneficiaryIds[idx])] = idx;
+        }
+        slots = rehashed;
+    }
+
+    /**
+     * Find the slot holding the beneficiary id or the empty slot where it belongs using linear probing
+     */
+    private int findSlot(int[] table, long beneficiaryId) {
+        int mask = table.length - 1;
+        int slot = hash(beneficiaryId) & mask;
+        while (table[slot] != EMPTY && beneficiaryIds[table[slot]] != beneficiaryId) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int hash(long beneficiaryId) {
+        long mixed = beneficiaryId * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32));
+    }
+
+    private static int[] newSlots(int capacity) {
+        // Power of two at least twice the capacity
+        int[] table = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+        Arrays.fill(table, EMPTY);
+        return table;
+    }
+}
@@ -1,11 +1,16 @@
 package gov.cms.ab2d.common.repository;
 
 import com.newrelic.api.agent.Trace;
+import gov.cms.ab2d.common.model.CoverageChanges;
+import gov.cms.ab2d.common.model.CoveragePeriod;
 import gov.cms.ab2d.common.model.CoverageSearchEvent;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.namedparam.*;
 import org.springframework.stereotype.Repository;
 
 import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  *
@@ -23,6 +28,13 @@ public class CoverageDeltaRepository {
             "INSERT INTO coverage_delta (bene_coverage_period_id, beneficiary_id , type, created) " +
             CoverageServiceRepository.SELECT_DELTA;
 
+    /**
+     * Record a single beneficiary added or deleted by a search when the differences are already known
+     */
+    private static final String INSERT_DELTA =
+            "INSERT INTO coverage_delta (bene_coverage_period_id, beneficiary_id, type, created) " +
+            "VALUES (?, ?, ?, CURRENT_TIMESTAMP)";
+
     private final DataSource dataSource;
 
     public CoverageDeltaRepository(DataSource dataSource) {
@@ -59,4 +71,29 @@ public class CoverageDeltaRepository {
         template.update(INSERT_DELTAS, deletedParams);
         template.update(INSERT_DELTAS, addedParams);
     }
+
+    /**
+     * Record the beneficiaries "ADDED" and "DELETED" by a search whose differences from the previous search
+     * were already calculated in memory, see {@link CoverageChanges}.
+     *
+     * Runs within the caller's transaction if there is one.
+     *
+     * @param period coverage period the changes belong to
+     * @param changes differences between the previous search and the latest search
+     */
+    @Trace
+    public void trackDeltas(CoveragePeriod period, CoverageChanges changes) {
+        List<Object[]> deltas = new ArrayList<>(changes.getRemoved().length + changes.getAdded().size());
+
+        for (long beneficiaryId : changes.getRemoved()) {
+            deltas.add(new Object[] {period.getId(), String.valueOf(beneficiaryId), COVERAGE_DELETED});
+        }
+
+        changes.getAdded().forEachBeneficiary((beneficiaryId, currentMbi, historicMbis) ->
+                deltas.add(new Object[] {period.getId(), String.valueOf(beneficiaryId), COVERAGE_ADDED}));
+
+        if (!deltas.isEmpty()) {
+            new JdbcTemplate(dataSource).batchUpdate(INSERT_DELTA, deltas);
+        }
+    }
 }
@@ -0,0 +1,332 @@
+package gov.cms.ab2d.common.repository;
+
+import com.newrelic.api.agent.Trace;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static gov.cms.ab2d.common.util.DateUtil.AB2D_EPOCH_YEAR;
+import static gov.cms.ab2d.common.util.DateUtil.AB2D_ZONE;
+
+/**
+ * Creates the partitions of the coverage table so that every contract gets its own partitions instead of
+ * landing in the default partition, which is not partitioned by year and cannot be pruned.
+ *
+ * The coverage table is partitioned by contract, each contract partition by year, and each year partition
+ * by search event:
+ *
+ *      coverage -> coverage_[contract] -> coverage_[contract]_[year] -> coverage_search_[search event id]
+ *
+ * Partitions are created when a contract is added or a new year of coverage is discovered. Contracts already
+ * grouped into a shared partition by earlier migrations only get the year partitions they are missing.
+ *
+ * All changes to the partitions are serialized with an advisory lock so that two applications discovering
+ * the same contract do not race each other.
+ */
+@Slf4j
+@Repository
+public class CoveragePartitionManager {
+
+    // Partitions holding the coverage of a single search event are named with the prefix and the search event id
+    public static final String SEARCH_PARTITION_PREFIX = "coverage_search_";
+
+    private static final String CONTRACT_PARTITION_PREFIX = "coverage_";
+    private static final String DEFAULT_PARTITION = "coverage_default";
+
+    // Arbitrary key shared by every application changing the partitions of the coverage table
+    private static final long PARTITION_LOCK = 2_628_200_021L;
+
+    // Give up creating partitions instead of blocking queries on the coverage table behind a long running insert
+    private static final String CREATE_LOCK_TIMEOUT = "30s";
+
+    /**
+     * Find the partition of the coverage table holding a contract. Partition bounds are only available as text
+     * so the partition is found by its quoted list of contracts. The default partition never matches.
+     */
+    private static final String SELECT_CONTRACT_PARTITION = "SELECT contract_partition.relname, contract_partition.relkind = 'p'" +
+            " FROM pg_inherits contract_inherits" +
+            "   JOIN pg_class contract_partition ON contract_partition.oid = contract_inherits.inhrelid" +
+            " WHERE contract_inherits.inhparent = 'coverage'::regclass" +
+            "   AND pg_get_expr(contract_partition.relpartbound, contract_partition.oid) LIKE '%''' || ? || '''%'";
+
+    /**
+     * Check whether a contract partition already has a partition for a year
+     */
+    private static final String SELECT_YEAR_PARTITION = "SELECT year_partition.relname" +
+            " FROM pg_inherits year_inherits" +
+            "   JOIN pg_class year_partition ON year_partition.oid = year_inherits.inhrelid" +
+            " WHERE year_inherits.inhparent = ?::regclass" +
+            "   AND pg_get_expr(year_partition.relpartbound, year_partition.oid) = 'FOR VALUES IN (' || ? || ')'";
+
+    /**
+     * Find the partition of the coverage table for a contract and year which is partitioned by search event.
+     */
+    private static final String SELECT_SEARCH_PARTITION_PARENT = "SELECT year_partition.oid::regclass::text" +
+            " FROM pg_inherits contract_inherits" +
+            "   JOIN pg_class contract_partition ON contract_partition.oid = contract_inherits.inhrelid" +
+            "   JOIN pg_inherits year_inherits ON year_inherits.inhparent = contract_partition.oid" +
+            "   JOIN pg_class year_partition ON year_partition.oid = year_inherits.inhrelid" +
+            " WHERE contract_inherits.inhparent = 'coverage'::regclass" +
+            "   AND year_partition.relkind = 'p'" +
+            "   AND pg_get_expr(contract_partition.relpartbound, contract_partition.oid) LIKE '%''' || :contract || '''%'" +
+            "   AND pg_get_expr(year_partition.relpartbound, year_partition.oid) = 'FOR VALUES IN (' || :year || ')'";
+
+    /**
+     * Search events with coverage stored in the default partition for a contract, each needs a partition
+     * before the coverage can be moved out of the default partition.
+     */
+    private static final String SELECT_DEFAULT_SEARCHES = "SELECT DISTINCT year, bene_coverage_search_event_id" +
+            " FROM " + DEFAULT_PARTITION + " WHERE contract = ?";
+
+    /**
+     * Move the coverage of a contract out of the default partition into the new, not yet attached, contract partition.
+     * The contract partition is created like the coverage table so the columns line up.
+     */
+    private static final String MOVE_FROM_DEFAULT = "WITH moved AS (" +
+            "   DELETE FROM " + DEFAULT_PARTITION + " WHERE contract = ? RETURNING *" +
+            ") INSERT INTO %s SELECT * FROM moved";
+
+    private final DataSource dataSource;
+
+    public CoveragePartitionManager(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Create the partitions for every year a contract can have coverage, from the AB2D epoch through the current year
+     *
+     * @param contractNumber contract to create partitions for
+     * @throws RuntimeException if the partitions could not be created
+     */
+    public void createPartitions(String contractNumber) {
+        int currentYear = ZonedDateTime.now(AB2D_ZONE).getYear();
+        createPartitions(contractNumber, IntStream.rangeClosed(AB2D_EPOCH_YEAR, currentYear).boxed().collect(Collectors.toList()));
+    }
+
+    /**
+     * Create the partitions for a single year of coverage for a contract, creating the contract partition if necessary
+     *
+     * @param contractNumber contract to create partitions for
+     * @param year year of coverage
+     * @throws RuntimeException if the partitions could not be created
+     */
+    public void createPartitions(String contractNumber, int year) {
+        createPartitions(contractNumber, List.of(year));
+    }
+
+    /**
+     * Find the partition of the coverage table for a contract and year which is partitioned by search event.
+     *
+     * @return the name of the partition which can be used directly in statements, empty if the contract and year
+     * are not partitioned by search event
+     */
+    public Optional<String> findSearchPartitionParent(String contractNumber, int year) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("contract", contractNumber)
+                .addValue("year", year);
+
+        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(dataSource);
+        return template.queryForList(SELECT_SEARCH_PARTITION_PARENT, parameters, String.class).stream().findFirst();
+    }
+
+    @Trace
+    private void createPartitions(String contractNumber, Collection<Integer> years) {
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+
+            try {
+                lockPartitions(connection);
+
+                Optional<ContractPartition> contractPartition = findContractPartition(connection, contractNumber);
+                if (contractPartition.isEmpty()) {
+                    createContractPartition(connection, contractNumber, years);
+                } else if (contractPartition.get().isPartitioned()) {
+                    for (int year : years) {
+                        createYearPartition(connection, contractPartition.get().getName(), year);
+                    }
+                } else {
+                    log.warn("coverage partition {} holding contract {} is not partitioned by year",
+                            contractPartition.get().getName(), contractNumber);
+                }
+
+                connection.commit();
+            } catch (SQLException sqlException) {
+                connection.rollback();
+                throw sqlException;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException sqlException) {
+            throw new RuntimeException("failed to create coverage partitions for contract " + contractNumber, sqlException);
+        }
+    }
+
+    /**
+     * Create a partition for a contract with partitions for each year and for each search event already in the
+     * default partition, move the contract's coverage out of the default partition, and then attach the partition.
+     *
+     * The partition is attached last so the coverage table is only locked exclusively while Postgres checks that
+     * the default partition no longer holds coverage for the contract.
+     */
+    private void createContractPartition(Connection connection, String contractNumber,
+                                         Collection<Integer> years) throws SQLException {
+        String partition = availableName(connection, CONTRACT_PARTITION_PREFIX + sanitize(contractNumber));
+
+        Map<Integer, Set<Long>> defaultSearches = findDefaultSearches(connection, contractNumber);
+        Set<Integer> allYears = new TreeSet<>(years);
+        allYears.addAll(defaultSearches.keySet());
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE " + partition + " (LIKE coverage INCLUDING DEFAULTS) PARTITION BY LIST (year)");
+
+            for (int year : allYears) {
+                String yearPartition = createYearPartition(connection, partition, year);
+
+                for (long searchEventId : defaultSearches.getOrDefault(year, Set.of())) {
+                    statement.execute("CREATE TABLE " + SEARCH_PARTITION_PREFIX + searchEventId + " PARTITION OF "
+                            + yearPartition + " FOR VALUES IN (" + searchEventId + ")");
+                }
+            }
+        }
+
+        int moved = moveFromDefault(connection, contractNumber, partition);
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("ALTER TABLE coverage ATTACH PARTITION " + partition
+                    + " FOR VALUES IN (" + quote(contractNumber) + ")");
+        }
+
+        log.info("created coverage partition {} for contract {} and moved {} rows out of {}",
+                partition, contractNumber, moved, DEFAULT_PARTITION);
+    }
+
+    /**
+     * Create the partition for a year of a contract partition if it does not exist yet
+     *
+     * @return the name of the year partition
+     */
+    private String createYearPartition(Connection connection, String contractPartition, int year) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_YEAR_PARTITION)) {
+            statement.setString(1, contractPartition);
+            statement.setString(2, String.valueOf(year));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (resultSet.next()) {
+                    return resultSet.getString(1);
+                }
+            }
+        }
+
+        String partition = availableName(connection, contractPartition + "_" + year);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE " + partition + " PARTITION OF " + contractPartition
+                    + " FOR VALUES IN (" + year + ") PARTITION BY LIST (bene_coverage_search_event_id)");
+        }
+
+        log.info("created coverage partition {} for year {}", partition, year);
+        return partition;
+    }
+
+    private Map<Integer, Set<Long>> findDefaultSearches(Connection connection, String contractNumber) throws SQLException {
+        Map<Integer, Set<Long>> searches = new TreeMap<>();
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_DEFAULT_SEARCHES)) {
+            statement.setString(1, contractNumber);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    searches.computeIfAbsent(resultSet.getInt(1), year -> new TreeSet<>()).add(resultSet.getLong(2));
+                }
+            }
+        }
+        return searches;
+    }
+
+    private int moveFromDefault(Connection connection, String contractNumber, String partition) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(String.format(MOVE_FROM_DEFAULT, partition))) {
+            statement.setString(1, contractNumber);
+            return statement.executeUpdate();
+        }
+    }
+
+    private Optional<ContractPartition> findContractPartition(Connection connection, String contractNumber) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_CONTRACT_PARTITION)) {
+            statement.setString(1, contractNumber);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (resultSet.next()) {
+                    return Optional.of(new ContractPartition(resultSet.getString(1), resultSet.getBoolean(2)));
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Serialize changes to the partitions of the coverage table with every other application and give up
+     * instead of blocking queries on the coverage table for long. Must be called within a transaction.
+     */
+    static void lockPartitions(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT pg_advisory_xact_lock(?)")) {
+            statement.setLong(1, PARTITION_LOCK);
+            statement.execute();
+        }
+
+        // Only applies to the current transaction
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SET LOCAL lock_timeout = '" + CREATE_LOCK_TIMEOUT + "'");
+        }
+    }
+
+    /**
+     * Partition names are not unique to a contract, older partitions were named after groups of contracts,
+     * so add a suffix if the name is taken
+     */
+    private static String availableName(Connection connection, String name) throws SQLException {
+        String candidate = name;
+        for (int suffix = 1; tableExists(connection, candidate); suffix++) {
+            candidate = name + "_" + suffix;
+        }
+        return candidate;
+    }
+
+    private static boolean tableExists(Connection connection, String name) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT to_regclass(?) IS NOT NULL")) {
+            statement.setString(1, name);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() && resultSet.getBoolean(1);
+            }
+        }
+    }
+
+    private static String sanitize(String contractNumber) {
+        return contractNumber.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9_]", "_");
+    }
+
+    private static String quote(String contractNumber) {
+        return "'" + contractNumber.replace("'", "''") + "'";
+    }
+
+    @Value
+    private static class ContractPartition {
+        String name;
+        boolean partitioned;
+    }
+}
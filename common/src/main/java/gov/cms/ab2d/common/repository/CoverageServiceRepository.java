@@ -2,35 +2,48 @@ package gov.cms.ab2d.common.repository;
 
 import com.newrelic.api.agent.Trace;
 import gov.cms.ab2d.common.model.Contract;
+import gov.cms.ab2d.common.model.CoverageChanges;
 import gov.cms.ab2d.common.model.CoverageCount;
-import gov.cms.ab2d.common.model.CoverageMembership;
+import gov.cms.ab2d.common.model.CoveragePageHandler;
 import gov.cms.ab2d.common.model.CoveragePagingRequest;
 import gov.cms.ab2d.common.model.CoveragePagingResult;
 import gov.cms.ab2d.common.model.CoveragePeriod;
 import gov.cms.ab2d.common.model.CoverageSearchEvent;
 import gov.cms.ab2d.common.model.CoverageSummary;
+import gov.cms.ab2d.common.model.IdentifierSet;
 import gov.cms.ab2d.common.model.JobStatus;
 import gov.cms.ab2d.common.model.Identifiers;
-import gov.cms.ab2d.filter.FilterOutByDate;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.stereotype.Repository;
 
 import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.sql.Array;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.time.LocalDate;
+import java.sql.Savepoint;
+import java.sql.Statement;
 import java.time.OffsetDateTime;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
 
 import static gov.cms.ab2d.common.util.DateUtil.AB2D_EPOCH;
+import static gov.cms.ab2d.common.util.DateUtil.AB2D_EPOCH_YEAR;
 import static gov.cms.ab2d.common.util.DateUtil.AB2D_ZONE;
 import static java.util.stream.Collectors.toList;
 
@@ -38,7 +51,8 @@ import static java.util.stream.Collectors.toList;
  * Vanilla SQL interface with the coverage table. The class is designed to be performant and work with the
  * partitioning strategies in the database. Partitioning is mainly done to speed up bulk inserts.
  *
- * IMPORTANT: The coverage table is partitioned by contract and then by year.
+ * IMPORTANT: The coverage table is partitioned by contract and then by year. Each year is further partitioned by
+ * search event so that coverage from superseded searches can be dropped instead of deleted row by row.
  *
  * With Postgres, this means that all queries to the coverage table must contain contract or year, otherwise those queries
  * will trigger a full table scan.
@@ -54,7 +68,12 @@ import static java.util.stream.Collectors.toList;
 public class CoverageServiceRepository {
 
     private static final int BATCH_INSERT_SIZE = 10000;
-    private static final List<Integer> YEARS = List.of(2020, 2021, 2022, 2023);
+    // Number of characters of rows buffered before they are sent to Postgres when copying coverage
+    private static final int COPY_BUFFER_SIZE = 1 << 20;
+    // Give up dropping a search partition instead of blocking queries reading coverage
+    private static final String DROP_LOCK_TIMEOUT = "5s";
+    // Number of beneficiaries pulled from the database at a time when streaming coverage
+    private static final int STREAM_FETCH_SIZE = 10000;
 
     /**
      * Assign a beneficiary as being a member of a contract during a year and month {@link CoveragePeriod}
@@ -70,6 +89,14 @@ public class CoverageServiceRepository {
             "(bene_coverage_period_id, bene_coverage_search_event_id, contract, year, month, beneficiary_id, current_mbi, historic_mbis) " +
             "VALUES(?,?,?,?,?,?,?,?)";
 
+    /**
+     * Bulk load the same columns as {@link #INSERT_COVERAGE} as CSV rows. Postgres routes the rows to the contract
+     * and year partition of the search. Unquoted empty values are loaded as null.
+     */
+    private static final String COPY_COVERAGE = "COPY coverage " +
+            "(bene_coverage_period_id, bene_coverage_search_event_id, contract, year, month, beneficiary_id, current_mbi, historic_mbis) " +
+            "FROM STDIN WITH (FORMAT csv)";
+
     /**
      * Return a count of all beneficiaries associated with an {@link CoveragePeriod} by a specific update from BFD
      * {@link CoverageSearchEvent}.
@@ -89,6 +116,25 @@ public class CoverageServiceRepository {
     private static final String SELECT_DISTINCT_COVERAGE_BY_PERIOD_COUNT = "SELECT COUNT(DISTINCT beneficiary_id) FROM coverage" +
             " WHERE bene_coverage_period_id IN(:ids) AND contract = :contract AND year IN (:years)";
 
+    /**
+     * Read the identifiers of every beneficiary stored under a search event, used to compare a new search
+     * against the coverage already stored
+     */
+    private static final String SELECT_SEARCH_COVERAGE = "SELECT beneficiary_id, current_mbi, historic_mbis FROM coverage" +
+            " WHERE bene_coverage_search_event_id = ? AND contract = ? AND year = ?";
+
+    /**
+     * Remove beneficiaries no longer enrolled from the coverage stored under a search event
+     */
+    private static final String DELETE_SEARCH_BENEFICIARIES = "DELETE FROM coverage" +
+            " WHERE bene_coverage_search_event_id = ? AND contract = ? AND year = ? AND beneficiary_id = ANY (?)";
+
+    /**
+     * Replace the mbis of a beneficiary in the coverage stored under a search event
+     */
+    private static final String UPDATE_SEARCH_MBIS = "UPDATE coverage SET current_mbi = ?, historic_mbis = ?" +
+            " WHERE bene_coverage_search_event_id = ? AND contract = ? AND year = ? AND beneficiary_id = ?";
+
     /**
      * Delete all coverage associated with a single update from BFD {@link CoverageSearchEvent}
      *
@@ -138,35 +184,61 @@ public class CoverageServiceRepository {
             ") I";
 
     /**
-     * Select a limited number of records from the coverage table associated with a specific contract. This is the
-     * first call to get records, all subsequent calls require a cursor.
+     * Aggregate the coverage records of a beneficiary into a single row. Each row holds the identifiers of the
+     * beneficiary once and every month the beneficiary is enrolled as a number of months since year zero
+     * (year * 12 + month - 1) in ascending order.
+     *
+     * The identifiers come from the latest month so that the most recent MBIs are reported.
+     */
+    private static final String SELECT_COVERAGE_BY_BENEFICIARY =
+            "SELECT beneficiary_id, " +
+            " (array_agg(current_mbi ORDER BY year DESC, month DESC))[1] AS current_mbi, " +
+            " (array_agg(historic_mbis ORDER BY year DESC, month DESC))[1] AS historic_mbis, " +
+            " array_agg(year * 12 + month - 1 ORDER BY year, month) AS months " +
+            " FROM coverage ";
+
+    /**
+     * Select a limited number of beneficiaries from the coverage table associated with a specific contract.
+     * This is the first call to get records, all subsequent calls require a cursor.
      *
-     * Without a limit this query will typically return millions of results maybe even tens of millions.
+     * Without a limit this query will typically return millions of results.
      *
      * The contract and year must be included to take advantage of the partitions and prevent a table scan.
      */
-    private static final String SELECT_COVERAGE_WITHOUT_CURSOR =
-            "SELECT beneficiary_id, current_mbi, historic_mbis, year, month " +
-            " FROM coverage " +
+    private static final String SELECT_COVERAGE_WITHOUT_CURSOR = SELECT_COVERAGE_BY_BENEFICIARY +
             " WHERE contract = :contract and year IN (:years) " +
+            " GROUP BY beneficiary_id " +
             " ORDER BY beneficiary_id " +
             " LIMIT :limit";
 
     /**
-     * Select a limited number of records starting from a beneficiary (cursor)
+     * Select a limited number of beneficiaries starting from a beneficiary (cursor)
      * from the coverage table associated with a specific contract.
      *
      * This is used to page through the enrollment related to a contract and starts where the last page ended.
      *
      * The contract and year must be included to take advantage of the partitions and prevent a table scan.
      */
-    private static final String SELECT_COVERAGE_WITH_CURSOR =
-            "SELECT beneficiary_id, current_mbi, historic_mbis, year, month " +
-            " FROM coverage " +
+    private static final String SELECT_COVERAGE_WITH_CURSOR = SELECT_COVERAGE_BY_BENEFICIARY +
             " WHERE contract = :contract and year IN (:years) AND beneficiary_id >= :cursor " +
+            " GROUP BY beneficiary_id " +
             " ORDER BY beneficiary_id " +
             " LIMIT :limit";
 
+    /**
+     * Select beneficiaries from the coverage table associated with a specific contract starting from a beneficiary.
+     *
+     * Meant to be read with a cursor a few thousand beneficiaries at a time in a single transaction. The limit
+     * covers several pages plus one beneficiary to use as the cursor for the next query.
+     *
+     * The contract and year must be included to take advantage of the partitions and prevent a table scan.
+     */
+    private static final String SELECT_COVERAGE_STREAM = SELECT_COVERAGE_BY_BENEFICIARY +
+            " WHERE contract = ? and year = ANY (?) AND beneficiary_id >= ? " +
+            " GROUP BY beneficiary_id " +
+            " ORDER BY beneficiary_id " +
+            " LIMIT ?";
+
     /**
      * Given a list of contracts, for each contract and all {@link CoveragePeriod}s that contract has been active for,
      * count the number of beneficiaries covered by the contract and report those results.
@@ -191,12 +263,31 @@ public class CoverageServiceRepository {
     private final DataSource dataSource;
     private final CoveragePeriodRepository coveragePeriodRepo;
     private final CoverageSearchEventRepository coverageSearchEventRepo;
+    private final CoveragePartitionManager partitionManager;
+
+    // Load coverage using COPY instead of batched inserts
+    private final boolean copyInserts;
+
+    // Maximum number of pages read by each query when streaming coverage
+    private final int streamPagesPerQuery;
+
+    // Search events that already have a partition created by this application
+    private final Set<Long> searchPartitions = ConcurrentHashMap.newKeySet();
+
+    // Search events whose partition could not be dropped, the partition is dropped later once it is empty
+    private final Set<Long> failedDrops = ConcurrentHashMap.newKeySet();
 
     public CoverageServiceRepository(DataSource dataSource, CoveragePeriodRepository coveragePeriodRepo,
-                                     CoverageSearchEventRepository coverageSearchEventRepo) {
+                                     CoverageSearchEventRepository coverageSearchEventRepo,
+                                     CoveragePartitionManager partitionManager,
+                                     @Value("${coverage.insert.copy:false}") boolean copyInserts,
+                                     @Value("${coverage.stream.pages.per.query:10}") int streamPagesPerQuery) {
         this.dataSource = dataSource;
         this.coverageSearchEventRepo = coverageSearchEventRepo;
         this.coveragePeriodRepo = coveragePeriodRepo;
+        this.partitionManager = partitionManager;
+        this.copyInserts = copyInserts;
+        this.streamPagesPerQuery = Math.max(1, streamPagesPerQuery);
     }
 
     /**
@@ -216,7 +307,7 @@ public class CoverageServiceRepository {
         SqlParameterSource parameters = new MapSqlParameterSource()
                 .addValue("id", searchEvent.getId())
                 .addValue("contract", searchEvent.getCoveragePeriod().getContract().getContractNumber())
-                .addValue("years", YEARS);
+                .addValue("years", List.of(searchEvent.getCoveragePeriod().getYear()));
 
         NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(dataSource);
 
@@ -253,7 +344,7 @@ public class CoverageServiceRepository {
                 .addValue("search1", searchEvent1.getId())
                 .addValue("search2", searchEvent2.getId())
                 .addValue("contract", searchEvent1.getCoveragePeriod().getContract().getContractNumber())
-                .addValue("years", YEARS);
+                .addValue("years", List.of(searchEvent1.getCoveragePeriod().getYear()));
 
         NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(dataSource);
 
@@ -275,7 +366,7 @@ public class CoverageServiceRepository {
         SqlParameterSource parameters = new MapSqlParameterSource()
                 .addValue("ids", coveragePeriodIds)
                 .addValue("contract", contractNum)
-                .addValue("years", YEARS);
+                .addValue("years", findYears(coveragePeriodIds));
 
         NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(dataSource);
 
@@ -299,7 +390,7 @@ public class CoverageServiceRepository {
         List<String> contractNumbers = contracts.stream().map(Contract::getContractNumber).collect(toList());
         SqlParameterSource parameters = new MapSqlParameterSource()
                 .addValue("contracts", contractNumbers)
-                .addValue("years", YEARS);
+                .addValue("years", yearsThrough(ZonedDateTime.now(AB2D_ZONE).getYear()));
 
         NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(dataSource);
 
@@ -313,17 +404,158 @@ public class CoverageServiceRepository {
      * month, and year. We may have other older enrollment from previous searches against BFD
      * also in the database when this insertion is done.
      *
+     * When coverage.insert.copy is enabled the beneficiaries are streamed to Postgres with a single COPY
+     * instead of batches of inserts.
+     *
      * @param searchEvent the search event to add coverage in relation to
      * @param beneIds Collection of beneficiary ids to be added as a batch
      * @throws RuntimeException if insertion fails due to a syntax or timeout issue with Postgres.
      */
     @Trace
     public void insertBatches(CoverageSearchEvent searchEvent, Iterable<Identifiers> beneIds) {
+        insertInBatches(searchEvent, batch -> {
+            for (Identifiers beneficiary : beneIds) {
+                String historicMbis = beneficiary.getHistoricMbis().isEmpty()
+                        ? null : String.join(",", beneficiary.getHistoricMbis());
+                batch.add(beneficiary.getBeneficiaryId(), beneficiary.getCurrentMbi(), historicMbis);
+            }
+        });
+    }
+
+    /**
+     * Insert a compact set of beneficiaries without building {@link Identifiers} for each beneficiary
+     *
+     * @see #insertBatches(CoverageSearchEvent, Iterable)
+     */
+    public void insertBatches(CoverageSearchEvent searchEvent, IdentifierSet beneIds) {
+        insertInBatches(searchEvent, batch -> beneIds.forEachBeneficiary(batch::add));
+    }
+
+    /**
+     * Read the identifiers of every beneficiary stored under a search event into a compact set.
+     *
+     * Rows are read from a cursor when called within a transaction so the whole result is never held by the driver.
+     *
+     * @param searchEvent search event the coverage is stored under
+     * @return one entry per beneficiary
+     */
+    @Trace
+    public IdentifierSet findSearchCoverage(CoverageSearchEvent searchEvent) {
+        CoveragePeriod period = searchEvent.getCoveragePeriod();
+
+        JdbcTemplate template = new JdbcTemplate(dataSource);
+        template.setFetchSize(STREAM_FETCH_SIZE);
+
+        IdentifierSet coverage = new IdentifierSet();
+        template.query(SELECT_SEARCH_COVERAGE, (RowCallbackHandler) rs -> {
+            String historicMbis = rs.getString(3);
+            coverage.add(rs.getLong(1), rs.getString(2),
+                    StringUtils.isBlank(historicMbis) ? null : Arrays.asList(historicMbis.split(",")));
+        }, searchEvent.getId(), period.getContract().getContractNumber(), period.getYear());
+
+        return coverage;
+    }
+
+    /**
+     * Bring the coverage stored under a search event up to date by writing only the beneficiaries that changed.
+     * Removed beneficiaries are deleted, changed mbis are updated in place, and added beneficiaries are inserted
+     * under the same search event.
+     *
+     * Runs within the caller's transaction if there is one so the changes are applied all at once.
+     *
+     * @param searchEvent search event the coverage is stored under
+     * @param changes differences between the stored coverage and the latest search
+     */
+    @Trace
+    public void updateSearchCoverage(CoverageSearchEvent searchEvent, CoverageChanges changes) {
+        CoveragePeriod period = searchEvent.getCoveragePeriod();
+        String contractNum = period.getContract().getContractNumber();
+
+        JdbcTemplate template = new JdbcTemplate(dataSource);
+        template.execute((ConnectionCallback<Void>) connection -> {
+
+            if (changes.getRemoved().length > 0) {
+                try (PreparedStatement statement = connection.prepareStatement(DELETE_SEARCH_BENEFICIARIES)) {
+                    statement.setLong(1, searchEvent.getId());
+                    statement.setString(2, contractNum);
+                    statement.setInt(3, period.getYear());
+                    statement.setArray(4, connection.createArrayOf("bigint",
+                            Arrays.stream(changes.getRemoved()).boxed().toArray()));
+                    statement.executeUpdate();
+                }
+            }
+
+            try (PreparedStatement statement = connection.prepareStatement(UPDATE_SEARCH_MBIS)) {
+                executeInBatches(statement, changes.getChangedMbis(), (beneficiaryId, currentMbi, historicMbis) -> {
+                    statement.setString(1, currentMbi);
+                    statement.setString(2, historicMbis);
+                    statement.setLong(3, searchEvent.getId());
+                    statement.setString(4, contractNum);
+                    statement.setInt(5, period.getYear());
+                    statement.setLong(6, beneficiaryId);
+                    statement.addBatch();
+                });
+            }
+
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_COVERAGE)) {
+                executeInBatches(statement, changes.getAdded(), (beneficiaryId, currentMbi, historicMbis) ->
+                        prepareCoverageInsertion(statement, contractNum, period.getYear(), period.getMonth(),
+                                searchEvent, beneficiaryId, currentMbi, historicMbis));
+            }
+
+            return null;
+        });
+    }
+
+    /**
+     * Add every beneficiary to a statement and execute the statement every {@link #BATCH_INSERT_SIZE} beneficiaries
+     */
+    private void executeInBatches(PreparedStatement statement, IdentifierSet beneficiaries,
+                                  InsertBatch batch) throws SQLException {
+        int[] processingCount = {0};
+        beneficiaries.forEachBeneficiary((beneficiaryId, currentMbi, historicMbis) -> {
+            batch.add(beneficiaryId, currentMbi, historicMbis);
+
+            if (++processingCount[0] % BATCH_INSERT_SIZE == 0) {
+                executeBatch(statement);
+                processingCount[0] = 0;
+            }
+        });
+
+        if (processingCount[0] > 0) {
+            executeBatch(statement);
+        }
+    }
+
+    /**
+     * Receives each beneficiary to insert, historic mbis are already joined by commas
+     */
+    @FunctionalInterface
+    private interface InsertBatch {
+        void add(long beneficiaryId, String currentMbi, String historicMbis) throws SQLException;
+    }
+
+    /**
+     * Hands every beneficiary to insert to a batch
+     */
+    @FunctionalInterface
+    private interface BeneficiaryWriter {
+        void writeTo(InsertBatch batch) throws SQLException;
+    }
+
+    private void insertInBatches(CoverageSearchEvent searchEvent, BeneficiaryWriter writer) {
+
+        createSearchPartition(searchEvent);
+
+        if (copyInserts) {
+            copyCoverage(searchEvent, writer);
+            return;
+        }
 
         try (Connection connection = dataSource.getConnection();
              PreparedStatement statement = connection.prepareStatement(INSERT_COVERAGE)) {
 
-            int processingCount = 0;
+            int[] processingCount = {0};
 
             String contractNum = searchEvent.getCoveragePeriod().getContract().getContractNumber();
             int year = searchEvent.getCoveragePeriod().getYear();
@@ -331,19 +563,20 @@ public class CoverageServiceRepository {
 
             // Prepare a batch of beneficiary ids to be inserted
             // and periodically conduct an insert if the batch size is large enough
-            for (Identifiers beneficiary : beneIds) {
-                processingCount++;
+            writer.writeTo((beneficiaryId, currentMbi, historicMbis) -> {
+                processingCount[0]++;
 
-                prepareCoverageInsertion(statement, contractNum, year, month, searchEvent, beneficiary);
+                prepareCoverageInsertion(statement, contractNum, year, month, searchEvent,
+                        beneficiaryId, currentMbi, historicMbis);
 
                 // Insert a batch of beneficiaries to avoid large, slow, insertions
-                if (processingCount % BATCH_INSERT_SIZE == 0) {
+                if (processingCount[0] % BATCH_INSERT_SIZE == 0) {
                     executeBatch(statement);
-                    processingCount = 0;
+                    processingCount[0] = 0;
                 }
-            }
+            });
 
-            if (processingCount > 0) {
+            if (processingCount[0] > 0) {
                 executeBatch(statement);
             }
 
@@ -352,6 +585,270 @@ public class CoverageServiceRepository {
         }
     }
 
+    /**
+     * Stream every beneficiary to Postgres as CSV using the COPY protocol. Much faster than batched inserts because
+     * rows are not bound as parameters and Postgres parses them in bulk.
+     *
+     * The copy is a single statement so either all beneficiaries are loaded or none are.
+     *
+     * @throws RuntimeException if the copy fails
+     */
+    @Trace
+    private void copyCoverage(CoverageSearchEvent searchEvent, BeneficiaryWriter writer) {
+
+        CoveragePeriod period = searchEvent.getCoveragePeriod();
+
+        // Columns identical for every beneficiary in the search
+        StringBuilder searchColumns = new StringBuilder();
+        searchColumns.append(period.getId()).append(',').append(searchEvent.getId()).append(',');
+        appendCsv(searchColumns, period.getContract().getContractNumber());
+        searchColumns.append(',').append(period.getYear()).append(',').append(period.getMonth()).append(',');
+        String prefix = searchColumns.toString();
+
+        try (Connection connection = dataSource.getConnection()) {
+            CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_COVERAGE);
+
+            try {
+                StringBuilder rows = new StringBuilder(COPY_BUFFER_SIZE + 256);
+
+                writer.writeTo((beneficiaryId, currentMbi, historicMbis) -> {
+                    rows.append(prefix).append(beneficiaryId).append(',');
+                    appendCsv(rows, currentMbi);
+                    rows.append(',');
+                    appendCsv(rows, historicMbis);
+                    rows.append('\n');
+
+                    if (rows.length() >= COPY_BUFFER_SIZE) {
+                        writeRows(copyIn, rows);
+                    }
+                });
+
+                writeRows(copyIn, rows);
+                copyIn.endCopy();
+            } finally {
+                // Abandon the copy if any row could not be written so the connection can be reused
+                if (copyIn.isActive()) {
+                    copyIn.cancelCopy();
+                }
+            }
+        } catch (SQLException sqlException) {
+            throw new RuntimeException("failed to copy coverage information", sqlException);
+        }
+    }
+
+    private static void writeRows(CopyIn copyIn, StringBuilder rows) throws SQLException {
+        byte[] bytes = rows.toString().getBytes(StandardCharsets.UTF_8);
+        copyIn.writeToCopy(bytes, 0, bytes.length);
+        rows.setLength(0);
+    }
+
+    /**
+     * Append a value as a quoted CSV field so commas between historic mbis are preserved. Null values are left
+     * empty and unquoted which COPY loads as null.
+     */
+    private static void appendCsv(StringBuilder row, String value) {
+        if (value == null) {
+            return;
+        }
+
+        row.append('"');
+        for (int idx = 0; idx < value.length(); idx++) {
+            char character = value.charAt(idx);
+            if (character == '"') {
+                row.append('"');
+            }
+            row.append(character);
+        }
+        row.append('"');
+    }
+
+    /**
+     * Create a partition holding only the coverage of a search event so that the coverage can later be removed by
+     * dropping the partition, see {@link #dropSearchPartitions(List)}.
+     *
+     * Contract and year partitions missing because the contract or coverage period was added without them
+     * are created first, see {@link CoveragePartitionManager}. If the contract and year are still not partitioned
+     * by search event the coverage is inserted without a partition and deleted row by row instead.
+     *
+     * @throws RuntimeException if the partition could not be created
+     */
+    @Trace
+    private void createSearchPartition(CoverageSearchEvent searchEvent) {
+
+        long searchEventId = searchEvent.getId();
+        if (searchPartitions.contains(searchEventId)) {
+            return;
+        }
+
+        CoveragePeriod period = searchEvent.getCoveragePeriod();
+        String contractNumber = period.getContract().getContractNumber();
+        Optional<String> parent = partitionManager.findSearchPartitionParent(contractNumber, period.getYear());
+
+        // Partitions are normally created when the contract or coverage period is added, create any still missing
+        if (parent.isEmpty()) {
+            try {
+                partitionManager.createPartitions(contractNumber, period.getYear());
+                parent = partitionManager.findSearchPartitionParent(contractNumber, period.getYear());
+            } catch (RuntimeException exception) {
+                log.warn("could not create coverage partitions for {}-{}: {}", contractNumber, period.getYear(),
+                        exception.getMessage());
+            }
+        }
+
+        if (parent.isEmpty()) {
+            log.info("coverage for {}-{} is not partitioned by search event, superseded coverage will be deleted",
+                    period.getContract().getContractNumber(), period.getYear());
+            return;
+        }
+
+        String partition = CoveragePartitionManager.SEARCH_PARTITION_PREFIX + searchEventId;
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+
+            // Create and attach separately, on Postgres 12 and later attaching blocks fewer queries than creating in place
+            try (Statement statement = connection.createStatement()) {
+                CoveragePartitionManager.lockPartitions(connection);
+
+                if (!partitionExists(connection, partition)) {
+                    statement.execute("CREATE TABLE " + partition + " (LIKE coverage INCLUDING DEFAULTS)");
+                    statement.execute("ALTER TABLE " + parent.get() + " ATTACH PARTITION " + partition
+                            + " FOR VALUES IN (" + searchEventId + ")");
+                }
+                connection.commit();
+            } catch (SQLException sqlException) {
+                connection.rollback();
+                throw sqlException;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException sqlException) {
+            throw new RuntimeException("failed to create coverage partition for search event " + searchEventId, sqlException);
+        }
+
+        searchPartitions.add(searchEventId);
+    }
+
+    /**
+     * Drop the partitions holding coverage of search events. Dropping a partition is a metadata operation unlike
+     * deleting the rows which leaves dead rows to vacuum.
+     *
+     * Dropping a partition has to wait for queries reading the partition. Instead of blocking new queries
+     * behind it, a drop that cannot get a lock quickly is abandoned and the rows are left for the caller to delete.
+     * The abandoned partition is dropped later by {@link #dropFailedSearchPartitions()}.
+     *
+     * Runs within the caller's transaction if there is one so that the drop does not wait on the caller's locks.
+     *
+     * @param searchEventIds search events to drop the coverage of
+     */
+    @Trace
+    private void dropSearchPartitions(List<Long> searchEventIds) {
+        JdbcTemplate template = new JdbcTemplate(dataSource);
+
+        template.execute((ConnectionCallback<Void>) connection -> {
+            boolean inTransaction = !connection.getAutoCommit();
+
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SET lock_timeout = '" + DROP_LOCK_TIMEOUT + "'");
+
+                for (Long searchEventId : searchEventIds) {
+                    dropSearchPartition(connection, statement, searchEventId, inTransaction);
+                }
+            } finally {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("RESET lock_timeout");
+                }
+            }
+            return null;
+        });
+    }
+
+    private void dropSearchPartition(Connection connection, Statement statement, long searchEventId,
+                                     boolean inTransaction) throws SQLException {
+        String partition = CoveragePartitionManager.SEARCH_PARTITION_PREFIX + searchEventId;
+        if (!partitionExists(connection, partition)) {
+            searchPartitions.remove(searchEventId);
+            failedDrops.remove(searchEventId);
+            return;
+        }
+
+        // A failed statement aborts the whole transaction unless it is rolled back to a savepoint
+        Savepoint savepoint = inTransaction ? connection.setSavepoint() : null;
+        try {
+            statement.execute("DROP TABLE " + partition);
+            searchPartitions.remove(searchEventId);
+            failedDrops.remove(searchEventId);
+        } catch (SQLException sqlException) {
+            if (savepoint != null) {
+                connection.rollback(savepoint);
+            }
+            failedDrops.add(searchEventId);
+            log.warn("could not drop coverage partition {}, coverage will be deleted instead: {}",
+                    partition, sqlException.getMessage());
+        } finally {
+            if (savepoint != null) {
+                connection.releaseSavepoint(savepoint);
+            }
+        }
+    }
+
+    /**
+     * Drop the partitions that could not be dropped earlier and were emptied by deleting their coverage instead.
+     * A partition still holding coverage is skipped, either the delete of its coverage has not committed yet or
+     * it was rolled back and the partition is dropped once its search is superseded again.
+     *
+     * @return the number of partitions dropped
+     */
+    @Trace
+    public int dropFailedSearchPartitions() {
+        if (failedDrops.isEmpty()) {
+            return 0;
+        }
+
+        JdbcTemplate template = new JdbcTemplate(dataSource);
+        return template.execute((ConnectionCallback<Integer>) connection -> {
+            boolean inTransaction = !connection.getAutoCommit();
+
+            int dropped = 0;
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SET lock_timeout = '" + DROP_LOCK_TIMEOUT + "'");
+
+                for (Long searchEventId : List.copyOf(failedDrops)) {
+                    String partition = CoveragePartitionManager.SEARCH_PARTITION_PREFIX + searchEventId;
+                    if (partitionExists(connection, partition) && !partitionIsEmpty(connection, partition)) {
+                        continue;
+                    }
+
+                    dropSearchPartition(connection, statement, searchEventId, inTransaction);
+                    if (!failedDrops.contains(searchEventId)) {
+                        dropped++;
+                    }
+                }
+            } finally {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("RESET lock_timeout");
+                }
+            }
+            return dropped;
+        });
+    }
+
+    private static boolean partitionIsEmpty(Connection connection, String partition) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT NOT EXISTS (SELECT 1 FROM " + partition + ")")) {
+            return resultSet.next() && resultSet.getBoolean(1);
+        }
+    }
+
+    private static boolean partitionExists(Connection connection, String partition) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT to_regclass(?) IS NOT NULL")) {
+            statement.setString(1, partition);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() && resultSet.getBoolean(1);
+            }
+        }
+    }
+
     /**
      * This method exists so that NewRelic can identify this component of the transaction and time it explicitly.
      *
@@ -369,7 +866,8 @@ public class CoverageServiceRepository {
      * @throws SQLException on failure to add single beneficiary to batch
      */
     private void prepareCoverageInsertion(PreparedStatement statement, String contractNum, int year, int month,
-                                          CoverageSearchEvent searchEvent, Identifiers beneficiary) throws SQLException {
+                                          CoverageSearchEvent searchEvent, long beneficiaryId, String currentMbi,
+                                          String historicMbis) throws SQLException {
         // Fields uniquely identifying a search
         statement.setInt(1, searchEvent.getCoveragePeriod().getId());
         statement.setLong(2, searchEvent.getId());
@@ -381,14 +879,9 @@ public class CoverageServiceRepository {
         statement.setInt(5, month);
 
         // Fields identifying a beneficiary
-        statement.setLong(6, beneficiary.getBeneficiaryId());
-        statement.setString(7, beneficiary.getCurrentMbi());
-
-        if (beneficiary.getHistoricMbis().isEmpty()) {
-            statement.setString(8, null);
-        } else {
-            statement.setString(8, String.join(",", beneficiary.getHistoricMbis()));
-        }
+        statement.setLong(6, beneficiaryId);
+        statement.setString(7, currentMbi);
+        statement.setString(8, historicMbis);
 
         statement.addBatch();
     }
@@ -410,16 +903,28 @@ public class CoverageServiceRepository {
         // Only delete previous search if a previous search exists.
         // For performance reasons this is done via jdbc
         if (searchEvent.isPresent()) {
-            MapSqlParameterSource parameterSource = new MapSqlParameterSource()
-                    .addValue("searchEvent", searchEvent.get().getId())
-                    .addValue("contract", period.getContract().getContractNumber())
-                    .addValue("years", YEARS);
+            deleteSearch(searchEvent.get());
+        }
+    }
 
-            NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(dataSource);
-            template.update(DELETE_SEARCH, parameterSource);
+    /**
+     * Delete all coverage information inserted under a single search event by dropping the partition
+     * of the search event and deleting any coverage stored outside of it.
+     *
+     * Does not vacuum the coverage table so that a search cleaning up after itself does not block other searches.
+     *
+     * @param searchEvent search event the coverage was inserted under
+     */
+    public void deleteSearch(CoverageSearchEvent searchEvent) {
+        dropSearchPartitions(List.of(searchEvent.getId()));
 
-            vacuumCoverage();
-        }
+        MapSqlParameterSource parameterSource = new MapSqlParameterSource()
+                .addValue("searchEvent", searchEvent.getId())
+                .addValue("contract", searchEvent.getCoveragePeriod().getContract().getContractNumber())
+                .addValue("years", List.of(searchEvent.getCoveragePeriod().getYear()));
+
+        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(dataSource);
+        template.update(DELETE_SEARCH, parameterSource);
     }
 
     /**
@@ -443,15 +948,16 @@ public class CoverageServiceRepository {
         // For performance reasons this is done via jdbc
         if (!inProgressEvents.isEmpty()) {
 
+            // Most coverage is removed by dropping partitions, the delete removes coverage stored outside of them
+            dropSearchPartitions(inProgressEvents);
+
             MapSqlParameterSource sqlParameterSource = new MapSqlParameterSource()
                     .addValue("searchEvents", inProgressEvents)
                     .addValue("contract", period.getContract().getContractNumber())
-                    .addValue("years", YEARS);
+                    .addValue("years", List.of(period.getYear()));
 
             NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(dataSource);
             template.update(DELETE_PREVIOUS_SEARCHES, sqlParameterSource);
-
-            vacuumCoverage();
         }
     }
 
@@ -470,35 +976,20 @@ public class CoverageServiceRepository {
      * The paging is done by beneficiary, not by enrollment record. A beneficiary may have dozens of enrollment records
      * in the database.
      *
-     * For example if
-     *
-     *      1. The page size is 10, and
-     *      2. A contract has been active for two years
-     * Then each beneficiary could have a record for every month they were active in the contract. Assuming each beneficiary
-     * was active for every month of the contract that would be (10 beneficiaries) * (24 months per beneficiary) = 240 records
-     *
-     * Internally the pageCoverage method will pull more beneficiaries' records than it needs for a complete page and then
-     * truncate the results down to the expected page size.
-     *
-     * The page coverage method will also include the cursor with the result for the next page of beneficiaries.
+     * Postgres aggregates the records of each beneficiary into a single row so one row is returned per
+     * beneficiary no matter how many months the contract has been active, and the identifiers of each beneficiary are
+     * only sent and parsed once.
      *
      * Step by step what is involved in this method:
      *
      * 1. Check that contract has enrollment for all necessary months before retrieving a {@link CoveragePagingRequest#getPageSize()}.
      *    If a contract does not have enrollment for every month except the current month, then it violates a business requirement
      *    {@link #getExpectedCoveragePeriods(CoveragePagingRequest)}
-     * 2. Calculate number of coverage records which correspond to page size patients to pull from database. There should be
-     *    at most one coverage record per beneficiary per month the contract has been active
-     *    (pageSize * months * beneficiaries) {@link #getCoverageLimit(int, long)}
-     * 3. Conduct query to receive coverage records for a {@link #getCoverageLimit(int, long)} of enrollment information
-     *    without processing the results. Each record in the results contains all known identifiers associated
-     *    with a patient and specifies a  month and year that the beneficiaries
-     *    are a member of the contract {@link #queryCoverageMembership(CoveragePagingRequest, long)}
-     * 4. Group the previous queries' results by patient {@link #aggregateEnrollmentByPatient(int, List)}
-     * 5. For each patient condense enrollment down to a single set of date ranges {@link #summarizeCoverageMembership(Contract, Map.Entry)}
-     * 6. Determine whether another page of results is necessary
-     * 7. If another page of results is necessary create a {@link CoveragePagingRequest}
-     * 8. Collect the {@link CoverageSummary} and next {@link CoveragePagingRequest }into a single {@link CoveragePagingResult}
+     * 2. Query one more beneficiary than the page size with the enrollment of each beneficiary aggregated
+     *    {@link #queryCoverageSummaries(CoveragePagingRequest)}
+     * 3. For each patient condense enrollment down to a bitmask of months enrolled {@link #asEnrolledMonths(Array)}
+     * 4. If the extra beneficiary is present create a {@link CoveragePagingRequest} starting at that beneficiary
+     * 5. Collect the {@link CoverageSummary} and next {@link CoveragePagingRequest} into a single {@link CoveragePagingResult}
      *
      * @param page request for paging coverage
      * @return the result of paging with a cursor to the next request
@@ -518,77 +1009,168 @@ public class CoverageServiceRepository {
                     + page.getContract().getContractNumber());
         }
 
-        // Determine how many records to pull back
-        long limit = getCoverageLimit(page.getPageSize(), expectedCoveragePeriods);
+        // Query one extra beneficiary to find where the next page starts
+        List<CoverageSummary> beneficiarySummaries = queryCoverageSummaries(page);
 
-        // Query coverage membership from database and collect it
-        List<CoverageMembership> enrollment = queryCoverageMembership(page, limit);
+        // Build the next request if there is a next patient
+        CoveragePagingRequest request = null;
+        if (beneficiarySummaries.size() > page.getPageSize()) {
+            CoverageSummary nextCursor = beneficiarySummaries.remove(page.getPageSize());
+            request = page.withCursor(nextCursor.getIdentifiers().getBeneficiaryId());
+        }
 
-        // Guarantee ordering of results to the order that the beneficiaries were returned from SQL
-        Map<Long, List<CoverageMembership>> enrollmentByBeneficiary =
-                aggregateEnrollmentByPatient(expectedCoveragePeriods, enrollment);
+        return new CoveragePagingResult(beneficiarySummaries, request);
+    }
 
-        // Only summarize page size beneficiaries worth of information and report it
-        List<CoverageSummary> beneficiarySummaries = enrollmentByBeneficiary.entrySet().stream()
-                .limit(page.getPageSize())
-                .map(membershipEntry -> summarizeCoverageMembership(contract, membershipEntry))
-                .collect(toList());
+    /**
+     * Stream all coverage records for a contract starting at the cursor of the request and hand them off a page of
+     * {@link CoveragePagingRequest#getPageSize()} beneficiaries at a time.
+     *
+     * Unlike {@link #pageCoverage(CoveragePagingRequest)} one query reads several pages. Each query runs in a read only
+     * transaction and Postgres returns {@link #STREAM_FETCH_SIZE} beneficiaries at a time from a server side cursor.
+     * Once {@link #streamPagesPerQuery} pages are read the transaction is closed and the connection returned before
+     * the pages are handed off, so a slow handler never holds a connection or keeps Postgres from cleaning up dead
+     * rows. The next query starts from the cursor of the last page read.
+     *
+     * The same checks as {@link #pageCoverage(CoveragePagingRequest)} are done once before streaming. Every page
+     * except the last carries a request starting at the first beneficiary of the next page so paging can be resumed
+     * with {@link #pageCoverage(CoveragePagingRequest)}.
+     *
+     * @param page request for the first page, with or without a cursor
+     * @param handler receives each page in order and may stop streaming early
+     * @throws InterruptedException if interrupted while handing off a page
+     * @throws RuntimeException if the coverage cannot be read
+     */
+    public void streamCoverage(CoveragePagingRequest page, CoveragePageHandler handler) throws InterruptedException {
 
-        // Get the patient to start from next time
-        Optional<Map.Entry<Long, List<CoverageMembership>>> nextCursor =
-                enrollmentByBeneficiary.entrySet().stream().skip(page.getPageSize()).findAny();
+        Contract contract = page.getContract();
+        int expectedCoveragePeriods = getExpectedCoveragePeriods(page);
 
-        // Build the next request if there is a next patient
-        CoveragePagingRequest request = null;
-        if (nextCursor.isPresent()) {
-            Map.Entry<Long, List<CoverageMembership>> nextCursorBeneficiary = nextCursor.get();
-            request = new CoveragePagingRequest(page.getPageSize(), nextCursorBeneficiary.getKey(), contract, page.getJobStartTime());
+        // Same fail safe as paging, a missing period = one month of enrollment missing for the contract
+        List<CoveragePeriod> coveragePeriods = coveragePeriodRepo.findAllByContractId(contract.getId());
+        if (coveragePeriods.size() != expectedCoveragePeriods) {
+            throw new IllegalArgumentException("at least one coverage period missing from enrollment table for contract "
+                    + page.getContract().getContractNumber());
         }
 
-        return new CoveragePagingResult(beneficiarySummaries, request);
+        CoveragePagingRequest request = page;
+        while (request != null) {
+            List<CoveragePagingResult> pages = readPages(request);
+            for (CoveragePagingResult result : pages) {
+                if (!handler.handle(result)) {
+                    return;
+                }
+            }
+            request = pages.get(pages.size() - 1).getNextRequest().orElse(null);
+        }
     }
 
     /**
-     * Query the database for enrollment for beneficiaries but do not aggregate the data
+     * Read up to {@link #streamPagesPerQuery} pages starting at the cursor of the request with a single query
+     */
+    private List<CoveragePagingResult> readPages(CoveragePagingRequest page) {
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            boolean readOnly = connection.isReadOnly();
+
+            // Postgres only reads results with a cursor inside of a transaction
+            connection.setReadOnly(true);
+            connection.setAutoCommit(false);
+
+            try (PreparedStatement statement = connection.prepareStatement(SELECT_COVERAGE_STREAM)) {
+                statement.setFetchSize(STREAM_FETCH_SIZE);
+                statement.setString(1, page.getContractNumber());
+                statement.setArray(2, connection.createArrayOf("integer", getYears(page).toArray()));
+                statement.setLong(3, page.getCursor().orElse(Long.MIN_VALUE));
+                statement.setInt(4, streamPagesPerQuery * page.getPageSize() + 1);
+
+                try (ResultSet rs = statement.executeQuery()) {
+                    return readResults(page, rs);
+                }
+            } finally {
+                // Nothing was written so there is nothing to keep
+                connection.rollback();
+                connection.setReadOnly(readOnly);
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException sqlException) {
+            throw new RuntimeException("failed to stream coverage information", sqlException);
+        }
+    }
+
+    /**
+     * Read beneficiaries as they arrive and split them into pages. A page is only complete once the
+     * first beneficiary of the next page has been read so that the page can point to the next page.
+     * Reading stops once enough pages are read, the beneficiary after the last page is read again by the next query.
+     */
+    private List<CoveragePagingResult> readResults(CoveragePagingRequest page, ResultSet rs) throws SQLException {
+        Contract contract = page.getContract();
+        int pageSize = page.getPageSize();
+
+        List<CoveragePagingResult> pages = new ArrayList<>();
+        List<CoverageSummary> summaries = new ArrayList<>(pageSize);
+        while (rs.next()) {
+            CoverageSummary summary = asCoverageSummary(contract, rs);
+
+            // Page is full and there is at least one more beneficiary
+            if (summaries.size() == pageSize) {
+                CoveragePagingRequest next = page.withCursor(summary.getIdentifiers().getBeneficiaryId());
+                pages.add(new CoveragePagingResult(summaries, next));
+                if (pages.size() == streamPagesPerQuery) {
+                    return pages;
+                }
+                summaries = new ArrayList<>(pageSize);
+            }
+
+            summaries.add(summary);
+        }
+
+        pages.add(new CoveragePagingResult(summaries, null));
+        return pages;
+    }
+
+    /**
+     * Query the database for a page of beneficiaries plus one more to use as the cursor for the next page
      *
      * @param page request with cursor and contract
-     * @param limit number of records to pull back
-     * @return records pulled back
+     * @return one summary per beneficiary in order of beneficiary id
      */
-    private List<CoverageMembership> queryCoverageMembership(CoveragePagingRequest page, long limit) {
+    private List<CoverageSummary> queryCoverageSummaries(CoveragePagingRequest page) {
 
         Optional<Long> pageCursor = page.getCursor();
+        Contract contract = page.getContract();
 
         MapSqlParameterSource sqlParameterSource = new MapSqlParameterSource()
                 .addValue("contract", page.getContractNumber())
-                .addValue("years", YEARS)
-                .addValue("limit", limit);
+                .addValue("years", getYears(page))
+                .addValue("limit", page.getPageSize() + 1);
 
         pageCursor.ifPresent((cursor) -> sqlParameterSource.addValue("cursor", cursor));
 
-        // Grab the enrollment
-        List<CoverageMembership> enrollment;
         NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(dataSource);
-        if (pageCursor.isPresent()) {
-            enrollment = template.query(SELECT_COVERAGE_WITH_CURSOR, sqlParameterSource,
-                    CoverageServiceRepository::asMembership);
-        } else {
-            enrollment = template.query(SELECT_COVERAGE_WITHOUT_CURSOR, sqlParameterSource,
-                    CoverageServiceRepository::asMembership);
-        }
-        return enrollment;
+        String query = pageCursor.isPresent() ? SELECT_COVERAGE_WITH_CURSOR : SELECT_COVERAGE_WITHOUT_CURSOR;
+        return template.query(query, sqlParameterSource, (rs, rowNum) -> asCoverageSummary(contract, rs));
     }
 
     /**
-     * Get the number of enrollment entries expected per patient assuming each patient is
-     * a member of the contract since it was attested for.
-     *
-     * Basically expect one record per patient per month, tack on an additional patient to buffer the results.
-     *
-     * @return the maximum number of entries required from the database to a pageSize worth of beneficiaries
+     * Years a job can find coverage in, from the year the contract attested, but no earlier than the AB2D epoch,
+     * through the year the job started. Listing only these years lets Postgres skip the partitions of every other year.
      */
-    private long getCoverageLimit(int pageSize, long expectedCoveragePeriods) {
-        return expectedCoveragePeriods * (pageSize + 1);
+    private List<Integer> getYears(CoveragePagingRequest pagingRequest) {
+        ZonedDateTime startTime = pagingRequest.getContract().getESTAttestationTime();
+        int startYear = Math.max(AB2D_EPOCH_YEAR, startTime.getYear());
+        int endYear = Math.max(startYear, pagingRequest.getJobStartTime().atZoneSameInstant(AB2D_ZONE).getYear());
+
+        return IntStream.rangeClosed(startYear, endYear).boxed().collect(toList());
+    }
+
+    private List<Integer> findYears(List<Integer> coveragePeriodIds) {
+        return coveragePeriodRepo.findAllById(coveragePeriodIds).stream()
+                .map(CoveragePeriod::getYear).distinct().sorted().collect(toList());
+    }
+
+    private static List<Integer> yearsThrough(int endYear) {
+        return IntStream.rangeClosed(AB2D_EPOCH_YEAR, endYear).boxed().collect(toList());
     }
 
     private int getExpectedCoveragePeriods(CoveragePagingRequest pagingRequest) {
@@ -609,25 +1191,8 @@ public class CoverageServiceRepository {
         return (int) ChronoUnit.MONTHS.between(startTime, endTime);
     }
 
-    private Map<Long, List<CoverageMembership>> aggregateEnrollmentByPatient(int expectedCoveragePeriods, List<CoverageMembership> enrollment) {
-        Map<Long, List<CoverageMembership>> enrollmentByBeneficiary = new LinkedHashMap<>();
-
-        // Guarantee insertion order. Could use functional API in future.
-        for (CoverageMembership coverageMembership : enrollment) {
-            // If not present add to mapping
-            long beneficiaryId = coverageMembership.getIdentifiers().getBeneficiaryId();
-            enrollmentByBeneficiary.putIfAbsent(beneficiaryId,
-                    new ArrayList<>(expectedCoveragePeriods));
-            enrollmentByBeneficiary.get(beneficiaryId).add(coverageMembership);
-        }
-
-        return enrollmentByBeneficiary;
-    }
-
-    @SuppressWarnings("PMD.UnusedFormalParameter")
-    public static CoverageMembership asMembership(ResultSet rs, int rowNum) throws SQLException {
-        Identifiers identifiers = asIdentifiers(rs);
-        return new CoverageMembership(identifiers, rs.getInt(4), rs.getInt(5));
+    private static CoverageSummary asCoverageSummary(Contract contract, ResultSet rs) throws SQLException {
+        return CoverageSummary.ofEnrolledMonths(asIdentifiers(rs), contract, asEnrolledMonths(rs.getArray(4)));
     }
 
     private static Identifiers asIdentifiers(ResultSet rs) throws SQLException {
@@ -659,71 +1224,35 @@ public class CoverageServiceRepository {
     }
 
     /**
-     * Summarize the coverage of one beneficiary for
+     * Convert the months a beneficiary is enrolled into a bitmask of months since the AB2D epoch
+     *
+     * @param months months since year zero, see {@link #SELECT_COVERAGE_BY_BENEFICIARY}
      */
-    private CoverageSummary summarizeCoverageMembership(Contract contract,
-                                                        Map.Entry<Long, List<CoverageMembership>> membershipInfo) {
+    private static long[] asEnrolledMonths(Array months) throws SQLException {
+        Integer[] enrolled = (Integer[]) months.getArray();
 
-        List<CoverageMembership> membershipMonths = membershipInfo.getValue();
-        Identifiers identifiers = membershipInfo.getValue().get(0).getIdentifiers();
-
-        if (membershipMonths.size() == 1) {
-            LocalDate start = fromRawResults(membershipMonths.get(0));
-            FilterOutByDate.DateRange range = asDateRange(start, start);
-            return new CoverageSummary(identifiers, contract, Collections.singletonList(range));
-        }
-
-        List<FilterOutByDate.DateRange> dateRanges = new ArrayList<>();
-
-        // Remove is dangerous but more efficient than subList or skip
-        LocalDate begin = fromRawResults(membershipMonths.remove(0));
-        LocalDate last = begin;
-        for (CoverageMembership membership : membershipMonths) {
-            LocalDate next = fromRawResults(membership);
-
-            if (!next.isEqual(last.plusMonths(1))) {
-                dateRanges.add(asDateRange(begin, last));
-                begin = next;
-                // Extend the date range by one month
-            }
-
-            last = next;
-        }
-
-        if (begin.equals(last)) {
-            dateRanges.add(asDateRange(begin, begin));
-        } else {
-            dateRanges.add(asDateRange(begin, last));
+        int[] monthsSinceEpoch = new int[enrolled.length];
+        for (int idx = 0; idx < enrolled.length; idx++) {
+            monthsSinceEpoch[idx] = enrolled[idx] - AB2D_EPOCH_YEAR * 12;
         }
 
-        return new CoverageSummary(identifiers, contract, dateRanges);
-
-    }
-
-    /**
-     * Convert raw array results into object
-     */
-    private LocalDate fromRawResults(CoverageMembership result) {
-        return LocalDate.of(result.getYear(), result.getMonth(), 1);
-    }
-
-    private FilterOutByDate.DateRange asDateRange(LocalDate localStartDate, LocalDate localEndDate)  {
-        return FilterOutByDate.getDateRange(localStartDate.getMonthValue(), localStartDate.getYear(),
-                localEndDate.getMonthValue(), localEndDate.getYear());
+        return CoverageSummary.asEnrolledMonths(monthsSinceEpoch);
     }
 
     /**
-     * Clean up indexes between major changes in coverage to keep queries performant.
+     * Vacuum and update statistics for a single partition of the coverage table. Vacuuming a partition that is
+     * itself partitioned vacuums every partition under it.
      *
-     * Calling this method introduces significant overhead so make sure it is only called after significant events.
+     * @param partition name of the partition as reported by Postgres,
+     *                  see {@link CoveragePartitionManager#findSearchPartitionParent(String, int)}
      */
     @Trace
-    public void vacuumCoverage() {
+    public void vacuumPartition(String partition) {
         try (Connection connection = dataSource.getConnection();
-             PreparedStatement statement = connection.prepareStatement("VACUUM coverage")) {
+             PreparedStatement statement = connection.prepareStatement("VACUUM ANALYZE " + partition)) {
             statement.execute();
         } catch (SQLException exception) {
-            throw new RuntimeException("Could not vacuum coverage table", exception);
+            throw new RuntimeException("Could not vacuum coverage partition " + partition, exception);
         }
     }
 }
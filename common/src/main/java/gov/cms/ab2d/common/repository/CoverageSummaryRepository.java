@@ -0,0 +1,251 @@
+package gov.cms.ab2d.common.repository;
+
+import com.newrelic.api.agent.Trace;
+import gov.cms.ab2d.common.model.CoveragePeriod;
+import lombok.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Materialized beneficiary counts so that counting the beneficiaries of a contract does not need to scan
+ * the coverage table.
+ *
+ * Counts are kept for each coverage period and, for each contract, the number of beneficiaries enrolled in each
+ * period grouped by the last earlier period they were enrolled in. A beneficiary enrolled anywhere in a contiguous
+ * range of periods is counted exactly once by the first period of the range they are enrolled in, which is the only
+ * one whose previous period is outside the range, so the distinct count of any contiguous range is a sum over those
+ * rows. Counts are removed whenever coverage of a period changes and written again when a search of the period
+ * completes, so a count that is present is always current.
+ */
+@Repository
+public class CoverageSummaryRepository {
+
+    private static final String SELECT_PERIOD_COUNTS = "SELECT bene_coverage_period_id, beneficiaries" +
+            " FROM coverage_period_summary WHERE bene_coverage_period_id IN (:ids)";
+
+    private static final String SELECT_COMPLETED_SEARCHES = "SELECT bene_coverage_period_id, completed_search_event_id" +
+            " FROM coverage_period_summary WHERE bene_coverage_period_id IN (:ids)";
+
+    private static final String SELECT_CONTRACT_COUNT = "SELECT bene_coverage_period_ids, beneficiaries" +
+            " FROM coverage_contract_summary WHERE contract = ?";
+
+    /**
+     * Count the beneficiaries first enrolled in the range, i.e. those whose previous period is not part of the range
+     */
+    private static final String SELECT_RANGE_COUNT = "SELECT COALESCE(SUM(beneficiaries), 0)" +
+            " FROM coverage_contract_month_summary WHERE contract = :contract AND bene_coverage_period_id IN (:ids)" +
+            "   AND (previous_period_id IS NULL OR previous_period_id NOT IN (:ids))";
+
+    /**
+     * Group every enrolled month of each beneficiary by the enrolled month before it
+     */
+    private static final String INSERT_MONTH_COUNTS = "INSERT INTO coverage_contract_month_summary" +
+            " (contract, bene_coverage_period_id, previous_period_id, beneficiaries)" +
+            " SELECT :contract, bene_coverage_period_id, previous_period_id, COUNT(*) FROM (" +
+            "   SELECT bene_coverage_period_id, LAG(bene_coverage_period_id)" +
+            "     OVER (PARTITION BY beneficiary_id ORDER BY year, month) AS previous_period_id" +
+            "   FROM (SELECT DISTINCT beneficiary_id, bene_coverage_period_id, year, month FROM coverage" +
+            "     WHERE bene_coverage_period_id IN (:ids) AND contract = :contract AND year IN (:years)) enrolled" +
+            " ) months GROUP BY bene_coverage_period_id, previous_period_id";
+
+    private static final String SELECT_FIRST_MONTH_TOTAL = "SELECT COALESCE(SUM(beneficiaries), 0)" +
+            " FROM coverage_contract_month_summary WHERE contract = ? AND previous_period_id IS NULL";
+
+    private static final String UPSERT_PERIOD_COUNT = "INSERT INTO coverage_period_summary" +
+            " (bene_coverage_period_id, bene_coverage_search_event_id, completed_search_event_id, beneficiaries, modified)" +
+            " VALUES (:id, :searchEvent, :completedSearch, :beneficiaries, CURRENT_TIMESTAMP)" +
+            " ON CONFLICT (bene_coverage_period_id) DO UPDATE SET" +
+            "   bene_coverage_search_event_id = EXCLUDED.bene_coverage_search_event_id," +
+            "   completed_search_event_id = EXCLUDED.completed_search_event_id," +
+            "   beneficiaries = EXCLUDED.beneficiaries, modified = EXCLUDED.modified";
+
+    private static final String UPSERT_CONTRACT_COUNT = "INSERT INTO coverage_contract_summary" +
+            " (contract, bene_coverage_period_ids, beneficiaries, modified)" +
+            " VALUES (?, ?, ?, CURRENT_TIMESTAMP)" +
+            " ON CONFLICT (contract) DO UPDATE SET" +
+            "   bene_coverage_period_ids = EXCLUDED.bene_coverage_period_ids," +
+            "   beneficiaries = EXCLUDED.beneficiaries, modified = EXCLUDED.modified";
+
+    private static final String DELETE_PERIOD_COUNT = "DELETE FROM coverage_period_summary WHERE bene_coverage_period_id = ?";
+
+    private static final String DELETE_CONTRACT_COUNT = "DELETE FROM coverage_contract_summary WHERE contract = ?";
+
+    private static final String DELETE_MONTH_COUNTS = "DELETE FROM coverage_contract_month_summary WHERE contract = ?";
+
+    private final DataSource dataSource;
+
+    public CoverageSummaryRepository(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Find the counts of beneficiaries for coverage periods
+     *
+     * @param coveragePeriodIds {@link CoveragePeriod#getId()} of each period
+     * @return the count of each period that has one keyed by period id
+     */
+    public Map<Integer, Integer> findPeriodCounts(List<Integer> coveragePeriodIds) {
+        Map<Integer, Integer> counts = new HashMap<>();
+        if (coveragePeriodIds.isEmpty()) {
+            return counts;
+        }
+
+        SqlParameterSource parameters = new MapSqlParameterSource().addValue("ids", coveragePeriodIds);
+
+        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(dataSource);
+        template.query(SELECT_PERIOD_COUNTS, parameters,
+                (RowCallbackHandler) rs -> counts.put(rs.getInt(1), rs.getInt(2)));
+        return counts;
+    }
+
+    /**
+     * Find the searches that last completed for coverage periods
+     *
+     * @param coveragePeriodIds {@link CoveragePeriod#getId()} of each period
+     * @return the search event of the completed search of each period that has a count keyed by period id
+     */
+    public Map<Integer, Long> findCompletedSearches(List<Integer> coveragePeriodIds) {
+        Map<Integer, Long> events = new HashMap<>();
+        if (coveragePeriodIds.isEmpty()) {
+            return events;
+        }
+
+        SqlParameterSource parameters = new MapSqlParameterSource().addValue("ids", coveragePeriodIds);
+
+        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(dataSource);
+        template.query(SELECT_COMPLETED_SEARCHES, parameters,
+                (RowCallbackHandler) rs -> events.put(rs.getInt(1), rs.getLong(2)));
+        return events;
+    }
+
+    /**
+     * Find the count of distinct beneficiaries of a contract across a contiguous range of its coverage periods
+     *
+     * @param contractNumber contract the periods belong to
+     * @param coveragePeriodIds {@link CoveragePeriod#getId()} of each period in any order
+     * @return the count if counts are kept for the contract and the periods are contiguous months of those counted
+     */
+    public Optional<Integer> findContractCount(String contractNumber, List<Integer> coveragePeriodIds) {
+        JdbcTemplate template = new JdbcTemplate(dataSource);
+        Optional<ContractCount> summary = template.query(SELECT_CONTRACT_COUNT, (rs, rowNum) -> {
+            Integer[] summarized = (Integer[]) rs.getArray(1).getArray();
+            return new ContractCount(Arrays.asList(summarized), rs.getInt(2));
+        }, contractNumber).stream().findFirst();
+
+        if (summary.isEmpty() || !summary.get().isRange(coveragePeriodIds)) {
+            return Optional.empty();
+        }
+
+        if (coveragePeriodIds.size() == summary.get().getPeriodIds().size()) {
+            return Optional.of(summary.get().getBeneficiaries());
+        }
+
+        SqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("contract", contractNumber)
+                .addValue("ids", coveragePeriodIds);
+
+        return Optional.ofNullable(new NamedParameterJdbcTemplate(dataSource)
+                .queryForObject(SELECT_RANGE_COUNT, parameters, Integer.class));
+    }
+
+    /**
+     * Keep the count of beneficiaries for a coverage period
+     *
+     * @param period coverage period that was searched
+     * @param coverageEventId search event the coverage of the period is stored under
+     * @param completedSearchEventId search event of the search that completed, which differs from the coverage
+     *                               event when only the changes of the search were written
+     * @param beneficiaries number of beneficiaries enrolled
+     */
+    @Trace
+    public void updatePeriodCount(CoveragePeriod period, long coverageEventId, long completedSearchEventId,
+                                  int beneficiaries) {
+        SqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("id", period.getId())
+                .addValue("searchEvent", coverageEventId)
+                .addValue("completedSearch", completedSearchEventId)
+                .addValue("beneficiaries", beneficiaries);
+
+        new NamedParameterJdbcTemplate(dataSource).update(UPSERT_PERIOD_COUNT, parameters);
+    }
+
+    /**
+     * Count the beneficiaries of a contract enrolled in each coverage period by the period they were last enrolled
+     * in before it, and keep the number of distinct beneficiaries across every period
+     *
+     * @param contractNumber contract the periods belong to
+     * @param periods every coverage period of the contract in month order
+     */
+    @Trace
+    public void updateContractCounts(String contractNumber, List<CoveragePeriod> periods) {
+        List<Integer> coveragePeriodIds = periods.stream().map(CoveragePeriod::getId).collect(toList());
+        List<Integer> years = periods.stream().map(CoveragePeriod::getYear).distinct().collect(toList());
+
+        JdbcTemplate template = new JdbcTemplate(dataSource);
+        template.update(DELETE_MONTH_COUNTS, contractNumber);
+
+        SqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("contract", contractNumber)
+                .addValue("ids", coveragePeriodIds)
+                .addValue("years", years);
+        new NamedParameterJdbcTemplate(dataSource).update(INSERT_MONTH_COUNTS, parameters);
+
+        // Every beneficiary has exactly one first enrolled month
+        Integer beneficiaries = template.queryForObject(SELECT_FIRST_MONTH_TOTAL, Integer.class, contractNumber);
+
+        template.update(connection -> {
+            Array periodIds = connection.createArrayOf("integer", coveragePeriodIds.toArray());
+
+            PreparedStatement statement = connection.prepareStatement(UPSERT_CONTRACT_COUNT);
+            statement.setString(1, contractNumber);
+            statement.setArray(2, periodIds);
+            statement.setInt(3, beneficiaries == null ? 0 : beneficiaries);
+            return statement;
+        });
+    }
+
+    /**
+     * Remove the counts affected by a change to the coverage of a period
+     *
+     * @param period coverage period that changed
+     */
+    public void removeCounts(CoveragePeriod period) {
+        JdbcTemplate template = new JdbcTemplate(dataSource);
+        template.update(DELETE_PERIOD_COUNT, period.getId());
+        template.update(DELETE_CONTRACT_COUNT, period.getContract().getContractNumber());
+        template.update(DELETE_MONTH_COUNTS, period.getContract().getContractNumber());
+    }
+
+    /**
+     * Contract count along with the periods counted in month order
+     */
+    @Value
+    private static class ContractCount {
+        List<Integer> periodIds;
+        int beneficiaries;
+
+        /**
+         * Whether the requested periods are consecutive months of the periods counted
+         */
+        boolean isRange(List<Integer> coveragePeriodIds) {
+            int[] positions = coveragePeriodIds.stream().mapToInt(periodIds::indexOf).sorted().distinct().toArray();
+            return positions.length == coveragePeriodIds.size() && positions.length > 0 && positions[0] >= 0
+                    && positions[positions.length - 1] - positions[0] == positions.length - 1;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package gov.cms.ab2d.common.service;
+
+/**
+ * Keeps the partitions of the coverage table healthy after enrollment is inserted or deleted.
+ *
+ * Changes are only recorded when they happen. Partitions are vacuumed and analyzed later by
+ * {@link #maintainChangedPartitions(int)} so that maintenance never slows down inserting enrollment and
+ * many changes to the same partition result in a single vacuum.
+ */
+public interface CoverageMaintenanceService {
+
+    /**
+     * Record that coverage for a contract during a year has been inserted or deleted
+     *
+     * @param contractNumber contract the coverage belongs to
+     * @param year year the coverage belongs to
+     */
+    void coverageChanged(String contractNumber, int year);
+
+    /**
+     * Run VACUUM ANALYZE on partitions that have changed since they were last maintained, oldest change first.
+     * Partitions of superseded searches that could not be dropped when their coverage was deleted are dropped first.
+     *
+     * @param maxPartitions maximum number of partitions to maintain, remaining partitions wait for the next run
+     * @return number of partitions maintained
+     */
+    int maintainChangedPartitions(int maxPartitions);
+
+    /**
+     * @return number of partitions waiting to be maintained
+     */
+    int pendingPartitions();
+}
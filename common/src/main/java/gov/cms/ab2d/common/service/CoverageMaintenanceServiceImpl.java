@@ -0,0 +1,136 @@
+package gov.cms.ab2d.common.service;
+
+import gov.cms.ab2d.common.repository.CoveragePartitionManager;
+import gov.cms.ab2d.common.repository.CoverageServiceRepository;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Tracks the contract and year partitions of the coverage table changed by this application and vacuums only
+ * those partitions instead of the entire coverage table.
+ *
+ * Changes are tracked in memory so each application only maintains the partitions it changed. Partitions that are
+ * never maintained because the application stops are still covered by Postgres autovacuum.
+ *
+ * Not transactional because VACUUM cannot run inside a transaction.
+ */
+@Slf4j
+@Service
+public class CoverageMaintenanceServiceImpl implements CoverageMaintenanceService {
+
+    @Value
+    private static class ContractYear {
+        String contractNumber;
+        int year;
+    }
+
+    private final CoverageServiceRepository coverageServiceRepo;
+    private final CoveragePartitionManager partitionManager;
+
+    // Partitions waiting for maintenance in the order they first changed
+    private final Set<ContractYear> changed = new LinkedHashSet<>();
+
+    public CoverageMaintenanceServiceImpl(CoverageServiceRepository coverageServiceRepo,
+                                          CoveragePartitionManager partitionManager) {
+        this.coverageServiceRepo = coverageServiceRepo;
+        this.partitionManager = partitionManager;
+    }
+
+    @Override
+    public void coverageChanged(String contractNumber, int year) {
+        synchronized (changed) {
+            changed.add(new ContractYear(contractNumber, year));
+        }
+    }
+
+    @Override
+    public int maintainChangedPartitions(int maxPartitions) {
+
+        long start = System.currentTimeMillis();
+
+        // Search partitions that could not be dropped earlier, their coverage was deleted instead
+        try {
+            int dropped = coverageServiceRepo.dropFailedSearchPartitions();
+            if (dropped > 0) {
+                log.info("dropped {} coverage partitions emptied by deleting coverage", dropped);
+            }
+        } catch (Exception exception) {
+            log.error("could not drop emptied coverage partitions, will re-attempt", exception);
+        }
+
+        int maintained = 0;
+        for (ContractYear contractYear : takeNext(maxPartitions)) {
+            if (maintain(contractYear)) {
+                maintained++;
+            }
+        }
+
+        if (maintained > 0) {
+            log.info("maintained {} coverage partitions in {} ms, {} partitions still waiting", maintained,
+                    System.currentTimeMillis() - start, pendingPartitions());
+        }
+
+        return maintained;
+    }
+
+    @Override
+    public int pendingPartitions() {
+        synchronized (changed) {
+            return changed.size();
+        }
+    }
+
+    /**
+     * Remove the oldest changes so that changes made while maintenance runs are queued again
+     */
+    private List<ContractYear> takeNext(int maxPartitions) {
+        synchronized (changed) {
+            List<ContractYear> next = new ArrayList<>();
+            Iterator<ContractYear> iterator = changed.iterator();
+            while (next.size() < maxPartitions && iterator.hasNext()) {
+                next.add(iterator.next());
+                iterator.remove();
+            }
+            return next;
+        }
+    }
+
+    /**
+     * Vacuum the year partition holding a contract and year, which vacuums every search partition under it.
+     * Failed partitions are queued again for the next run.
+     *
+     * @return true if a partition was vacuumed
+     */
+    private boolean maintain(ContractYear contractYear) {
+        try {
+            Optional<String> partition = partitionManager.findSearchPartitionParent(contractYear.getContractNumber(),
+                    contractYear.getYear());
+
+            // Older partitions shared between contracts are not partitioned by year and are left to Postgres autovacuum
+            if (partition.isEmpty()) {
+                log.info("coverage for {}-{} has no year partition, leaving it to autovacuum",
+                        contractYear.getContractNumber(), contractYear.getYear());
+                return false;
+            }
+
+            long start = System.currentTimeMillis();
+            coverageServiceRepo.vacuumPartition(partition.get());
+            log.info("vacuumed coverage partition {} for {}-{} in {} ms", partition.get(),
+                    contractYear.getContractNumber(), contractYear.getYear(), System.currentTimeMillis() - start);
+            return true;
+        } catch (Exception exception) {
+            log.error("could not vacuum coverage partition for {}-{}, will re-attempt",
+                    contractYear.getContractNumber(), contractYear.getYear(), exception);
+            coverageChanged(contractYear.getContractNumber(), contractYear.getYear());
+            return false;
+        }
+    }
+}
@@ -3,6 +3,7 @@ package gov.cms.ab2d.common.service;
 import gov.cms.ab2d.common.model.Contract;
 import gov.cms.ab2d.common.model.CoverageCount;
 import gov.cms.ab2d.common.model.CoverageMapping;
+import gov.cms.ab2d.common.model.CoveragePageHandler;
 import gov.cms.ab2d.common.model.CoveragePagingRequest;
 import gov.cms.ab2d.common.model.CoveragePagingResult;
 import gov.cms.ab2d.common.model.CoveragePeriod;
@@ -14,6 +15,7 @@ import gov.cms.ab2d.common.model.JobStatus;
 
 import java.time.OffsetDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 
@@ -64,6 +66,43 @@ public interface CoverageService {
      */
     int countBeneficiariesByCoveragePeriod(List<CoveragePeriod> coveragePeriods);
 
+    /**
+     * Count the number of distinct beneficiaries over coverage periods directly from the coverage table
+     * without using the counts kept when searches complete
+     *
+     * @param coveragePeriods list of coverage periods that should have enrollment
+     * @return number of distinct beneficiaries found
+     */
+    int countBeneficiariesFromCoverage(List<CoveragePeriod> coveragePeriods);
+
+    /**
+     * Find the number of distinct beneficiaries over coverage periods kept when searches of the periods completed.
+     * Counts answer a single period or any range of consecutive months of a contract's periods.
+     *
+     * @param coveragePeriods list of coverage periods that should have enrollment
+     * @return the number of distinct beneficiaries if current counts are kept for the contract and the periods
+     *         are consecutive months, otherwise empty and the coverage itself must be counted
+     */
+    Optional<Integer> findSummarizedBeneficiaryCount(List<CoveragePeriod> coveragePeriods);
+
+    /**
+     * Find the number of beneficiaries in each coverage period kept when searches of the periods completed
+     *
+     * @param coveragePeriodIds {@link CoveragePeriod#getId()} of each period
+     * @return the count of each period with a current count keyed by period id
+     */
+    Map<Integer, Integer> findSummarizedPeriodCounts(List<Integer> coveragePeriodIds);
+
+    /**
+     * Find the search that last completed for each period whose coverage has not changed since then. Every completed
+     * search has a new search event, even when it only wrote its changes to the coverage of an earlier search, so
+     * together the events of every period identify the version of a contract's coverage.
+     *
+     * @param coveragePeriodIds {@link CoveragePeriod#getId()} of each period
+     * @return the search event id of the last completed search of each unchanged period keyed by period id
+     */
+    Map<Integer, Long> findCompletedSearchEvents(List<Integer> coveragePeriodIds);
+
     /**
      * Get coverage count for each coverage period related to a list of contracts. If a contract/year/month is missing
      * from the summary it means that either the coverage period does not exist or there are no records for that
@@ -113,6 +152,61 @@ public interface CoverageService {
      */
     CoverageSearchEvent insertCoverage(long searchEventId, Set<Identifiers> beneficiaryIds);
 
+    /**
+     * Insert one page of coverage information for a search that is still pulling enrollment from BFD.
+     *
+     * The coverage is staged under the in progress search event and only replaces older enrollment when the search
+     * is completed with {@link #completeSearch(int, String)}. Unlike {@link #insertCoverage(long, Set)} the coverage
+     * table is not vacuumed after every page.
+     *
+     * @param searchEventId {@link CoverageSearchEvent#getId()} of the in progress search event
+     * @param beneficiaryIds beneficiaries found in the page that have not been inserted for this search event yet
+     */
+    void insertCoveragePage(long searchEventId, Set<Identifiers> beneficiaryIds);
+
+    /**
+     * Update coverage by writing only the beneficiaries that changed since the last successful search
+     * instead of inserting every beneficiary again.
+     *
+     * The beneficiaries are compared in memory with the coverage stored for the last successful search. Added and
+     * removed beneficiaries and changed mbis are written to that stored coverage and recorded as deltas.
+     * The search event then points to the search event holding its coverage, see
+     * {@link CoverageSearchEvent#getCoverageEventId()}, and {@link #completeSearch(int, String)} keeps that coverage.
+     *
+     * The changes overwrite the coverage of the last successful search so they must be committed together with
+     * the completion of the search, use {@link #completeSearchWithChanges(long, Set, String)} outside of tests.
+     *
+     * Falls back to {@link #insertCoverage(long, Set)} if there is no earlier coverage to compare against.
+     *
+     * @param searchEventId {@link CoverageSearchEvent#getId()} of the in progress search event
+     * @param beneficiaryIds every beneficiary found by the search
+     * @return the in progress search event
+     */
+    CoverageSearchEvent insertCoverageChanges(long searchEventId, Set<Identifiers> beneficiaryIds);
+
+    /**
+     * Write the beneficiaries that changed since the last successful search, see {@link #insertCoverageChanges(long, Set)},
+     * and change the search to {@link JobStatus#SUCCESSFUL} in a single transaction.
+     *
+     * If the search cannot be completed the changes and deltas are rolled back so the coverage of the last
+     * successful search is left as it was.
+     *
+     * @param searchEventId {@link CoverageSearchEvent#getId()} of the in progress search event
+     * @param beneficiaryIds every beneficiary found by the search
+     * @param description reason or explanation for change
+     * @return resulting coverage search event
+     * @throws InvalidJobStateTransition if the search is not in the {@link JobStatus#IN_PROGRESS} state
+     */
+    CoverageSearchEvent completeSearchWithChanges(long searchEventId, Set<Identifiers> beneficiaryIds, String description);
+
+    /**
+     * Remove all coverage information inserted so far under a search event. Used to roll back a search
+     * that failed part of the way through inserting coverage.
+     *
+     * @param searchEventId {@link CoverageSearchEvent#getId()} of the search event to remove coverage for
+     */
+    void deleteCoverage(long searchEventId);
+
     /**
      * Pull coverage information for the given page and pageSize number of beneficiaries.
      *
@@ -124,6 +218,17 @@ public interface CoverageService {
      */
     CoveragePagingResult pageCoverage(CoveragePagingRequest pagingRequest);
 
+    /**
+     * Pull coverage information for every beneficiary starting at the cursor of the request, reading several pages per
+     * query, and hand it off a page at a time. Pages are the same as those returned by
+     * {@link #pageCoverage(CoveragePagingRequest)}. No connection is held while a page is handed off.
+     *
+     * @param pagingRequest with details of first page including page size and optionally a cursor
+     * @param handler receives each page in order and may stop streaming early
+     * @throws InterruptedException if interrupted while handing off a page
+     */
+    void streamCoverage(CoveragePagingRequest pagingRequest, CoveragePageHandler handler) throws InterruptedException;
+
     /**
      * Get difference in beneficiary membership between last two searches conducted for a given {@link CoveragePeriod}
      *
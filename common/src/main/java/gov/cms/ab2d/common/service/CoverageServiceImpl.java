@@ -7,6 +7,7 @@ import gov.cms.ab2d.eventlogger.LogManager;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.persistence.EntityNotFoundException;
@@ -15,7 +16,9 @@ import java.time.LocalTime;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 
@@ -68,6 +71,12 @@ public class CoverageServiceImpl implements CoverageService {
 
     private final LogManager eventLogger;
 
+    private final CoverageMaintenanceService coverageMaintenance;
+
+    private final CoveragePartitionManager coveragePartitionManager;
+
+    private final CoverageSummaryRepository coverageSummaryRepo;
+
     @Override
     public CoveragePeriod getCoveragePeriod(Contract contract, int month, int year) {
         checkMonthAndYear(month, year);
@@ -99,9 +108,24 @@ public class CoverageServiceImpl implements CoverageService {
         period.setMonth(month);
         period.setYear(year);
 
+        // A new period may be the first of a new contract or year so make sure coverage for it has a partition
+        createPartitions(contract, year);
+
         return coveragePeriodRepo.save(period);
     }
 
+    /**
+     * Failing to create partitions does not stop the period from being created, missing partitions are
+     * created again before coverage is inserted.
+     */
+    private void createPartitions(Contract contract, int year) {
+        try {
+            coveragePartitionManager.createPartitions(contract.getContractNumber(), year);
+        } catch (Exception exception) {
+            log.error("could not create coverage partitions for {}-{}", contract.getContractNumber(), year, exception);
+        }
+    }
+
     @Override
     public List<CoveragePeriod> findAssociatedCoveragePeriods(Long contractId) {
         return coveragePeriodRepo.findAllByContractId(contractId);
@@ -116,10 +140,36 @@ public class CoverageServiceImpl implements CoverageService {
 
     @Override
     public int countBeneficiariesByCoveragePeriod(List<CoveragePeriod> coveragePeriods) {
+        return findSummarizedBeneficiaryCount(coveragePeriods)
+                .orElseGet(() -> countBeneficiariesFromCoverage(coveragePeriods));
+    }
+
+    @Override
+    public int countBeneficiariesFromCoverage(List<CoveragePeriod> coveragePeriods) {
         List<Integer> ids = coveragePeriods.stream().map(CoveragePeriod::getId).collect(toList());
         return coverageServiceRepo.countBeneficiariesByPeriods(ids, coveragePeriods.get(0).getContract().getContractNumber());
     }
 
+    @Override
+    public Optional<Integer> findSummarizedBeneficiaryCount(List<CoveragePeriod> coveragePeriods) {
+        List<Integer> ids = coveragePeriods.stream().map(CoveragePeriod::getId).collect(toList());
+        if (ids.size() == 1) {
+            return Optional.ofNullable(coverageSummaryRepo.findPeriodCounts(ids).get(ids.get(0)));
+        }
+
+        return coverageSummaryRepo.findContractCount(coveragePeriods.get(0).getContract().getContractNumber(), ids);
+    }
+
+    @Override
+    public Map<Integer, Integer> findSummarizedPeriodCounts(List<Integer> coveragePeriodIds) {
+        return coverageSummaryRepo.findPeriodCounts(coveragePeriodIds);
+    }
+
+    @Override
+    public Map<Integer, Long> findCompletedSearchEvents(List<Integer> coveragePeriodIds) {
+        return coverageSummaryRepo.findCompletedSearches(coveragePeriodIds);
+    }
+
     @Override
     public List<CoverageCount> countBeneficiariesForContracts(List<Contract> contracts) {
         int partitionSize = 5;
@@ -165,24 +215,130 @@ public class CoverageServiceImpl implements CoverageService {
 
         // Make sure that coverage period and searchEvent actually exist in the database before inserting
         CoverageSearchEvent searchEvent = findCoverageSearchEvent(searchEventId);
-        coverageServiceRepo.insertBatches(searchEvent, beneficiaryIds);
+        insertBatches(searchEvent, beneficiaryIds);
+
+        // Indices are updated later by vacuuming only the changed partition so inserts are not slowed down
+        coverageChanged(searchEvent.getCoveragePeriod());
 
-        log.info("Vacuuming coverage table now");
+        return searchEvent;
+    }
 
-        // Update indices after every batch of insertions to make sure speed of database is preserved
-        coverageServiceRepo.vacuumCoverage();
+    @Override
+    @Trace(metricName = "InsertingCoveragePage", dispatcher = true)
+    public void insertCoveragePage(long searchEventId, Set<Identifiers> beneficiaryIds) {
+        CoverageSearchEvent searchEvent = findCoverageSearchEvent(searchEventId);
+        insertBatches(searchEvent, beneficiaryIds);
+        coverageChanged(searchEvent.getCoveragePeriod());
+    }
 
-        log.info("Vacuuming coverage finished now");
+    @Override
+    @Trace(metricName = "InsertingCoverageChanges", dispatcher = true)
+    public CoverageSearchEvent insertCoverageChanges(long searchEventId, Set<Identifiers> beneficiaryIds) {
+        CoverageSearchEvent searchEvent = findCoverageSearchEvent(searchEventId);
+        CoveragePeriod period = searchEvent.getCoveragePeriod();
+
+        // Coverage of the last successful search may itself be stored under an earlier search event
+        Optional<CoverageSearchEvent> previousSearch = findEventWithSuccessfulOffset(period.getId(), 1);
+        Optional<CoverageSearchEvent> coverageEvent = previousSearch.map(previous -> previous.getCoverageEventId() == null
+                ? previous : findCoverageSearchEvent(previous.getCoverageEventId()));
+
+        IdentifierSet previous = coverageEvent.map(coverageServiceRepo::findSearchCoverage).orElseGet(IdentifierSet::new);
+        if (previous.isEmpty()) {
+            log.info("{}-{}-{} has no earlier coverage to compare against, inserting all coverage",
+                    period.getContract().getContractNumber(), period.getYear(), period.getMonth());
+            return insertCoverage(searchEventId, beneficiaryIds);
+        }
+
+        IdentifierSet current;
+        if (beneficiaryIds instanceof IdentifierSet) {
+            current = (IdentifierSet) beneficiaryIds;
+        } else {
+            current = new IdentifierSet(beneficiaryIds.size());
+            current.addAll(beneficiaryIds);
+        }
+
+        CoverageChanges changes = CoverageChanges.between(previous, current);
+        log.info("{}-{}-{} writing changes to coverage of search event {}\n {}", period.getContract().getContractNumber(),
+                period.getYear(), period.getMonth(), coverageEvent.get().getId(), changes);
+
+        coverageServiceRepo.updateSearchCoverage(coverageEvent.get(), changes);
+        coverageDeltaRepository.trackDeltas(period, changes);
+
+        searchEvent.setCoverageEventId(coverageEvent.get().getId());
+        coverageSearchEventRepo.saveAndFlush(searchEvent);
+
+        coverageChanged(period);
 
         return searchEvent;
     }
 
+    @Override
+    @Trace(metricName = "CompletingSearchWithChanges", dispatcher = true)
+    public CoverageSearchEvent completeSearchWithChanges(long searchEventId, Set<Identifiers> beneficiaryIds, String description) {
+        // Both run in this transaction so a failure completing the search rolls back the changes
+        CoverageSearchEvent searchEvent = insertCoverageChanges(searchEventId, beneficiaryIds);
+        return completeSearch(searchEvent.getCoveragePeriod().getId(), description);
+    }
+
+    @Override
+    public void deleteCoverage(long searchEventId) {
+        CoverageSearchEvent searchEvent = findCoverageSearchEvent(searchEventId);
+        coverageServiceRepo.deleteSearch(searchEvent);
+        coverageChanged(searchEvent.getCoveragePeriod());
+    }
+
+    private void coverageChanged(CoveragePeriod period) {
+        coverageMaintenance.coverageChanged(period.getContract().getContractNumber(), period.getYear());
+
+        // Counts are written again when a search of the period completes
+        coverageSummaryRepo.removeCounts(period);
+    }
+
+    /**
+     * Keep the number of beneficiaries in a period that just completed a search. Once no period of the contract
+     * is being searched also keep the counts of the contract, which answer the number of distinct beneficiaries
+     * across any contiguous range of its periods, so the coverage of the contract is only scanned once per update
+     * instead of once per job.
+     */
+    private void updateSummaries(CoveragePeriod period, long coverageEventId, long completedSearchEventId,
+                                 int beneficiaries) {
+        coverageSummaryRepo.updatePeriodCount(period, coverageEventId, completedSearchEventId, beneficiaries);
+
+        Contract contract = period.getContract();
+        List<CoveragePeriod> periods = coveragePeriodRepo.findAllByContractId(contract.getId());
+        boolean beingUpdated = periods.stream()
+                .anyMatch(other -> other.getStatus() == JobStatus.SUBMITTED || other.getStatus() == JobStatus.IN_PROGRESS);
+
+        if (!beingUpdated) {
+            List<CoveragePeriod> ordered = periods.stream()
+                    .sorted(Comparator.comparingInt(CoveragePeriod::getYear).thenComparingInt(CoveragePeriod::getMonth))
+                    .collect(toList());
+            coverageSummaryRepo.updateContractCounts(contract.getContractNumber(), ordered);
+        }
+    }
+
+    private void insertBatches(CoverageSearchEvent searchEvent, Set<Identifiers> beneficiaryIds) {
+        if (beneficiaryIds instanceof IdentifierSet) {
+            coverageServiceRepo.insertBatches(searchEvent, (IdentifierSet) beneficiaryIds);
+        } else {
+            coverageServiceRepo.insertBatches(searchEvent, beneficiaryIds);
+        }
+    }
+
     @Override
     @Trace
     public CoveragePagingResult pageCoverage(CoveragePagingRequest pagingRequest) {
         return coverageServiceRepo.pageCoverage(pagingRequest);
     }
 
+    // The repository manages its own read only transaction, do not hold a second connection for the whole stream
+    @Override
+    @Trace
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void streamCoverage(CoveragePagingRequest pagingRequest, CoveragePageHandler handler) throws InterruptedException {
+        coverageServiceRepo.streamCoverage(pagingRequest, handler);
+    }
+
     // todo: consider removing now that the CoverageDeltaRepository functionality exists
     //  We can write alarms using that delta table if we need to.
     @Override
@@ -384,6 +540,7 @@ public class CoverageServiceImpl implements CoverageService {
         try {
             // Delete all results from current search that is failing
             coverageServiceRepo.deleteCurrentSearch(period);
+            coverageChanged(period);
         } catch (Exception exception) {
             String issue = String.format("Failed to delete coverage for a failed search for %s-%d-%d. " +
                             "There could be duplicate enrollment data in the db",
@@ -409,6 +566,20 @@ public class CoverageServiceImpl implements CoverageService {
         // todo: log to kinesis as well
         Contract contract = period.getContract();
 
+        // Only the changes were written so the coverage of the earlier search is now current and must be kept,
+        // the deltas were already recorded when the changes were written
+        Optional<CoverageSearchEvent> currentSearch = findEventWithSuccessfulOffset(periodId, 0);
+        if (currentSearch.isPresent() && currentSearch.get().getCoverageEventId() != null) {
+            long coverageEventId = currentSearch.get().getCoverageEventId();
+            log.info("{}-{}-{} coverage updated in place under search event {}", contract.getContractNumber(),
+                    period.getYear(), period.getMonth(), coverageEventId);
+
+            CoverageSearchEvent completed = updateStatus(period, description, JobStatus.SUCCESSFUL);
+            updateSummaries(period, coverageEventId, currentSearch.get().getId(),
+                    coverageServiceRepo.countBySearchEvent(findCoverageSearchEvent(coverageEventId)));
+            return completed;
+        }
+
         /*
          * Log the difference between any earlier enrollment we have for the given coverage period
          * and the update just performed.
@@ -423,6 +594,7 @@ public class CoverageServiceImpl implements CoverageService {
         // this deletion will remove as much past information as it can find
         try {
             coverageServiceRepo.deletePreviousSearches(period, 1);
+            coverageChanged(period);
         } catch (Exception exception) {
             String issue = String.format("Failed to delete old coverage for newly completed %s-%d-%d." +
                             " There could be duplicate enrollment data in the db",
@@ -431,7 +603,9 @@ public class CoverageServiceImpl implements CoverageService {
             throw exception;
         }
 
-        return updateStatus(period, description, JobStatus.SUCCESSFUL);
+        CoverageSearchEvent completed = updateStatus(period, description, JobStatus.SUCCESSFUL);
+        currentSearch.ifPresent(current -> updateSummaries(period, current.getId(), current.getId(), diff.getCurrentCount()));
+        return completed;
     }
 
     /**
@@ -53,6 +53,15 @@ public final class Constants {
 
     public static final String PCP_SCALE_TO_MAX_TIME = "pcp.scaleToMax.time";
 
+    // Maximum number of BFD requests in flight for a single job, zero for no limit
+    public static final String PCP_JOB_MAX_IN_FLIGHT = "pcp.job.max.in.flight";
+
+    // Jobs with at most this many patients are considered small and are given a larger share of the pool
+    public static final String PCP_SMALL_JOB_SIZE = "pcp.job.small.size";
+
+    // Number of requests served in a row for a small job for every one request served for a large job
+    public static final String PCP_SMALL_JOB_WEIGHT = "pcp.job.small.weight";
+
     public static final String MAINTENANCE_MODE = "maintenance.mode";
 
     // Accepted values: engaged, idle
@@ -79,7 +88,8 @@ public final class Constants {
     public static final String ZIP_SUPPORT_ON = "ZipSupportOn";
 
     public static final Set<String> ALLOWED_PROPERTY_NAMES = Set.of(PCP_CORE_POOL_SIZE, PCP_MAX_POOL_SIZE,
-            PCP_SCALE_TO_MAX_TIME, MAINTENANCE_MODE, ZIP_SUPPORT_ON,
+            PCP_SCALE_TO_MAX_TIME, PCP_JOB_MAX_IN_FLIGHT, PCP_SMALL_JOB_SIZE, PCP_SMALL_JOB_WEIGHT,
+            MAINTENANCE_MODE, ZIP_SUPPORT_ON,
             WORKER_ENGAGEMENT, HPMS_INGESTION_ENGAGEMENT, COVERAGE_SEARCH_DISCOVERY, COVERAGE_SEARCH_QUEUEING,
             COVERAGE_SEARCH_STUCK_HOURS, COVERAGE_SEARCH_UPDATE_MONTHS, COVERAGE_SEARCH_OVERRIDE);
 
@@ -0,0 +1,12 @@
+--liquibase formatted sql
+--  -------------------------------------------------------------------------------------------------------------------
+
+--changeset ab2d:add_completed_search_to_coverage_summary failOnError:true
+
+-- Search that last completed for the coverage period. Differs from bene_coverage_search_event_id when only the
+-- changes of a search were written in place to the coverage of an earlier search.
+ALTER TABLE coverage_period_summary ADD COLUMN completed_search_event_id BIGINT;
+UPDATE coverage_period_summary SET completed_search_event_id = bene_coverage_search_event_id;
+ALTER TABLE coverage_period_summary ALTER COLUMN completed_search_event_id SET NOT NULL;
+
+--rollback ALTER TABLE coverage_period_summary DROP COLUMN completed_search_event_id;
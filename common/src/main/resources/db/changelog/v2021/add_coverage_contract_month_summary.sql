@@ -0,0 +1,24 @@
+--liquibase formatted sql
+--  -------------------------------------------------------------------------------------------------------------------
+
+--changeset ab2d:add_coverage_contract_month_summary failOnError:true
+
+-- Number of beneficiaries of a contract enrolled in a coverage period grouped by the last earlier period of the
+-- contract they were enrolled in, null when the period is the first they were enrolled in. The distinct beneficiaries
+-- across any contiguous range of periods are the rows in the range whose previous period is not in the range.
+CREATE TABLE coverage_contract_month_summary (
+    contract VARCHAR(15) NOT NULL,
+    bene_coverage_period_id INTEGER NOT NULL,
+    previous_period_id INTEGER,
+    beneficiaries INTEGER NOT NULL
+);
+
+ALTER TABLE coverage_contract_month_summary ADD CONSTRAINT "fk_coverage_contract_month_summary_bene_coverage_period"
+    FOREIGN KEY (bene_coverage_period_id) REFERENCES bene_coverage_period(id) ON DELETE CASCADE;
+CREATE INDEX "ix_coverage_contract_month_summary_contract" ON coverage_contract_month_summary(contract);
+
+-- Contract counts are now kept with the periods in month order alongside the rows above, so drop the old counts
+-- and let the next completed search write them again
+DELETE FROM coverage_contract_summary;
+
+--rollback DROP TABLE coverage_contract_month_summary;
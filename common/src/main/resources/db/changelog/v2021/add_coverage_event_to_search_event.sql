@@ -0,0 +1,9 @@
+--liquibase formatted sql
+--  -------------------------------------------------------------------------------------------------------------------
+
+--changeset ab2d:add_coverage_event_to_search_event failOnError:true
+
+-- Searches that only write the changes since the previous search store coverage under an earlier search event
+ALTER TABLE event_bene_coverage_search_status_change ADD COLUMN coverage_event_id BIGINT;
+
+--rollback ALTER TABLE event_bene_coverage_search_status_change DROP COLUMN coverage_event_id;
@@ -0,0 +1,29 @@
+--liquibase formatted sql
+--  -------------------------------------------------------------------------------------------------------------------
+
+--changeset ab2d:add_coverage_summaries failOnError:true
+
+-- Number of beneficiaries enrolled in each coverage period as of the last successful search
+CREATE TABLE coverage_period_summary (
+    bene_coverage_period_id INTEGER NOT NULL,
+    bene_coverage_search_event_id BIGINT NOT NULL,
+    beneficiaries INTEGER NOT NULL,
+    modified TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+ALTER TABLE coverage_period_summary ADD CONSTRAINT "pk_coverage_period_summary" PRIMARY KEY (bene_coverage_period_id);
+ALTER TABLE coverage_period_summary ADD CONSTRAINT "fk_coverage_period_summary_bene_coverage_period"
+    FOREIGN KEY (bene_coverage_period_id) REFERENCES bene_coverage_period(id) ON DELETE CASCADE;
+
+-- Number of distinct beneficiaries enrolled in a contract across exactly the listed coverage periods
+CREATE TABLE coverage_contract_summary (
+    contract VARCHAR(15) NOT NULL,
+    bene_coverage_period_ids INTEGER[] NOT NULL,
+    beneficiaries INTEGER NOT NULL,
+    modified TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+ALTER TABLE coverage_contract_summary ADD CONSTRAINT "pk_coverage_contract_summary" PRIMARY KEY (contract);
+
+--rollback DROP TABLE coverage_contract_summary;
+--rollback DROP TABLE coverage_period_summary;
@@ -0,0 +1,13 @@
+--liquibase formatted sql
+--  -------------------------------------------------------------------------------------------------------------------
+
+--changeset ab2d:add_job_scheduling_properties failOnError:true
+
+INSERT INTO properties(id, key, value, created, modified)
+VALUES (nextval('hibernate_sequence'), 'pcp.job.max.in.flight', '0', current_timestamp, current_timestamp);
+
+INSERT INTO properties(id, key, value, created, modified)
+VALUES (nextval('hibernate_sequence'), 'pcp.job.small.size', '10000', current_timestamp, current_timestamp);
+
+INSERT INTO properties(id, key, value, created, modified)
+VALUES (nextval('hibernate_sequence'), 'pcp.job.small.weight', '4', current_timestamp, current_timestamp);
@@ -0,0 +1,43 @@
+--liquibase formatted sql
+--  -------------------------------------------------------------------------------------------------------------------
+
+--changeset ab2d:partition_coverage_by_search_event failOnError:true splitStatements:false
+
+-- Partition each contract and year partition of coverage by search event so that coverage from a superseded
+-- search can be dropped as a table instead of deleted row by row.
+--
+-- Existing coverage is kept in a default partition named <partition>_legacy. A check constraint proves
+-- that the legacy partition only holds existing search events so new search event partitions can be attached
+-- without scanning it. Legacy coverage is deleted row by row as searches are replaced.
+
+DO $$
+DECLARE
+    year_partition RECORD;
+    legacy_max BIGINT;
+BEGIN
+    SELECT COALESCE(MAX(id), 0) INTO legacy_max FROM event_bene_coverage_search_status_change;
+
+    FOR year_partition IN
+        SELECT child.relname AS name, parent.relname AS parent_name,
+               pg_get_expr(child.relpartbound, child.oid) AS bound
+        FROM pg_inherits contract_inherits
+            JOIN pg_class parent ON parent.oid = contract_inherits.inhrelid
+            JOIN pg_inherits year_inherits ON year_inherits.inhparent = parent.oid
+            JOIN pg_class child ON child.oid = year_inherits.inhrelid
+        WHERE contract_inherits.inhparent = 'coverage'::regclass
+            AND parent.relkind = 'p'
+            AND child.relkind = 'r'
+    LOOP
+        EXECUTE format('ALTER TABLE %I DETACH PARTITION %I', year_partition.parent_name, year_partition.name);
+        EXECUTE format('ALTER TABLE %I RENAME TO %I', year_partition.name, year_partition.name || '_legacy');
+
+        EXECUTE format('ALTER TABLE %I ADD CONSTRAINT %I CHECK (bene_coverage_search_event_id <= %s)',
+            year_partition.name || '_legacy', year_partition.name || '_legacy_events', legacy_max);
+
+        EXECUTE format('CREATE TABLE %I (LIKE coverage INCLUDING DEFAULTS) PARTITION BY LIST (bene_coverage_search_event_id)',
+            year_partition.name);
+        EXECUTE format('ALTER TABLE %I ATTACH PARTITION %I DEFAULT', year_partition.name, year_partition.name || '_legacy');
+        EXECUTE format('ALTER TABLE %I ATTACH PARTITION %I %s', year_partition.parent_name, year_partition.name,
+            year_partition.bound);
+    END LOOP;
+END $$;
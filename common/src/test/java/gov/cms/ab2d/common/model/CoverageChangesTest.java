@@ -0,0 +1,58 @@
+package gov.cms.ab2d.common.model;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CoverageChangesTest {
+
+    @DisplayName("Changes between searches are found by beneficiary id and mbis")
+    @Test
+    void between() {
+        IdentifierSet previous = new IdentifierSet();
+        previous.add(new Identifiers(5L, "mbi-5", new LinkedHashSet<>()));
+        previous.add(new Identifiers(-3L, "mbi-3", new LinkedHashSet<>()));
+        previous.add(new Identifiers(1L, "mbi-1", new LinkedHashSet<>()));
+        previous.add(new Identifiers(7L, "mbi-7", new LinkedHashSet<>(List.of("hist-7"))));
+
+        IdentifierSet current = new IdentifierSet();
+        current.add(new Identifiers(7L, "mbi-7", new LinkedHashSet<>(List.of("hist-7"))));
+        current.add(new Identifiers(2L, "mbi-2", new LinkedHashSet<>()));
+        current.add(new Identifiers(1L, "new-mbi-1", new LinkedHashSet<>(List.of("mbi-1"))));
+        current.add(new Identifiers(-3L, "mbi-3", new LinkedHashSet<>()));
+
+        CoverageChanges changes = CoverageChanges.between(previous, current);
+
+        assertArrayEquals(new long[] {5L}, changes.getRemoved());
+
+        assertEquals(1, changes.getAdded().size());
+        assertEquals("mbi-2", changes.getAdded().getBeneficiary(2L).getCurrentMbi());
+
+        assertEquals(1, changes.getChangedMbis().size());
+        Identifiers changed = changes.getChangedMbis().getBeneficiary(1L);
+        assertEquals("new-mbi-1", changed.getCurrentMbi());
+        assertEquals(List.of("mbi-1"), List.copyOf(changed.getHistoricMbis()));
+
+        assertEquals(2, changes.getUnchanged());
+    }
+
+    @DisplayName("Searches with no beneficiaries in common are all added and removed")
+    @Test
+    void betweenDisjoint() {
+        IdentifierSet previous = new IdentifierSet();
+        previous.add(new Identifiers(1L, "mbi-1", new LinkedHashSet<>()));
+
+        CoverageChanges changes = CoverageChanges.between(previous, new IdentifierSet());
+        assertArrayEquals(new long[] {1L}, changes.getRemoved());
+        assertTrue(changes.getAdded().isEmpty());
+
+        changes = CoverageChanges.between(new IdentifierSet(), previous);
+        assertEquals(0, changes.getRemoved().length);
+        assertTrue(changes.getAdded().containsBeneficiary(1L));
+        assertEquals(0, changes.getUnchanged());
+    }
+}
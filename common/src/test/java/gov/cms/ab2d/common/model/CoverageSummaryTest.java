@@ -0,0 +1,72 @@
+package gov.cms.ab2d.common.model;
+
+import gov.cms.ab2d.filter.FilterOutByDate;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CoverageSummaryTest {
+
+    private static final Identifiers IDENTIFIERS = new Identifiers(1L, "mbi", new LinkedHashSet<>());
+
+    @DisplayName("Enrolled months are checked without building dates")
+    @Test
+    void isEnrolled() {
+        // January 2020, February 2020, and May 2025 which spans two words of the bitmask
+        CoverageSummary summary = CoverageSummary.ofEnrolledMonths(IDENTIFIERS, null,
+                CoverageSummary.asEnrolledMonths(0, 1, 64));
+
+        assertTrue(summary.isEnrolled(2020, 1));
+        assertTrue(summary.isEnrolled(2020, 2));
+        assertFalse(summary.isEnrolled(2020, 3));
+        assertTrue(summary.isEnrolled(2025, 5));
+        assertFalse(summary.isEnrolled(2019, 12));
+        assertFalse(summary.isEnrolled(2030, 1));
+    }
+
+    @DisplayName("Enrolled months are checked against date ranges when built from date ranges")
+    @Test
+    void isEnrolledFromDateRanges() {
+        CoverageSummary summary = new CoverageSummary(IDENTIFIERS, null, List.of(
+                FilterOutByDate.getDateRange(11, 2019, 2, 2020),
+                FilterOutByDate.getDateRange(5, 2025, 5, 2025)));
+
+        assertTrue(summary.isEnrolled(2019, 11));
+        assertTrue(summary.isEnrolled(2020, 1));
+        assertTrue(summary.isEnrolled(2020, 2));
+        assertFalse(summary.isEnrolled(2020, 3));
+        assertTrue(summary.isEnrolled(2025, 5));
+        assertFalse(summary.isEnrolled(2025, 6));
+    }
+
+    @DisplayName("Enrolled months are condensed into date ranges of consecutive months")
+    @Test
+    void dateRangesFromEnrolledMonths() {
+        CoverageSummary summary = CoverageSummary.ofEnrolledMonths(IDENTIFIERS, null,
+                CoverageSummary.asEnrolledMonths(0, 1, 3, 63, 64));
+
+        List<FilterOutByDate.DateRange> dateRanges = summary.getDateRanges();
+        assertEquals(3, dateRanges.size());
+
+        assertTrue(dateRanges.get(0).inRange(FilterOutByDate.getStartOfMonth(1, 2020)));
+        assertTrue(dateRanges.get(0).inRange(FilterOutByDate.getEndOfMonth(2, 2020)));
+        assertFalse(dateRanges.get(0).inRange(FilterOutByDate.getStartOfMonth(3, 2020)));
+
+        assertTrue(dateRanges.get(1).inRange(FilterOutByDate.getStartOfMonth(4, 2020)));
+        assertFalse(dateRanges.get(1).inRange(FilterOutByDate.getStartOfMonth(5, 2020)));
+
+        assertTrue(dateRanges.get(2).inRange(FilterOutByDate.getStartOfMonth(4, 2025)));
+        assertTrue(dateRanges.get(2).inRange(FilterOutByDate.getEndOfMonth(5, 2025)));
+        assertFalse(dateRanges.get(2).inRange(FilterOutByDate.getStartOfMonth(6, 2025)));
+    }
+
+    @DisplayName("Enrollment before the AB2D epoch cannot be stored as months")
+    @Test
+    void monthsBeforeEpochRejected() {
+        assertThrows(IllegalArgumentException.class, () -> CoverageSummary.asEnrolledMonths(-1));
+    }
+}
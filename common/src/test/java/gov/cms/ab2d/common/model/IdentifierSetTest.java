@@ -0,0 +1,75 @@
+package gov.cms.ab2d.common.model;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdentifierSetTest {
+
+    @DisplayName("Beneficiaries are unique by id and keep all of their mbis")
+    @Test
+    void addAndIterate() {
+        IdentifierSet identifiers = new IdentifierSet();
+
+        assertTrue(identifiers.add(new Identifiers(1L, "mbi-1", new LinkedHashSet<>())));
+        assertTrue(identifiers.add(new Identifiers(-2L, null, new LinkedHashSet<>(List.of("hist-1", "hist-2")))));
+        assertTrue(identifiers.add(new Identifiers(0L, "mbi-0", new LinkedHashSet<>(List.of("hist-0")))));
+
+        // First beneficiary added wins like a HashSet
+        assertFalse(identifiers.add(new Identifiers(1L, "other", new LinkedHashSet<>())));
+
+        assertEquals(3, identifiers.size());
+        assertTrue(identifiers.containsBeneficiary(-2L));
+        assertFalse(identifiers.containsBeneficiary(2L));
+
+        List<Identifiers> iterated = new ArrayList<>(identifiers);
+        assertEquals(1L, iterated.get(0).getBeneficiaryId());
+        assertEquals("mbi-1", iterated.get(0).getCurrentMbi());
+        assertTrue(iterated.get(0).getHistoricMbis().isEmpty());
+
+        assertEquals(-2L, iterated.get(1).getBeneficiaryId());
+        assertNull(iterated.get(1).getCurrentMbi());
+        assertEquals(List.of("hist-1", "hist-2"), new ArrayList<>(iterated.get(1).getHistoricMbis()));
+
+        assertEquals("mbi-0", iterated.get(2).getCurrentMbi());
+        assertEquals(List.of("hist-0"), new ArrayList<>(iterated.get(2).getHistoricMbis()));
+    }
+
+    @DisplayName("Raw values are visited without building identifiers")
+    @Test
+    void forEachBeneficiary() {
+        IdentifierSet identifiers = new IdentifierSet();
+        identifiers.add(new Identifiers(1L, "mbi-1", new LinkedHashSet<>()));
+        identifiers.add(new Identifiers(2L, "mbi-2", new LinkedHashSet<>(List.of("hist-1", "hist-2"))));
+
+        List<String> visited = new ArrayList<>();
+        identifiers.forEachBeneficiary((id, currentMbi, historicMbis) -> visited.add(id + ":" + currentMbi + ":" + historicMbis));
+
+        assertEquals(List.of("1:mbi-1:null", "2:mbi-2:hist-1,hist-2"), visited);
+    }
+
+    @DisplayName("Set matches a HashSet after growing well past its initial capacity")
+    @Test
+    void growsLikeHashSet() {
+        IdentifierSet identifiers = new IdentifierSet(16);
+        Set<Identifiers> expected = new HashSet<>();
+
+        for (long idx = 0; idx < 50_000; idx++) {
+            // Add every beneficiary twice to exercise deduplication
+            long beneficiaryId = (idx % 25_000) * 7919 - 100_000;
+            Identifiers beneficiary = new Identifiers(beneficiaryId, "mbi-" + beneficiaryId, new LinkedHashSet<>());
+            assertEquals(expected.add(beneficiary), identifiers.add(beneficiary));
+        }
+
+        assertEquals(expected.size(), identifiers.size());
+        assertEquals(expected, identifiers);
+        assertTrue(identifiers.containsAll(expected));
+    }
+}
@@ -0,0 +1,73 @@
+package gov.cms.ab2d.common.model;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compare the heap used to hold a month of enrollment for a large contract in a {@code HashSet<Identifiers>}
+ * and in an {@link IdentifierSet}.
+ *
+ * Heap measurements are only approximate so run manually with a fixed heap, for example -Xms4g -Xmx4g, and
+ * compare the logged results.
+ */
+@Disabled
+@Slf4j
+class PerformanceTestingIdentifierSet {
+
+    // Raise to match the largest contracts
+    private static final int BENEFICIARIES = 2_000_000;
+
+    // Share of beneficiaries that have a historic mbi
+    private static final int HISTORIC_MBI_EVERY = 20;
+
+    @Disabled("Performance test only for use manually")
+    @DisplayName("Memory used by a month of enrollment")
+    @Test
+    void compareMemory() {
+        long hashSet = measure(HashSet::new);
+        long identifierSet = measure(() -> new IdentifierSet(BENEFICIARIES));
+
+        log.info("HashSet<Identifiers> used {} bytes, {} bytes per beneficiary", hashSet, hashSet / BENEFICIARIES);
+        log.info("IdentifierSet used {} bytes, {} bytes per beneficiary", identifierSet, identifierSet / BENEFICIARIES);
+        log.info("IdentifierSet uses {}% of the memory", identifierSet * 100 / hashSet);
+    }
+
+    private long measure(Supplier<Collection<Identifiers>> factory) {
+        long before = usedMemory();
+
+        Collection<Identifiers> beneficiaries = factory.get();
+        for (long idx = 0; idx < BENEFICIARIES; idx++) {
+            beneficiaries.add(createIdentifiers(idx));
+        }
+
+        long used = usedMemory() - before;
+
+        // Keep the beneficiaries reachable until after they are measured
+        assertEquals(BENEFICIARIES, beneficiaries.size());
+        return used;
+    }
+
+    private static Identifiers createIdentifiers(long idx) {
+        LinkedHashSet<String> historic = idx % HISTORIC_MBI_EVERY == 0
+                ? new LinkedHashSet<>(List.of(String.format("%011d", idx + 1))) : new LinkedHashSet<>();
+        return new Identifiers(-19990000000000L - idx, String.format("%011d", idx), historic);
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int attempt = 0; attempt < 5; attempt++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -15,17 +15,24 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.SpyBean;
 import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
 import javax.persistence.EntityNotFoundException;
 import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
 import java.util.*;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 
 import static gov.cms.ab2d.common.repository.CoverageDeltaRepository.COVERAGE_ADDED;
 import static gov.cms.ab2d.common.repository.CoverageDeltaRepository.COVERAGE_DELETED;
@@ -90,6 +97,12 @@ class CoverageServiceImplTest {
     @Autowired
     CoverageService coverageService;
 
+    @Autowired
+    CoverageMaintenanceService coverageMaintenance;
+
+    @Autowired
+    CoveragePartitionManager partitionManager;
+
     @SpyBean
     LogManager eventLogger;
 
@@ -417,6 +430,334 @@ class CoverageServiceImplTest {
         });
     }
 
+    @DisplayName("Insert coverage events into database using COPY")
+    @Test
+    void insertCoverageWithCopy() {
+        coverageService.submitSearch(period1Jan.getId(), "testing");
+        CoverageSearchEvent inProgress = startSearchAndPullEvent();
+
+        Set<Identifiers> identifiers = new IdentifierSet();
+        identifiers.add(createIdentifier(123L));
+        identifiers.add(new Identifiers(456L, null, new LinkedHashSet<>(List.of("hist-1", "hist-2"))));
+        // Quotes must be escaped to survive CSV
+        identifiers.add(new Identifiers(789L, "mbi-\"789", new LinkedHashSet<>()));
+
+        ReflectionTestUtils.setField(coverageServiceRepo, "copyInserts", true);
+        try {
+            coverageService.insertCoverage(inProgress.getId(), identifiers);
+        } finally {
+            ReflectionTestUtils.setField(coverageServiceRepo, "copyInserts", false);
+        }
+
+        Map<Long, Coverage> coverage = dataSetup.findCoverage().stream()
+                .collect(Collectors.toMap(Coverage::getBeneficiaryId, Function.identity()));
+        assertEquals(3, coverage.size());
+
+        Coverage first = coverage.get(123L);
+        assertEquals(period1Jan.getId().intValue(), first.getCoveragePeriod());
+        assertEquals(inProgress.getId().longValue(), first.getSearchEventId());
+        assertEquals(contract1.getContractNumber(), first.getContract());
+        assertEquals(YEAR, first.getYear());
+        assertEquals(JANUARY, first.getMonth());
+        assertEquals("mbi-123", first.getCurrentMbi());
+        assertTrue(first.getHistoricMbis().isEmpty());
+
+        assertNull(coverage.get(456L).getCurrentMbi());
+        assertEquals(List.of("hist-1", "hist-2"), coverage.get(456L).getHistoricMbis());
+
+        assertEquals("mbi-\"789", coverage.get(789L).getCurrentMbi());
+    }
+
+    @DisplayName("Partitions changed by inserting coverage are vacuumed later")
+    @Test
+    void maintainChangedPartitions() {
+        coverageService.submitSearch(period1Jan.getId(), "testing");
+        CoverageSearchEvent inProgress = startSearchAndPullEvent();
+
+        coverageService.insertCoverage(inProgress.getId(), Set.of(createIdentifier(123L)));
+
+        assertTrue(coverageMaintenance.pendingPartitions() > 0);
+
+        assertTrue(coverageMaintenance.maintainChangedPartitions(100) > 0);
+        assertEquals(0, coverageMaintenance.pendingPartitions());
+
+        // The year partition is vacuumed rather than one of the search partitions under it
+        Optional<String> partition = partitionManager.findSearchPartitionParent(contract1.getContractNumber(), YEAR);
+        assertTrue(partition.isPresent());
+        verify(coverageServiceRepo).vacuumPartition(partition.get());
+        verify(coverageServiceRepo, never()).vacuumPartition("coverage_search_" + inProgress.getId());
+    }
+
+    @DisplayName("Coverage of a superseded search is dropped with its partition")
+    @Test
+    void dropSupersededSearchPartition() {
+        coverageService.submitSearch(period1Jan.getId(), "testing");
+        CoverageSearchEvent first = startSearchAndPullEvent();
+        coverageService.insertCoverage(first.getId(), Set.of(createIdentifier(123L)));
+        coverageService.completeSearch(period1Jan.getId(), "testing");
+
+        assertTrue(searchPartitionExists(first));
+
+        coverageService.submitSearch(period1Jan.getId(), "testing");
+        CoverageSearchEvent second = startSearchAndPullEvent();
+        coverageService.insertCoverage(second.getId(), Set.of(createIdentifier(456L), createIdentifier(789L)));
+        coverageService.completeSearch(period1Jan.getId(), "testing");
+
+        assertFalse(searchPartitionExists(first));
+        assertTrue(searchPartitionExists(second));
+
+        // Queries against the coverage table are unaware of the search partitions
+        assertEquals(0, coverageServiceRepo.countBySearchEvent(first));
+        assertEquals(2, coverageServiceRepo.countBySearchEvent(second));
+
+        CoveragePagingRequest pagingRequest = new CoveragePagingRequest(1000, null, contract1, jobStartTime);
+        List<Long> beneficiaryIds = coverageService.pageCoverage(pagingRequest).getCoverageSummaries().stream()
+                .map(summary -> summary.getIdentifiers().getBeneficiaryId()).collect(toList());
+        assertEquals(List.of(456L, 789L), beneficiaryIds);
+    }
+
+    @DisplayName("A search partition that could not be dropped is dropped by maintenance once it is empty")
+    @Test
+    void dropFailedSearchPartition() throws SQLException {
+        coverageService.submitSearch(period1Jan.getId(), "testing");
+        CoverageSearchEvent first = startSearchAndPullEvent();
+        coverageService.insertCoverage(first.getId(), Set.of(createIdentifier(123L)));
+        coverageService.completeSearch(period1Jan.getId(), "testing");
+
+        // A long running read of the partition keeps the partition from being dropped
+        try (Connection reader = dataSource.getConnection()) {
+            reader.setAutoCommit(false);
+            try (Statement statement = reader.createStatement()) {
+                statement.execute("SELECT * FROM coverage_search_" + first.getId());
+            }
+
+            coverageService.submitSearch(period1Jan.getId(), "testing");
+            CoverageSearchEvent second = startSearchAndPullEvent();
+            coverageService.insertCoverage(second.getId(), Set.of(createIdentifier(456L)));
+            coverageService.completeSearch(period1Jan.getId(), "testing");
+
+            // The coverage was deleted instead
+            assertTrue(searchPartitionExists(first));
+            assertEquals(0, coverageServiceRepo.countBySearchEvent(first));
+
+            reader.rollback();
+        }
+
+        coverageMaintenance.maintainChangedPartitions(100);
+        assertFalse(searchPartitionExists(first));
+        assertEquals(0, coverageServiceRepo.dropFailedSearchPartitions());
+    }
+
+    @DisplayName("Refreshing coverage writes only the changes to the coverage of the previous search")
+    @Test
+    void insertCoverageChanges() {
+        coverageService.submitSearch(period1Jan.getId(), "testing");
+        CoverageSearchEvent first = startSearchAndPullEvent();
+
+        // Nothing to compare against so every beneficiary is inserted
+        coverageService.insertCoverageChanges(first.getId(),
+                Set.of(createIdentifier(1L), createIdentifier(2L), createIdentifier(3L)));
+        coverageService.completeSearch(period1Jan.getId(), "testing");
+        assertNull(coverageSearchEventRepo.findById(first.getId()).get().getCoverageEventId());
+
+        // Beneficiary 1 leaves, 2 gets a new mbi, 4 joins
+        coverageService.submitSearch(period1Jan.getId(), "testing");
+        CoverageSearchEvent second = startSearchAndPullEvent();
+        Identifiers newMbi = new Identifiers(2L, "new-mbi-2", new LinkedHashSet<>(List.of("mbi-2")));
+        coverageService.insertCoverageChanges(second.getId(), Set.of(newMbi, createIdentifier(3L), createIdentifier(4L)));
+        coverageService.completeSearch(period1Jan.getId(), "testing");
+
+        assertEquals(first.getId(), coverageSearchEventRepo.findById(second.getId()).get().getCoverageEventId());
+        assertEquals(0, coverageServiceRepo.countBySearchEvent(second));
+        assertEquals(3, coverageServiceRepo.countBySearchEvent(first));
+
+        Map<String, String> deltas = coverageDeltaTestRepository.findAll().stream()
+                .collect(Collectors.toMap(CoverageDelta::getBeneficiary, CoverageDelta::getType));
+        assertEquals(Map.of("1", COVERAGE_DELETED, "4", COVERAGE_ADDED), deltas);
+
+        // Changes are applied to the same coverage again on the next refresh
+        coverageService.submitSearch(period1Jan.getId(), "testing");
+        CoverageSearchEvent third = startSearchAndPullEvent();
+        coverageService.insertCoverageChanges(third.getId(), Set.of(newMbi, createIdentifier(4L), createIdentifier(5L)));
+        coverageService.completeSearch(period1Jan.getId(), "testing");
+
+        assertEquals(first.getId(), coverageSearchEventRepo.findById(third.getId()).get().getCoverageEventId());
+
+        IdentifierSet stored = coverageServiceRepo.findSearchCoverage(first);
+        assertEquals(3, stored.size());
+        assertEquals("new-mbi-2", stored.getBeneficiary(2L).getCurrentMbi());
+        assertEquals(List.of("mbi-2"), List.copyOf(stored.getBeneficiary(2L).getHistoricMbis()));
+        assertTrue(stored.containsBeneficiary(4L));
+        assertTrue(stored.containsBeneficiary(5L));
+    }
+
+    @DisplayName("Coverage changes are rolled back if the search cannot be completed")
+    @Test
+    void completeSearchWithChangesFailure() {
+        coverageService.submitSearch(period1Jan.getId(), "testing");
+        CoverageSearchEvent first = startSearchAndPullEvent();
+        coverageService.completeSearchWithChanges(first.getId(),
+                Set.of(createIdentifier(1L), createIdentifier(2L), createIdentifier(3L)), "testing");
+
+        // Beneficiary 1 leaves and 4 joins but counting the updated coverage fails
+        coverageService.submitSearch(period1Jan.getId(), "testing");
+        CoverageSearchEvent second = startSearchAndPullEvent();
+
+        doThrow(new RuntimeException("testing")).when(coverageServiceRepo).countBySearchEvent(any());
+
+        Set<Identifiers> changed = Set.of(createIdentifier(2L), createIdentifier(3L), createIdentifier(4L));
+        assertThrows(RuntimeException.class, () -> coverageService.completeSearchWithChanges(second.getId(), changed, "testing"));
+
+        // Coverage of the first search is left untouched and no deltas are recorded
+        IdentifierSet stored = coverageServiceRepo.findSearchCoverage(first);
+        assertEquals(3, stored.size());
+        assertTrue(stored.containsBeneficiary(1L));
+        assertFalse(stored.containsBeneficiary(4L));
+        assertTrue(coverageDeltaTestRepository.findAll().isEmpty());
+
+        assertNull(coverageSearchEventRepo.findById(second.getId()).get().getCoverageEventId());
+        assertEquals(JobStatus.IN_PROGRESS, coveragePeriodRepo.findById(period1Jan.getId()).get().getStatus());
+    }
+
+    @DisplayName("Beneficiary counts are kept when searches complete and removed when coverage changes")
+    @Test
+    void summarizeCounts() {
+        coverageService.submitSearch(period1Jan.getId(), "testing");
+        coverageService.submitSearch(period1Feb.getId(), "testing");
+        CoverageSearchEvent janProgress = startSearchAndPullEvent();
+        CoverageSearchEvent febProgress = startSearchAndPullEvent();
+
+        coverageService.insertCoverage(janProgress.getId(), Set.of(createIdentifier(1L), createIdentifier(2L)));
+        coverageService.insertCoverage(febProgress.getId(), Set.of(createIdentifier(2L), createIdentifier(3L)));
+
+        // Nothing is kept until the searches complete
+        assertTrue(coverageService.findSummarizedBeneficiaryCount(List.of(period1Jan)).isEmpty());
+
+        coverageService.completeSearch(period1Jan.getId(), "testing");
+
+        // February is still being searched so only January is kept
+        assertEquals(Optional.of(2), coverageService.findSummarizedBeneficiaryCount(List.of(period1Jan)));
+        assertTrue(coverageService.findSummarizedBeneficiaryCount(List.of(period1Jan, period1Feb)).isEmpty());
+
+        coverageService.completeSearch(period1Feb.getId(), "testing");
+
+        List<CoveragePeriod> periods = coverageService.findAssociatedCoveragePeriods(contract1.getId());
+        assertEquals(Optional.of(3), coverageService.findSummarizedBeneficiaryCount(periods));
+        assertEquals(Map.of(period1Jan.getId(), 2, period1Feb.getId(), 2),
+                coverageService.findSummarizedPeriodCounts(List.of(period1Jan.getId(), period1Feb.getId())));
+
+        // Kept counts are used instead of counting coverage
+        clearInvocations(coverageServiceRepo);
+        assertEquals(3, coverageService.countBeneficiariesByCoveragePeriod(periods));
+        verify(coverageServiceRepo, never()).countBeneficiariesByPeriods(any(), any());
+
+        // Any change to coverage removes the kept counts until the search completes
+        coverageService.submitSearch(period1Jan.getId(), "testing");
+        CoverageSearchEvent janRefresh = startSearchAndPullEvent();
+        coverageService.insertCoverage(janRefresh.getId(), Set.of(createIdentifier(4L)));
+
+        assertTrue(coverageService.findSummarizedBeneficiaryCount(List.of(period1Jan)).isEmpty());
+        assertTrue(coverageService.findSummarizedBeneficiaryCount(periods).isEmpty());
+        assertEquals(3, coverageService.countBeneficiariesByCoveragePeriod(List.of(period1Jan)));
+        verify(coverageServiceRepo).countBeneficiariesByPeriods(any(), any());
+    }
+
+    @DisplayName("Beneficiary counts are kept for any range of consecutive months and fall back otherwise")
+    @Test
+    void summarizeRangeCounts() {
+        Map<CoveragePeriod, Set<Identifiers>> enrollment = Map.of(
+                period1Jan, Set.of(createIdentifier(1L), createIdentifier(2L)),
+                period1Feb, Set.of(createIdentifier(2L), createIdentifier(3L)),
+                period1March, Set.of(createIdentifier(1L)),
+                period1April, Set.of(createIdentifier(4L)));
+
+        for (Map.Entry<CoveragePeriod, Set<Identifiers>> entry : enrollment.entrySet()) {
+            coverageService.submitSearch(entry.getKey().getId(), "testing");
+            CoverageSearchEvent inProgress = startSearchAndPullEvent();
+            coverageService.insertCoverage(inProgress.getId(), entry.getValue());
+            coverageService.completeSearch(entry.getKey().getId(), "testing");
+        }
+
+        clearInvocations(coverageServiceRepo);
+
+        List<CoveragePeriod> periods = coverageService.findAssociatedCoveragePeriods(contract1.getId());
+        assertEquals(Optional.of(4), coverageService.findSummarizedBeneficiaryCount(periods));
+
+        // Beneficiary 1 leaves in February and returns in March so is counted once for any range holding both
+        assertEquals(Optional.of(3), coverageService.findSummarizedBeneficiaryCount(List.of(period1Jan, period1Feb, period1March)));
+        assertEquals(Optional.of(3), coverageService.findSummarizedBeneficiaryCount(List.of(period1March, period1Feb)));
+        assertEquals(Optional.of(2), coverageService.findSummarizedBeneficiaryCount(List.of(period1March, period1April)));
+        assertEquals(Optional.of(3), coverageService.findSummarizedBeneficiaryCount(List.of(period1Feb, period1March, period1April)));
+        verify(coverageServiceRepo, never()).countBeneficiariesByPeriods(any(), any());
+
+        // Months that are not consecutive are not kept and the coverage is counted instead
+        List<CoveragePeriod> gap = List.of(period1Jan, period1March);
+        assertTrue(coverageService.findSummarizedBeneficiaryCount(gap).isEmpty());
+        assertEquals(2, coverageService.countBeneficiariesByCoveragePeriod(gap));
+        verify(coverageServiceRepo).countBeneficiariesByPeriods(any(), any());
+    }
+
+    @DisplayName("Coverage of a contract without partitions is moved out of the default partition")
+    @Test
+    void createContractPartitions() throws SQLException {
+        Contract contract = dataSetup.setupContract("Z7021", AB2D_EPOCH.toOffsetDateTime());
+        CoveragePeriod period = dataSetup.createCoveragePeriod(contract, JANUARY, YEAR);
+
+        coverageService.submitSearch(period.getId(), "testing");
+        CoverageSearchEvent inProgress = startSearchAndPullEvent();
+
+        // Coverage stored before the contract had partitions lands in the default partition
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("INSERT INTO coverage " +
+                     "(bene_coverage_period_id, bene_coverage_search_event_id, contract, year, month, beneficiary_id) " +
+                     "VALUES (?, ?, ?, ?, ?, ?)")) {
+            statement.setInt(1, period.getId());
+            statement.setLong(2, inProgress.getId());
+            statement.setString(3, "Z7021");
+            statement.setInt(4, YEAR);
+            statement.setInt(5, JANUARY);
+            statement.setLong(6, 123L);
+            statement.execute();
+        }
+        assertEquals(1, countDefaultCoverage("Z7021"));
+
+        // Inserting creates the partitions and moves the existing coverage
+        coverageService.insertCoverage(inProgress.getId(), Set.of(createIdentifier(456L)));
+
+        assertEquals(0, countDefaultCoverage("Z7021"));
+        assertTrue(searchPartitionExists(inProgress));
+        assertEquals(2, coverageServiceRepo.countBySearchEvent(inProgress));
+
+        OffsetDateTime januaryJob = OffsetDateTime.of(YEAR, JANUARY, 15, 0, 0, 0, 0, ZoneOffset.UTC);
+        CoveragePagingRequest pagingRequest = new CoveragePagingRequest(1000, null, contract, januaryJob);
+        List<Long> beneficiaryIds = coverageService.pageCoverage(pagingRequest).getCoverageSummaries().stream()
+                .map(summary -> summary.getIdentifiers().getBeneficiaryId()).collect(toList());
+        assertEquals(List.of(123L, 456L), beneficiaryIds);
+    }
+
+    private int countDefaultCoverage(String contractNumber) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT COUNT(*) FROM coverage_default WHERE contract = ?")) {
+            statement.setString(1, contractNumber);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+                return resultSet.getInt(1);
+            }
+        }
+    }
+
+    private boolean searchPartitionExists(CoverageSearchEvent searchEvent) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT to_regclass(?) IS NOT NULL")) {
+            statement.setString(1, "coverage_search_" + searchEvent.getId());
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() && resultSet.getBoolean(1);
+            }
+        } catch (SQLException sqlException) {
+            throw new RuntimeException(sqlException);
+        }
+    }
+
     @DisplayName("Page coverage from database correctly provides next requests")
     @Test
     void pageCoverage() {
@@ -478,6 +819,108 @@ class CoverageServiceImplTest {
         assertTrue(pagingResult.getNextRequest().isEmpty());
     }
 
+    @DisplayName("Stream coverage from database returns the same pages as paging")
+    @Test
+    void streamCoverage() throws InterruptedException {
+        coverageService.submitSearch(period1Jan.getId(), "testing");
+        CoverageSearchEvent inProgress = startSearchAndPullEvent();
+
+        // Last page will have only one id
+        int totalBeneficiaries = 501;
+        int pageSize = 250;
+
+        Set<Identifiers> identifiers = new LinkedHashSet<>();
+        for (long idx = 0; idx < totalBeneficiaries; idx++) {
+            identifiers.add(createIdentifier(idx));
+        }
+
+        coverageService.insertCoverage(inProgress.getId(), identifiers);
+
+        List<CoveragePagingResult> streamed = new ArrayList<>();
+        coverageService.streamCoverage(new CoveragePagingRequest(pageSize, null, contract1, jobStartTime),
+                streamed::add);
+
+        assertEquals(3, streamed.size());
+        assertEquals(pageSize, streamed.get(0).size());
+        assertEquals(pageSize, streamed.get(1).size());
+        assertEquals(1, streamed.get(2).size());
+        assertTrue(streamed.get(2).getNextRequest().isEmpty());
+
+        // Each page must match the page returned by querying from the same cursor
+        CoveragePagingRequest pagingRequest = new CoveragePagingRequest(pageSize, null, contract1, jobStartTime);
+        for (CoveragePagingResult streamedPage : streamed) {
+            CoveragePagingResult pagedPage = coverageServiceRepo.pageCoverage(pagingRequest);
+
+            assertEquals(beneficiaryIds(pagedPage), beneficiaryIds(streamedPage));
+            assertEquals(pagedPage.getNextRequest().flatMap(CoveragePagingRequest::getCursor),
+                    streamedPage.getNextRequest().flatMap(CoveragePagingRequest::getCursor));
+
+            pagingRequest = pagedPage.getNextRequest().orElse(null);
+        }
+
+        // Stopping early only delivers pages up to the stop
+        List<CoveragePagingResult> stopped = new ArrayList<>();
+        coverageService.streamCoverage(new CoveragePagingRequest(pageSize, null, contract1, jobStartTime),
+                page -> {
+                    stopped.add(page);
+                    return false;
+                });
+        assertEquals(1, stopped.size());
+    }
+
+    @DisplayName("Stream coverage does not hold a transaction open while pages are handed off")
+    @Test
+    void streamCoverageAcrossQueries() throws InterruptedException {
+        coverageService.submitSearch(period1Jan.getId(), "testing");
+        CoverageSearchEvent inProgress = startSearchAndPullEvent();
+
+        Set<Identifiers> identifiers = new LinkedHashSet<>();
+        for (long idx = 0; idx < 501; idx++) {
+            identifiers.add(createIdentifier(idx));
+        }
+        coverageService.insertCoverage(inProgress.getId(), identifiers);
+
+        int pagesPerQuery = (int) ReflectionTestUtils.getField(coverageServiceRepo, "streamPagesPerQuery");
+        ReflectionTestUtils.setField(coverageServiceRepo, "streamPagesPerQuery", 1);
+        try {
+            List<CoveragePagingResult> streamed = new ArrayList<>();
+            coverageService.streamCoverage(new CoveragePagingRequest(100, null, contract1, jobStartTime), page -> {
+                assertEquals(0, countOpenTransactions());
+                streamed.add(page);
+                return true;
+            });
+
+            assertEquals(6, streamed.size());
+            assertEquals(LongStream.range(0, 501).boxed().collect(toList()), streamed.stream()
+                    .flatMap(page -> beneficiaryIds(page).stream()).collect(toList()));
+            for (int idx = 0; idx < 5; idx++) {
+                assertEquals(Optional.of(100L * (idx + 1)), streamed.get(idx).getNextRequest().flatMap(CoveragePagingRequest::getCursor));
+            }
+            assertTrue(streamed.get(5).getNextRequest().isEmpty());
+        } finally {
+            ReflectionTestUtils.setField(coverageServiceRepo, "streamPagesPerQuery", pagesPerQuery);
+        }
+    }
+
+    private int countOpenTransactions() {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT COUNT(*) FROM pg_stat_activity" +
+                     " WHERE state LIKE 'idle in transaction%' AND pid <> pg_backend_pid()");
+             ResultSet resultSet = statement.executeQuery()) {
+            resultSet.next();
+            return resultSet.getInt(1);
+        } catch (SQLException sqlException) {
+            throw new RuntimeException(sqlException);
+        }
+    }
+
+    private static List<Long> beneficiaryIds(CoveragePagingResult result) {
+        return result.getCoverageSummaries().stream()
+                .map(summary -> summary.getIdentifiers().getBeneficiaryId())
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
     @DisplayName("Page coverage only returns beneficiaries from the right contract only")
     @Test
     void pageCoverageOnlyReturnsBeneficiariesForContract() {
@@ -42,6 +42,9 @@ class PropertiesServiceTest {
             put(PCP_CORE_POOL_SIZE, 10);
             put(PCP_MAX_POOL_SIZE, 150);
             put(PCP_SCALE_TO_MAX_TIME, 900);
+            put(PCP_JOB_MAX_IN_FLIGHT, 0);
+            put(PCP_SMALL_JOB_SIZE, 10000);
+            put(PCP_SMALL_JOB_WEIGHT, 4);
             put(MAINTENANCE_MODE, "false");
             put(ZIP_SUPPORT_ON, "false");
             put(WORKER_ENGAGEMENT, "engaged");
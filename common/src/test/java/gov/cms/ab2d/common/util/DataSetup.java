@@ -136,8 +136,12 @@ public class DataSetup {
 
     public void deleteCoverage() {
         try (Connection connection = dataSource.getConnection();
-             PreparedStatement statement = connection.prepareStatement("DELETE FROM coverage")) {
+             PreparedStatement statement = connection.prepareStatement("DELETE FROM coverage");
+             PreparedStatement summaries = connection.prepareStatement("DELETE FROM coverage_contract_summary");
+             PreparedStatement monthSummaries = connection.prepareStatement("DELETE FROM coverage_contract_month_summary")) {
             statement.execute();
+            summaries.execute();
+            monthSummaries.execute();
         } catch (SQLException sqlException) {
             throw new RuntimeException(sqlException);
         }
@@ -2,9 +2,11 @@ package gov.cms.ab2d.hpms.service;
 
 import gov.cms.ab2d.common.model.Contract;
 import gov.cms.ab2d.common.repository.ContractRepository;
+import gov.cms.ab2d.common.repository.CoveragePartitionManager;
 import gov.cms.ab2d.eventlogger.Ab2dEnvironment;
 import gov.cms.ab2d.eventlogger.LogManager;
 import gov.cms.ab2d.hpms.hmsapi.*;  // NOPMD
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Primary;
 import org.springframework.stereotype.Service;
@@ -12,6 +14,7 @@ import org.springframework.stereotype.Service;
 import java.util.*;
 import java.util.stream.Collectors;
 
+@Slf4j
 @Primary
 @Service
 public class AttestationUpdaterServiceImpl implements AttestationUpdaterService {
@@ -24,13 +27,17 @@ public class AttestationUpdaterServiceImpl implements AttestationUpdaterService
 
     private final LogManager eventLogger;
 
+    private final CoveragePartitionManager partitionManager;
+
     @Autowired
     public AttestationUpdaterServiceImpl(ContractRepository contractRepository,
                                          HPMSFetcher hpmsFetcher,
-                                         LogManager eventLogger) {
+                                         LogManager eventLogger,
+                                         CoveragePartitionManager partitionManager) {
         this.contractRepository = contractRepository;
         this.hpmsFetcher = hpmsFetcher;
         this.eventLogger = eventLogger;
+        this.partitionManager = partitionManager;
     }
 
     @Override
@@ -132,7 +139,19 @@ public class AttestationUpdaterServiceImpl implements AttestationUpdaterService
     }
 
     private Contract sponsorAdd(HPMSOrganizationInfo hpmsInfo) {
-        return contractRepository.save(hpmsInfo.build());
+        Contract contract = contractRepository.save(hpmsInfo.build());
+        createPartitions(contract);
+        return contract;
+    }
+
+    // Give new contracts their own coverage partitions before any coverage is pulled. Failures are only logged
+    // because missing partitions are created again before coverage is inserted.
+    private void createPartitions(Contract contract) {
+        try {
+            partitionManager.createPartitions(contract.getContractNumber());
+        } catch (Exception exception) {
+            log.error("could not create coverage partitions for new contract {}", contract.getContractNumber(), exception);
+        }
     }
 
     private void considerContract(List<Contract> contractAttestList, Contract contract,
@@ -2,6 +2,7 @@ package gov.cms.ab2d.hpms.service;
 
 import gov.cms.ab2d.common.model.Contract;
 import gov.cms.ab2d.common.repository.ContractRepository;
+import gov.cms.ab2d.common.repository.CoveragePartitionManager;
 import gov.cms.ab2d.common.util.AB2DPostgresqlContainer;
 import gov.cms.ab2d.eventlogger.LogManager;
 import gov.cms.ab2d.hpms.SpringBootTestApp;
@@ -70,6 +71,9 @@ public class AttestationUpdaterServiceTest {
         @Autowired
         private ContractRepository contractRepository;
 
+        @Autowired
+        private CoveragePartitionManager partitionManager;
+
         @BeforeEach
         void setUp() {
             MockitoAnnotations.openMocks(this);
@@ -79,7 +83,8 @@ public class AttestationUpdaterServiceTest {
         @Bean()
         public AttestationUpdaterServiceImpl getMockService()
         {
-            return new AttestationUpdaterServiceImpl(contractRepository, new MockHpmsFetcher(), logManager);
+            return new AttestationUpdaterServiceImpl(contractRepository, new MockHpmsFetcher(), logManager,
+                    partitionManager);
         }
     }
 }
@@ -20,12 +20,15 @@ import static gov.cms.ab2d.worker.config.AutoScalingServiceImpl.Mode.SCALING_UP;
 /**
  * This service is configured with a single {@link Executor} as a parameter that is the subject
  * of auto-scaling. This service itself is a {@link java.util.Timer} task that runs often and
- * monitors
- * activity in the {@link Executor}. Whenever activity is detected, auto-scaling begins and the
- * executor's
- * pool size increases gradually from the core size to max size. Once the activity ceases, the
- * pool size is
- * reset back to the minimums.
+ * monitors activity in the {@link Executor}. Whenever activity is detected, auto-scaling begins.
+ * <br/>
+ * <br/>
+ * The pool is sized with additive increase, multiplicative decrease (AIMD) using the BFD responses
+ * collected by the {@link BfdResponseMonitor} since the last run. While the p95 latency and the error rate
+ * stay under their targets the pool grows at a rate that would take it from the core size to the max size
+ * in {@link #getScaleToMaxTime()} seconds. When either target is exceeded the pool is cut by the decrease
+ * factor so BFD has room to recover. The pool never leaves the core and max sizes in the properties table.
+ * Once the activity ceases, the pool size is reset back to the minimums.
  * <br/>
  * <br/>
  * This service only supports {@link ThreadPoolTaskExecutor}s.
@@ -37,6 +40,7 @@ public class AutoScalingServiceImpl implements AutoScalingService, ApplicationLi
     private final ThreadPoolTaskExecutor executor;
     private final RoundRobinBlockingQueue eobClaimRequestsQueue;
     private final PropertiesService propertiesService;
+    private final BfdResponseMonitor bfdResponseMonitor;
 
     // Can be modified by changing values in properties table
     // in the shared Postgres database
@@ -44,9 +48,19 @@ public class AutoScalingServiceImpl implements AutoScalingService, ApplicationLi
     private int maxPoolSize;
     private double scaleToMaxTime;
 
+    // BFD is considered overloaded when either target is exceeded
+    private final long latencyTargetMillis;
+    private final double errorRateTarget;
+
+    // Fraction of the pool kept when BFD is overloaded
+    private final double decreaseFactor;
+
     private Mode mode = RESET;
 
-    private Instant kickOffTime;
+    private Instant lastAdjustment;
+
+    // Fractional pool size so slow additive increases are not lost to rounding
+    private double targetPoolSize;
 
     /**
      * Spring auto-wiring is happening here. Do not change the parameter name.
@@ -56,15 +70,23 @@ public class AutoScalingServiceImpl implements AutoScalingService, ApplicationLi
     public AutoScalingServiceImpl(Executor patientProcessorThreadPool,
                                   RoundRobinBlockingQueue eobClaimRequestsQueue,
                                   PropertiesService propertiesService,
+                                  BfdResponseMonitor bfdResponseMonitor,
                                   @Value("${pcp.core.pool.size}") int corePoolSize,
                                   @Value("${pcp.max.pool.size}") int maxPoolSize,
-                                  @Value("${pcp.scaleToMax.time}") int scaleToMaxTime) {
+                                  @Value("${pcp.scaleToMax.time}") int scaleToMaxTime,
+                                  @Value("${pcp.autoscale.latency.p95.target.ms:5000}") long latencyTargetMillis,
+                                  @Value("${pcp.autoscale.error.rate.target:0.05}") double errorRateTarget,
+                                  @Value("${pcp.autoscale.decrease.factor:0.75}") double decreaseFactor) {
         this.executor = (ThreadPoolTaskExecutor) patientProcessorThreadPool;
         this.eobClaimRequestsQueue = eobClaimRequestsQueue;
         this.propertiesService = propertiesService;
+        this.bfdResponseMonitor = bfdResponseMonitor;
         this.corePoolSize = corePoolSize;
         this.maxPoolSize = maxPoolSize;
         this.scaleToMaxTime = scaleToMaxTime;
+        this.latencyTargetMillis = latencyTargetMillis;
+        this.errorRateTarget = errorRateTarget;
+        this.decreaseFactor = decreaseFactor;
     }
 
     @Override
@@ -85,7 +107,7 @@ public class AutoScalingServiceImpl implements AutoScalingService, ApplicationLi
 
     @Override
     @Scheduled(fixedDelay = 5000)
-    public void autoscale() {
+    public synchronized void autoscale() {
 
         // If in maintenance mode immediately scale down because new work won't be processed.
         // If no new work is present immediately scale down.
@@ -94,61 +116,97 @@ public class AutoScalingServiceImpl implements AutoScalingService, ApplicationLi
             // no need to do so gradually.
             scaleBackToMin();
         } else {
-            scaleUp();
+            scale();
         }
     }
 
-    private void scaleUp() {
+    private void scale() {
+        BfdResponseStats stats = bfdResponseMonitor.nextWindow();
+        Instant now = Instant.now();
+
         // We need to understand whether we are just kicking off the scale-up procedure
-        // or in fact somewhere in the middle/end of it.
+        // or in fact somewhere in the middle of it.
         if (mode == RESET) {
             mode = SCALING_UP;
-            kickOffTime = Instant.now();
-            log.info("Auto-scaling: kicked off at {}", kickOffTime);
-        } else if (mode == SCALING_UP) {
-            // Auto-scaling is in progress. Increase the pool size if it's time.
-            kickItUpANotch();
+            lastAdjustment = now;
+            targetPoolSize = executor.getMaxPoolSize();
+            log.info("Auto-scaling: kicked off at {}", now);
+            return;
+        }
+
+        int currentSize = executor.getMaxPoolSize();
+        if (isOverloaded(stats)) {
+            // Back off quickly so BFD can recover
+            targetPoolSize = currentSize * decreaseFactor;
+            log.warn("Auto-scaling: BFD overloaded {} decreasing from {}", stats, currentSize);
+        } else {
+            // Healthy so grow by the share of the core to max range that matches the time passed
+            double secondsPassed = Duration.between(lastAdjustment, now).toMillis() / 1000.0;
+            double range = Math.max(0, maxPoolSize - corePoolSize);
+            targetPoolSize += scaleToMaxTime > 0 ? range * secondsPassed / scaleToMaxTime : range;
+        }
+        lastAdjustment = now;
+        targetPoolSize = withinBounds(targetPoolSize);
+
+        int wantedPoolSize = (int) targetPoolSize;
+        if (wantedPoolSize != currentSize) {
+            log.info("Auto-scaling: resizing from {} to {}", currentSize, wantedPoolSize);
+            resize(wantedPoolSize);
         }
     }
 
-    private void kickItUpANotch() {
-        // We know when we started (see kickOffTime), and we know when we should finish
-        // (kickOffTime + scaleToMaxTime). This gives us a rough idea at which pool size
-        // we should be at a point in time.
-        int currentMaxSize = executor.getMaxPoolSize();
-        if (currentMaxSize < maxPoolSize) {   // Maximum pool size is not reached yet.
-            // We should be adding a new Thread every N seconds.
-            double secondsBetweenScalingEvents = scaleToMaxTime / (maxPoolSize - corePoolSize);
-            Duration duration = Duration.between(kickOffTime, Instant.now());
-            // At this point in time we want to be at this number of threads.
-            int wantedPoolSize = Math.min(maxPoolSize,
-                    (int) (corePoolSize + duration.getSeconds() / secondsBetweenScalingEvents));
-            if (wantedPoolSize > currentMaxSize) {
-                log.info("Auto-scaling: incrementing from {} to {}", currentMaxSize,
-                        wantedPoolSize);
-                executor.setMaxPoolSize(wantedPoolSize);
-            }
+    private boolean isOverloaded(BfdResponseStats stats) {
+        // No responses means there is no evidence BFD is struggling, a request that hangs eventually fails
+        if (stats.getRequests() == 0) {
+            return false;
+        }
+        return stats.getP95LatencyMillis() > latencyTargetMillis || stats.getErrorRate() > errorRateTarget;
+    }
+
+    private double withinBounds(double poolSize) {
+        return Math.max(corePoolSize, Math.min(maxPoolSize, poolSize));
+    }
+
+    /**
+     * Set both the core and max size. The queue is unbounded so the executor only adds threads beyond the core
+     * size if the core size itself changes. The order of the calls keeps core at or below max at all times.
+     */
+    private void resize(int poolSize) {
+        if (poolSize >= executor.getCorePoolSize()) {
+            executor.setMaxPoolSize(poolSize);
+            executor.setCorePoolSize(poolSize);
+        } else {
+            executor.setCorePoolSize(poolSize);
+            executor.setMaxPoolSize(poolSize);
         }
     }
 
     private void scaleBackToMin() {
+        // Responses from a previous burst of activity should not affect the next one
+        bfdResponseMonitor.nextWindow();
+
         if (mode != RESET) {
-            // This is all we have to do; ThreadPoolTaskExecutor will shrink automatically.
-            executor.setMaxPoolSize(corePoolSize);
+            // ThreadPoolTaskExecutor will shrink automatically.
+            resize(corePoolSize);
             mode = RESET;
-            kickOffTime = null;
+            lastAdjustment = null;
             log.info("Auto-scaling: reset to core pool size");
         }
     }
 
     // An event that originates from the PropertiesChangeDetection class
     @Override
-    public void onApplicationEvent(PropertiesChangedEvent propertiesChangedEvent) {
+    public synchronized void onApplicationEvent(PropertiesChangedEvent propertiesChangedEvent) {
         corePoolSize = Integer.parseInt(propertiesChangedEvent.getPropertiesMap().get(PCP_CORE_POOL_SIZE).toString());
         maxPoolSize = Integer.parseInt(propertiesChangedEvent.getPropertiesMap().get(PCP_MAX_POOL_SIZE).toString());
         scaleToMaxTime = Double.parseDouble(propertiesChangedEvent.getPropertiesMap().get(PCP_SCALE_TO_MAX_TIME).toString());
 
-        this.executor.setCorePoolSize(corePoolSize);
+        if (mode == RESET) {
+            resize(corePoolSize);
+        } else {
+            targetPoolSize = withinBounds(targetPoolSize);
+            resize((int) targetPoolSize);
+        }
     }
 
     enum Mode {
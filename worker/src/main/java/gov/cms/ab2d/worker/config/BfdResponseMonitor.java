@@ -0,0 +1,61 @@
+package gov.cms.ab2d.worker.config;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+
+/**
+ * Collects the latency and outcome of every request the patient processor threads make to BFD so the
+ * {@link AutoScalingService} can tell whether BFD is keeping up with the current number of threads.
+ *
+ * Latencies are kept for the most recent {@link #MAX_SAMPLES} requests of a window. Each call to
+ * {@link #nextWindow()} summarizes the window and starts a new one.
+ */
+@Component
+public class BfdResponseMonitor {
+
+    static final int MAX_SAMPLES = 4096;
+
+    private final long[] latencies = new long[MAX_SAMPLES];
+    private int requests;
+    private int errors;
+
+    /**
+     * Record a single request to BFD
+     *
+     * @param latencyMillis - time taken by the request
+     * @param success - whether BFD returned a result
+     */
+    public synchronized void record(long latencyMillis, boolean success) {
+        latencies[requests % MAX_SAMPLES] = latencyMillis;
+        requests++;
+        if (!success) {
+            errors++;
+        }
+    }
+
+    /**
+     * Summarize the requests recorded since the last call and start a new window
+     *
+     * @return the summary of the window that just ended
+     */
+    public BfdResponseStats nextWindow() {
+        long[] samples;
+        int windowRequests;
+        int windowErrors;
+        synchronized (this) {
+            windowRequests = requests;
+            windowErrors = errors;
+            samples = Arrays.copyOf(latencies, Math.min(requests, MAX_SAMPLES));
+            requests = 0;
+            errors = 0;
+        }
+
+        long p95 = 0;
+        if (samples.length > 0) {
+            Arrays.sort(samples);
+            p95 = samples[(int) Math.ceil(samples.length * 0.95) - 1];
+        }
+        return new BfdResponseStats(windowRequests, windowErrors, p95);
+    }
+}
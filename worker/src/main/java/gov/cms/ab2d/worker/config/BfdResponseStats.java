@@ -0,0 +1,27 @@
+package gov.cms.ab2d.worker.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Summary of the BFD requests made by the patient processor threads over a window of time
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class BfdResponseStats {
+
+    // Requests that finished during the window successfully or not
+    private final int requests;
+
+    // Requests that failed during the window
+    private final int errors;
+
+    // 95th percentile of the time taken by requests in the window
+    private final long p95LatencyMillis;
+
+    public double getErrorRate() {
+        return requests == 0 ? 0 : (double) errors / requests;
+    }
+}
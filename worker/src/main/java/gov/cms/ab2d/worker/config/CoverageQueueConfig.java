@@ -22,4 +22,48 @@ public class CoverageQueueConfig {
         taskExecutor.initialize();
         return taskExecutor;
     }
+
+    /**
+     * Inserts pages of coverage while searches continue pulling from BFD. Each search inserts at most one page
+     * at a time so the pool matches the number of concurrent searches.
+     */
+    @Bean(name = "patientCoverageInsertionThreadPool")
+    public ThreadPoolTaskExecutor patientCoverageInsertionThreadPool(
+            @Value("#{new Integer('${coverage.core.pool.size}')}") int corePoolSize) {
+        final ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+        taskExecutor.setCorePoolSize(corePoolSize);
+        taskExecutor.setMaxPoolSize(corePoolSize);
+        taskExecutor.setThreadNamePrefix("coveragei-");
+        taskExecutor.initialize();
+        return taskExecutor;
+    }
+
+    /**
+     * Requests the next page of enrollment from BFD while searches filter the current page. Each search requests
+     * at most one page ahead so the pool matches the number of concurrent searches.
+     */
+    @Bean(name = "patientCoverageFetchThreadPool")
+    public ThreadPoolTaskExecutor patientCoverageFetchThreadPool(
+            @Value("#{new Integer('${coverage.core.pool.size}')}") int corePoolSize) {
+        final ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+        taskExecutor.setCorePoolSize(corePoolSize);
+        taskExecutor.setMaxPoolSize(corePoolSize);
+        taskExecutor.setThreadNamePrefix("coveragef-");
+        taskExecutor.initialize();
+        return taskExecutor;
+    }
+
+    /**
+     * Writes snapshots of contract enrollment to local disk after searches complete. A single thread is enough
+     * because jobs page enrollment from the database until a snapshot is ready.
+     */
+    @Bean(name = "coverageSnapshotThreadPool")
+    public ThreadPoolTaskExecutor coverageSnapshotThreadPool() {
+        final ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+        taskExecutor.setCorePoolSize(1);
+        taskExecutor.setMaxPoolSize(1);
+        taskExecutor.setThreadNamePrefix("coverages-");
+        taskExecutor.initialize();
+        return taskExecutor;
+    }
 }
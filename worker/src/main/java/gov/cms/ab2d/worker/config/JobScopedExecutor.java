@@ -0,0 +1,71 @@
+package gov.cms.ab2d.worker.config;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs tasks on behalf of a job. Tasks are queued per job and jobs are served fairly so a single large job
+ * cannot starve the others. The job is always passed explicitly so tasks can be queued in batches and
+ * counted per job.
+ */
+public interface JobScopedExecutor {
+
+    /**
+     * Tell the executor about a job before its tasks are queued so the job can be given its share of the
+     * threads. Small jobs are given a larger share so they finish quickly while large jobs are running.
+     *
+     * @param jobUuid - the job
+     * @param expectedTasks - the number of tasks the job expects to queue, for example the number of patients
+     */
+    void startJob(String jobUuid, int expectedTasks);
+
+    /**
+     * Queue a single task for a job
+     *
+     * @param jobUuid - the job the task belongs to
+     * @param task - the task to run
+     * @return a future completed with the task's result or the exception it threw
+     */
+    <T> CompletableFuture<T> submit(String jobUuid, Callable<T> task);
+
+    /**
+     * Queue several tasks for a job in one step, for example a whole page of beneficiaries
+     *
+     * @param jobUuid - the job the tasks belong to
+     * @param tasks - the tasks to run in order
+     * @return a future for each task in the same order as the tasks
+     */
+    <T> List<CompletableFuture<T>> submitAll(String jobUuid, List<? extends Callable<T>> tasks);
+
+    /**
+     * Get the number of tasks queued, running, and completed for a job
+     *
+     * @param jobUuid - the job
+     * @return the counts, all zero if the job is unknown
+     */
+    JobTaskCounts getJobTaskCounts(String jobUuid);
+
+    /**
+     * Get the counts for every job with tasks submitted that has not finished
+     *
+     * @return counts keyed by job uuid
+     */
+    Map<String, JobTaskCounts> getJobTaskCounts();
+
+    /**
+     * Drop every task for a job that has not started yet and cancel their futures. Running tasks are left to finish.
+     *
+     * @param jobUuid - the job
+     * @return the number of tasks dropped
+     */
+    int cancelQueued(String jobUuid);
+
+    /**
+     * Drop any tasks still queued for a job and stop tracking the job
+     *
+     * @param jobUuid - the job
+     */
+    void finishJob(String jobUuid);
+}
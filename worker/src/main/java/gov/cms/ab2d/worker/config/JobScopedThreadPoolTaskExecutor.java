@@ -0,0 +1,173 @@
+package gov.cms.ab2d.worker.config;
+
+import gov.cms.ab2d.worker.properties.PropertiesChangedEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationListener;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import static gov.cms.ab2d.common.util.Constants.PCP_JOB_MAX_IN_FLIGHT;
+import static gov.cms.ab2d.common.util.Constants.PCP_SMALL_JOB_SIZE;
+import static gov.cms.ab2d.common.util.Constants.PCP_SMALL_JOB_WEIGHT;
+
+/**
+ * {@link JobScopedExecutor} backed by a {@link ThreadPoolTaskExecutor} whose work queue is a
+ * {@link RoundRobinBlockingQueue}. Remains a {@link ThreadPoolTaskExecutor} so pool sizes can still be
+ * changed by the {@link AutoScalingService}.
+ *
+ * Jobs with at most {@link #setSmallJobSize(int)} tasks are served {@link #setSmallJobWeight(int)} tasks at a time
+ * while larger jobs are served one task at a time. The number of tasks running for a single job can be capped with
+ * {@link #setMaxInFlightPerJob(int)}. All three can be changed at runtime in the properties table.
+ */
+@Slf4j
+public class JobScopedThreadPoolTaskExecutor extends ThreadPoolTaskExecutor implements JobScopedExecutor,
+        ApplicationListener<PropertiesChangedEvent> {
+
+    private final transient RoundRobinBlockingQueue<Runnable> queue;
+
+    private final transient Map<String, JobTask.Counters> jobCounters = new ConcurrentHashMap<>();
+
+    // Jobs with this many tasks or fewer are weighted as small jobs
+    private volatile int smallJobSize;
+
+    // Number of tasks served in a row for a small job
+    private volatile int smallJobWeight = 1;
+
+    public JobScopedThreadPoolTaskExecutor(RoundRobinBlockingQueue<Runnable> queue) {
+        this.queue = queue;
+    }
+
+    // Regretfully, no good way to supply a custom queue to ThreadPoolTaskExecutor
+    // other than by overriding createQueue
+    @Override
+    protected BlockingQueue<Runnable> createQueue(int queueCapacity) {
+        return queue;
+    }
+
+    public void setMaxInFlightPerJob(int maxInFlightPerJob) {
+        queue.setMaxInFlight(maxInFlightPerJob);
+    }
+
+    public int getMaxInFlightPerJob() {
+        return queue.getMaxInFlight();
+    }
+
+    public void setSmallJobSize(int smallJobSize) {
+        this.smallJobSize = smallJobSize;
+    }
+
+    public int getSmallJobSize() {
+        return smallJobSize;
+    }
+
+    public void setSmallJobWeight(int smallJobWeight) {
+        this.smallJobWeight = Math.max(1, smallJobWeight);
+    }
+
+    public int getSmallJobWeight() {
+        return smallJobWeight;
+    }
+
+    @Override
+    public void startJob(String jobUuid, int expectedTasks) {
+        int weight = expectedTasks <= smallJobSize ? smallJobWeight : 1;
+        log.info("Job {} expects {} tasks and will be served {} tasks at a time", jobUuid, expectedTasks, weight);
+        queue.setWeight(jobUuid, weight);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> submit(String jobUuid, Callable<T> task) {
+        // Always goes through the queue so the task is counted against the job's in flight limit
+        return submitAll(jobUuid, Collections.singletonList(task)).get(0);
+    }
+
+    @Override
+    public <T> List<CompletableFuture<T>> submitAll(String jobUuid, List<? extends Callable<T>> tasks) {
+        ThreadPoolExecutor executor = getThreadPoolExecutor();
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Executor has been shut down, cannot queue tasks for " + jobUuid);
+        }
+
+        JobTask.Counters counters = countersFor(jobUuid);
+        Runnable release = () -> queue.release(jobUuid);
+        List<JobTask<T>> jobTasks = new ArrayList<>(tasks.size());
+        List<CompletableFuture<T>> futures = new ArrayList<>(tasks.size());
+        for (Callable<T> task : tasks) {
+            JobTask<T> jobTask = new JobTask<>(jobUuid, task, counters, release);
+            jobTasks.add(jobTask);
+            futures.add(jobTask.getFuture());
+        }
+
+        // Bypasses execute so the whole batch is queued at once, make sure threads exist to take the tasks
+        queue.addAll(jobUuid, jobTasks);
+        executor.prestartAllCoreThreads();
+
+        return futures;
+    }
+
+    @Override
+    public JobTaskCounts getJobTaskCounts(String jobUuid) {
+        JobTask.Counters counters = jobCounters.get(jobUuid);
+        if (counters == null) {
+            return new JobTaskCounts(queue.size(jobUuid), 0, 0);
+        }
+        return new JobTaskCounts(queue.size(jobUuid), counters.running.get(), counters.completed.get());
+    }
+
+    @Override
+    public Map<String, JobTaskCounts> getJobTaskCounts() {
+        Map<String, JobTaskCounts> counts = new HashMap<>();
+        for (String jobUuid : jobCounters.keySet()) {
+            counts.put(jobUuid, getJobTaskCounts(jobUuid));
+        }
+        return counts;
+    }
+
+    @Override
+    public int cancelQueued(String jobUuid) {
+        // Dropped tasks never run so their futures must be cancelled or callers would wait on them forever
+        return queue.removeCategory(jobUuid, task -> {
+            if (task instanceof JobTask) {
+                ((JobTask<?>) task).getFuture().cancel(false);
+            }
+        });
+    }
+
+    @Override
+    public void finishJob(String jobUuid) {
+        int dropped = cancelQueued(jobUuid);
+        if (dropped > 0) {
+            log.warn("Dropped {} tasks still queued for finished job {}", dropped, jobUuid);
+        }
+        jobCounters.remove(jobUuid);
+    }
+
+    @Override
+    public void onApplicationEvent(PropertiesChangedEvent propertiesChangedEvent) {
+        Map<String, Object> properties = propertiesChangedEvent.getPropertiesMap();
+        if (properties.get(PCP_JOB_MAX_IN_FLIGHT) != null) {
+            setMaxInFlightPerJob(Integer.parseInt(properties.get(PCP_JOB_MAX_IN_FLIGHT).toString()));
+        }
+        if (properties.get(PCP_SMALL_JOB_SIZE) != null) {
+            setSmallJobSize(Integer.parseInt(properties.get(PCP_SMALL_JOB_SIZE).toString()));
+        }
+        if (properties.get(PCP_SMALL_JOB_WEIGHT) != null) {
+            setSmallJobWeight(Integer.parseInt(properties.get(PCP_SMALL_JOB_WEIGHT).toString()));
+        }
+    }
+
+    private JobTask.Counters countersFor(String jobUuid) {
+        return jobCounters.computeIfAbsent(jobUuid, key -> new JobTask.Counters());
+    }
+}
@@ -0,0 +1,65 @@
+package gov.cms.ab2d.worker.config;
+
+import lombok.Getter;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A task queued by a {@link JobScopedExecutor}. The task knows which job it belongs to so the
+ * {@link RoundRobinBlockingQueue} can place it without any thread local state.
+ */
+class JobTask<T> implements Runnable {
+
+    /**
+     * Running and completed counts shared by all tasks of a job
+     */
+    static class Counters {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicLong completed = new AtomicLong();
+    }
+
+    @Getter
+    private final String jobUuid;
+
+    @Getter
+    private final CompletableFuture<T> future = new CompletableFuture<>();
+
+    private final Callable<T> task;
+
+    private final Counters counters;
+
+    // Run once the task is done with its thread whether or not the task was run
+    private final Runnable onFinish;
+
+    JobTask(String jobUuid, Callable<T> task, Counters counters, Runnable onFinish) {
+        this.jobUuid = jobUuid;
+        this.task = task;
+        this.counters = counters;
+        this.onFinish = onFinish;
+    }
+
+    @Override
+    public void run() {
+        try {
+            // Cancelled before a thread picked it up
+            if (future.isDone()) {
+                return;
+            }
+
+            counters.running.incrementAndGet();
+            try {
+                future.complete(task.call());
+            } catch (Throwable ex) { //NOSONAR the caller must always be told the task finished
+                future.completeExceptionally(ex);
+            } finally {
+                counters.running.decrementAndGet();
+                counters.completed.incrementAndGet();
+            }
+        } finally {
+            onFinish.run();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package gov.cms.ab2d.worker.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Snapshot of the tasks for a single job in a {@link JobScopedExecutor}
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class JobTaskCounts {
+
+    // Tasks waiting for a thread
+    private final int queued;
+
+    // Tasks currently being run by a thread
+    private final int running;
+
+    // Tasks that have finished successfully or not
+    private final long completed;
+}
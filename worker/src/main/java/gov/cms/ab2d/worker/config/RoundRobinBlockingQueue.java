@@ -5,11 +5,14 @@ import org.springframework.util.Assert;
 
 import java.util.*;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
 /**
  * A custom implementation of {@link BlockingQueue} made to fit the needs of AB2D. Because we have
@@ -19,49 +22,226 @@ import java.util.stream.Collectors;
  * particular job (or a contract to be precise), and serving tasks to the surrounding
  * {@link java.util.concurrent.Executor}
  * in round-robin fashion.
+ *
+ * Adding and polling never take a global lock. Each category has its own concurrent deque and counter, and
+ * categories with queued tasks wait their turn in a concurrent ring. Polling takes the category at the head of
+ * the ring and puts it back at the tail if it still has tasks. A lock is only used to park threads in
+ * {@link #take()} and {@link #poll(long, TimeUnit)} while the queue is empty.
+ *
+ * Tasks submitted through {@link JobScopedExecutor} carry their job so {@link #add(Object)} reads the category
+ * from the task. Batches of tasks for one job can be queued together with {@link #addAll(String, Collection)}.
+ *
+ * Scheduling is weighted. A category with weight N is served up to N tasks in a row before it goes to the back
+ * of the line (see {@link #setWeight(String, int)}), so small jobs can be given a larger share of the threads.
+ * A limit can also be placed on the number of {@link JobTask}s per category handed out and not yet finished
+ * (see {@link #setMaxInFlight(int)}). A category at its limit is set aside until one of its tasks calls
+ * {@link #release(String)}.
  */
 @Slf4j
 public class RoundRobinBlockingQueue<E> implements BlockingQueue<E> {
 
     // The individual category queues
-    private final Map<String, Deque<E>> categoryQueues =
-            Collections.synchronizedMap(new LinkedHashMap<>());
-    // The current category index
-    private AtomicInteger currentIndex = new AtomicInteger();
-    // Main lock guarding all access
+    private final ConcurrentHashMap<String, CategoryQueue<E>> categoryQueues = new ConcurrentHashMap<>();
+    // Categories with queued tasks in the order they will be served
+    private final Deque<CategoryQueue<E>> ring = new ConcurrentLinkedDeque<>();
+    // Weight of each category, categories without a weight have a weight of one
+    private final ConcurrentHashMap<String, Integer> weights = new ConcurrentHashMap<>();
+    // Number of job tasks handed out for each category and not yet released
+    private final ConcurrentHashMap<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+    // Maximum number of job tasks in flight per category, zero for no limit
+    private volatile int maxInFlight;
+    // Total number of queued tasks across all categories
+    private final AtomicInteger totalSize = new AtomicInteger();
+    // Number of threads parked waiting for a task
+    private final AtomicInteger waiters = new AtomicInteger();
+    // Lock only used to park and wake threads waiting on an empty queue
     private final ReentrantLock lock = new ReentrantLock();
     // Not empty condition on the lock
     private final Condition notEmpty = lock.newCondition();
 
+    /**
+     * Category used for tasks that do not carry their own job, for example tasks handed directly to
+     * {@link java.util.concurrent.Executor#execute(Runnable)}. Prefer {@link JobScopedExecutor}.
+     */
     public static final ThreadLocal<String> CATEGORY_HOLDER = new ThreadLocal<>();
 
-    // New code to add items
-    private boolean add(String category, E e) {
-        log.debug("Adding {} - {}", category, e);
-        Assert.notNull(category, "Contract number must be set via CATEGORY_HOLDER prior to using this method");
-        lock.lock();
-        try {
-            Deque<E> categoryQueue = categoryQueues.computeIfAbsent(category, k -> new LinkedList<>());
-            categoryQueue.add(e);
-            notEmpty.signal();
-            return true;
-        } finally {
-            lock.unlock();
+    /**
+     * Tasks queued for a single category
+     */
+    private static class CategoryQueue<E> {
+        private final String category;
+        private final Deque<E> tasks = new ConcurrentLinkedDeque<>();
+        // Incremented after a task is added and decremented after a task is removed so it may briefly lag
+        private final AtomicInteger size = new AtomicInteger();
+        // Whether the category is currently in the ring, guarantees a category is in the ring at most once
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        // Whether the category has been set aside because it reached the in flight limit, still counts as scheduled
+        private final AtomicBoolean parked = new AtomicBoolean();
+        // Tasks served in a row, only touched by the thread that currently holds the category out of the ring
+        private int served;
+
+        CategoryQueue(String category) {
+            this.category = category;
         }
     }
 
+    /**
+     * Queue a task for a category
+     *
+     * @param category - the category (job) the task belongs to
+     * @param e - the task
+     * @return true
+     */
+    public boolean add(String category, E e) {
+        Objects.requireNonNull(e);
+        return addAll(category, Collections.singletonList(e));
+    }
+
+    /**
+     * Queue several tasks for the same category in one step. The category's queue and counters are only
+     * updated once for the whole batch.
+     *
+     * @param category - the category (job) the tasks belong to
+     * @param tasks - the tasks in the order they should be run
+     * @return true if any tasks were queued
+     */
+    public boolean addAll(String category, Collection<? extends E> tasks) {
+        log.debug("Adding {} tasks to {}", tasks.size(), category);
+        Assert.notNull(category, "Job must be set on the task or via CATEGORY_HOLDER prior to using this method");
+        if (tasks.isEmpty()) {
+            return false;
+        }
+
+        // Adding under compute means a task can never be added to a category that has just been removed as empty
+        AtomicBoolean needsScheduling = new AtomicBoolean();
+        CategoryQueue<E> categoryQueue = categoryQueues.compute(category, (key, existing) -> {
+            CategoryQueue<E> queue = existing == null ? new CategoryQueue<>(key) : existing;
+            queue.tasks.addAll(tasks);
+            queue.size.addAndGet(tasks.size());
+            needsScheduling.set(queue.scheduled.compareAndSet(false, true));
+            return queue;
+        });
+
+        totalSize.addAndGet(tasks.size());
+        if (needsScheduling.get()) {
+            ring.offerLast(categoryQueue);
+            signalNotEmpty(tasks.size());
+        }
+        return true;
+    }
+
     @Override
     public boolean add(E e) {
-        return this.add(CATEGORY_HOLDER.get(), e);
+        String category = e instanceof JobTask ? ((JobTask<?>) e).getJobUuid() : CATEGORY_HOLDER.get();
+        return this.add(category, e);
+    }
+
+    /**
+     * Set the number of tasks served from a category in a row before moving on to the next category
+     *
+     * @param category - the category (job)
+     * @param weight - the weight, at least one
+     */
+    public void setWeight(String category, int weight) {
+        Assert.isTrue(weight > 0, "weight must be at least one");
+        weights.put(category, weight);
+    }
+
+    public int getWeight(String category) {
+        return weights.getOrDefault(category, 1);
+    }
+
+    /**
+     * Limit the number of job tasks per category that have been handed out and not released
+     *
+     * @param maxInFlight - the limit, zero or less for no limit
+     */
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = Math.max(0, maxInFlight);
+
+        // A higher limit may free categories that were set aside
+        for (CategoryQueue<E> categoryQueue : categoryQueues.values()) {
+            unpark(categoryQueue);
+        }
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * Number of job tasks handed out for a category that have not been released
+     */
+    public int inFlight(String category) {
+        AtomicInteger count = inFlight.get(category);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * Called when a {@link JobTask} taken from this queue finishes so the category may be served again if it
+     * was at its in flight limit
+     *
+     * @param category - the category (job) of the finished task
+     */
+    public void release(String category) {
+        AtomicInteger count = inFlight.get(category);
+        if (count != null) {
+            // Never below zero in case a task was run without being taken from this queue
+            count.updateAndGet(current -> Math.max(0, current - 1));
+        }
+
+        CategoryQueue<E> categoryQueue = categoryQueues.get(category);
+        if (categoryQueue != null) {
+            unpark(categoryQueue);
+        }
+    }
+
+    /**
+     * Drop every task queued for a category in one step and forget its weight and in flight count. Tasks
+     * already taken by a thread are not affected.
+     *
+     * @param category - the category (job) to drop tasks for
+     * @return the number of tasks dropped
+     */
+    public int removeCategory(String category) {
+        return removeCategory(category, task -> { });
+    }
+
+    /**
+     * Drop every task queued for a category, see {@link #removeCategory(String)}, and hand each dropped task
+     * to a callback so whoever is waiting on the task can be told it will never run
+     *
+     * @param category - the category (job) to drop tasks for
+     * @param onRemoved - called with each task dropped
+     * @return the number of tasks dropped
+     */
+    public int removeCategory(String category, Consumer<? super E> onRemoved) {
+        weights.remove(category);
+        inFlight.remove(category);
+
+        CategoryQueue<E> categoryQueue = categoryQueues.remove(category);
+        if (categoryQueue == null) {
+            return 0;
+        }
+
+        // The category may still be in the ring, it will be skipped once it is found to be empty
+        int removed = 0;
+        E task;
+        while ((task = categoryQueue.tasks.poll()) != null) {
+            categoryQueue.size.decrementAndGet();
+            totalSize.decrementAndGet();
+            onRemoved.accept(task);
+            removed++;
+        }
+
+        log.debug("Removed {} tasks for {}", removed, category);
+        return removed;
     }
 
     @Override
     public void clear() {
-        lock.lock();
-        try {
-            categoryQueues.clear();
-        } finally {
-            lock.unlock();
+        for (String category : categoryQueues.keySet()) {
+            removeCategory(category);
         }
     }
 
@@ -70,35 +250,43 @@ public class RoundRobinBlockingQueue<E> implements BlockingQueue<E> {
         if (o == null) {
             return false;
         }
-        lock.lock();
-        try {
-            for (Map.Entry<String, Deque<E>> entry : categoryQueues.entrySet()) {
-                if (entry.getValue().contains(o)) {
-                    return true;
-                }
+        for (CategoryQueue<E> categoryQueue : categoryQueues.values()) {
+            if (categoryQueue.tasks.contains(o)) {
+                return true;
             }
-        } finally {
-            lock.unlock();
         }
         return false;
     }
 
+    /**
+     * Drain every category in the order categories are served, each category is drained completely before
+     * moving on to the next
+     */
     @Override
     public int drainTo(Collection<? super E> c) {
         if (c == this) {
             throw new IllegalArgumentException("Cannot drain to itself");
         }
-        lock.lock();
-        try {
-            int size = size();
-            for (Map.Entry<String, Deque<E>> entry : categoryQueues.entrySet()) {
-                c.addAll(entry.getValue());
-                entry.getValue().clear();
-            }
-            return size;
-        } finally {
-            lock.unlock();
+        int drained = 0;
+        for (CategoryQueue<E> categoryQueue : ring) {
+            drained += drainCategory(categoryQueue, c);
+        }
+        // Categories set aside at their in flight limit are not in the ring
+        for (CategoryQueue<E> categoryQueue : categoryQueues.values()) {
+            drained += drainCategory(categoryQueue, c);
         }
+        return drained;
+    }
+
+    private int drainCategory(CategoryQueue<E> categoryQueue, Collection<? super E> c) {
+        int drained = 0;
+        E e;
+        while ((e = categoryQueue.tasks.poll()) != null) {
+            taskRemoved(categoryQueue);
+            c.add(e);
+            drained++;
+        }
+        return drained;
     }
 
     @Override
@@ -155,18 +343,14 @@ public class RoundRobinBlockingQueue<E> implements BlockingQueue<E> {
     @Override
     public E poll(long timeout, TimeUnit unit) throws InterruptedException {
         long nanos = unit.toNanos(timeout);
-        lock.lockInterruptibly();
-        try {
-            while (size() == 0) {
-                if (nanos <= 0L) {
-                    return null;
-                }
-                nanos = notEmpty.awaitNanos(nanos);
+        E next;
+        while ((next = getNext()) == null) {
+            if (nanos <= 0L) {
+                return null;
             }
-            return getNext();
-        } finally {
-            lock.unlock();
+            nanos = awaitNotEmpty(nanos);
         }
+        return next;
     }
 
     @Override
@@ -181,19 +365,14 @@ public class RoundRobinBlockingQueue<E> implements BlockingQueue<E> {
 
     @Override
     public boolean remove(Object o) {
-        lock.lock();
-        try {
-            for (Map.Entry<String, Deque<E>> entry : categoryQueues.entrySet()) {
-                final Deque<E> queue = categoryQueues.get(entry.getKey());
-                if (queue.remove(o)) {
-                    if (queue.isEmpty()) {
-                        categoryQueues.remove(entry.getKey());
-                    }
-                    return true;
-                }
+        if (o == null) {
+            return false;
+        }
+        for (CategoryQueue<E> categoryQueue : categoryQueues.values()) {
+            if (categoryQueue.tasks.remove(o)) {
+                taskRemoved(categoryQueue);
+                return true;
             }
-        } finally {
-            lock.unlock();
         }
         return false;
     }
@@ -220,25 +399,15 @@ public class RoundRobinBlockingQueue<E> implements BlockingQueue<E> {
 
     @Override
     public int size() {
-        lock.lock();
-        try {
-            return categoryQueues.values().stream().map(queue -> queue.size())
-                    .reduce(0, Integer::sum);
-        } finally {
-            lock.unlock();
-        }
+        return Math.max(0, totalSize.get());
     }
 
     public int size(String category) {
-        lock.lock();
-        try {
-            if (!categoryQueues.containsKey(category)) {
-                return 0;
-            }
-            return categoryQueues.get(category).size();
-        } finally {
-            lock.unlock();
+        CategoryQueue<E> categoryQueue = categoryQueues.get(category);
+        if (categoryQueue == null) {
+            return 0;
         }
+        return Math.max(0, categoryQueue.size.get());
     }
 
     @Override
@@ -248,16 +417,11 @@ public class RoundRobinBlockingQueue<E> implements BlockingQueue<E> {
 
     @Override
     public E take() throws InterruptedException {
-        final ReentrantLock lock = this.lock;
-        lock.lockInterruptibly();
-        try {
-            while (size() == 0) {
-                notEmpty.await();
-            }
-            return getNext();
-        } finally {
-            lock.unlock();
+        E next;
+        while ((next = getNext()) == null) {
+            awaitNotEmpty(Long.MAX_VALUE);
         }
+        return next;
     }
 
     @Override
@@ -274,8 +438,8 @@ public class RoundRobinBlockingQueue<E> implements BlockingQueue<E> {
     public String toString() {
         StringBuilder builder = new StringBuilder();
         builder.append(this.getClass().getSimpleName()).append(": ");
-        for (Map.Entry<String, Deque<E>> category : categoryQueues.entrySet()) {
-            builder.append(category.getKey()).append(" with ").append(category.getValue().size())
+        for (Map.Entry<String, CategoryQueue<E>> category : categoryQueues.entrySet()) {
+            builder.append(category.getKey()).append(" with ").append(Math.max(0, category.getValue().size.get()))
                     .append(" Futures; ");
         }
         return builder.toString();
@@ -284,48 +448,139 @@ public class RoundRobinBlockingQueue<E> implements BlockingQueue<E> {
     /**
      * Get the next round robin Object
      *
-     * @return
+     * @return the next task or null if no task is queued
      */
     private E getNext() {
-        lock.lock();
-        try {
-            if (size() == 0) {
-                return null;
+        CategoryQueue<E> categoryQueue;
+        while ((categoryQueue = ring.pollFirst()) != null) {
+            if (atInFlightLimit(categoryQueue.category)) {
+                park(categoryQueue);
+                continue;
             }
-            if (currentIndex.get() >= categoryQueues.keySet().size()) {
-                currentIndex.set(0);
+
+            E val = categoryQueue.tasks.poll();
+            if (val != null) {
+                taskRemoved(categoryQueue);
+                if (val instanceof JobTask) {
+                    inFlight.computeIfAbsent(categoryQueue.category, key -> new AtomicInteger()).incrementAndGet();
+                }
             }
-            String currentContract =
-                    categoryQueues.keySet().stream().collect(Collectors.toList()).get(currentIndex.get());
-            Deque<E> queue = categoryQueues.get(currentContract);
-            E val = queue.poll();
-            if (queue.size() == 0) {
-                // No more requests so remove category. We don't have to increment index since we removed the item at the
-                // current index
-                categoryQueues.remove(currentContract);
+
+            if (categoryQueue.tasks.isEmpty()) {
+                categoryQueue.served = 0;
+                unschedule(categoryQueue);
+            } else if (val != null && ++categoryQueue.served < getWeight(categoryQueue.category)) {
+                // The category has not used up its weight so it stays at the front of the line. Tasks added while
+                // the category was out of the ring did not signal so wake another thread for the remaining tasks.
+                ring.offerFirst(categoryQueue);
+                signalNotEmpty(1);
             } else {
-                currentIndex.incrementAndGet();
+                // More requests so the category goes to the back of the line
+                categoryQueue.served = 0;
+                schedule(categoryQueue);
             }
-            return val;
-        } finally {
-            lock.unlock();
+
+            if (val != null) {
+                return val;
+            }
+        }
+        return null;
+    }
+
+    private boolean atInFlightLimit(String category) {
+        int limit = maxInFlight;
+        return limit > 0 && inFlight(category) >= limit;
+    }
+
+    private void schedule(CategoryQueue<E> categoryQueue) {
+        ring.offerLast(categoryQueue);
+        signalNotEmpty(1);
+    }
+
+    /**
+     * Set a category aside until one of its tasks is released. Every task of the category may have been
+     * released before it was marked as parked in which case it is put straight back in the ring.
+     */
+    private void park(CategoryQueue<E> categoryQueue) {
+        categoryQueue.parked.set(true);
+        if (!atInFlightLimit(categoryQueue.category)) {
+            unpark(categoryQueue);
+        }
+    }
+
+    private void unpark(CategoryQueue<E> categoryQueue) {
+        if (categoryQueue.parked.compareAndSet(true, false)) {
+            schedule(categoryQueue);
         }
     }
 
     private E peekNext() {
-        lock.lock();
-        try {
-            if (size() == 0) {
-                return null;
+        for (CategoryQueue<E> categoryQueue : ring) {
+            E val = categoryQueue.tasks.peek();
+            if (val != null) {
+                return val;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Take a category out of the ring. A task may have been added after the category was found to be empty
+     * but before it was marked as unscheduled, in which case the adding thread saw the category as scheduled
+     * and the category must be put back in the ring here.
+     */
+    private void unschedule(CategoryQueue<E> categoryQueue) {
+        categoryQueue.scheduled.set(false);
+        if (!categoryQueue.tasks.isEmpty() && categoryQueue.scheduled.compareAndSet(false, true)) {
+            schedule(categoryQueue);
+        }
+    }
+
+    /**
+     * Update counters after a task has been removed from a category and drop the category once it is empty
+     */
+    private void taskRemoved(CategoryQueue<E> categoryQueue) {
+        totalSize.decrementAndGet();
+        if (categoryQueue.size.decrementAndGet() <= 0) {
+            categoryQueues.computeIfPresent(categoryQueue.category,
+                    (key, existing) -> existing == categoryQueue && existing.tasks.isEmpty() ? null : existing);
+        }
+    }
+
+    private void signalNotEmpty(int added) {
+        if (waiters.get() > 0) {
+            lock.lock();
+            try {
+                if (added == 1) {
+                    notEmpty.signal();
+                } else {
+                    notEmpty.signalAll();
+                }
+            } finally {
+                lock.unlock();
             }
-            if (currentIndex.get() >= categoryQueues.keySet().size()) {
-                currentIndex.set(0);
+        }
+    }
+
+    /**
+     * Wait until a category may have been scheduled or the wait times out
+     *
+     * @param nanos - the maximum time to wait
+     * @return the time remaining to wait
+     */
+    private long awaitNotEmpty(long nanos) throws InterruptedException {
+        lock.lockInterruptibly();
+        waiters.incrementAndGet();
+        try {
+            // Checked after registering as a waiter so a category scheduled concurrently either is seen here or
+            // signals. Categories set aside at their in flight limit are not in the ring so do not wake waiters.
+            if (!ring.isEmpty()) {
+                return nanos;
             }
-            String currentContract =
-                    categoryQueues.keySet().stream().collect(Collectors.toList()).get(currentIndex.get());
-            return categoryQueues.get(currentContract).peek();
+            return notEmpty.awaitNanos(nanos);
         } finally {
+            waiters.decrementAndGet();
             lock.unlock();
         }
     }
-}
\ No newline at end of file
+}
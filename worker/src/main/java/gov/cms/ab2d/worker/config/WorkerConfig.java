@@ -17,7 +17,6 @@ import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import javax.sql.DataSource;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ThreadPoolExecutor;
 
@@ -40,37 +39,42 @@ public class WorkerConfig {
     private final int jobCorePoolSize;
     private final int jobMaxPoolSize;
     private final int jobQueueCapacity;
+    private final int pcpJobMaxInFlight;
+    private final int pcpSmallJobSize;
+    private final int pcpSmallJobWeight;
 
     public WorkerConfig(@Value("${pcp.core.pool.size}") int pcpCorePoolSize,
                         @Value("${job.core.pool.size}") int jobCorePoolSize,
                         @Value("${job.max.pool.size}") int jobMaxPoolSize,
-                        @Value("${job.queue.capacity}") int jobQueueCapacity) {
+                        @Value("${job.queue.capacity}") int jobQueueCapacity,
+                        @Value("${pcp.job.max.in.flight:0}") int pcpJobMaxInFlight,
+                        @Value("${pcp.job.small.size:10000}") int pcpSmallJobSize,
+                        @Value("${pcp.job.small.weight:4}") int pcpSmallJobWeight) {
         this.pcpCorePoolSize = pcpCorePoolSize;
         this.jobCorePoolSize = jobCorePoolSize;
         this.jobMaxPoolSize = jobMaxPoolSize;
         this.jobQueueCapacity = jobQueueCapacity;
+        this.pcpJobMaxInFlight = pcpJobMaxInFlight;
+        this.pcpSmallJobSize = pcpSmallJobSize;
+        this.pcpSmallJobWeight = pcpSmallJobWeight;
     }
 
     @Bean
-    public RoundRobinBlockingQueue eobClaimRequestsQueue() {
+    public RoundRobinBlockingQueue<Runnable> eobClaimRequestsQueue() {
         return new RoundRobinBlockingQueue<>();
     }
 
     @Bean
-    public Executor patientProcessorThreadPool(RoundRobinBlockingQueue eobClaimRequestsQueue) {
-        // Regretfully, no good way to supply a custom queue to ThreadPoolTaskExecutor
-        // other than by overriding createQueue
-        final ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor() {
-            @Override
-            protected BlockingQueue<Runnable> createQueue(int queueCapacity) {
-                return eobClaimRequestsQueue;
-            }
-        };
+    public JobScopedThreadPoolTaskExecutor patientProcessorThreadPool(RoundRobinBlockingQueue<Runnable> eobClaimRequestsQueue) {
+        final JobScopedThreadPoolTaskExecutor taskExecutor = new JobScopedThreadPoolTaskExecutor(eobClaimRequestsQueue);
         taskExecutor.setCorePoolSize(pcpCorePoolSize);
         // Initially we lock the pool at the minimum size; auto-scaling is done
         // by a separate service.
         taskExecutor.setMaxPoolSize(pcpCorePoolSize);
         taskExecutor.setThreadNamePrefix("pcp-");
+        taskExecutor.setMaxInFlightPerJob(pcpJobMaxInFlight);
+        taskExecutor.setSmallJobSize(pcpSmallJobSize);
+        taskExecutor.setSmallJobWeight(pcpSmallJobWeight);
         return taskExecutor;
     }
 
@@ -85,6 +89,34 @@ public class WorkerConfig {
         return taskExecutor;
     }
 
+    /**
+     * Threads that load the next pages of coverage from the database while a job works on the current page.
+     * At most one thread per running job so the pool matches the main job pool.
+     */
+    @Bean
+    public Executor coveragePagingPool() {
+        final ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+        taskExecutor.setCorePoolSize(jobCorePoolSize);
+        taskExecutor.setMaxPoolSize(jobMaxPoolSize);
+        taskExecutor.setQueueCapacity(0);
+        taskExecutor.setThreadNamePrefix("cpp-");
+        return taskExecutor;
+    }
+
+    /**
+     * Threads that write a job's NDJSON files in parallel, one thread per shard of every running job.
+     * Shards are never queued since a job would block writing to a shard that has no thread.
+     */
+    @Bean
+    public Executor ndjsonShardPool(@Value("${job.file.shards:1}") int shards) {
+        final ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+        taskExecutor.setCorePoolSize(0);
+        taskExecutor.setMaxPoolSize(jobMaxPoolSize * shards);
+        taskExecutor.setQueueCapacity(0);
+        taskExecutor.setThreadNamePrefix("ndjson-");
+        return taskExecutor;
+    }
+
     @Bean
     public LockRepository lockRepository(DataSource dataSource) {
         final DefaultLockRepository defaultLockRepository = new DefaultLockRepository(dataSource);
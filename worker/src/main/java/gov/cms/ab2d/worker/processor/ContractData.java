@@ -5,26 +5,99 @@ import gov.cms.ab2d.fhir.FhirVersion;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Tracks the requests in motion for a single contract. Requests are registered when queued and pushed onto
+ * a completion queue by the thread that finishes them so the contract thread only ever touches finished requests
+ * instead of scanning every outstanding handle.
+ */
 @RequiredArgsConstructor
 @Getter
 public class ContractData {
 
     private final Job job;
     private final StreamHelper streamHelper;
-    private final List<Future<EobSearchResult>> eobRequestHandles = new LinkedList<>();
 
-    public void addEobRequestHandle(Future<EobSearchResult> eobRequestHandle) {
+    // Requests queued or running which have not yet been handled by the contract thread
+    private final Set<Future<EobSearchResult>> eobRequestHandles = new HashSet<>();
+
+    // Requests which have finished (successfully, exceptionally, or by cancellation) waiting to be handled
+    private final BlockingQueue<Future<EobSearchResult>> completedRequests = new LinkedBlockingQueue<>();
+
+    // Last time the job was checked for cancellation in milliseconds
+    private long lastCancellationCheck;
+
+    public void addEobRequestHandle(CompletableFuture<EobSearchResult> eobRequestHandle) {
         eobRequestHandles.add(eobRequestHandle);
+
+        // Runs on the thread completing the request, or immediately if the request already finished
+        eobRequestHandle.whenComplete((result, throwable) -> completedRequests.add(eobRequestHandle));
     }
 
     public boolean remainingRequestHandles() {
         return !eobRequestHandles.isEmpty();
     }
 
+    /**
+     * Wait until at least one request has finished or the timeout has passed
+     *
+     * @param timeout maximum time to wait
+     * @param unit unit of the timeout
+     * @return true if a finished request is ready to be handled
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitCompletedRequest(long timeout, TimeUnit unit) throws InterruptedException {
+        if (!completedRequests.isEmpty()) {
+            return true;
+        }
+
+        Future<EobSearchResult> completed = completedRequests.poll(timeout, unit);
+        if (completed == null) {
+            return false;
+        }
+
+        // Put the request back so it is handled along with any others that finished in the meantime
+        completedRequests.add(completed);
+        return true;
+    }
+
+    /**
+     * Remove all finished requests from the completion queue and stop tracking them as in motion
+     *
+     * @return the finished requests in the order they completed
+     */
+    public List<Future<EobSearchResult>> drainCompletedRequests() {
+        List<Future<EobSearchResult>> completed = new ArrayList<>(completedRequests.size());
+        completedRequests.drainTo(completed);
+        completed.forEach(eobRequestHandles::remove);
+        return completed;
+    }
+
+    /**
+     * Check whether enough time has passed since the last cancellation check and if so reset the timer
+     *
+     * @param frequency minimum milliseconds between checks
+     * @return true if the job should be checked for cancellation now
+     */
+    public boolean isCancellationCheckDue(long frequency) {
+        long now = System.currentTimeMillis();
+        if (now - lastCancellationCheck < frequency) {
+            return false;
+        }
+
+        lastCancellationCheck = now;
+        return true;
+    }
+
     public FhirVersion getFhirVersion() {
         return job.getFhirVersion();
     }
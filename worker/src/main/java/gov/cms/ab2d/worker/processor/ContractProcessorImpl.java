@@ -10,8 +10,9 @@ import gov.cms.ab2d.common.util.Constants;
 import gov.cms.ab2d.eventlogger.LogManager;
 import gov.cms.ab2d.eventlogger.events.ErrorEvent;
 import gov.cms.ab2d.fhir.FhirVersion;
-import gov.cms.ab2d.worker.config.RoundRobinBlockingQueue;
+import gov.cms.ab2d.worker.config.JobScopedExecutor;
 import gov.cms.ab2d.worker.processor.coverage.CoverageDriver;
+import gov.cms.ab2d.worker.processor.coverage.CoveragePrefetcher;
 import gov.cms.ab2d.worker.service.JobChannelService;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.exception.ExceptionUtils;
@@ -25,11 +26,16 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static gov.cms.ab2d.common.model.JobStatus.CANCELLED;
+import static gov.cms.ab2d.common.service.JobService.ZIPFORMAT;
 import static gov.cms.ab2d.common.util.Constants.CONTRACT_LOG;
 import static gov.cms.ab2d.common.util.EventUtils.getOrganization;
 import static gov.cms.ab2d.fhir.BundleUtils.EOB;
@@ -39,11 +45,21 @@ import static net.logstash.logback.argument.StructuredArguments.keyValue;
 @Service
 @SuppressWarnings({"PMD.TooManyStaticImports", "java:S2142"}) //java:S2142: "InterruptedException" should not be ignored
 public class ContractProcessorImpl implements ContractProcessor {
-    private static final int SLEEP_DURATION = 250;
+    // Maximum time to wait for a request to finish before checking on the job again
+    private static final long MAX_COMPLETION_WAIT = 250;
+    // Minimum time between checks of the database for whether the job has been cancelled
+    private static final long CANCELLATION_CHECK_FREQUENCY = 250;
 
     @Value("${job.file.rollover.ndjson:200}")
     private long ndjsonRollOver;
 
+    @Value("${job.file.rollover.zip:200}")
+    private long zipRollOver;
+
+    // Number of NDJSON files written in parallel per job, one means a single file at a time
+    @Value("${job.file.shards:1}")
+    private int ndjsonShards;
+
     @Value("${file.try.lock.timeout}")
     private int tryLockTimeout;
 
@@ -53,28 +69,45 @@ public class ContractProcessorImpl implements ContractProcessor {
     @Value("${eob.job.patient.queue.page.size}")
     private int eobJobPatientQueuePageSize;
 
+    // Number of pages of beneficiaries loaded from the database ahead of the job, zero to load pages as needed
+    @Value("${eob.job.patient.queue.prefetch.pages:2}")
+    private int eobJobPatientQueuePrefetchPages;
+
+    // Read all pages of beneficiaries through one database cursor, requires prefetching to be turned on
+    @Value("${eob.job.patient.queue.streaming:false}")
+    private boolean eobJobPatientQueueStreaming;
+
     private final JobRepository jobRepository;
     private final CoverageDriver coverageDriver;
     private final PatientClaimsProcessor patientClaimsProcessor;
     private final LogManager eventLogger;
-    private final RoundRobinBlockingQueue<PatientClaimsRequest> eobClaimRequestsQueue;
+    private final JobScopedExecutor patientProcessorExecutor;
     private final JobChannelService jobChannelService;
     private final JobProgressService jobProgressService;
+    private final Executor coveragePagingPool;
+    private final Executor ndjsonShardPool;
 
+    /**
+     * Spring auto-wiring is happening here. Do not change the coveragePagingPool or ndjsonShardPool parameter names.
+     */
     public ContractProcessorImpl(JobRepository jobRepository,
                                  CoverageDriver coverageDriver,
                                  PatientClaimsProcessor patientClaimsProcessor,
                                  LogManager eventLogger,
-                                 RoundRobinBlockingQueue<PatientClaimsRequest> eobClaimRequestsQueue,
+                                 JobScopedExecutor patientProcessorExecutor,
                                  JobChannelService jobChannelService,
-                                 JobProgressService jobProgressService) {
+                                 JobProgressService jobProgressService,
+                                 Executor coveragePagingPool,
+                                 Executor ndjsonShardPool) {
         this.jobRepository = jobRepository;
         this.coverageDriver = coverageDriver;
         this.patientClaimsProcessor = patientClaimsProcessor;
         this.eventLogger = eventLogger;
-        this.eobClaimRequestsQueue = eobClaimRequestsQueue;
+        this.patientProcessorExecutor = patientProcessorExecutor;
         this.jobChannelService = jobChannelService;
         this.jobProgressService = jobProgressService;
+        this.coveragePagingPool = coveragePagingPool;
+        this.ndjsonShardPool = ndjsonShardPool;
     }
 
     /**
@@ -82,8 +115,9 @@ public class ContractProcessorImpl implements ContractProcessor {
      * loaded from our database, queued for a thread pool to process, and the results processed and written out.
      *
      * Under the hood all of this is done by paging through beneficiaries. We queue {@link #eobJobPatientQueuePageSize}
-     * beneficiaries at a time and then check to see what requests have finished before attempting
-     * to queue more beneficiaries.
+     * beneficiaries at a time and then handle whatever requests have finished before attempting
+     * to queue more beneficiaries. Finished requests are pushed onto a completion queue by the threads processing
+     * them so results are written out as soon as they are available instead of on a polling interval.
      *
      * Steps
      *      - Calculate number of beneficiaries expected to process for the job
@@ -111,9 +145,11 @@ public class ContractProcessorImpl implements ContractProcessor {
         jobChannelService.sendUpdate(job.getJobUuid(), JobMeasure.PATIENTS_EXPECTED, numBenes);
         log.info("Contract [{}] has [{}] Patients", contractNumber, numBenes);
 
+        // Small contracts get a larger share of the patient processor threads
+        patientProcessorExecutor.startJob(job.getJobUuid(), numBenes);
+
         List<JobOutput> jobOutputs = new ArrayList<>();
-        try (StreamHelper helper = new TextStreamHelperImpl(outputDirPath, contractNumber, getRollOverThreshold(), tryLockTimeout,
-                eventLogger, job)) {
+        try (StreamHelper helper = createStreamHelper(outputDirPath, job)) {
 
             ContractData contractData = new ContractData(job, helper);
             loadEobRequests(contractData);
@@ -139,6 +175,8 @@ public class ContractProcessorImpl implements ContractProcessor {
             log.error("Unable to open output file");
         } catch (InterruptedException ex) {
             log.error("interrupted while processing job for contract");
+        } finally {
+            patientProcessorExecutor.finishJob(job.getJobUuid());
         }
 
         return jobOutputs;
@@ -149,8 +187,12 @@ public class ContractProcessorImpl implements ContractProcessor {
      * configurable. At the end of loading all requests, the number of requests loaded is compared to the expected
      * number and the job immediately failed if not equal.
      *
+     * Pages are loaded from the database in the background up to {@link #eobJobPatientQueuePrefetchPages} pages
+     * ahead so the next page is usually ready as soon as there is room in the queue. While a page is still loading
+     * finished requests continue to be handled.
+     *
      * Steps:
-     *      - load a page of beneficiaries from the database
+     *      - take a page of beneficiaries loaded from the database
      *      - create a request per patient and queue each request
      *      - update the progress tracker with the number of patients added
      *      - check if the job has been cancelled
@@ -163,29 +205,30 @@ public class ContractProcessorImpl implements ContractProcessor {
         String jobUuid = contractData.getJob().getJobUuid();
         Contract contract = contractData.getJob().getContract();
 
-        // Handle first page of beneficiaries and then enter loop
-        CoveragePagingResult current = coverageDriver.pageCoverage(new CoveragePagingRequest(eobJobPatientQueuePageSize,
-                null, contract, contractData.getJob().getCreatedAt()));
-        loadRequestBatch(contractData, current);
-        jobChannelService.sendUpdate(jobUuid, JobMeasure.PATIENT_REQUEST_QUEUED, current.size());
-
-        // Do not replace with for each, continue is meant to force patients to wait to be queued
-        //noinspection WhileLoopReplaceableByForEach
-        while (current.getNextRequest().isPresent()) {
-
-            if (eobClaimRequestsQueue.size(jobUuid) > eobJobPatientQueueMaxSize) {
-                // Wait for queue to empty out some before adding more
-                //noinspection BusyWait
-                Thread.sleep(1000);
-                continue;
-            }
+        CoveragePagingRequest firstRequest = new CoveragePagingRequest(eobJobPatientQueuePageSize,
+                null, contract, contractData.getJob().getCreatedAt());
 
-            // Queue a batch of patients
-            current = coverageDriver.pageCoverage(current.getNextRequest().get());
-            loadRequestBatch(contractData, current);
-            jobChannelService.sendUpdate(jobUuid, JobMeasure.PATIENT_REQUEST_QUEUED, current.size());
+        try (CoveragePrefetcher pages = new CoveragePrefetcher(coverageDriver, firstRequest,
+                coveragePagingPool, eobJobPatientQueuePrefetchPages, eobJobPatientQueueStreaming)) {
 
-            processFinishedRequests(contractData);
+            while (pages.hasNext()) {
+
+                if (patientProcessorExecutor.getJobTaskCounts(jobUuid).getQueued() > eobJobPatientQueueMaxSize) {
+                    // Wait for queue to empty out some before adding more, handling results as they finish
+                    contractData.awaitCompletedRequest(MAX_COMPLETION_WAIT, TimeUnit.MILLISECONDS);
+                    processFinishedRequests(contractData);
+                    continue;
+                }
+
+                // Queue a batch of patients if the page has been loaded
+                CoveragePagingResult current = pages.poll(MAX_COMPLETION_WAIT, TimeUnit.MILLISECONDS);
+                if (current != null) {
+                    loadRequestBatch(contractData, current);
+                    jobChannelService.sendUpdate(jobUuid, JobMeasure.PATIENT_REQUEST_QUEUED, current.size());
+                }
+
+                processFinishedRequests(contractData);
+            }
         }
 
         // Verify that the number of benes requested matches the number expected from the database and fail
@@ -201,29 +244,40 @@ public class ContractProcessorImpl implements ContractProcessor {
     }
 
     /**
-     * For each request queue a {@link org.springframework.scheduling.annotation.Async} callable and record
-     * that callable as in progress.
+     * Create a request for every beneficiary in the page, queue the whole page for the patient processor
+     * thread pool in one step, and record each request as in progress.
+     *
+     * The executor maintains multiple distinct queues, one for each job running, and offers guarantees that jobs
+     * are served equally.
      *
      * @param contractData object containing list of in progress requests
      * @param result the page of beneficiaries that need requests to be created for them
      */
     private void loadRequestBatch(ContractData contractData, CoveragePagingResult result) {
+        Job job = contractData.getJob();
 
+        List<Callable<EobSearchResult>> tasks = new ArrayList<>(result.getCoverageSummaries().size());
         for (CoverageSummary summary : result.getCoverageSummaries()) {
-            Future<EobSearchResult> requestFuture = queuePatientClaimsRequest(summary, contractData.getJob());
+            PatientClaimsRequest request = createPatientClaimsRequest(summary, job);
+            tasks.add(() -> patientClaimsProcessor.process(request));
+        }
 
+        for (CompletableFuture<EobSearchResult> requestFuture : patientProcessorExecutor.submitAll(job.getJobUuid(), tasks)) {
             contractData.addEobRequestHandle(requestFuture);
         }
     }
 
     /**
-     * After all requests are queued wait until all requests in queue are finished
+     * After all requests are queued wait until all requests in queue are finished. Each finished request
+     * is handled as soon as it completes. The wait is bounded so cancellation is still checked if no request finishes.
+     *
      * @param contractData object containing list of remaining requests
+     * @throws InterruptedException if interrupted while waiting for requests to finish
      */
-    private void processRemainingRequests(ContractData contractData) {
+    private void processRemainingRequests(ContractData contractData) throws InterruptedException {
 
         while (contractData.remainingRequestHandles()) {
-            sleep();
+            contractData.awaitCompletedRequest(MAX_COMPLETION_WAIT, TimeUnit.MILLISECONDS);
 
             processFinishedRequests(contractData);
         }
@@ -232,10 +286,10 @@ public class ContractProcessorImpl implements ContractProcessor {
     private void processFinishedRequests(ContractData contractData) {
         String jobUuid = contractData.getJob().getJobUuid();
 
-        if (hasJobBeenCancelled(jobUuid)) {
+        if (contractData.isCancellationCheckDue(CANCELLATION_CHECK_FREQUENCY) && hasJobBeenCancelled(jobUuid)) {
             log.warn("Job [{}] has been cancelled. Attempting to stop processing the job shortly ... ",
                     jobUuid);
-            cancelFuturesInQueue(contractData.getEobRequestHandles());
+            dropQueuedRequests(contractData.getJob().getJobUuid());
             final String errMsg = "Job was cancelled while it was being processed";
             log.warn("{}", errMsg);
             throw new JobCancelledException(errMsg);
@@ -246,44 +300,55 @@ public class ContractProcessorImpl implements ContractProcessor {
     }
 
     /**
-     * Create a {@link PatientClaimsRequest} and queue the request into a round robin queue used by the eob thread pool.
-     *
-     * The queue maintains multiple distinct queues, one for each job running, and offers guarantees that jobs
-     * are served equally.
+     * Create a {@link PatientClaimsRequest} for a single patient.
      *
      * On using new-relic tokens with async calls
      * See https://docs.newrelic.com/docs/agents/java-agent/async-instrumentation/java-agent-api-asynchronous-applications
      *
      * @param patient - the patient to process
      * @param job - all things about the job including the contract data information
-     * @return a pointer to the queued request which will complete or be cancelled at some point.
+     * @return the request to run on the patient processor thread pool
      */
-    private Future<EobSearchResult> queuePatientClaimsRequest(CoverageSummary patient, Job job) {
+    private PatientClaimsRequest createPatientClaimsRequest(CoverageSummary patient, Job job) {
         final Token token = NewRelic.getAgent().getTransaction().getToken();
 
         Contract contract = job.getContract();
         assert contract != null;
 
-        // Using a ThreadLocal to communicate contract number to RoundRobinBlockingQueue
-        // could be viewed as a hack by many; but on the other hand it saves us from writing
-        // tons of extra code.
-        var jobUuid = job.getJobUuid();
-        RoundRobinBlockingQueue.CATEGORY_HOLDER.set(jobUuid);
-        try {
-            var patientClaimsRequest = new PatientClaimsRequest(patient,
-                    contract.getAttestedOn(),
-                    job.getSince(),
-                    getOrganization(job),
-                    jobUuid,
-                    contract.getContractNumber(),
-                    contract.getContractType(),
-                    token,
-                    job.getFhirVersion());
-            return patientClaimsProcessor.process(patientClaimsRequest);
+        return new PatientClaimsRequest(patient,
+                contract.getAttestedOn(),
+                job.getSince(),
+                getOrganization(job),
+                job.getJobUuid(),
+                contract.getContractNumber(),
+                contract.getContractType(),
+                token,
+                job.getFhirVersion());
+    }
 
-        } finally {
-            RoundRobinBlockingQueue.CATEGORY_HOLDER.remove();
+    /**
+     * Create the stream helper used to write out the job's files. If the job requested zip output the files are
+     * compressed as they are written. Otherwise if more than one shard is configured files are written in parallel.
+     *
+     * @param outputDirPath - the directory to write files to
+     * @param job - the job being written out
+     * @return the stream helper
+     * @throws IOException if the first file cannot be created
+     */
+    private StreamHelper createStreamHelper(Path outputDirPath, Job job) throws IOException {
+        String contractNumber = job.getContract().getContractNumber();
+        if (ZIPFORMAT.equalsIgnoreCase(job.getOutputFormat())) {
+            return new ZipStreamHelperImpl(outputDirPath, contractNumber, zipRollOver * Constants.ONE_MEGA_BYTE,
+                    tryLockTimeout, eventLogger, job);
         }
+
+        if (ndjsonShards > 1) {
+            return new ShardedStreamHelperImpl(outputDirPath, contractNumber, getRollOverThreshold(), tryLockTimeout,
+                    eventLogger, job, ndjsonShards, ndjsonShardPool);
+        }
+
+        return new TextStreamHelperImpl(outputDirPath, contractNumber, getRollOverThreshold(), tryLockTimeout,
+                eventLogger, job);
     }
 
     /**
@@ -296,17 +361,18 @@ public class ContractProcessorImpl implements ContractProcessor {
     }
 
     /**
-     * Cancel threads
+     * Drop all requests for a job still waiting in the queue
      *
-     * @param eobRequestHandles - all of the handles associated with a job
+     * @param jobUuid - the job whose requests should be dropped
      */
-    private void cancelFuturesInQueue(List<Future<EobSearchResult>> eobRequestHandles) {
+    private void dropQueuedRequests(String jobUuid) {
 
-        // cancel any futures that have not started processing and are waiting in the queue.
-        eobRequestHandles.parallelStream().forEach(future -> future.cancel(false));
+        // drop every request for the job that has not started processing and is waiting in the queue.
+        int dropped = patientProcessorExecutor.cancelQueued(jobUuid);
+        log.info("Dropped {} queued requests for job {}", dropped, jobUuid);
 
-        //At this point, there may be a few futures that are already in progress.
-        //But all the futures that are not yet in progress would be cancelled.
+        //At this point, there may be a few requests that are already in progress.
+        //But none of the requests that are not yet in progress will be run.
     }
 
     /**
@@ -323,34 +389,33 @@ public class ContractProcessorImpl implements ContractProcessor {
     }
 
     /**
-     * For each future, check to see if it's done. If it is, remove it from the list of future handles
-     * and increment the number processed
+     * Take every future that has finished since the last call off of the completion queue, write out its results,
+     * and increment the number processed. Only finished futures are visited so the cost is proportional to the
+     * number of completed requests and not the number in motion.
      *
      * @param contractData set of contract data
      */
     private void processHandles(ContractData contractData) {
-        var iterator = contractData.getEobRequestHandles().iterator();
-
         ProgressTrackerUpdate updateTracker = new ProgressTrackerUpdate();
 
-        while (iterator.hasNext()) {
-            var future = iterator.next();
-            if (future.isDone()) {
-                updateTracker.incPatientProcessCount();
+        for (Future<EobSearchResult> future : contractData.drainCompletedRequests()) {
+            updateTracker.incPatientProcessCount();
 
-                // If the request completed successfully there will be results to process
-                EobSearchResult result = processFuture(updateTracker, future);
+            // If the request completed successfully there will be results to process
+            EobSearchResult result = processFuture(updateTracker, future);
 
-                if (result == null) {
-                    log.debug("ignoring empty results because pulling eobs failed");
-                } else if (result.getEobs() == null) {
-                    log.error("result returned but the eob list is null which should not be possible");
-                } else if (!result.getEobs().isEmpty()) {
+            if (result == null) {
+                log.debug("ignoring empty results because pulling eobs failed");
+            } else if (result.isEncoded()) {
+                if (result.getEobsFetched() > 0) {
                     updateTracker.incPatientsWithEobsCount();
-                    writeOutResource(contractData, updateTracker, result.getEobs());
+                    writeOutEncoded(contractData, updateTracker, result);
                 }
-
-                iterator.remove();
+            } else if (result.getEobs() == null) {
+                log.error("result returned but the eob list is null which should not be possible");
+            } else if (!result.getEobs().isEmpty()) {
+                updateTracker.incPatientsWithEobsCount();
+                writeOutResource(contractData, updateTracker, result.getEobs());
             }
         }
 
@@ -387,9 +452,9 @@ public class ContractProcessorImpl implements ContractProcessor {
 
     @Trace(metricName = "EOBWriteToFile", dispatcher = true)
     private void writeOutResource(ContractData contractData, ProgressTrackerUpdate updateTracker, List<IBaseResource> eobs) {
-        var jsonParser = contractData.getFhirVersion().getJsonParser().setPrettyPrint(false);
+        FhirVersion fhirVersion = contractData.getFhirVersion();
 
-        String payload = "";
+        IBaseResource current = null;
         try {
 
             updateTracker.addEobFetchedCount(eobs.size());
@@ -397,14 +462,13 @@ public class ContractProcessorImpl implements ContractProcessor {
             int eobsWritten = 0;
             int eobsError = 0;
             for (IBaseResource resource : eobs) {
+                current = resource;
                 try {
-                    payload = jsonParser.encodeResourceToString(resource) + System.lineSeparator();
-                    contractData.getStreamHelper()
-                            .addData(payload.getBytes(StandardCharsets.UTF_8));
+                    // Encoded directly into the stream helper's reused buffer
+                    contractData.getStreamHelper().addResource(fhirVersion, resource);
                     eobsWritten++;
                 } catch (Exception e) {
-                    log.warn("Encountered exception while processing job resources: {}", e.getClass());
-                    writeExceptionToContractErrorFile(contractData, payload, e);
+                    writeResourceError(contractData, resource, e);
                     eobsError++;
                 }
             }
@@ -417,7 +481,7 @@ public class ContractProcessorImpl implements ContractProcessor {
             }
         } catch (Exception e) {
             try {
-                writeExceptionToContractErrorFile(contractData, payload, e);
+                writeExceptionToContractErrorFile(contractData, encodeForErrorFile(fhirVersion, current), e);
             } catch (IOException e1) {
                 //should not happen - original exception will be thrown
                 log.error("error during exception handling to write error record");
@@ -427,6 +491,75 @@ public class ContractProcessorImpl implements ContractProcessor {
         }
     }
 
+    /**
+     * Append claims already encoded by the patient processor thread. Claims which failed to encode are written to
+     * the error file as if they had failed to encode on this thread and are counted as errors along with claims
+     * which fail to be written.
+     */
+    @Trace(metricName = "EOBWriteToFile", dispatcher = true)
+    private void writeOutEncoded(ContractData contractData, ProgressTrackerUpdate updateTracker, EobSearchResult result) {
+        updateTracker.addEobFetchedCount(result.getEobsFetched());
+
+        int eobsWritten = 0;
+        int eobsError = result.getEncodingErrors();
+        for (EobSearchResult.EncodingFailure failure : result.getEncodingFailures()) {
+            log.warn("Encountered exception while encoding resource {}", failure.getResourceId());
+            try {
+                writeResourceError(contractData, failure.getResource(), failure.getException());
+            } catch (IOException e1) {
+                log.error("error during exception handling to write error record");
+            }
+        }
+
+        for (byte[] encoded : result.getEncodedEobs()) {
+            try {
+                contractData.getStreamHelper().addData(encoded);
+                eobsWritten++;
+            } catch (Exception e) {
+                log.warn("Encountered exception while processing job resources: {}", e.getClass());
+                try {
+                    writeExceptionToContractErrorFile(contractData, new String(encoded, StandardCharsets.UTF_8), e);
+                } catch (IOException e1) {
+                    log.error("error during exception handling to write error record");
+                }
+                eobsError++;
+            }
+        }
+
+        updateTracker.addEobProcessedCount(eobsWritten);
+
+        // Log that the patient failed but do not log how many eobs failed
+        if (eobsError != 0) {
+            updateTracker.incPatientFailureCount();
+        }
+    }
+
+    /**
+     * Write the error record for a claim that could not be encoded or written
+     */
+    private void writeResourceError(ContractData contractData, IBaseResource resource, Exception e) throws IOException {
+        log.warn("Encountered exception while processing job resources: {}", e.getClass());
+        writeExceptionToContractErrorFile(contractData, encodeForErrorFile(contractData.getFhirVersion(), resource), e);
+    }
+
+    /**
+     * Only used when writing a resource has already failed so the cost of creating a string is acceptable here.
+     *
+     * @return the resource as a line of NDJSON or an empty string if the resource cannot be encoded
+     */
+    private String encodeForErrorFile(FhirVersion fhirVersion, IBaseResource resource) {
+        if (resource == null) {
+            return "";
+        }
+
+        try {
+            return fhirVersion.getJsonParser().setPrettyPrint(false).encodeResourceToString(resource) + System.lineSeparator();
+        } catch (Exception e) {
+            log.error("unable to encode resource for error file");
+            return "";
+        }
+    }
+
     void writeExceptionToContractErrorFile(ContractData contractData, String data, Exception e) throws IOException {
         var errMsg = ExceptionUtils.getRootCauseMessage(e);
         FhirVersion fhirVersion = contractData.getFhirVersion();
@@ -460,7 +593,7 @@ public class ContractProcessorImpl implements ContractProcessor {
         ProgressTracker progressTracker = jobProgressService.getStatus(contractData.getJob().getJobUuid());
 
         if (progressTracker.isErrorThresholdExceeded()) {
-            cancelFuturesInQueue(contractData.getEobRequestHandles());
+            dropQueuedRequests(contractData.getJob().getJobUuid());
             String description = progressTracker.getPatientFailureCount() + " out of " + progressTracker.getTotalCount() + " records failed. Stopping job";
             eventLogger.log(new ErrorEvent(null, progressTracker.getJobUuid(),
                     ErrorEvent.ErrorType.TOO_MANY_SEARCH_ERRORS, description));
@@ -487,15 +620,4 @@ public class ContractProcessorImpl implements ContractProcessor {
         jobOutput.setFileLength(streamOutput.getFileLength());
         return jobOutput;
     }
-
-    /**
-     * Tell the thread to sleep
-     */
-    private void sleep() {
-        try {
-            Thread.sleep(SLEEP_DURATION);
-        } catch (InterruptedException e) {
-            log.warn("interrupted exception in thread.sleep(). Ignoring");
-        }
-    }
 }
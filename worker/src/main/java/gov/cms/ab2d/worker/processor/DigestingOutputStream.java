@@ -0,0 +1,58 @@
+package gov.cms.ab2d.worker.processor;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+
+/**
+ * Computes the SHA-256 checksum and length of everything written to a file as it is written. Placed directly
+ * above the file stream so the file never has to be read back to produce a {@link StreamOutput}.
+ */
+class DigestingOutputStream extends FilterOutputStream {
+
+    private final MessageDigest digest = DigestUtils.getSha256Digest();
+
+    private long length;
+
+    private String checksum;
+
+    DigestingOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        digest.update((byte) b);
+        length++;
+    }
+
+    /**
+     * Overridden because {@link FilterOutputStream} writes arrays one byte at a time
+     */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        digest.update(b, off, len);
+        length += len;
+    }
+
+    long getLength() {
+        return length;
+    }
+
+    /**
+     * Hex encoded checksum of all bytes written. Only call once all bytes have been written, after the
+     * first call the checksum is fixed.
+     */
+    String getChecksum() {
+        if (checksum == null) {
+            checksum = Hex.encodeHexString(digest.digest());
+        }
+        return checksum;
+    }
+}
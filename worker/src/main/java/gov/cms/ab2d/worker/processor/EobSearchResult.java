@@ -1,15 +1,87 @@
 package gov.cms.ab2d.worker.processor;
 
 import lombok.Getter;
-import lombok.RequiredArgsConstructor;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 
+import java.util.Collections;
 import java.util.List;
 
-@RequiredArgsConstructor
+/**
+ * Claims found for a single patient. Depending on configuration the claims are either returned as resources
+ * to be encoded by the contract thread or already encoded as lines of NDJSON by the patient processor thread.
+ */
 @Getter
 public class EobSearchResult {
     private final String jobId;
     private final String contractNum;
+
+    // Claims as resources, null if the claims were already encoded
     private final List<IBaseResource> eobs;
+
+    // Claims each encoded as a single line of NDJSON, null if the claims were not encoded
+    private final List<byte[]> encodedEobs;
+
+    // Number of claims found before encoding
+    private final int eobsFetched;
+
+    // Claims that could not be encoded, empty if the claims were not encoded
+    private final List<EncodingFailure> encodingFailures;
+
+    /**
+     * A claim the patient processor thread failed to encode. The contract thread writes the failure to the
+     * error file the same way it does when it fails to encode a claim itself.
+     */
+    @Getter
+    public static class EncodingFailure {
+        private final IBaseResource resource;
+        private final Exception exception;
+
+        public EncodingFailure(IBaseResource resource, Exception exception) {
+            this.resource = resource;
+            this.exception = exception;
+        }
+
+        public String getResourceId() {
+            return resource.getIdElement() == null ? null : resource.getIdElement().getIdPart();
+        }
+    }
+
+    public EobSearchResult(String jobId, String contractNum, List<IBaseResource> eobs) {
+        this(jobId, contractNum, eobs, null, eobs == null ? 0 : eobs.size(), Collections.emptyList());
+    }
+
+    private EobSearchResult(String jobId, String contractNum, List<IBaseResource> eobs, List<byte[]> encodedEobs,
+                            int eobsFetched, List<EncodingFailure> encodingFailures) {
+        this.jobId = jobId;
+        this.contractNum = contractNum;
+        this.eobs = eobs;
+        this.encodedEobs = encodedEobs;
+        this.eobsFetched = eobsFetched;
+        this.encodingFailures = encodingFailures;
+    }
+
+    /**
+     * Create a result for claims that were encoded by the patient processor thread
+     *
+     * @param jobId - the job the claims were found for
+     * @param contractNum - the contract the claims were found for
+     * @param encodedEobs - the claims that were successfully encoded
+     * @param eobsFetched - the number of claims found
+     * @param encodingFailures - the claims that could not be encoded
+     */
+    public static EobSearchResult encoded(String jobId, String contractNum, List<byte[]> encodedEobs,
+                                          int eobsFetched, List<EncodingFailure> encodingFailures) {
+        return new EobSearchResult(jobId, contractNum, null, encodedEobs, eobsFetched, encodingFailures);
+    }
+
+    public boolean isEncoded() {
+        return encodedEobs != null;
+    }
+
+    /**
+     * Number of claims that could not be encoded
+     */
+    public int getEncodingErrors() {
+        return encodingFailures.size();
+    }
 }
@@ -4,6 +4,7 @@ import com.newrelic.api.agent.NewRelic;
 import gov.cms.ab2d.common.model.Contract;
 import gov.cms.ab2d.filter.ExplanationOfBenefitTrimmer;
 import gov.cms.ab2d.filter.FilterEob;
+import gov.cms.ab2d.filter.FilterOutByDate;
 import gov.cms.ab2d.worker.util.FhirUtils;
 import gov.cms.ab2d.fhir.BundleUtils;
 import gov.cms.ab2d.fhir.EobUtils;
@@ -34,6 +35,12 @@ public class PatientClaimsCollector {
     private final Date attestationDate;
     private final Date earliestDate;
 
+    // Enrollment is stored as a month bitmask while a request waits. FilterEob from ab2d-filters only accepts
+    // DateRange objects, so a patient with claims still allocates one DateRange, and its Dates, per span of
+    // consecutive enrolled months. They are built once per patient rather than per claim, and only once a claim
+    // has to be filtered. Filtering on the bitmask directly needs a change to ab2d-filters and is deferred.
+    private List<FilterOutByDate.DateRange> dateRanges;
+
     private int bundles;
     private int rawEobs;
 
@@ -88,11 +95,19 @@ public class PatientClaimsCollector {
 
         rawEobs += bundleEntries.size();
 
+        if (bundleEntries.isEmpty()) {
+            return;
+        }
+
+        if (dateRanges == null) {
+            dateRanges = claimsRequest.getCoverageSummary().getDateRanges();
+        }
+
         // Perform filtering actions
         BundleUtils.getEobResources(bundleEntries).stream()
                 // Filter by date unless contract is an old synthetic data contract, part D or attestation time is null
                 // Filter out data
-                .filter(resource -> FilterEob.filter(resource, claimsRequest.getCoverageSummary().getDateRanges(), earliestDate,
+                .filter(resource -> FilterEob.filter(resource, dateRanges, earliestDate,
                             attestationDate, claimsRequest.getContractType() == Contract.ContractType.CLASSIC_TEST).isPresent())
                 // Filter out unnecessary fields
                 .map(resource -> ExplanationOfBenefitTrimmer.getBenefit(resource))
@@ -1,10 +1,19 @@
 package gov.cms.ab2d.worker.processor;
 
-import java.util.concurrent.Future;
-
 /**
  * Process a single {@link PatientClaimsRequest} at a time.
+ *
+ * Requests are run on the patient processor thread pool by submitting them to a
+ * {@link gov.cms.ab2d.worker.config.JobScopedExecutor} so callers can react as soon as a request finishes.
  */
 public interface PatientClaimsProcessor {
-    Future<EobSearchResult> process(PatientClaimsRequest request);
+
+    /**
+     * Retrieve and filter the claims for a single patient
+     *
+     * @param request the patient and job details
+     * @return the claims found for the patient
+     * @throws RuntimeException if the claims could not be retrieved
+     */
+    EobSearchResult process(PatientClaimsRequest request);
 }
@@ -7,13 +7,12 @@ import gov.cms.ab2d.common.model.CoverageSummary;
 import gov.cms.ab2d.eventlogger.LogManager;
 import gov.cms.ab2d.eventlogger.events.BeneficiarySearchEvent;
 import gov.cms.ab2d.fhir.BundleUtils;
+import gov.cms.ab2d.worker.config.BfdResponseMonitor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Async;
-import org.springframework.scheduling.annotation.AsyncResult;
 import org.springframework.stereotype.Component;
 
 import java.text.ParseException;
@@ -21,9 +20,11 @@ import java.text.SimpleDateFormat;
 import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
-import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import static gov.cms.ab2d.common.util.Constants.SINCE_EARLIEST_DATE;
 import static java.time.format.DateTimeFormatter.ISO_DATE_TIME;
@@ -35,28 +36,36 @@ public class PatientClaimsProcessorImpl implements PatientClaimsProcessor {
 
     private final BFDClient bfdClient;
     private final LogManager logManager;
+    private final BfdResponseMonitor bfdResponseMonitor;
 
     @Value("${bfd.earliest.data.date:01/01/2020}")
     private String earliestDataDate;
 
+    /**
+     * Encode claims as NDJSON on the patient processor threads so the contract thread only has to write them out.
+     * Encoding then scales with the size of the thread pool and resources are released as soon as they are encoded.
+     */
+    @Value("${eob.job.serialize.on.worker:false}")
+    private boolean serializeOnWorker;
+
+    // Each patient processor thread reuses its own encoder
+    private static final ThreadLocal<ResourceEncoder> ENCODERS = ThreadLocal.withInitial(ResourceEncoder::new);
+
     private static final OffsetDateTime START_CHECK = OffsetDateTime.parse(SINCE_EARLIEST_DATE, ISO_DATE_TIME);
 
     /**
      * Process the retrieval of patient explanation of benefit objects and return the result
-     * for further post-processing
+     * for further post-processing. Called on the patient processor thread pool.
      */
     @Trace(metricName = "EOBRequest", dispatcher = true)
-    @Async("patientProcessorThreadPool")
-    public Future<EobSearchResult> process(PatientClaimsRequest request) {
+    public EobSearchResult process(PatientClaimsRequest request) {
         final Token token = request.getToken();
         token.link();
 
         try {
             List<IBaseResource> eobs = getEobBundleResources(request);
-            EobSearchResult result = new EobSearchResult(request.getJob(), request.getContractNum(), eobs);
-            return new AsyncResult<>(result);
-        } catch (Exception ex) {
-            return AsyncResult.forExecutionException(ex);
+            return serializeOnWorker ? encodeResults(request, eobs)
+                    : new EobSearchResult(request.getJob(), request.getContractNum(), eobs);
         } finally {
             token.expire();
         }
@@ -94,11 +103,12 @@ public class PatientClaimsProcessorImpl implements PatientClaimsProcessor {
             BFDClient.BFD_BULK_JOB_ID.set(request.getJob());
 
             // Make first request and begin looping over remaining pages
-            eobBundle = bfdClient.requestEOBFromServer(request.getVersion(), patient.getIdentifiers().getBeneficiaryId(), sinceTime);
+            eobBundle = monitored(() -> bfdClient.requestEOBFromServer(request.getVersion(), beneficiaryId, sinceTime));
             collector.filterAndAddEntries(eobBundle);
 
             while (BundleUtils.getNextLink(eobBundle) != null) {
-                eobBundle = bfdClient.requestNextBundleFromServer(request.getVersion(), eobBundle);
+                IBaseBundle previous = eobBundle;
+                eobBundle = monitored(() -> bfdClient.requestNextBundleFromServer(request.getVersion(), previous));
                 collector.filterAndAddEntries(eobBundle);
             }
 
@@ -115,6 +125,48 @@ public class PatientClaimsProcessorImpl implements PatientClaimsProcessor {
         }
     }
 
+    /**
+     * Make a request to BFD and record how long it took and whether it failed so the thread pool can be
+     * resized based on how BFD is responding
+     */
+    private IBaseBundle monitored(Supplier<IBaseBundle> bfdRequest) {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            IBaseBundle bundle = bfdRequest.get();
+            success = true;
+            return bundle;
+        } finally {
+            bfdResponseMonitor.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), success);
+        }
+    }
+
+    /**
+     * Encode each claim as a line of NDJSON. Claims that cannot be encoded are returned with the exception so the
+     * contract thread can write them to the error file and record the patient as having failed.
+     *
+     * @param request request the claims were retrieved for
+     * @param eobs claims after filtering
+     * @return result containing the encoded claims
+     */
+    EobSearchResult encodeResults(PatientClaimsRequest request, List<IBaseResource> eobs) {
+        ResourceEncoder encoder = ENCODERS.get();
+
+        List<byte[]> encoded = new ArrayList<>(eobs.size());
+        List<EobSearchResult.EncodingFailure> failures = new ArrayList<>();
+        for (IBaseResource eob : eobs) {
+            try {
+                encoder.encode(request.getVersion(), eob);
+                encoded.add(encoder.toByteArray());
+            } catch (Exception ex) {
+                log.warn("Encountered exception while encoding job resources: {}", ex.getClass());
+                failures.add(new EobSearchResult.EncodingFailure(eob, ex));
+            }
+        }
+
+        return EobSearchResult.encoded(request.getJob(), request.getContractNum(), encoded, eobs.size(), failures);
+    }
+
     /**
      * Determine what since date to use if any.
      *
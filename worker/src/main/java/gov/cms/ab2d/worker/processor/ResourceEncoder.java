@@ -0,0 +1,98 @@
+package gov.cms.ab2d.worker.processor;
+
+import ca.uhn.fhir.parser.IParser;
+import gov.cms.ab2d.fhir.FhirVersion;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes resources as single lines of NDJSON into a buffer that is reused between resources. The parser
+ * and writer are also reused so encoding a resource does not create intermediate strings.
+ *
+ * Parsers are not thread safe so an encoder must be confined to a single thread or guarded by a lock.
+ */
+@NotThreadSafe
+class ResourceEncoder {
+
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(INITIAL_BUFFER_SIZE);
+    private Writer writer = createWriter();
+
+    private FhirVersion parserVersion;
+    private IParser jsonParser;
+
+    /**
+     * Encode the resource followed by a line separator replacing the previous contents of the buffer
+     *
+     * @param fhirVersion - the version of FHIR used to encode the resource
+     * @param resource - the resource to encode
+     * @return the number of bytes in the encoded resource
+     * @throws IOException on failure to encode the resource
+     */
+    int encode(FhirVersion fhirVersion, IBaseResource resource) throws IOException {
+        buffer.reset();
+        try {
+            getJsonParser(fhirVersion).encodeResourceToWriter(resource, writer);
+            writer.flush();
+        } catch (Exception ex) {
+            // Characters from the failed resource may still be pending in the writer so discard it
+            writer = createWriter();
+            buffer.reset();
+            throw ex;
+        }
+        buffer.write(LINE_SEPARATOR);
+        return buffer.size();
+    }
+
+    /**
+     * Write the last encoded resource to a stream
+     */
+    void writeTo(OutputStream out) throws IOException {
+        buffer.writeTo(out);
+    }
+
+    /**
+     * Copy of the last encoded resource
+     */
+    byte[] toByteArray() {
+        return buffer.toByteArray();
+    }
+
+    private IParser getJsonParser(FhirVersion fhirVersion) {
+        if (jsonParser == null || parserVersion != fhirVersion) {
+            jsonParser = fhirVersion.getJsonParser().setPrettyPrint(false);
+            parserVersion = fhirVersion;
+        }
+        return jsonParser;
+    }
+
+    private Writer createWriter() {
+        return new NonClosingWriter(new OutputStreamWriter(buffer, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parsers may close the writer they are handed once a resource is encoded. The buffer is reused so
+     * only flush when asked to close.
+     */
+    private static class NonClosingWriter extends FilterWriter {
+        NonClosingWriter(Writer out) {
+            super(out);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
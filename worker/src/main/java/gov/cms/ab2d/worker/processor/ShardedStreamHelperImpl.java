@@ -0,0 +1,418 @@
+package gov.cms.ab2d.worker.processor;
+
+import com.newrelic.api.agent.Trace;
+import gov.cms.ab2d.common.model.Job;
+import gov.cms.ab2d.common.util.EventUtils;
+import gov.cms.ab2d.eventlogger.LogManager;
+import gov.cms.ab2d.eventlogger.events.FileEvent;
+import gov.cms.ab2d.fhir.FhirVersion;
+import lombok.extern.slf4j.Slf4j;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes NDJSON to several files at once. Each shard runs on its own thread from the executor and owns a buffered
+ * stream and its own rollover count so a single job can keep multiple streams to the file system busy in parallel.
+ *
+ * Callers hand data to a shard and return immediately, shards are chosen in round-robin order. Files are
+ * named using the same sequence as {@link TextStreamHelperImpl} (contract_0001.ndjson, contract_0002.ndjson, ...)
+ * and are only created once a shard receives data so no empty files are produced.
+ *
+ * A failure writing in a shard is reported on the next call to add data or when the last streams are closed.
+ * Callers never wait on a shard longer than the lock timeout, whether the shard is stuck or has stopped.
+ */
+@Slf4j
+public class ShardedStreamHelperImpl extends StreamHelperImpl {
+
+    private static final int MIB = 1048576;
+
+    // Maximum number of chunks of data waiting to be written per shard before callers block
+    private static final int SHARD_QUEUE_SIZE = 1000;
+
+    // Signals a shard's writer thread to finish
+    private static final byte[] CLOSE_SHARD = new byte[0];
+
+    // How often a caller waiting on a full shard checks that the shard is still running
+    private static final long LIVENESS_CHECK_MILLIS = 100;
+
+    private final List<Shard> shards;
+
+    private final AtomicInteger nextShard = new AtomicInteger();
+
+    // Only used under the data file lock
+    private final ResourceEncoder resourceEncoder = new ResourceEncoder();
+
+    private final int tryLockTimeout;
+
+    private boolean closed;
+
+    /**
+     * Create the sharded stream helper and start writing each shard on the executor
+     *
+     * @param path - where to create the files
+     * @param contractNumber - the contract number
+     * @param totalBytesAllowed - the total number of bytes allowed to be written to a single file
+     * @param tryLockTimeout - the amount of time to wait before timing out a lock, waiting on a full shard,
+     *                       or waiting for a shard to finish
+     * @param shardCount - the number of files to write to in parallel
+     * @param executor - runs each shard for as long as the streams are open, must not queue shards
+     * @throws IOException if the executor has no thread available for every shard
+     */
+    public ShardedStreamHelperImpl(Path path, String contractNumber, long totalBytesAllowed, int tryLockTimeout,
+                                   LogManager logger, Job job, int shardCount, Executor executor) throws IOException {
+        super(path, contractNumber, totalBytesAllowed, tryLockTimeout, logger, job);
+
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("at least one shard is required");
+        }
+
+        this.tryLockTimeout = tryLockTimeout;
+
+        shards = new ArrayList<>(shardCount);
+        for (int idx = 0; idx < shardCount; idx++) {
+            Shard shard = new Shard("ndjson-" + contractNumber + "-" + idx);
+
+            try {
+                shard.task = CompletableFuture.runAsync(shard, executor);
+            } catch (RejectedExecutionException ex) {
+                IOException failure = new IOException("No thread available to write " + shard.name, ex);
+
+                // Stop the shards already running so their threads are returned to the executor
+                try {
+                    closeLastStream();
+                } catch (IOException closeFailure) {
+                    failure.addSuppressed(closeFailure);
+                }
+                throw failure;
+            }
+
+            shards.add(shard);
+        }
+    }
+
+    /**
+     * Hand data to the next shard. The array must not be modified after it is passed in.
+     *
+     * @param data - the data to write
+     */
+    @Trace
+    @Override
+    public void addData(byte[] data) throws IOException {
+        if (data == null || data.length == 0) {
+            return;
+        }
+
+        checkOpen();
+        nextShard().submit(data);
+    }
+
+    /**
+     * Encode the resource and hand a copy of the encoded resource to the next shard
+     *
+     * @param fhirVersion - the version of FHIR used to encode the resource
+     * @param resource - the resource to write
+     */
+    @Trace
+    @Override
+    public void addResource(FhirVersion fhirVersion, IBaseResource resource) throws IOException {
+        if (resource == null) {
+            return;
+        }
+
+        checkOpen();
+
+        byte[] encoded;
+        tryLock(dataFileLock);
+        try {
+            resourceEncoder.encode(fhirVersion, resource);
+            encoded = resourceEncoder.toByteArray();
+        } catch (Exception ex) {
+            String error = "Unable to encode resource for contract " + contractNumber;
+            log.error(error, ex);
+            throw new IOException(error, ex);
+        } finally {
+            dataFileLock.unlock();
+        }
+
+        nextShard().submit(encoded);
+    }
+
+    private Shard nextShard() {
+        return shards.get(Math.floorMod(nextShard.getAndIncrement(), shards.size()));
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Streams for contract " + contractNumber + " have already been closed");
+        }
+    }
+
+    /**
+     * Wait for every shard to write out its remaining data and close its file
+     */
+    @Override
+    public void closeLastStream() throws IOException {
+        closeErrorFile();
+
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        IOException failure = null;
+        for (Shard shard : shards) {
+            try {
+                shard.finish();
+            } catch (IOException ex) {
+                if (failure == null) {
+                    failure = ex;
+                } else {
+                    failure.addSuppressed(ex);
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Close all shards
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            closeLastStream();
+        } catch (Exception ex) {
+            String error = "Unable to close output streams for contract " + contractNumber;
+            log.error(error, ex);
+            throw new IOException(error, ex);
+        }
+    }
+
+    /**
+     * A single file being written to by its own thread
+     */
+    private class Shard implements Runnable {
+
+        private final BlockingQueue<byte[]> pending = new ArrayBlockingQueue<>(SHARD_QUEUE_SIZE);
+
+        private final String name;
+
+        // Completes once the shard has stopped writing
+        private CompletableFuture<Void> task;
+
+        // Thread running the shard, interrupted if the shard does not finish in time. Guarded by the shard.
+        private Thread runner;
+
+        // Only touched by the shard's thread until the thread has finished
+        private File currentFile;
+        private CountingOutputStream currentStream;
+        private DigestingOutputStream currentDigestingStream;
+
+        private volatile Exception failure;
+
+        Shard(String name) {
+            this.name = name;
+        }
+
+        void submit(byte[] data) throws IOException {
+            checkRunning();
+            enqueue(data);
+        }
+
+        void finish() throws IOException {
+            if (!task.isDone()) {
+                try {
+                    enqueue(CLOSE_SHARD);
+                    awaitTask();
+                } catch (IOException ex) {
+                    // Stop the shard so its thread is returned to the executor
+                    interrupt();
+                    throw ex;
+                }
+            }
+
+            checkFailure();
+
+            Throwable taskFailure = findTaskFailure();
+            if (taskFailure != null) {
+                throw new IOException(name + " stopped writing for contract " + contractNumber, taskFailure);
+            }
+        }
+
+        /**
+         * Queue data for the shard, giving up if the shard stops or does not make room before the lock timeout
+         */
+        private void enqueue(byte[] data) throws IOException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(tryLockTimeout);
+
+            try {
+                while (!pending.offer(data, LIVENESS_CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+                    checkAlive();
+
+                    if (System.nanoTime() - deadline > 0) {
+                        throw new IOException("Terminate processing. Unable to queue data for " + name
+                                + " after waiting " + tryLockTimeout + " seconds.");
+                    }
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while queueing data for " + name, ex);
+            }
+        }
+
+        /**
+         * Wait for the shard to write out the data it has queued and close its file
+         */
+        private void awaitTask() throws IOException {
+            try {
+                task.get(tryLockTimeout, TimeUnit.SECONDS);
+            } catch (TimeoutException ex) {
+                throw new IOException("Terminate processing. " + name + " did not finish writing after waiting "
+                        + tryLockTimeout + " seconds.", ex);
+            } catch (ExecutionException ex) {
+                // Reported by findTaskFailure
+                log.error("{} stopped writing for contract {}", name, contractNumber, ex.getCause());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while closing " + name, ex);
+            }
+        }
+
+        /**
+         * Fail if the shard could not write data or has stopped before being closed
+         */
+        private void checkRunning() throws IOException {
+            checkFailure();
+            checkAlive();
+        }
+
+        /**
+         * Fail if the shard has stopped, the shard keeps taking data after a failure writing so this does not
+         * check for failures
+         */
+        private void checkAlive() throws IOException {
+            if (task.isDone()) {
+                throw new IOException(name + " stopped writing for contract " + contractNumber, findTaskFailure());
+            }
+        }
+
+        private synchronized void interrupt() {
+            if (runner != null) {
+                runner.interrupt();
+            }
+        }
+
+        private void checkFailure() throws IOException {
+            if (failure != null) {
+                throw new IOException("Unable to write to file output stream for contract " + contractNumber, failure);
+            }
+        }
+
+        /**
+         * Find the exception the shard's task stopped with, only call once the task is done
+         */
+        private Throwable findTaskFailure() {
+            try {
+                task.join();
+                return null;
+            } catch (CompletionException ex) {
+                return ex.getCause();
+            } catch (CancellationException ex) {
+                return ex;
+            }
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                runner = Thread.currentThread();
+            }
+
+            try {
+                byte[] data;
+                while ((data = pending.take()) != CLOSE_SHARD) {
+                    // After a failure keep draining so callers are never blocked on a full queue
+                    if (failure == null) {
+                        write(data);
+                    }
+                }
+
+                if (failure == null) {
+                    closeFile();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                failure = ex;
+            } finally {
+                synchronized (this) {
+                    runner = null;
+                }
+            }
+        }
+
+        private void write(byte[] data) {
+            try {
+                if (currentStream == null) {
+                    openFile();
+                } else if (currentStream.getCount() + data.length > getTotalBytesAllowed() && currentStream.getCount() > 0) {
+                    closeFile();
+                    openFile();
+                }
+
+                currentStream.write(data);
+            } catch (Exception ex) {
+                log.error("Unable to write to {} for contract {}", currentFile, contractNumber, ex);
+                failure = ex;
+            }
+        }
+
+        private void openFile() throws IOException {
+            String fileName = path.toString() + File.separator + createFileName();
+            File f = new File(fileName);
+            f.getParentFile().mkdirs();
+            currentFile = f;
+            logManager.log(EventUtils.getFileEvent(job, f, FileEvent.FileStatus.OPEN));
+            currentDigestingStream = new DigestingOutputStream(new FileOutputStream(f));
+            currentStream = new CountingOutputStream(new BufferedOutputStream(currentDigestingStream, MIB));
+            filesCreated.add(f.toPath());
+        }
+
+        private void closeFile() {
+            if (currentStream == null) {
+                return;
+            }
+
+            try {
+                currentStream.close();
+                logManager.log(EventUtils.getFileEvent(job, currentFile, FileEvent.FileStatus.CLOSE));
+                createStreamOutput(currentFile, currentDigestingStream, false);
+            } catch (Exception ex) {
+                log.error("Unable to close {} for contract {}", currentFile, contractNumber, ex);
+                failure = ex;
+            }
+
+            currentStream = null;
+        }
+    }
+}
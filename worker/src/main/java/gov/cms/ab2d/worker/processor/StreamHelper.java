@@ -1,5 +1,8 @@
 package gov.cms.ab2d.worker.processor;
 
+import gov.cms.ab2d.fhir.FhirVersion;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
 import java.io.Closeable;
 import java.io.IOException;
 import java.nio.file.Path;
@@ -19,7 +22,17 @@ public interface StreamHelper extends Closeable {
     void addData(byte[] data) throws IOException;
 
     /**
-     * Write out error to the error file. There should be a single error file
+     * Encode a resource as a single line of NDJSON and write it out. Like {@link #addData(byte[])} the resource
+     * is never split between files. The resource is encoded into a buffer reused across calls so no intermediate
+     * strings or byte arrays are created for each resource.
+     * @param fhirVersion version of FHIR used to encode the resource
+     * @param resource resource to encode and write
+     * @throws IOException on failure to encode the resource or write it to a file
+     */
+    void addResource(FhirVersion fhirVersion, IBaseResource resource) throws IOException;
+
+    /**
+     * Write out error to the error file. Like data files, error files roll over once they reach the maximum size
      * @param data data to write to the file
      * @throws IOException on failure to write data to the error file
      */
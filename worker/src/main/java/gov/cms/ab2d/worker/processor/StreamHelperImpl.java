@@ -3,10 +3,7 @@ package gov.cms.ab2d.worker.processor;
 import gov.cms.ab2d.common.model.Job;
 import gov.cms.ab2d.eventlogger.LogManager;
 import lombok.Getter;
-import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.codec.binary.Hex;
-import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.StringUtils;
 
 import javax.annotation.concurrent.NotThreadSafe;
@@ -15,12 +12,12 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
-import static java.nio.file.StandardOpenOption.APPEND;
 
 /**
  * Contains the common methods for other StreamHelper implementations
@@ -57,10 +54,6 @@ public abstract class StreamHelperImpl implements StreamHelper, AutoCloseable {
     // Directory where to put the files
     protected final Path path;
 
-    // Total number of bytes written to the file
-    @Getter @Setter
-    private long totalBytesWritten = 0;
-
     // Total bytes allowed in the file
     @Getter
     private final long totalBytesAllowed;
@@ -74,6 +67,9 @@ public abstract class StreamHelperImpl implements StreamHelper, AutoCloseable {
     // Data file lock
     protected final Lock dataFileLock  = new ReentrantLock();
 
+    // Errors are rare and small so they need a much smaller buffer than data files
+    private static final int ERROR_BUFFER_SIZE = 64 * 1024;
+
     // Error file lock
     private final Lock errorFileLock = new ReentrantLock();
 
@@ -85,9 +81,16 @@ public abstract class StreamHelperImpl implements StreamHelper, AutoCloseable {
     private final List<Path> errorFilesCreated;
     private final List<StreamOutput> errorOutputs;
 
-    // Location of error file
+    // Location of the current error file
     private Path errorFile;
 
+    // Open stream to the current error file, null until the first error is written
+    private CountingOutputStream errorStream;
+    private DigestingOutputStream errorDigestingStream;
+
+    // Current error file counter
+    private int errorCounter = 1;
+
     /**
      * Main constructor
      *
@@ -102,8 +105,9 @@ public abstract class StreamHelperImpl implements StreamHelper, AutoCloseable {
         this.contractNumber = contractNumber;
         this.totalBytesAllowed = totalBytesAllowed;
         this.tryLockTimeout = tryLockTimeout;
-        this.filesCreated = new ArrayList<>();
-        this.fileOutputs = new ArrayList<>();
+        // Synchronized as implementations may create data files from more than one thread
+        this.filesCreated = Collections.synchronizedList(new ArrayList<>());
+        this.fileOutputs = Collections.synchronizedList(new ArrayList<>());
         this.errorFilesCreated = new ArrayList<>();
         this.errorOutputs = new ArrayList<>();
         this.logManager = logManager;
@@ -116,13 +120,23 @@ public abstract class StreamHelperImpl implements StreamHelper, AutoCloseable {
      * @return the file name
      */
     String createFileName() {
+        return createFileName(FileOutputType.NDJSON);
+    }
+
+    /**
+     * Create the next file name in the sequence with the given type of file
+     *
+     * @param type - the type of file determining the suffix
+     * @return the file name
+     */
+    synchronized String createFileName(FileOutputType type) {
         var partName = Integer.toString(counter);
         var paddedPartitionNo = StringUtils.leftPad(partName, 4, '0');
         counter++;
         return contractNumber +
                 "_" +
                 paddedPartitionNo +
-                FileOutputType.NDJSON.getSuffix();
+                type.getSuffix();
     }
 
     /**
@@ -144,24 +158,9 @@ public abstract class StreamHelperImpl implements StreamHelper, AutoCloseable {
     }
 
     /**
-     * Take an array of bytes and append it to a file
-     *
-     * @param outputFile - the file to append to
-     * @param data - the data to write
-     */
-    void appendToFile(Path outputFile, byte[] data) {
-        try {
-            Files.write(outputFile, data, APPEND);
-        } catch (IOException e) {
-            var errMsg = "Could not write to output file";
-            log.error("{}: {} ", errMsg, outputFile.toAbsolutePath(), e);
-            throw new UncheckedIOException(e);
-        }
-    }
-
-    /**
-     * Writes a chunk of data to the error file. Roll-over not supported at this point but MAY
-     * BE required in future if we determine errors files are getting too big.
+     * Writes a chunk of data to the error file. The error file is kept open between calls and
+     * rolls over to a new file using the same limit as data files. Data is buffered so errors are
+     * only guaranteed to be on disk once {@link #closeErrorFile()} is called.
      * This method MUST be thread-safe and do appropriate locking, e.g. using ReentrantLock
      *
      * @param data - the error data to add
@@ -173,52 +172,89 @@ public abstract class StreamHelperImpl implements StreamHelper, AutoCloseable {
         }
         tryLock(errorFileLock);
         try {
-            if (errorFile == null) {
+            byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+            if (errorStream != null && errorStream.getCount() + bytes.length > getTotalBytesAllowed()
+                    && errorStream.getCount() > 0) {
+                closeCurrentErrorFile();
+            }
+            if (errorStream == null) {
                 createErrorFile();
             }
-            appendToFile(errorFile, data.getBytes(StandardCharsets.UTF_8));
+            errorStream.write(bytes);
+        } finally {
+            errorFileLock.unlock();
+        }
+    }
+
+    /**
+     * Flush and close the current error file if one is open and record it as an output. Implementations
+     * must call this when closing their last stream.
+     */
+    protected void closeErrorFile() throws IOException {
+        tryLock(errorFileLock);
+        try {
+            closeCurrentErrorFile();
         } finally {
             errorFileLock.unlock();
         }
     }
 
-    protected void createStreamOutput(File file, boolean error) {
-        String checksum = generateChecksum(file);
-        StreamOutput output = new StreamOutput(file.getName(), checksum, file.length(), error);
+    private void closeCurrentErrorFile() throws IOException {
+        if (errorStream == null) {
+            return;
+        }
 
-        if (error) {
-            errorOutputs.add(output);
-        } else {
-            fileOutputs.add(output);
+        try {
+            errorStream.close();
+            createStreamOutput(errorFile.toFile(), errorDigestingStream, true);
+        } finally {
+            // Never write to a stream that failed to close, the next error starts a new file
+            errorStream = null;
         }
     }
 
-    private String generateChecksum(File file) {
-        try (FileInputStream fileInputStream = new FileInputStream(file)) {
-            byte[] bytes = DigestUtils.sha256(fileInputStream);
-            return Hex.encodeHexString(bytes);
-        } catch (IOException e) {
-            log.error("Encountered IO Exception while generating checksum {}", e.getMessage(), e);
-            throw new UncheckedIOException(e);
+    /**
+     * Record a finished file using the checksum and length computed while the file was written
+     *
+     * @param file - the finished file
+     * @param stream - the stream that wrote the file, must already be closed
+     * @param error - whether the file contains errors
+     */
+    protected void createStreamOutput(File file, DigestingOutputStream stream, boolean error) {
+        addStreamOutput(new StreamOutput(file.getName(), stream.getChecksum(), stream.getLength(), error));
+    }
+
+    private void addStreamOutput(StreamOutput output) {
+        if (output.getError()) {
+            errorOutputs.add(output);
+        } else {
+            fileOutputs.add(output);
         }
     }
 
     /**
-     * If the error file doesn't exist, create it
+     * Create the next error file and open a stream to it. The first error file keeps the
+     * name contract_error.ndjson, later files are numbered from two (contract_0002_error.ndjson).
      */
     void createErrorFile() {
-        var fileName = contractNumber +
-                FileOutputType.NDJSON_ERROR.getSuffix();
+        var fileName = contractNumber;
+        if (errorCounter > 1) {
+            fileName += "_" + StringUtils.leftPad(Integer.toString(errorCounter), 4, '0');
+        }
+        fileName += FileOutputType.NDJSON_ERROR.getSuffix();
 
         final Path errorFilePath = Path.of(path.toString(), fileName);
         try {
             errorFile = Files.createFile(errorFilePath);
+            errorDigestingStream = new DigestingOutputStream(new FileOutputStream(errorFile.toFile()));
+            errorStream = new CountingOutputStream(new BufferedOutputStream(errorDigestingStream, ERROR_BUFFER_SIZE));
         } catch (IOException e) {
             var errMsg = "Could not create output error file : ";
             log.error("{} {} ", errMsg, errorFilePath.toAbsolutePath(), e);
             throw new UncheckedIOException(e);
         }
 
+        errorCounter++;
         errorFilesCreated.add(errorFile);
     }
 
@@ -237,7 +273,7 @@ public abstract class StreamHelperImpl implements StreamHelper, AutoCloseable {
     }
 
     /**
-     * Return the error files (currently just one)
+     * Return the error files
      *
      * @return the error files
      */
@@ -246,12 +282,13 @@ public abstract class StreamHelperImpl implements StreamHelper, AutoCloseable {
         return errorFilesCreated;
     }
 
+    /**
+     * Return the error files that have been closed
+     *
+     * @return the outputs describing each closed error file
+     */
     @Override
     public List<StreamOutput> getErrorOutputs() {
-        if (errorOutputs.isEmpty()) {
-            errorFilesCreated.stream().map(Path::toFile).forEach(file -> createStreamOutput(file, true));
-        }
-
         return errorOutputs;
     }
 }
\ No newline at end of file
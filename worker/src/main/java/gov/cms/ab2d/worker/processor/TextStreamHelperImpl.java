@@ -5,7 +5,9 @@ import gov.cms.ab2d.common.model.Job;
 import gov.cms.ab2d.common.util.EventUtils;
 import gov.cms.ab2d.eventlogger.LogManager;
 import gov.cms.ab2d.eventlogger.events.FileEvent;
+import gov.cms.ab2d.fhir.FhirVersion;
 import lombok.extern.slf4j.Slf4j;
+import org.hl7.fhir.instance.model.api.IBaseResource;
 
 import java.io.*;
 import java.nio.file.Path;
@@ -18,8 +20,18 @@ public class TextStreamHelperImpl extends StreamHelperImpl {
 
     private File currentFile;
 
+    // Counts bytes written to the current file, used to decide when to roll over
+    private CountingOutputStream currentCountingStream;
+
+    // Computes the checksum and length of the current file as it is written
+    private DigestingOutputStream currentDigestingStream;
+
     private static final int MIB = 1048576;
 
+    // Each resource is encoded before being written so the size is known prior to rollover.
+    // Only used under the data file lock.
+    private final ResourceEncoder resourceEncoder = new ResourceEncoder();
+
     /**
      * Implement the text stream helper
      *
@@ -49,10 +61,15 @@ public class TextStreamHelperImpl extends StreamHelperImpl {
         f.getParentFile().mkdirs();
         currentFile = f;
         logManager.log(EventUtils.getFileEvent(job, f, FileEvent.FileStatus.OPEN));
-        OutputStream stream = new BufferedOutputStream(new FileOutputStream(fileName), MIB);
+        currentDigestingStream = new DigestingOutputStream(new FileOutputStream(fileName));
+        currentCountingStream = new CountingOutputStream(new BufferedOutputStream(currentDigestingStream, MIB));
         Path p = Path.of(fileName);
         filesCreated.add(p);
-        return stream;
+        return currentCountingStream;
+    }
+
+    long getTotalBytesWritten() {
+        return currentCountingStream.getCount();
     }
 
     /**
@@ -69,21 +86,41 @@ public class TextStreamHelperImpl extends StreamHelperImpl {
 
         tryLock(dataFileLock);
         try {
-            if (exceedsMaxFileSize(data)) {
-                currentStream.close();
-                logManager.log(EventUtils.getFileEvent(job, currentFile, FileEvent.FileStatus.CLOSE));
+            rolloverIfNeeded(data.length);
+            currentStream.write(data);
 
-                createStreamOutput(currentFile, false);
+        } catch (Exception ex) {
+            String error = "Unable to create file output stream for contract " + contractNumber + "[" + (counter - 1) + "]";
+            log.error(error, ex);
+            throw new IOException(error, ex);
+        } finally {
+            dataFileLock.unlock();
+        }
+    }
+
+    /**
+     * Encode the resource into the reused buffer, then write the buffer to the correct file iterating to the next file
+     * if it exceeds the limit. Encoding failures leave the current file untouched.
+     *
+     * @param fhirVersion - the version of FHIR used to encode the resource
+     * @param resource - the resource to write
+     */
+    @Trace
+    @Override
+    public void addResource(FhirVersion fhirVersion, IBaseResource resource) throws IOException {
+        if (resource == null) {
+            return;
+        }
 
-                currentStream = createStream();
-                setTotalBytesWritten(0);
+        tryLock(dataFileLock);
+        try {
+            int length = resourceEncoder.encode(fhirVersion, resource);
 
-            }
-            currentStream.write(data);
-            setTotalBytesWritten(getTotalBytesWritten() + data.length);
+            rolloverIfNeeded(length);
+            resourceEncoder.writeTo(currentStream);
 
         } catch (Exception ex) {
-            String error = "Unable to create file output stream for contract " + contractNumber + "[" + (counter - 1) + "]";
+            String error = "Unable to write resource to file output stream for contract " + contractNumber + "[" + (counter - 1) + "]";
             log.error(error, ex);
             throw new IOException(error, ex);
         } finally {
@@ -91,12 +128,30 @@ public class TextStreamHelperImpl extends StreamHelperImpl {
         }
     }
 
-    private boolean exceedsMaxFileSize(byte[] data) {
-        return getTotalBytesWritten() + data.length > getTotalBytesAllowed() && getTotalBytesWritten() > 0;
+    /**
+     * If writing the next chunk of data would exceed the maximum file size close the current file and open the next.
+     * A chunk is never split across files and a chunk larger than the limit is written to an empty file by itself.
+     *
+     * @param length - the number of bytes about to be written
+     */
+    private void rolloverIfNeeded(int length) throws IOException {
+        if (exceedsMaxFileSize(length)) {
+            currentStream.close();
+            logManager.log(EventUtils.getFileEvent(job, currentFile, FileEvent.FileStatus.CLOSE));
+
+            createStreamOutput(currentFile, currentDigestingStream, false);
+
+            currentStream = createStream();
+        }
+    }
+
+    private boolean exceedsMaxFileSize(int length) {
+        return getTotalBytesWritten() + length > getTotalBytesAllowed() && getTotalBytesWritten() > 0;
     }
 
     @Override
     public void closeLastStream() throws IOException {
+        closeErrorFile();
 
         if (currentStream == null) {
             return;
@@ -105,10 +160,10 @@ public class TextStreamHelperImpl extends StreamHelperImpl {
         currentStream.close();
         logManager.log(EventUtils.getFileEvent(job, currentFile, FileEvent.FileStatus.CLOSE));
         int numFiles = filesCreated.size();
-        if (filesCreated.get(numFiles - 1).toFile().length() == 0) {
+        if (currentDigestingStream.getLength() == 0) {
             filesCreated.remove(numFiles - 1);
         } else {
-            createStreamOutput(currentFile, false);
+            createStreamOutput(currentFile, currentDigestingStream, false);
         }
 
         // Current stream should never be used again
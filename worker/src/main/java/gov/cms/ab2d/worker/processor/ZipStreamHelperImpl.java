@@ -0,0 +1,197 @@
+package gov.cms.ab2d.worker.processor;
+
+import com.newrelic.api.agent.Trace;
+import gov.cms.ab2d.common.model.Job;
+import gov.cms.ab2d.common.util.EventUtils;
+import gov.cms.ab2d.eventlogger.LogManager;
+import gov.cms.ab2d.eventlogger.events.FileEvent;
+import gov.cms.ab2d.fhir.FhirVersion;
+import lombok.extern.slf4j.Slf4j;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static gov.cms.ab2d.worker.processor.StreamHelperImpl.FileOutputType.NDJSON;
+import static gov.cms.ab2d.worker.processor.StreamHelperImpl.FileOutputType.ZIP;
+
+/**
+ * Implement a stream helper which compresses NDJSON as it is written. Each part is a zip file containing a single
+ * NDJSON entry of the same name (contract_0001.zip contains contract_0001.ndjson).
+ *
+ * Files roll over on the compressed size of the zip file. Because the compressor buffers data internally the
+ * uncompressed length of the next chunk is used as an upper bound on its compressed length, which means a
+ * part never grows past the limit by more than the compressor's internal buffer.
+ */
+@Slf4j
+public class ZipStreamHelperImpl extends StreamHelperImpl {
+
+    private static final int MIB = 1048576;
+
+    private File currentFile;
+
+    // Counts compressed bytes that have reached the current zip file
+    private CountingOutputStream compressedStream;
+
+    // Computes the checksum and length of the current zip file as it is written
+    private DigestingOutputStream digestingStream;
+
+    // Uncompressed bytes written to the entry in the current zip file
+    private long uncompressedBytes;
+
+    // Only used under the data file lock
+    private final ResourceEncoder resourceEncoder = new ResourceEncoder();
+
+    /**
+     * Implement the zip stream helper
+     *
+     * @param path - where to create the file
+     * @param contractNumber - the contract number
+     * @param totalBytesAllowed - the total number of compressed bytes allowed in a single zip file
+     * @param tryLockTimeout - the amount of time to wait before timing out lock
+     * @throws IOException - if the file can't be created
+     */
+    public ZipStreamHelperImpl(Path path, String contractNumber, long totalBytesAllowed, int tryLockTimeout,
+                               LogManager logger, Job job) throws IOException {
+        super(path, contractNumber, totalBytesAllowed, tryLockTimeout, logger, job);
+
+        currentStream = createStream();
+    }
+
+    /**
+     * Create the next zip file and open its single NDJSON entry
+     *
+     * @return the stream to write uncompressed data to
+     * @throws IOException if you can't create the stream
+     */
+    private ZipOutputStream createStream() throws IOException {
+        String zipName = createFileName(ZIP);
+        String entryName = zipName.substring(0, zipName.length() - ZIP.getSuffix().length()) + NDJSON.getSuffix();
+
+        File f = new File(path.toString() + File.separator + zipName);
+        f.getParentFile().mkdirs();
+        currentFile = f;
+        logManager.log(EventUtils.getFileEvent(job, f, FileEvent.FileStatus.OPEN));
+
+        digestingStream = new DigestingOutputStream(new FileOutputStream(f));
+        compressedStream = new CountingOutputStream(new BufferedOutputStream(digestingStream, MIB));
+        uncompressedBytes = 0;
+
+        ZipOutputStream stream = new ZipOutputStream(compressedStream);
+        stream.putNextEntry(new ZipEntry(entryName));
+        filesCreated.add(f.toPath());
+        return stream;
+    }
+
+    /**
+     * Compress data into the current zip file and iterate to the next file if it would exceed the limit
+     *
+     * @param data - the data to write
+     */
+    @Trace
+    @Override
+    public void addData(byte[] data) throws IOException {
+        if (data == null || data.length == 0) {
+            return;
+        }
+
+        tryLock(dataFileLock);
+        try {
+            rolloverIfNeeded(data.length);
+            currentStream.write(data);
+            uncompressedBytes += data.length;
+
+        } catch (Exception ex) {
+            String error = "Unable to create zip output stream for contract " + contractNumber + "[" + (counter - 1) + "]";
+            log.error(error, ex);
+            throw new IOException(error, ex);
+        } finally {
+            dataFileLock.unlock();
+        }
+    }
+
+    /**
+     * Encode the resource and compress it into the current zip file iterating to the next file if it would
+     * exceed the limit
+     *
+     * @param fhirVersion - the version of FHIR used to encode the resource
+     * @param resource - the resource to write
+     */
+    @Trace
+    @Override
+    public void addResource(FhirVersion fhirVersion, IBaseResource resource) throws IOException {
+        if (resource == null) {
+            return;
+        }
+
+        tryLock(dataFileLock);
+        try {
+            int length = resourceEncoder.encode(fhirVersion, resource);
+
+            rolloverIfNeeded(length);
+            resourceEncoder.writeTo(currentStream);
+            uncompressedBytes += length;
+
+        } catch (Exception ex) {
+            String error = "Unable to write resource to zip output stream for contract " + contractNumber + "[" + (counter - 1) + "]";
+            log.error(error, ex);
+            throw new IOException(error, ex);
+        } finally {
+            dataFileLock.unlock();
+        }
+    }
+
+    private void rolloverIfNeeded(int length) throws IOException {
+        if (compressedStream.getCount() + length > getTotalBytesAllowed() && uncompressedBytes > 0) {
+            currentStream.close();
+            logManager.log(EventUtils.getFileEvent(job, currentFile, FileEvent.FileStatus.CLOSE));
+
+            createStreamOutput(currentFile, digestingStream, false);
+
+            currentStream = createStream();
+        }
+    }
+
+    @Override
+    public void closeLastStream() throws IOException {
+        closeErrorFile();
+
+        if (currentStream == null) {
+            return;
+        }
+
+        currentStream.close();
+        logManager.log(EventUtils.getFileEvent(job, currentFile, FileEvent.FileStatus.CLOSE));
+
+        // An empty zip file still has headers so check whether anything was written instead of the file length
+        if (uncompressedBytes == 0) {
+            filesCreated.remove(filesCreated.size() - 1);
+            Files.deleteIfExists(currentFile.toPath());
+        } else {
+            createStreamOutput(currentFile, digestingStream, false);
+        }
+
+        // Current stream should never be used again
+        currentStream = null;
+    }
+
+    /**
+     * Close the stream clean up any empty files in the files created list
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            closeLastStream();
+        } catch (Exception ex) {
+            String error = "Unable to close zip output stream for contract " + contractNumber + "[" + counter + "]";
+            log.error(error, ex);
+            throw new IOException(error, ex);
+        }
+    }
+}
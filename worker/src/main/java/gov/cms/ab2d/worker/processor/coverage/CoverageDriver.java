@@ -1,5 +1,6 @@
 package gov.cms.ab2d.worker.processor.coverage;
 
+import gov.cms.ab2d.common.model.CoveragePageHandler;
 import gov.cms.ab2d.common.model.CoveragePagingRequest;
 import gov.cms.ab2d.common.model.CoveragePagingResult;
 import gov.cms.ab2d.common.model.Job;
@@ -73,6 +74,16 @@ public interface CoverageDriver {
      */
     CoveragePagingResult pageCoverage(CoveragePagingRequest request);
 
+    /**
+     * Stream every page of beneficiaries starting at the provided request through a single database cursor
+     * instead of querying for each page separately.
+     * @param request page size, contract, and optional cursor to start from
+     * @param handler receives each page in order, returns false to stop streaming early
+     * @throws CoverageDriverException if coverage period or some other precondition necessary for paging is missing
+     * @throws InterruptedException if interrupted while the handler waits to accept a page
+     */
+    void streamCoverage(CoveragePagingRequest request, CoveragePageHandler handler) throws InterruptedException;
+
     /**
      * Verify that the coverage information in the database meets all business requirements.
      *
@@ -9,6 +9,7 @@ import gov.cms.ab2d.common.service.PropertiesService;
 import gov.cms.ab2d.common.util.Constants;
 import gov.cms.ab2d.worker.processor.coverage.check.*; // NOPMD
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
@@ -60,10 +61,26 @@ public class CoverageDriverImpl implements CoverageDriver {
     private final CoverageLockWrapper coverageLockWrapper;
     private final PropertiesService propertiesService;
 
+    // Snapshots of enrollment on local disk read instead of the database when current
+    private final CoverageSnapshotStore snapshotStore;
+
     public CoverageDriverImpl(CoverageSearchRepository coverageSearchRepository,
                               PdpClientService pdpClientService, CoverageService coverageService,
                               PropertiesService propertiesService, CoverageProcessor coverageProcessor,
                               CoverageLockWrapper coverageLockWrapper) {
+        this(coverageSearchRepository, pdpClientService, coverageService, propertiesService, coverageProcessor,
+                coverageLockWrapper, null);
+    }
+
+    /**
+     * @param snapshotStore snapshots of enrollment paged instead of the database when they are current
+     */
+    @Autowired
+    public CoverageDriverImpl(CoverageSearchRepository coverageSearchRepository,
+                              PdpClientService pdpClientService, CoverageService coverageService,
+                              PropertiesService propertiesService, CoverageProcessor coverageProcessor,
+                              CoverageLockWrapper coverageLockWrapper, CoverageSnapshotStore snapshotStore) {
+        this.snapshotStore = snapshotStore;
         this.coverageSearchRepository = coverageSearchRepository;
         this.pdpClientService = pdpClientService;
         this.coverageService = coverageService;
@@ -542,7 +559,7 @@ public class CoverageDriverImpl implements CoverageDriver {
             CoveragePagingRequest request = new CoveragePagingRequest(PAGING_SIZE, null, contract, job.getCreatedAt());
 
             // Make request for coverage metadata
-            return coverageService.pageCoverage(request);
+            return pageFromSnapshotOrDatabase(request);
         } catch (Exception exception) {
             log.error("coverage period missing or year,month query incorrect, driver should have resolved earlier");
             throw new CoverageDriverException("coverage driver failing preconditions", exception);
@@ -591,12 +608,47 @@ public class CoverageDriverImpl implements CoverageDriver {
      * Retrieve enrollment information for {@link CoveragePagingRequest#getPageSize()} number of beneficiaries
      * where all enrollment records for each patient are aggregated into an {@link CoverageSummary}
      *
+     * Pages are built from the contract's {@link CoverageSnapshot} when it holds the current coverage.
+     *
      * @throws CoverageDriverException if coverage period or some other precondition necessary for paging is missing
      */
     @Override
     public CoveragePagingResult pageCoverage(CoveragePagingRequest request) {
         try {
+            return pageFromSnapshotOrDatabase(request);
+        } catch (Exception exception) {
+            log.error("coverage period missing or year,month query incorrect, driver should have resolved earlier");
+            throw new CoverageDriverException("coverage driver failing preconditions", exception);
+        }
+    }
+
+    private CoveragePagingResult pageFromSnapshotOrDatabase(CoveragePagingRequest request) {
+        if (snapshotStore == null) {
             return coverageService.pageCoverage(request);
+        }
+
+        // Only the first page of a job looks up which snapshot to read, later requests carry it
+        CoveragePagingRequest resolved = snapshotStore.resolveVersion(request);
+        return snapshotStore.page(resolved).orElseGet(() -> coverageService.pageCoverage(resolved));
+    }
+
+    /**
+     * Stream enrollment for every beneficiary starting at the request's cursor in pages of
+     * {@link CoveragePagingRequest#getPageSize()} beneficiaries using one database cursor.
+     *
+     * Pages are built from the contract's {@link CoverageSnapshot} instead when it holds the current coverage.
+     *
+     * @throws CoverageDriverException if coverage period or some other precondition necessary for paging is missing
+     */
+    @Trace(metricName = "EnrollmentStreamFromDB", dispatcher = true)
+    @Override
+    public void streamCoverage(CoveragePagingRequest request, CoveragePageHandler handler) throws InterruptedException {
+        try {
+            if (snapshotStore == null || !snapshotStore.stream(request, handler)) {
+                coverageService.streamCoverage(request, handler);
+            }
+        } catch (InterruptedException | CoverageDriverException exception) {
+            throw exception;
         } catch (Exception exception) {
             log.error("coverage period missing or year,month query incorrect, driver should have resolved earlier");
             throw new CoverageDriverException("coverage driver failing preconditions", exception);
@@ -648,6 +700,7 @@ public class CoverageDriverImpl implements CoverageDriver {
                 .filter(new CoveragePresentCheck(coverageService, coverageCounts, issues))
                 .filter(new CoverageUpToDateCheck(coverageService, coverageCounts, issues))
                 .filter(new CoverageStableCheck(coverageService, coverageCounts, issues))
+                .filter(new CoverageSummaryCheck(coverageService, coverageCounts, issues))
                 .count();
 
         String message = String.format("Verified that %d contracts pass all coverage checks out of %d",
@@ -0,0 +1,42 @@
+package gov.cms.ab2d.worker.processor.coverage;
+
+import gov.cms.ab2d.common.service.CoverageMaintenanceService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Periodically vacuums the coverage partitions changed by inserting and deleting enrollment.
+ *
+ * Runs on its own schedule instead of after every insertion so that the weekly update of every contract does not
+ * run hundreds of vacuums competing with EOB jobs. Changes to a partition between runs are coalesced into one vacuum
+ * and each run maintains a limited number of partitions.
+ */
+@Slf4j
+@Component
+public class CoverageMaintenanceScheduler {
+
+    private final CoverageMaintenanceService coverageMaintenance;
+    private final int maxPartitions;
+
+    /**
+     * @param coverageMaintenance service tracking which partitions have changed
+     * @param maxPartitions maximum number of partitions to vacuum each run
+     */
+    public CoverageMaintenanceScheduler(CoverageMaintenanceService coverageMaintenance,
+                                        @Value("${coverage.maintenance.max.partitions:5}") int maxPartitions) {
+        this.coverageMaintenance = coverageMaintenance;
+        this.maxPartitions = maxPartitions;
+    }
+
+    @Scheduled(fixedDelayString = "${coverage.maintenance.interval:300000}",
+            initialDelayString = "${coverage.maintenance.interval:300000}")
+    public void maintainCoverage() {
+        try {
+            coverageMaintenance.maintainChangedPartitions(maxPartitions);
+        } catch (Exception exception) {
+            log.error("coverage maintenance failed", exception);
+        }
+    }
+}
@@ -4,6 +4,7 @@ import com.newrelic.api.agent.Trace;
 import gov.cms.ab2d.bfd.client.BFDClient;
 import gov.cms.ab2d.common.model.Contract;
 import gov.cms.ab2d.common.model.CoverageMapping;
+import gov.cms.ab2d.common.model.IdentifierSet;
 import gov.cms.ab2d.common.model.Identifiers;
 import gov.cms.ab2d.fhir.*;
 import lombok.extern.slf4j.Slf4j;
@@ -13,7 +14,13 @@ import org.hl7.fhir.instance.model.api.IDomainResource;
 
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 import static java.util.stream.Collectors.*;
 
@@ -21,11 +28,15 @@ import static java.util.stream.Collectors.*;
  * Perform queries to BFD to retrieve all coverage/enrollment related to a Part D contract
  * for a given month and year.
  *
- * The results of these queries are stored into a {@link CoverageMapping} object in-memory. Additionally,
+ * The results of these queries are stored into a {@link CoverageMapping} object in-memory, or when a
+ * {@link CoverageStreamWriter} is provided inserted into the database page by page while the search runs. Additionally,
  * any artifacts/issues with identifiers returned from BFD are documented and reported as statistics.
  *
  * The contract, month, and year are represented as an {@link gov.cms.ab2d.common.model.CoveragePeriod}
  *
+ * When a fetch executor is provided the next page is requested from BFD in the background while the current page
+ * is filtered, so waiting on BFD and parsing overlap. At most one page is requested ahead. Pages are still filtered
+ * one at a time in order on the calling thread so logging and statistics are kept the same as without look ahead.
  */
 @Slf4j
 public class CoverageMappingCallable implements Callable<CoverageMapping> {
@@ -38,6 +49,12 @@ public class CoverageMappingCallable implements Callable<CoverageMapping> {
     private final BFDClient bfdClient;
     private final AtomicBoolean completed;
 
+    // Null unless results are inserted while paging through BFD
+    private final CoverageStreamWriter writer;
+
+    // Null unless the next page is requested while the current page is filtered
+    private final Executor fetchExecutor;
+
     private final int year;
 
     private final FhirVersion version;
@@ -50,8 +67,30 @@ public class CoverageMappingCallable implements Callable<CoverageMapping> {
     private final Map<Integer, Integer> referenceYears = new HashMap<>();
 
     public CoverageMappingCallable(FhirVersion version, CoverageMapping coverageMapping, BFDClient bfdClient) {
+        this(version, coverageMapping, bfdClient, null);
+    }
+
+    /**
+     * @param writer inserts each page of beneficiaries while the next page is pulled, the {@link CoverageMapping}
+     *               is left empty when provided
+     */
+    public CoverageMappingCallable(FhirVersion version, CoverageMapping coverageMapping, BFDClient bfdClient,
+                                   CoverageStreamWriter writer) {
+        this(version, coverageMapping, bfdClient, writer, null);
+    }
+
+    /**
+     * @param writer inserts each page of beneficiaries while the next page is pulled, the {@link CoverageMapping}
+     *               is left empty when provided
+     * @param fetchExecutor requests the next page from BFD while the current page is filtered, pages are requested
+     *                      one after another on the calling thread when null
+     */
+    public CoverageMappingCallable(FhirVersion version, CoverageMapping coverageMapping, BFDClient bfdClient,
+                                   CoverageStreamWriter writer, Executor fetchExecutor) {
         this.coverageMapping = coverageMapping;
         this.bfdClient = bfdClient;
+        this.writer = writer;
+        this.fetchExecutor = fetchExecutor;
         this.completed = new AtomicBoolean(false);
         this.year = getCorrectedYear(coverageMapping.getContract(), coverageMapping.getPeriod().getYear());
         this.version = version;
@@ -81,8 +120,9 @@ public class CoverageMappingCallable implements Callable<CoverageMapping> {
      * Steps
      *      - Set a unique id for the job as a header to BFD for monitoring purposes
      *      - Get the first page of enrollment results and process those results
-     *      - Loop over the remaining pages of results and query until none are left
-     *      - Add the results to the CoverageMapping object
+     *      - Loop over the remaining pages of results and query until none are left, requesting the next page
+     *          before processing the current page when looking ahead
+     *      - Add the results to the CoverageMapping object, or insert each page if streaming
      *      - Mark the search as completed
      *      - Log statistics concerning enrollment pulled
      *      - Remove the unique id header used for BFD
@@ -96,8 +136,12 @@ public class CoverageMappingCallable implements Callable<CoverageMapping> {
         int month = coverageMapping.getPeriod().getMonth();
         String contractNumber = coverageMapping.getContract().getContractNumber();
 
-        final Set<Identifiers> patientIds = new HashSet<>();
+        // Collect directly into the mapping so the beneficiaries are only held once
+        final IdentifierSet patientIds = coverageMapping.getBeneficiaryIds();
         int bundleNo = 1;
+
+        // Next page being requested from BFD while the current page is filtered
+        Future<IBaseBundle> nextBundle = null;
         try {
             log.info("retrieving contract membership for Contract {}-{}-{} bundle #{}",
                     contractNumber, this.year, month, bundleNo);
@@ -105,7 +149,8 @@ public class CoverageMappingCallable implements Callable<CoverageMapping> {
             BFDClient.BFD_BULK_JOB_ID.set(coverageMapping.getJobId());
 
             IBaseBundle bundle = getBundle(contractNumber, month, this.year);
-            patientIds.addAll(extractAndFilter(bundle));
+            nextBundle = requestNextBundle(bundle);
+            collect(bundle, patientIds);
 
             String availableLinks = BundleUtils.getAvailableLinks(bundle);
             log.info("retrieving contract membership for Contract {}-{}-{} bundle #{}, available links {}",
@@ -123,7 +168,8 @@ public class CoverageMappingCallable implements Callable<CoverageMapping> {
                 log.info("retrieving contract membership for Contract {}-{}-{} bundle #{}",
                         contractNumber, this.year, month, bundleNo);
 
-                bundle = bfdClient.requestNextBundleFromServer(version, bundle);
+                bundle = nextBundle != null ? awaitBundle(nextBundle) : bfdClient.requestNextBundleFromServer(version, bundle);
+                nextBundle = requestNextBundle(bundle);
 
                 availableLinks = BundleUtils.getAvailableLinksPretty(bundle);
 
@@ -135,14 +181,17 @@ public class CoverageMappingCallable implements Callable<CoverageMapping> {
                             contractNumber, this.year, month, bundleNo);
                 }
 
-                patientIds.addAll(extractAndFilter(bundle));
+                collect(bundle, patientIds);
             }
 
             log.info("retrieving contract membership for Contract {}-{}-{}, #{} bundles received.",
                     contractNumber, this.year, month, bundleNo);
 
-            coverageMapping.addBeneficiaries(patientIds);
-            log.debug("finished reading [{}] Set<Identifiers>resources", patientIds.size());
+            if (writer != null) {
+                writer.finish();
+            }
+
+            log.debug("finished reading [{}] Set<Identifiers>resources", found(patientIds));
 
             coverageMapping.completed();
             return coverageMapping;
@@ -151,10 +200,16 @@ public class CoverageMappingCallable implements Callable<CoverageMapping> {
                     contractNumber +
                     " for month " + month +
                     " and year " + this.year, e);
+            if (nextBundle != null) {
+                nextBundle.cancel(true);
+            }
+            if (writer != null) {
+                writer.discard();
+            }
             coverageMapping.failed();
             throw e;
         } finally {
-            int total = patientIds.size() + missingReferenceYear + missingBeneId + pastReferenceYear;
+            int total = found(patientIds) + missingReferenceYear + missingBeneId + pastReferenceYear;
             log.info("Search {}-{}-{} found {} distribution of reference years over a total of {} benes",
                     contractNumber, this.year, month, referenceYears, total);
             log.info("Search {}-{}-{} discarded {} entries missing a reference year out of {}",
@@ -174,13 +229,80 @@ public class CoverageMappingCallable implements Callable<CoverageMapping> {
 
     }
 
+    /**
+     * Add the patients in a bundle to the mapping, or when streaming start inserting them
+     * while the next bundle is pulled.
+     */
+    private void collect(IBaseBundle bundle, IdentifierSet patientIds) {
+        if (writer == null) {
+            extractAndFilter(bundle, patientIds::add);
+        } else {
+            extractAndFilter(bundle, writer::add);
+            writer.flush();
+        }
+    }
+
+    /**
+     * Start requesting the page after a bundle in the background when looking ahead
+     *
+     * The request runs as a {@link FutureTask} so cancelling it interrupts the thread waiting on BFD instead of
+     * leaving the request to run to completion.
+     *
+     * @return the page being requested or null if there is no next page, or the next page will be requested on the
+     *      calling thread
+     */
+    private Future<IBaseBundle> requestNextBundle(IBaseBundle bundle) {
+        if (fetchExecutor == null || BundleUtils.getNextLink(bundle) == null) {
+            return null;
+        }
+
+        String jobId = coverageMapping.getJobId();
+        try {
+            FutureTask<IBaseBundle> request = new FutureTask<>(() -> {
+                BFDClient.BFD_BULK_JOB_ID.set(jobId);
+                try {
+                    return bfdClient.requestNextBundleFromServer(version, bundle);
+                } finally {
+                    BFDClient.BFD_BULK_JOB_ID.remove();
+                }
+            });
+            fetchExecutor.execute(request);
+            return request;
+        } catch (RejectedExecutionException ree) {
+            log.warn("no thread available to request the next page of enrollment ahead, requesting after filtering");
+            return null;
+        }
+    }
+
+    /**
+     * Wait for a page requested in the background, failing the same way as requesting the page directly would
+     */
+    private IBaseBundle awaitBundle(Future<IBaseBundle> nextBundle) {
+        try {
+            return nextBundle.get();
+        } catch (InterruptedException ie) {
+            nextBundle.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted while requesting the next page of enrollment", ie);
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ee.getCause();
+            }
+            throw new RuntimeException(ee.getCause());
+        }
+    }
+
+    private int found(IdentifierSet patientIds) {
+        return writer == null ? patientIds.size() : writer.size();
+    }
+
     @Trace
-    private Set<Identifiers> extractAndFilter(IBaseBundle bundle) {
-        return BundleUtils.getPatientStream(bundle, version)
+    private void extractAndFilter(IBaseBundle bundle, Consumer<Identifiers> patients) {
+        BundleUtils.getPatientStream(bundle, version)
                 .filter(this::filterByYear)
                 .map(this::extractPatientId)
                 .filter(Objects::nonNull)
-                .collect(toSet());
+                .forEach(patients);
     }
 
     /**
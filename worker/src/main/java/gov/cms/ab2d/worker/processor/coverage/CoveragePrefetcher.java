@@ -0,0 +1,178 @@
+package gov.cms.ab2d.worker.processor.coverage;
+
+import gov.cms.ab2d.common.model.CoveragePagingRequest;
+import gov.cms.ab2d.common.model.CoveragePagingResult;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collections;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pages through the coverage for a job keeping up to a fixed number of pages loaded ahead of the caller.
+ *
+ * Pages are loaded one after another on a background thread because each page starts at the cursor returned by
+ * the previous page. The caller takes pages with {@link #poll(long, TimeUnit)} which only waits a bounded
+ * amount of time so the caller can keep handling finished requests while a slow page loads.
+ *
+ * When streaming, the background thread reads several pages through each database cursor instead of querying
+ * for each page separately.
+ *
+ * If prefetching is turned off or no background thread is available, pages are loaded on the calling thread.
+ */
+@Slf4j
+public class CoveragePrefetcher implements AutoCloseable {
+
+    // Marks that every page has been loaded or loading failed
+    private static final CoveragePagingResult END = new CoveragePagingResult(Collections.emptyList(), null);
+
+    // Time between checks of whether the caller has stopped taking pages
+    private static final long OFFER_WAIT = 100;
+
+    private final CoverageDriver coverageDriver;
+    private final BlockingQueue<CoveragePagingResult> pages;
+    private final boolean streaming;
+
+    // Only used when loading pages on the calling thread
+    private CoveragePagingRequest nextRequest;
+    private final boolean prefetching;
+
+    private volatile boolean closed;
+    private volatile RuntimeException failure;
+    private boolean finished;
+
+    /**
+     * @param coverageDriver - driver used to load each page
+     * @param firstRequest - request for the first page
+     * @param executor - executor to load pages on
+     * @param prefetchPages - maximum number of pages loaded ahead of the caller, zero or less to load pages on the
+     *                      calling thread
+     */
+    public CoveragePrefetcher(CoverageDriver coverageDriver, CoveragePagingRequest firstRequest,
+                              Executor executor, int prefetchPages) {
+        this(coverageDriver, firstRequest, executor, prefetchPages, false);
+    }
+
+    /**
+     * @param coverageDriver - driver used to load each page
+     * @param firstRequest - request for the first page
+     * @param executor - executor to load pages on
+     * @param prefetchPages - maximum number of pages loaded ahead of the caller, zero or less to load pages on the
+     *                      calling thread
+     * @param streaming - read every page through a single database cursor, only used when pages are loaded in
+     *                  the background
+     */
+    public CoveragePrefetcher(CoverageDriver coverageDriver, CoveragePagingRequest firstRequest,
+                              Executor executor, int prefetchPages, boolean streaming) {
+        this.coverageDriver = coverageDriver;
+        this.streaming = streaming;
+        this.pages = new ArrayBlockingQueue<>(Math.max(1, prefetchPages));
+        this.nextRequest = firstRequest;
+        this.prefetching = prefetchPages > 0 && executor != null && startPrefetching(executor, firstRequest);
+    }
+
+    private boolean startPrefetching(Executor executor, CoveragePagingRequest firstRequest) {
+        try {
+            executor.execute(() -> loadPages(firstRequest));
+            return true;
+        } catch (RejectedExecutionException ree) {
+            log.warn("no thread available to prefetch coverage for {}, loading pages on job thread",
+                    firstRequest.getContractNumber());
+            return false;
+        }
+    }
+
+    /**
+     * @return true if there may be more pages to take
+     */
+    public boolean hasNext() {
+        return prefetching ? !finished : nextRequest != null;
+    }
+
+    /**
+     * Take the next page of coverage
+     *
+     * @param timeout - maximum time to wait for a page being loaded in the background
+     * @param unit - unit of the timeout
+     * @return the next page, or null if the page is still loading or there are no more pages
+     * @throws CoverageDriverException if loading a page failed
+     * @throws InterruptedException if interrupted while waiting for a page
+     */
+    public CoveragePagingResult poll(long timeout, TimeUnit unit) throws InterruptedException {
+        if (!prefetching) {
+            if (nextRequest == null) {
+                return null;
+            }
+            CoveragePagingResult page = coverageDriver.pageCoverage(nextRequest);
+            nextRequest = page.getNextRequest().orElse(null);
+            return page;
+        }
+
+        if (finished) {
+            return null;
+        }
+
+        CoveragePagingResult page = pages.poll(timeout, unit);
+        if (page == END) {
+            finished = true;
+            if (failure != null) {
+                throw failure;
+            }
+            return null;
+        }
+        return page;
+    }
+
+    /**
+     * Runs in the background loading pages until every page is loaded or the caller stops taking pages
+     */
+    private void loadPages(CoveragePagingRequest firstRequest) {
+        try {
+            if (streaming) {
+                // Streaming stops on its own once the caller closes and pages are no longer accepted
+                coverageDriver.streamCoverage(firstRequest, this::enqueue);
+            } else {
+                CoveragePagingRequest request = firstRequest;
+                while (request != null && !closed) {
+                    CoveragePagingResult page = coverageDriver.pageCoverage(request);
+                    if (!enqueue(page)) {
+                        return;
+                    }
+                    request = page.getNextRequest().orElse(null);
+                }
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            failure = new CoverageDriverException("interrupted while prefetching coverage", ie);
+        } catch (RuntimeException exception) {
+            failure = exception;
+        }
+
+        try {
+            enqueue(END);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean enqueue(CoveragePagingResult page) throws InterruptedException {
+        while (!closed) {
+            if (pages.offer(page, OFFER_WAIT, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stop loading pages and drop any pages loaded but not taken
+     */
+    @Override
+    public void close() {
+        closed = true;
+        pages.clear();
+    }
+}
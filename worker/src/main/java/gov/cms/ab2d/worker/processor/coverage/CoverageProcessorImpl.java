@@ -5,6 +5,7 @@ import gov.cms.ab2d.common.model.CoverageMapping;
 import gov.cms.ab2d.common.model.CoveragePeriod;
 import gov.cms.ab2d.common.service.CoverageService;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
@@ -70,6 +71,19 @@ public class CoverageProcessorImpl implements CoverageProcessor {
     private final ThreadPoolTaskExecutor executor;
     private final int maxAttempts;
 
+    // Insert each page of a search while the search runs instead of once the search is finished
+    private final ThreadPoolTaskExecutor insertionExecutor;
+    private final boolean streamInserts;
+
+    // Write only the beneficiaries that changed since the last successful search
+    private final boolean changesOnly;
+
+    // Writes snapshots of enrollment to local disk once searches complete
+    private final CoverageSnapshotStore snapshotStore;
+
+    // Requests the next page of enrollment from BFD while the current page is filtered, null when disabled
+    private final ThreadPoolTaskExecutor fetchExecutor;
+
     private final List<CoverageMappingCallable> inProgressMappings = new ArrayList<>();
 
     // Queue for results of jobs that have already completed
@@ -86,13 +100,39 @@ public class CoverageProcessorImpl implements CoverageProcessor {
      * @param executor thread pool to execute enrollment updates within
      * @param maxAttempts max number of retries to make for updating enrollment for a specific month before failing outright
      */
+    public CoverageProcessorImpl(CoverageService coverageService, BFDClient bfdClient, ThreadPoolTaskExecutor executor,
+                                 int maxAttempts) {
+        this(coverageService, bfdClient, executor, maxAttempts, null, false, false, null, null, false);
+    }
+
+    /**
+     * @param insertionExecutor thread pool pages of coverage are inserted within while searches are running
+     * @param streamInserts whether to insert coverage page by page while searching BFD instead of after the search
+     * @param changesOnly whether to write only the changes since the last successful search, ignored when
+     *                    coverage is inserted page by page because no complete search is held in memory
+     * @param snapshotStore writes a snapshot of a contract's enrollment after each search of the contract completes
+     * @param fetchExecutor thread pool the next page of enrollment is requested from BFD within
+     * @param pipelinedFetch whether to request the next page of enrollment while the current page is filtered
+     */
+    @Autowired
     public CoverageProcessorImpl(CoverageService coverageService, BFDClient bfdClient,
                                  @Qualifier("patientCoverageThreadPool") ThreadPoolTaskExecutor executor,
-                                 @Value("${coverage.update.max.attempts}") int maxAttempts) {
+                                 @Value("${coverage.update.max.attempts}") int maxAttempts,
+                                 @Qualifier("patientCoverageInsertionThreadPool") ThreadPoolTaskExecutor insertionExecutor,
+                                 @Value("${coverage.update.stream.inserts:false}") boolean streamInserts,
+                                 @Value("${coverage.update.changes.only:false}") boolean changesOnly,
+                                 CoverageSnapshotStore snapshotStore,
+                                 @Qualifier("patientCoverageFetchThreadPool") ThreadPoolTaskExecutor fetchExecutor,
+                                 @Value("${coverage.update.pipelined.fetch:false}") boolean pipelinedFetch) {
         this.coverageService = coverageService;
         this.bfdClient = bfdClient;
         this.executor = executor;
         this.maxAttempts = maxAttempts;
+        this.insertionExecutor = insertionExecutor;
+        this.streamInserts = streamInserts && insertionExecutor != null;
+        this.changesOnly = changesOnly && !this.streamInserts;
+        this.snapshotStore = snapshotStore;
+        this.fetchExecutor = pipelinedFetch ? fetchExecutor : null;
     }
 
     @Override
@@ -139,8 +179,13 @@ public class CoverageProcessorImpl implements CoverageProcessor {
             log.info("starting search for {} during {}-{}", mapping.getContract().getContractNumber(),
                     mapping.getPeriod().getMonth(), mapping.getPeriod().getYear());
 
+            // Coverage staged by a streaming search only replaces older coverage once the search is completed
+            CoverageStreamWriter writer = streamInserts
+                    ? new CoverageStreamWriter(coverageService, mapping.getCoverageSearchEvent().getId(), insertionExecutor)
+                    : null;
+
             // Currently, we are using the STU3 version to get patient mappings
-            CoverageMappingCallable callable = new CoverageMappingCallable(STU3, mapping, bfdClient);
+            CoverageMappingCallable callable = new CoverageMappingCallable(STU3, mapping, bfdClient, writer, fetchExecutor);
             executor.submit(callable);
             inProgressMappings.add(callable);
 
@@ -241,6 +286,9 @@ public class CoverageProcessorImpl implements CoverageProcessor {
      *      - Coverage unsuccessfully pulled from BFD and all retries used. Coverage search is marked as failed without a re-attempt
      *      - Coverage unsuccessfully pulled but there are still retries available. Coverage search is resubmitted for another attempt
      *
+     * When inserts are streamed the coverage has already been staged in the database and the queued mapping is empty,
+     * so queueing it only vacuums and completes the search.
+     *
      * @param mapping results of {@link CoverageMappingCallable}
      */
     public void evaluateJob(CoverageMapping mapping) {
@@ -329,13 +377,23 @@ public class CoverageProcessorImpl implements CoverageProcessor {
             int month = result.getPeriod().getMonth();
             int year = result.getPeriod().getYear();
 
-            coverageService.insertCoverage(eventId, result.getBeneficiaryIds());
+            if (changesOnly) {
+                // Changes overwrite the previous coverage so they are only kept if the search completes
+                coverageService.completeSearchWithChanges(eventId, result.getBeneficiaryIds(),
+                        "successfully inserted all data for in progress search");
+            } else {
+                coverageService.insertCoverage(eventId, result.getBeneficiaryIds());
 
-            log.info("finished inserting coverage for {}-{}-{}", contractNumber, month, year);
+                log.info("finished inserting coverage for {}-{}-{}", contractNumber, month, year);
 
-            coverageService.completeSearch(periodId, "successfully inserted all data for in progress search");
+                coverageService.completeSearch(periodId, "successfully inserted all data for in progress search");
+            }
 
             log.info("marked search as completed {}-{}-{}", contractNumber, month, year);
+
+            if (snapshotStore != null) {
+                snapshotStore.exportLater(result.getContract());
+            }
         } catch (Exception exception) {
             log.error("inserting the coverage data failed for {}-{}-{}", result.getContract().getContractNumber(),
                     result.getPeriod().getMonth(), result.getPeriod().getYear());
@@ -0,0 +1,409 @@
+package gov.cms.ab2d.worker.processor.coverage;
+
+import gov.cms.ab2d.common.model.Contract;
+import gov.cms.ab2d.common.model.CoveragePagingRequest;
+import gov.cms.ab2d.common.model.CoveragePagingResult;
+import gov.cms.ab2d.common.model.CoverageSummary;
+import gov.cms.ab2d.common.model.Identifiers;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static gov.cms.ab2d.common.util.DateUtil.AB2D_EPOCH_YEAR;
+
+/**
+ * Read only copy of every beneficiary enrolled in a contract kept in a memory mapped file on local disk.
+ *
+ * The file is laid out as, with every value big endian
+ *      - header: magic number, format, number of beneficiaries, longs of months per beneficiary,
+ *          and number of coverage periods
+ *      - id of every coverage period and search event of the search that last completed for it, which is
+ *          the version of the coverage in the snapshot
+ *      - one fixed width record per beneficiary sorted by beneficiary id: beneficiary id, bitmask of months
+ *          enrolled since the AB2D epoch, and offset of the beneficiary's mbis
+ *      - offset of the end of the mbis
+ *      - mbis of every beneficiary, each a marker for whether a current mbi is present, the current mbi,
+ *          and each historic mbi preceded by a comma
+ *
+ * Records are fixed width so the first beneficiary of a page is found with a binary search on the cursor. The mapping
+ * is only read with absolute gets so many jobs can page through the same snapshot at once.
+ */
+@Slf4j
+public class CoverageSnapshot {
+
+    private static final int MAGIC = 0x41423243;
+    private static final int FORMAT = 1;
+
+    private static final int HEADER_SIZE = 5 * Integer.BYTES;
+    private static final int BENEFICIARIES_POSITION = 2 * Integer.BYTES;
+    private static final int PERIOD_SIZE = Integer.BYTES + Long.BYTES;
+    private static final int MONTHS_PER_WORD = Long.SIZE;
+
+    private static final byte NO_CURRENT_MBI = 0;
+    private static final byte CURRENT_MBI = 1;
+    private static final byte SEPARATOR = ',';
+
+    private final Path path;
+    private final FileTime modified;
+    private final MappedByteBuffer buffer;
+
+    // Search event of the last completed search of each coverage period when the snapshot was written
+    private final Map<Integer, Long> searchEvents;
+
+    private final int beneficiaries;
+    private final int monthWords;
+    private final int recordSize;
+    private final int recordsStart;
+    private final int mbisStart;
+
+    private CoverageSnapshot(Path path, FileTime modified, MappedByteBuffer buffer) throws IOException {
+        this.path = path;
+        this.modified = modified;
+        this.buffer = buffer;
+
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(Integer.BYTES) != FORMAT) {
+            throw new IOException("not a coverage snapshot or written in an unsupported format " + path);
+        }
+
+        beneficiaries = buffer.getInt(BENEFICIARIES_POSITION);
+        monthWords = buffer.getInt(3 * Integer.BYTES);
+        int periods = buffer.getInt(4 * Integer.BYTES);
+
+        Map<Integer, Long> events = new TreeMap<>();
+        for (int idx = 0; idx < periods; idx++) {
+            int position = HEADER_SIZE + idx * PERIOD_SIZE;
+            events.put(buffer.getInt(position), buffer.getLong(position + Integer.BYTES));
+        }
+        searchEvents = Collections.unmodifiableMap(events);
+
+        recordSize = recordSize(monthWords);
+        recordsStart = HEADER_SIZE + periods * PERIOD_SIZE;
+        mbisStart = recordsStart + beneficiaries * recordSize + Integer.BYTES;
+
+        if (mbisStart > buffer.limit() || mbisStart + mbiOffset(beneficiaries) != buffer.limit()) {
+            throw new IOException("coverage snapshot is truncated " + path);
+        }
+    }
+
+    /**
+     * Map a snapshot into memory. The mapping stays valid after the file is replaced by a newer snapshot.
+     *
+     * @param path file written by a {@link Writer}
+     * @throws IOException if the file cannot be mapped or is not a complete snapshot
+     */
+    public static CoverageSnapshot open(Path path) throws IOException {
+        FileTime modified = Files.getLastModifiedTime(path);
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("coverage snapshot is too large to map " + path);
+            }
+
+            return new CoverageSnapshot(path, modified, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public FileTime getModified() {
+        return modified;
+    }
+
+    public Map<Integer, Long> getSearchEvents() {
+        return searchEvents;
+    }
+
+    public int size() {
+        return beneficiaries;
+    }
+
+    /**
+     * Build a page of coverage the same way paging through the coverage table does. Beneficiaries are returned
+     * in order of beneficiary id starting at the cursor and only months within the range are included. Beneficiaries
+     * not enrolled during any of those months are skipped.
+     *
+     * @param request page size, cursor, and contract of the page
+     * @param firstMonth first month since the AB2D epoch to include
+     * @param lastMonth last month since the AB2D epoch to include
+     * @return the page and the request for the next page if more beneficiaries follow
+     */
+    public CoveragePagingResult page(CoveragePagingRequest request, int firstMonth, int lastMonth) {
+        Contract contract = request.getContract();
+        int pageSize = request.getPageSize();
+
+        long[] masks = new long[monthWords];
+        for (int word = 0; word < monthWords; word++) {
+            masks[word] = mask(word, firstMonth, lastMonth);
+        }
+
+        List<CoverageSummary> summaries = new ArrayList<>(pageSize);
+        CoveragePagingRequest nextRequest = null;
+
+        for (int idx = findFirst(request.getCursor().orElse(Long.MIN_VALUE)); idx < beneficiaries; idx++) {
+            long[] enrolledMonths = readEnrolledMonths(idx, masks);
+            if (enrolledMonths == null) {
+                continue;
+            }
+
+            long beneficiaryId = buffer.getLong(record(idx));
+
+            // Page is full and there is at least one more beneficiary
+            if (summaries.size() == pageSize) {
+                nextRequest = request.withCursor(beneficiaryId);
+                break;
+            }
+
+            summaries.add(CoverageSummary.ofEnrolledMonths(readIdentifiers(idx, beneficiaryId), contract, enrolledMonths));
+        }
+
+        return new CoveragePagingResult(summaries, nextRequest);
+    }
+
+    /**
+     * Find the position of the first beneficiary with an id greater than or equal to the cursor
+     */
+    private int findFirst(long cursor) {
+        int low = 0;
+        int high = beneficiaries;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (buffer.getLong(record(middle)) < cursor) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return months enrolled within the masks or null if the beneficiary is not enrolled in any of them
+     */
+    private long[] readEnrolledMonths(int index, long[] masks) {
+        int position = record(index) + Long.BYTES;
+
+        long[] enrolledMonths = new long[monthWords];
+        boolean enrolled = false;
+        for (int word = 0; word < monthWords; word++) {
+            enrolledMonths[word] = buffer.getLong(position + word * Long.BYTES) & masks[word];
+            enrolled |= enrolledMonths[word] != 0;
+        }
+
+        return enrolled ? enrolledMonths : null;
+    }
+
+    private Identifiers readIdentifiers(int index, long beneficiaryId) {
+        int start = mbisStart + mbiOffset(index);
+        byte[] encoded = new byte[mbiOffset(index + 1) - mbiOffset(index)];
+        buffer.get(start, encoded);
+
+        String[] mbis = new String(encoded, 1, encoded.length - 1, StandardCharsets.UTF_8).split(",", -1);
+
+        String currentMbi = encoded[0] == CURRENT_MBI ? mbis[0] : null;
+        LinkedHashSet<String> historicMbis = new LinkedHashSet<>();
+        for (int idx = 1; idx < mbis.length; idx++) {
+            historicMbis.add(mbis[idx]);
+        }
+
+        return new Identifiers(beneficiaryId, currentMbi, historicMbis);
+    }
+
+    /**
+     * Offset of the mbis of a beneficiary from the start of the mbis, the offset after the last beneficiary
+     * is the end of the mbis
+     */
+    private int mbiOffset(int index) {
+        if (index == beneficiaries) {
+            return buffer.getInt(record(beneficiaries));
+        }
+        return buffer.getInt(record(index) + recordSize - Integer.BYTES);
+    }
+
+    private int record(int index) {
+        return recordsStart + index * recordSize;
+    }
+
+    private static int recordSize(int monthWords) {
+        return Long.BYTES + monthWords * Long.BYTES + Integer.BYTES;
+    }
+
+    /**
+     * Bits of a word of the month bitmask that fall between the first and last month
+     */
+    private static long mask(int word, int firstMonth, int lastMonth) {
+        int from = Math.max(firstMonth - word * MONTHS_PER_WORD, 0);
+        int to = Math.min(lastMonth - word * MONTHS_PER_WORD, MONTHS_PER_WORD - 1);
+        if (from > to) {
+            return 0;
+        }
+
+        long upTo = to == MONTHS_PER_WORD - 1 ? -1L : (1L << (to + 1)) - 1;
+        return upTo & ~((1L << from) - 1);
+    }
+
+    /**
+     * Writes a snapshot one beneficiary at a time in order of beneficiary id.
+     *
+     * Records are written to a temporary file next to the snapshot and mbis to a second temporary file since the
+     * size of the mbis is only known at the end. {@link #finish(Path)} joins them and moves the snapshot into place
+     * so readers never see a partially written snapshot. Closing without finishing removes the temporary files.
+     */
+    public static class Writer implements Closeable {
+
+        private final Path recordsFile;
+        private final Path mbisFile;
+        private final DataOutputStream records;
+        private final DataOutputStream mbis;
+
+        // Months enrolled are read up to and including this month since the AB2D epoch
+        private final int lastMonth;
+        private final int monthWords;
+
+        private int beneficiaries;
+        private long mbiOffset;
+        private long lastBeneficiaryId = Long.MIN_VALUE;
+        private boolean finished;
+
+        /**
+         * @param directory directory the snapshot will be moved into
+         * @param searchEvents search event of the last completed search of each coverage period being written
+         * @param lastMonth last month since the AB2D epoch that beneficiaries may be enrolled in
+         * @throws IOException if the temporary files cannot be created
+         */
+        public Writer(Path directory, Map<Integer, Long> searchEvents, int lastMonth) throws IOException {
+            this.lastMonth = lastMonth;
+            this.monthWords = lastMonth / MONTHS_PER_WORD + 1;
+
+            recordsFile = Files.createTempFile(directory, "snapshot", ".records");
+            mbisFile = Files.createTempFile(directory, "snapshot", ".mbis");
+            records = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(recordsFile)));
+            mbis = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(mbisFile)));
+
+            // Number of beneficiaries is filled in when finished
+            records.writeInt(MAGIC);
+            records.writeInt(FORMAT);
+            records.writeInt(0);
+            records.writeInt(monthWords);
+            records.writeInt(searchEvents.size());
+
+            for (Map.Entry<Integer, Long> event : new TreeMap<>(searchEvents).entrySet()) {
+                records.writeInt(event.getKey());
+                records.writeLong(event.getValue());
+            }
+        }
+
+        /**
+         * @param summary enrollment of the next beneficiary which must follow the last beneficiary by id
+         * @throws IOException if the beneficiary is out of order or the snapshot cannot be written
+         */
+        public void add(CoverageSummary summary) throws IOException {
+            Identifiers identifiers = summary.getIdentifiers();
+            if (beneficiaries > 0 && identifiers.getBeneficiaryId() <= lastBeneficiaryId) {
+                throw new IOException("beneficiaries must be added in order of beneficiary id");
+            }
+
+            if (mbiOffset > Integer.MAX_VALUE) {
+                throw new IOException("too many beneficiaries to keep in a snapshot");
+            }
+
+            records.writeLong(identifiers.getBeneficiaryId());
+            for (long word : asEnrolledMonths(summary)) {
+                records.writeLong(word);
+            }
+            records.writeInt((int) mbiOffset);
+
+            mbiOffset += writeMbis(identifiers);
+            lastBeneficiaryId = identifiers.getBeneficiaryId();
+            beneficiaries++;
+        }
+
+        private long[] asEnrolledMonths(CoverageSummary summary) {
+            long[] enrolledMonths = new long[monthWords];
+            for (int month = 0; month <= lastMonth; month++) {
+                if (summary.isEnrolled(AB2D_EPOCH_YEAR + month / 12, month % 12 + 1)) {
+                    enrolledMonths[month / MONTHS_PER_WORD] |= 1L << (month % MONTHS_PER_WORD);
+                }
+            }
+            return enrolledMonths;
+        }
+
+        private int writeMbis(Identifiers identifiers) throws IOException {
+            int start = mbis.size();
+
+            String currentMbi = identifiers.getCurrentMbi();
+            if (currentMbi != null) {
+                mbis.writeByte(CURRENT_MBI);
+                mbis.write(currentMbi.getBytes(StandardCharsets.UTF_8));
+            } else {
+                mbis.writeByte(NO_CURRENT_MBI);
+            }
+
+            if (identifiers.getHistoricMbis() != null) {
+                for (String historicMbi : identifiers.getHistoricMbis()) {
+                    mbis.writeByte(SEPARATOR);
+                    mbis.write(historicMbi.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+
+            return mbis.size() - start;
+        }
+
+        /**
+         * Complete the snapshot and replace any snapshot already at the target
+         *
+         * @param target where the snapshot is kept
+         * @throws IOException if the snapshot cannot be completed or moved into place
+         */
+        public void finish(Path target) throws IOException {
+            if (mbiOffset > Integer.MAX_VALUE) {
+                throw new IOException("too many beneficiaries to keep in a snapshot");
+            }
+
+            records.writeInt((int) mbiOffset);
+            mbis.close();
+            Files.copy(mbisFile, records);
+            records.close();
+
+            try (FileChannel channel = FileChannel.open(recordsFile, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, beneficiaries), BENEFICIARIES_POSITION);
+                channel.force(true);
+            }
+
+            Files.move(recordsFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            finished = true;
+
+            log.info("wrote coverage snapshot of {} beneficiaries to {}", beneficiaries, target);
+        }
+
+        @Override
+        public void close() throws IOException {
+            records.close();
+            mbis.close();
+
+            Files.deleteIfExists(mbisFile);
+            if (!finished) {
+                Files.deleteIfExists(recordsFile);
+            }
+        }
+    }
+}
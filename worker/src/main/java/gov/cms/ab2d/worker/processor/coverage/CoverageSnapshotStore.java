@@ -0,0 +1,364 @@
+package gov.cms.ab2d.worker.processor.coverage;
+
+import gov.cms.ab2d.common.model.Contract;
+import gov.cms.ab2d.common.model.CoveragePageHandler;
+import gov.cms.ab2d.common.model.CoveragePagingRequest;
+import gov.cms.ab2d.common.model.CoveragePagingResult;
+import gov.cms.ab2d.common.model.CoveragePeriod;
+import gov.cms.ab2d.common.model.CoverageSummary;
+import gov.cms.ab2d.common.model.JobStatus;
+import gov.cms.ab2d.common.service.CoverageService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static gov.cms.ab2d.common.util.DateUtil.AB2D_EPOCH;
+import static gov.cms.ab2d.common.util.DateUtil.AB2D_EPOCH_YEAR;
+import static gov.cms.ab2d.common.util.DateUtil.AB2D_ZONE;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+
+/**
+ * Keeps a {@link CoverageSnapshot} of each contract's enrollment on the worker's local disk so that EOB jobs
+ * can page through enrollment without querying the coverage table.
+ *
+ * A contract's coverage only changes while its coverage periods are searched. Once every period of a contract
+ * has completed its search, the snapshot is written in the background by streaming the contract's coverage
+ * from the database. A snapshot records the search that last completed for each period and is only used while
+ * no period has completed another search since, see {@link CoverageService#findCompletedSearchEvents(List)}.
+ * Otherwise the caller pages from the database and a new snapshot is written.
+ *
+ * A job looks up the version of coverage once before its first page, see {@link #resolveVersion(CoveragePagingRequest)},
+ * and carries it on every later request so later pages only read the snapshot on local disk.
+ *
+ * Each worker keeps its own snapshots so a worker that did not run the searches writes a snapshot the first time
+ * a job for the contract runs on it.
+ */
+@Slf4j
+@Component
+public class CoverageSnapshotStore {
+
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+
+    // Number of beneficiaries read at a time while writing a snapshot
+    private static final int EXPORT_PAGE_SIZE = 10000;
+
+    private final CoverageService coverageService;
+    private final Executor executor;
+    private final Path directory;
+    private final boolean enabled;
+
+    // Snapshots already mapped into memory by contract number
+    private final Map<String, CoverageSnapshot> snapshots = new ConcurrentHashMap<>();
+
+    // Contracts waiting for a snapshot to be written
+    private final Set<String> pendingExports = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param coverageService used to find the current version of coverage and read coverage from the database
+     * @param executor thread pool snapshots are written on
+     * @param directory directory on local disk to keep snapshots in
+     * @param enabled whether to write and read snapshots at all
+     */
+    public CoverageSnapshotStore(CoverageService coverageService,
+                                 @Qualifier("coverageSnapshotThreadPool") Executor executor,
+                                 @Value("${coverage.snapshot.directory:${java.io.tmpdir}/coverage-snapshots}") String directory,
+                                 @Value("${coverage.snapshot.enabled:false}") boolean enabled) {
+        this.coverageService = coverageService;
+        this.executor = executor;
+        this.directory = Paths.get(directory);
+        this.enabled = enabled;
+    }
+
+    /**
+     * Write a snapshot of a contract in the background if one is not already waiting to be written
+     *
+     * @param contract contract whose coverage may have changed
+     */
+    public void exportLater(Contract contract) {
+        String contractNumber = contract.getContractNumber();
+        if (!enabled || !pendingExports.add(contractNumber)) {
+            return;
+        }
+
+        try {
+            executor.execute(() -> {
+                pendingExports.remove(contractNumber);
+                export(contract);
+            });
+        } catch (RejectedExecutionException ree) {
+            pendingExports.remove(contractNumber);
+            log.warn("no thread available to write coverage snapshot of {}", contractNumber);
+        }
+    }
+
+    /**
+     * Write a snapshot of a contract if none of its coverage periods are being searched and the current snapshot,
+     * if any, is out of date.
+     *
+     * @param contract contract to write a snapshot of
+     * @return true if a current snapshot exists afterwards
+     */
+    public boolean export(Contract contract) {
+        if (!enabled) {
+            return false;
+        }
+
+        String contractNumber = contract.getContractNumber();
+
+        Optional<Map<Integer, Long>> version = findVersion(contract);
+        if (version.isEmpty()) {
+            log.info("coverage of {} is being updated, not writing a snapshot", contractNumber);
+            return false;
+        }
+
+        if (findSnapshot(contractNumber).filter(snapshot -> snapshot.getSearchEvents().equals(version.get())).isPresent()) {
+            return true;
+        }
+
+        log.info("writing coverage snapshot of {}", contractNumber);
+
+        OffsetDateTime now = OffsetDateTime.now();
+        try {
+            Files.createDirectories(directory);
+
+            try (CoverageSnapshot.Writer writer = new CoverageSnapshot.Writer(directory, version.get(), monthsSinceEpoch(now))) {
+                coverageService.streamCoverage(new CoveragePagingRequest(EXPORT_PAGE_SIZE, null, contract, now),
+                        page -> writePage(writer, page));
+
+                // Coverage changed while being read so the snapshot could mix old and new coverage
+                if (!version.equals(findVersion(contract))) {
+                    log.info("coverage of {} changed while writing a snapshot, discarding the snapshot", contractNumber);
+                    return false;
+                }
+
+                writer.finish(snapshotPath(contractNumber));
+            }
+
+            snapshots.remove(contractNumber);
+            return true;
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            log.warn("interrupted while writing coverage snapshot of {}", contractNumber);
+        } catch (IOException | RuntimeException exception) {
+            log.error("failed to write coverage snapshot of {}", contractNumber, exception);
+        }
+
+        return false;
+    }
+
+    private static boolean writePage(CoverageSnapshot.Writer writer, CoveragePagingResult page) {
+        try {
+            for (CoverageSummary summary : page.getCoverageSummaries()) {
+                writer.add(summary);
+            }
+            return true;
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    /**
+     * Find the snapshot holding the current coverage of the request's contract and record its version on the
+     * request. Only looks in the database if the request does not carry a version yet.
+     *
+     * @param request request for a page
+     * @return the request carrying the version of the current snapshot, or an empty version if pages must be
+     *      read from the database
+     */
+    public CoveragePagingRequest resolveVersion(CoveragePagingRequest request) {
+        if (request.isSnapshotVersionResolved()) {
+            return request;
+        }
+
+        Map<Integer, Long> version = findCurrentSnapshot(request).map(CoverageSnapshot::getSearchEvents).orElse(Map.of());
+        return request.withSnapshotVersion(version);
+    }
+
+    /**
+     * Build a page of coverage from the snapshot whose version the request carries without touching the database
+     *
+     * @param request request for the page with its version resolved, see {@link #resolveVersion(CoveragePagingRequest)}
+     * @return the page, or empty if pages are read from the database or the snapshot has since been replaced
+     */
+    public Optional<CoveragePagingResult> page(CoveragePagingRequest request) {
+        if (!enabled || request.getSnapshotVersion().isEmpty()) {
+            return Optional.empty();
+        }
+
+        return findSnapshot(request.getContractNumber())
+                .filter(snapshot -> snapshot.getSearchEvents().equals(request.getSnapshotVersion()))
+                .map(snapshot -> snapshot.page(request, firstMonth(request), lastMonth(request)));
+    }
+
+    /**
+     * Hand off every page of coverage from the contract's snapshot starting at the request's cursor
+     *
+     * @param request request for the first page
+     * @param handler receives each page in order and may stop early
+     * @return false if there is no current snapshot and the coverage must be streamed from the database
+     * @throws InterruptedException if interrupted while handing off a page
+     */
+    public boolean stream(CoveragePagingRequest request, CoveragePageHandler handler) throws InterruptedException {
+        Optional<CoverageSnapshot> current = findCurrentSnapshot(request);
+        if (current.isEmpty()) {
+            return false;
+        }
+
+        CoverageSnapshot snapshot = current.get();
+        int firstMonth = firstMonth(request);
+        int lastMonth = lastMonth(request);
+
+        CoveragePagingRequest next = request;
+        while (next != null) {
+            CoveragePagingResult page = snapshot.page(next, firstMonth, lastMonth);
+            if (!handler.handle(page)) {
+                break;
+            }
+            next = page.getNextRequest().orElse(null);
+        }
+
+        return true;
+    }
+
+    private Optional<CoverageSnapshot> findCurrentSnapshot(CoveragePagingRequest request) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+
+        Contract contract = request.getContract();
+        List<CoveragePeriod> periods = coverageService.findAssociatedCoveragePeriods(contract.getId());
+
+        // Leave missing periods to paging from the database which fails the job
+        if (!hasEveryPeriod(request, periods)) {
+            return Optional.empty();
+        }
+
+        Optional<Map<Integer, Long>> version = findVersion(periods);
+        if (version.isEmpty()) {
+            return Optional.empty();
+        }
+
+        Optional<CoverageSnapshot> snapshot = findSnapshot(contract.getContractNumber())
+                .filter(found -> found.getSearchEvents().equals(version.get()));
+
+        if (snapshot.isEmpty()) {
+            exportLater(contract);
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Find the snapshot of a contract, mapping it into memory if it has not been yet or was replaced on disk
+     */
+    private Optional<CoverageSnapshot> findSnapshot(String contractNumber) {
+        Path path = snapshotPath(contractNumber);
+        if (!Files.exists(path)) {
+            return Optional.empty();
+        }
+
+        try {
+            CoverageSnapshot snapshot = snapshots.get(contractNumber);
+            if (snapshot == null || !snapshot.getModified().equals(Files.getLastModifiedTime(path))) {
+                snapshot = CoverageSnapshot.open(path);
+                snapshots.put(contractNumber, snapshot);
+            }
+            return Optional.of(snapshot);
+        } catch (IOException exception) {
+            log.error("could not read coverage snapshot {}", path, exception);
+            snapshots.remove(contractNumber);
+            return Optional.empty();
+        }
+    }
+
+    private Optional<Map<Integer, Long>> findVersion(Contract contract) {
+        return findVersion(coverageService.findAssociatedCoveragePeriods(contract.getId()));
+    }
+
+    /**
+     * Find the search that last completed for every period of a contract
+     *
+     * @return the search event of each period or empty if any period is being searched
+     */
+    private Optional<Map<Integer, Long>> findVersion(List<CoveragePeriod> periods) {
+        boolean beingUpdated = periods.stream()
+                .anyMatch(period -> period.getStatus() == JobStatus.SUBMITTED || period.getStatus() == JobStatus.IN_PROGRESS);
+        if (periods.isEmpty() || beingUpdated) {
+            return Optional.empty();
+        }
+
+        List<Integer> ids = periods.stream().map(CoveragePeriod::getId).collect(toList());
+        Map<Integer, Long> events = coverageService.findCompletedSearchEvents(ids);
+
+        return events.size() == ids.size() ? Optional.of(events) : Optional.empty();
+    }
+
+    /**
+     * Check that there is a coverage period for every month from attestation, but no earlier than the AB2D epoch,
+     * through the month the job started
+     */
+    private static boolean hasEveryPeriod(CoveragePagingRequest request, List<CoveragePeriod> periods) {
+        Set<YearMonth> present = periods.stream()
+                .map(period -> YearMonth.of(period.getYear(), period.getMonth())).collect(toSet());
+
+        ZonedDateTime start = request.getContract().getESTAttestationTime();
+        if (start.isBefore(AB2D_EPOCH)) {
+            start = AB2D_EPOCH;
+        }
+
+        YearMonth last = YearMonth.from(request.getJobStartTime().atZoneSameInstant(AB2D_ZONE));
+        for (YearMonth month = YearMonth.from(start); !month.isAfter(last); month = month.plusMonths(1)) {
+            if (!present.contains(month)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * First month a job can find coverage in, matching the years paged from the database
+     */
+    private static int firstMonth(CoveragePagingRequest request) {
+        return (firstYear(request) - AB2D_EPOCH_YEAR) * 12;
+    }
+
+    /**
+     * Last month a job can find coverage in, matching the years paged from the database
+     */
+    private static int lastMonth(CoveragePagingRequest request) {
+        int endYear = Math.max(firstYear(request), request.getJobStartTime().atZoneSameInstant(AB2D_ZONE).getYear());
+        return (endYear - AB2D_EPOCH_YEAR) * 12 + 11;
+    }
+
+    private static int firstYear(CoveragePagingRequest request) {
+        return Math.max(AB2D_EPOCH_YEAR, request.getContract().getESTAttestationTime().getYear());
+    }
+
+    private static int monthsSinceEpoch(OffsetDateTime time) {
+        ZonedDateTime zoned = time.atZoneSameInstant(AB2D_ZONE);
+        return (zoned.getYear() - AB2D_EPOCH_YEAR) * 12 + zoned.getMonthValue() - 1;
+    }
+
+    private Path snapshotPath(String contractNumber) {
+        return directory.resolve(contractNumber.replaceAll("[^A-Za-z0-9_-]", "_") + SNAPSHOT_SUFFIX);
+    }
+}
@@ -0,0 +1,11 @@
+package gov.cms.ab2d.worker.processor.coverage;
+
+/**
+ * Thrown when a page of coverage streamed by {@link CoverageStreamWriter} could not be inserted
+ */
+public class CoverageStreamException extends RuntimeException {
+
+    public CoverageStreamException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,129 @@
+package gov.cms.ab2d.worker.processor.coverage;
+
+import gov.cms.ab2d.common.model.IdentifierSet;
+import gov.cms.ab2d.common.model.Identifiers;
+import gov.cms.ab2d.common.service.CoverageService;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Inserts the beneficiaries found by a {@link CoverageMappingCallable} into the database one page at a time
+ * while the callable keeps pulling pages from BFD, instead of holding every page in memory until the search finishes.
+ *
+ * Pages are staged under the in progress search event. The search is only committed when
+ * {@link CoverageService#completeSearch(int, String)} replaces older enrollment with the staged coverage,
+ * and {@link #discard()} rolls back everything staged when the search fails.
+ *
+ * At most one page is inserted at a time so only the page being inserted and the page being collected
+ * are held in memory. Beneficiaries are deduplicated across pages by id.
+ *
+ * Not thread safe, all methods must be called from the thread running the search.
+ */
+@Slf4j
+public class CoverageStreamWriter {
+
+    private final CoverageService coverageService;
+    private final long searchEventId;
+    private final Executor executor;
+
+    // Only the beneficiary id of each beneficiary already written is needed to drop duplicates
+    private final IdentifierSet written = new IdentifierSet();
+
+    private IdentifierSet page = new IdentifierSet();
+    private CompletableFuture<Void> pending = CompletableFuture.completedFuture(null);
+
+    /**
+     * @param coverageService service used to stage and remove coverage
+     * @param searchEventId {@link gov.cms.ab2d.common.model.CoverageSearchEvent#getId()} of the in progress search
+     * @param executor executor pages are inserted on so the search can continue while a page is inserted
+     */
+    public CoverageStreamWriter(CoverageService coverageService, long searchEventId, Executor executor) {
+        this.coverageService = coverageService;
+        this.searchEventId = searchEventId;
+        this.executor = executor;
+    }
+
+    /**
+     * Add a beneficiary to the current page unless it has already been written for this search
+     *
+     * @return true if the beneficiary was added
+     */
+    public boolean add(Identifiers identifiers) {
+        if (!written.add(identifiers.getBeneficiaryId(), null, null)) {
+            return false;
+        }
+
+        return page.add(identifiers);
+    }
+
+    /**
+     * Number of distinct beneficiaries written or waiting to be written
+     */
+    public int size() {
+        return written.size();
+    }
+
+    /**
+     * Start inserting the current page in the background after the previous page has been inserted.
+     *
+     * @throws CoverageStreamException if the previous page could not be inserted
+     */
+    public void flush() {
+        awaitPending();
+
+        if (page.isEmpty()) {
+            return;
+        }
+
+        IdentifierSet inserting = page;
+        page = new IdentifierSet();
+        pending = CompletableFuture.runAsync(() -> coverageService.insertCoveragePage(searchEventId, inserting), executor);
+    }
+
+    /**
+     * Insert the current page and wait until every page has been inserted
+     *
+     * @throws CoverageStreamException if any page could not be inserted
+     */
+    public void finish() {
+        flush();
+        awaitPending();
+    }
+
+    /**
+     * Remove all coverage staged by this writer. Failures are logged since the staged coverage will also be
+     * removed by the next successful search of the coverage period.
+     */
+    public void discard() {
+        page.clear();
+
+        try {
+            awaitPending();
+        } catch (CoverageStreamException exception) {
+            log.warn("page insertion failed before discarding coverage for search event {}", searchEventId);
+        }
+
+        try {
+            coverageService.deleteCoverage(searchEventId);
+        } catch (Exception exception) {
+            log.error("could not discard coverage staged for search event {}", searchEventId, exception);
+        }
+    }
+
+    private void awaitPending() {
+        try {
+            pending.get();
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            throw new CoverageStreamException("interrupted while inserting coverage for search event " + searchEventId,
+                    interruptedException);
+        } catch (ExecutionException executionException) {
+            pending = CompletableFuture.completedFuture(null);
+            throw new CoverageStreamException("could not insert coverage for search event " + searchEventId,
+                    executionException.getCause());
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package gov.cms.ab2d.worker.processor.coverage.check;
+
+import gov.cms.ab2d.common.model.Contract;
+import gov.cms.ab2d.common.model.CoverageCount;
+import gov.cms.ab2d.common.model.CoveragePeriod;
+import gov.cms.ab2d.common.service.CoverageService;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.summingInt;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Check that the beneficiary counts kept when searches complete match the coverage actually in the database.
+ * Jobs use the kept counts instead of counting coverage so a wrong count would go unnoticed otherwise.
+ *
+ * Periods and contracts without a kept count are skipped since jobs count coverage directly for those.
+ */
+@Slf4j
+public class CoverageSummaryCheck extends CoverageCheckPredicate {
+
+    public CoverageSummaryCheck(CoverageService coverageService, Map<String, List<CoverageCount>> coverageCounts, List<String> issues) {
+        super(coverageService, coverageCounts, issues);
+    }
+
+    @Override
+    public boolean test(Contract contract) {
+        List<CoveragePeriod> periods = coverageService.findAssociatedCoveragePeriods(contract.getId());
+        if (periods.isEmpty()) {
+            return true;
+        }
+
+        List<String> summaryIssues = listPeriodsWithWrongSummary(contract, periods);
+
+        // Only count every beneficiary of the contract again if a count is kept
+        Optional<Integer> summarized = coverageService.findSummarizedBeneficiaryCount(periods);
+        if (summarized.isPresent()) {
+            int actual = coverageService.countBeneficiariesFromCoverage(periods);
+            if (summarized.get() != actual) {
+                summaryIssues.add(String.format("%s has %d distinct beneficiaries but the kept count is %d",
+                        contract.getContractNumber(), actual, summarized.get()));
+            }
+        }
+
+        summaryIssues.forEach(log::warn);
+        issues.addAll(summaryIssues);
+
+        return summaryIssues.isEmpty();
+    }
+
+    private List<String> listPeriodsWithWrongSummary(Contract contract, List<CoveragePeriod> periods) {
+        Map<Integer, Integer> actualCounts = coverageCounts.getOrDefault(contract.getContractNumber(), List.of())
+                .stream().collect(groupingBy(CoverageCount::getCoveragePeriodId, summingInt(CoverageCount::getBeneficiaryCount)));
+
+        Map<Integer, Integer> summarizedCounts = coverageService.findSummarizedPeriodCounts(
+                periods.stream().map(CoveragePeriod::getId).collect(toList()));
+
+        List<String> wrongSummaries = new ArrayList<>();
+        for (CoveragePeriod period : periods) {
+            Integer summarized = summarizedCounts.get(period.getId());
+            int actual = actualCounts.getOrDefault(period.getId(), 0);
+
+            if (summarized != null && summarized != actual) {
+                wrongSummaries.add(String.format("%s-%d-%d has %d beneficiaries but the kept count is %d",
+                        contract.getContractNumber(), period.getYear(), period.getMonth(), actual, summarized));
+            }
+        }
+
+        return wrongSummaries;
+    }
+}
@@ -43,15 +43,18 @@ public class CoverageUpToDateCheck extends CoverageCheckPredicate {
 
             // Check that the last successful search is the one that we have coverage
             // information for and not an old one
+            // Searches that only wrote changes keep coverage under the earlier search event they updated
             CoverageSearchEvent successfulEvent = mostRecentSuccessfulSearch.get();
-            if (successfulEvent.getId() != count.getCoverageEventId()) {
+            long coverageEventId = successfulEvent.getCoverageEventId() != null
+                    ? successfulEvent.getCoverageEventId() : successfulEvent.getId();
+            if (coverageEventId != count.getCoverageEventId()) {
                 String issue = String.format("%s-%d-%d has coverage from an old coverage search not the most recent one",
                         count.getContractNumber(), count.getYear(), count.getMonth());
                 log.warn(issue);
                 issues.add(issue);
             }
 
-            return successfulEvent.getId() != count.getCoverageEventId();
+            return coverageEventId != count.getCoverageEventId();
         }).count() == 0;
     }
 }
@@ -0,0 +1,100 @@
+package gov.cms.ab2d.worker.config;
+
+import gov.cms.ab2d.common.service.PropertiesService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class AutoScalingServiceUnitTest {
+
+    @Mock
+    private PropertiesService propertiesService;
+
+    @Mock
+    private RoundRobinBlockingQueue<Runnable> eobClaimRequestsQueue;
+
+    private JobScopedThreadPoolTaskExecutor executor;
+    private BfdResponseMonitor monitor;
+    private AutoScalingServiceImpl autoScalingService;
+
+    @BeforeEach
+    void setUp() {
+        executor = new JobScopedThreadPoolTaskExecutor(new RoundRobinBlockingQueue<>());
+        executor.setCorePoolSize(3);
+        executor.setMaxPoolSize(3);
+        executor.initialize();
+
+        monitor = new BfdResponseMonitor();
+
+        // Scale to max time of zero so a healthy window jumps straight to the max size
+        autoScalingService = new AutoScalingServiceImpl(executor, eobClaimRequestsQueue, propertiesService, monitor,
+                3, 20, 0, 1000, 0.05, 0.5);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void increaseAdditivelyAndDecreaseMultiplicatively() {
+        when(propertiesService.isInMaintenanceMode()).thenReturn(false);
+        when(eobClaimRequestsQueue.isEmpty()).thenReturn(false);
+
+        // Kick off
+        autoScalingService.autoscale();
+        assertEquals(3, executor.getMaxPoolSize());
+
+        // BFD healthy so the pool grows
+        monitor.record(100, true);
+        autoScalingService.autoscale();
+        assertEquals(20, executor.getMaxPoolSize());
+        assertEquals(20, executor.getCorePoolSize());
+
+        // p95 over the target so the pool is cut in half
+        for (int idx = 0; idx < 100; idx++) {
+            monitor.record(idx < 90 ? 100 : 5000, true);
+        }
+        autoScalingService.autoscale();
+        assertEquals(10, executor.getMaxPoolSize());
+        assertEquals(10, executor.getCorePoolSize());
+
+        // Errors over the target cut the pool again but never below the core size
+        monitor.record(100, false);
+        autoScalingService.autoscale();
+        assertEquals(5, executor.getMaxPoolSize());
+        monitor.record(100, false);
+        autoScalingService.autoscale();
+        assertEquals(3, executor.getMaxPoolSize());
+
+        // Queue empties so the pool goes back to the core size
+        when(eobClaimRequestsQueue.isEmpty()).thenReturn(true);
+        autoScalingService.autoscale();
+        assertEquals(3, executor.getMaxPoolSize());
+        assertEquals(3, executor.getCorePoolSize());
+    }
+
+    @Test
+    void monitorSummarizesWindow() {
+        for (int idx = 1; idx <= 100; idx++) {
+            monitor.record(idx, idx % 10 != 0);
+        }
+
+        BfdResponseStats stats = monitor.nextWindow();
+        assertEquals(100, stats.getRequests());
+        assertEquals(10, stats.getErrors());
+        assertEquals(0.1, stats.getErrorRate(), 0.0001);
+        assertEquals(95, stats.getP95LatencyMillis());
+
+        BfdResponseStats empty = monitor.nextWindow();
+        assertEquals(0, empty.getRequests());
+        assertEquals(0, empty.getErrorRate(), 0);
+    }
+}
@@ -0,0 +1,129 @@
+package gov.cms.ab2d.worker.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JobScopedThreadPoolTaskExecutorTest {
+
+    private RoundRobinBlockingQueue<Runnable> queue;
+    private JobScopedThreadPoolTaskExecutor executor;
+
+    @BeforeEach
+    void setUp() {
+        queue = new RoundRobinBlockingQueue<>();
+        executor = new JobScopedThreadPoolTaskExecutor(queue);
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(2);
+        executor.setThreadNamePrefix("test-");
+        executor.initialize();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void submitAllRunsEveryTaskAndCounts() throws Exception {
+        List<Callable<Integer>> tasks = IntStream.range(0, 20).mapToObj(idx -> (Callable<Integer>) () -> idx)
+                .collect(Collectors.toList());
+
+        List<CompletableFuture<Integer>> futures = executor.submitAll("job1", tasks);
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+
+        for (int idx = 0; idx < futures.size(); idx++) {
+            assertEquals(idx, futures.get(idx).get());
+        }
+
+        JobTaskCounts counts = executor.getJobTaskCounts("job1");
+        assertEquals(0, counts.getQueued());
+        assertEquals(0, counts.getRunning());
+        assertEquals(20, counts.getCompleted());
+        assertTrue(executor.getJobTaskCounts().containsKey("job1"));
+
+        executor.finishJob("job1");
+        assertEquals(0, executor.getJobTaskCounts("job1").getCompleted());
+        assertTrue(executor.getJobTaskCounts().isEmpty());
+    }
+
+    @Test
+    void submitFailureCompletesFutureExceptionally() {
+        CompletableFuture<Object> future = executor.submit("job1", () -> {
+            throw new IllegalStateException("failed");
+        });
+
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+        assertEquals("failed", ex.getCause().getMessage());
+    }
+
+    @Test
+    void cancelQueuedDropsWaitingTasks() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Callable<Boolean> blocking = () -> release.await(10, TimeUnit.SECONDS);
+
+        // Occupy both threads so the remaining tasks wait in the queue
+        List<CompletableFuture<Boolean>> running = executor.submitAll("job1", List.of(blocking, blocking));
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (executor.getJobTaskCounts("job1").getRunning() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, executor.getJobTaskCounts("job1").getRunning());
+
+        List<CompletableFuture<Boolean>> waiting = executor.submitAll("job1", List.of(blocking, blocking, blocking));
+        assertEquals(3, executor.getJobTaskCounts("job1").getQueued());
+
+        assertEquals(3, executor.cancelQueued("job1"));
+        assertEquals(0, executor.getJobTaskCounts("job1").getQueued());
+
+        release.countDown();
+        for (CompletableFuture<Boolean> future : running) {
+            assertTrue(future.get(10, TimeUnit.SECONDS));
+        }
+        waiting.forEach(future -> assertTrue(future.isCancelled()));
+    }
+
+    @Test
+    void maxInFlightPerJobLimitsRunningTasks() throws Exception {
+        executor.setMaxInFlightPerJob(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        Callable<Boolean> task = () -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.sleep(5);
+            running.decrementAndGet();
+            return true;
+        };
+
+        List<CompletableFuture<Boolean>> futures = executor.submitAll("job1",
+                IntStream.range(0, 10).mapToObj(idx -> task).collect(Collectors.toList()));
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+
+        assertEquals(1, maxRunning.get());
+        assertEquals(10, executor.getJobTaskCounts("job1").getCompleted());
+    }
+
+    @Test
+    void smallJobsAreWeighted() {
+        executor.setSmallJobSize(100);
+        executor.setSmallJobWeight(4);
+
+        executor.startJob("small", 100);
+        executor.startJob("large", 101);
+
+        assertEquals(4, queue.getWeight("small"));
+        assertEquals(1, queue.getWeight("large"));
+    }
+}
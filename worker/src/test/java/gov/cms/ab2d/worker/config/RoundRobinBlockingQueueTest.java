@@ -7,7 +7,11 @@ import java.io.FileNotFoundException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -185,4 +189,186 @@ public class RoundRobinBlockingQueueTest {
         assertEquals(future2, queue.peek());
         RoundRobinBlockingQueue.CATEGORY_HOLDER.remove();
     }
-}
\ No newline at end of file
+
+    @Test
+    void removeCategory() {
+        RoundRobinBlockingQueue<Object> queue = new RoundRobinBlockingQueue<>();
+        String contract1 = "0001";
+        String contract2 = "0002";
+
+        RoundRobinBlockingQueue.CATEGORY_HOLDER.set(contract1);
+        Object future1 = new Object();
+        Object future2 = new Object();
+        queue.add(future1);
+        queue.add(future2);
+        RoundRobinBlockingQueue.CATEGORY_HOLDER.set(contract2);
+        Object future3 = new Object();
+        queue.add(future3);
+        RoundRobinBlockingQueue.CATEGORY_HOLDER.remove();
+
+        assertEquals(2, queue.size(contract1));
+        assertEquals(1, queue.size(contract2));
+
+        // Every dropped task is handed back
+        List<Object> removed = new ArrayList<>();
+        assertEquals(2, queue.removeCategory(contract1, removed::add));
+        assertEquals(List.of(future1, future2), removed);
+        assertEquals(0, queue.removeCategory(contract1));
+        assertEquals(0, queue.size(contract1));
+        assertEquals(1, queue.size());
+
+        // The removed category is skipped when serving tasks
+        assertEquals(future3, queue.poll());
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    void concurrentProducersAndConsumers() throws InterruptedException {
+        RoundRobinBlockingQueue<Integer> queue = new RoundRobinBlockingQueue<>();
+        int producers = 4;
+        int perProducer = 10_000;
+
+        AtomicInteger consumed = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int idx = 0; idx < producers; idx++) {
+            String category = "contract" + idx;
+            threads.add(new Thread(() -> {
+                RoundRobinBlockingQueue.CATEGORY_HOLDER.set(category);
+                for (int value = 0; value < perProducer; value++) {
+                    queue.add(value);
+                }
+                RoundRobinBlockingQueue.CATEGORY_HOLDER.remove();
+            }));
+            threads.add(new Thread(() -> {
+                try {
+                    while (queue.poll(5, TimeUnit.SECONDS) != null) {
+                        consumed.incrementAndGet();
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(producers * perProducer, consumed.get());
+        assertEquals(0, queue.size());
+        for (int idx = 0; idx < producers; idx++) {
+            assertEquals(0, queue.size("contract" + idx));
+        }
+    }
+
+    @Test
+    void weightedCategoryWakesEveryConsumer() throws InterruptedException {
+        RoundRobinBlockingQueue<Runnable> queue = new RoundRobinBlockingQueue<>();
+        int consumers = 4;
+        queue.setWeight("job1", consumers);
+
+        // Every task waits for all the other tasks to start so each consumer can only take one task
+        CountDownLatch started = new CountDownLatch(consumers);
+        Set<String> usedThreads = ConcurrentHashMap.newKeySet();
+        List<Thread> threads = new ArrayList<>();
+        for (int idx = 0; idx < consumers; idx++) {
+            threads.add(new Thread(() -> {
+                try {
+                    queue.take().run();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+
+        // Wait for every consumer to park on the empty queue
+        for (Thread thread : threads) {
+            while (thread.getState() != Thread.State.WAITING && thread.getState() != Thread.State.TIMED_WAITING) {
+                Thread.sleep(1);
+            }
+        }
+
+        // Tasks offered one at a time only signal when the category is first scheduled
+        RoundRobinBlockingQueue.CATEGORY_HOLDER.set("job1");
+        for (int idx = 0; idx < consumers; idx++) {
+            queue.offer(() -> {
+                usedThreads.add(Thread.currentThread().getName());
+                started.countDown();
+                try {
+                    started.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        RoundRobinBlockingQueue.CATEGORY_HOLDER.remove();
+
+        assertTrue(started.await(10, TimeUnit.SECONDS), "only " + usedThreads.size() + " consumers took a task");
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(consumers, usedThreads.size());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    void weightedCategoriesServedInRuns() {
+        RoundRobinBlockingQueue<String> queue = new RoundRobinBlockingQueue<>();
+        queue.setWeight("small", 3);
+        queue.addAll("large", List.of("l1", "l2", "l3"));
+        queue.addAll("small", List.of("s1", "s2", "s3", "s4"));
+
+        List<String> order = new ArrayList<>();
+        String next;
+        while ((next = queue.poll()) != null) {
+            order.add(next);
+        }
+
+        assertEquals(List.of("l1", "s1", "s2", "s3", "l2", "s4", "l3"), order);
+        assertEquals(1, queue.getWeight("large"));
+
+        queue.removeCategory("small");
+        assertEquals(1, queue.getWeight("small"));
+        assertThrows(IllegalArgumentException.class, () -> queue.setWeight("small", 0));
+    }
+
+    @Test
+    void categoryAtInFlightLimitWaitsForRelease() throws InterruptedException {
+        RoundRobinBlockingQueue<Runnable> queue = new RoundRobinBlockingQueue<>();
+        queue.setMaxInFlight(1);
+
+        JobTask.Counters counters = new JobTask.Counters();
+        Runnable release = () -> queue.release("job1");
+        JobTask<Integer> first = new JobTask<>("job1", () -> 1, counters, release);
+        JobTask<Integer> second = new JobTask<>("job1", () -> 2, counters, release);
+        JobTask<Integer> other = new JobTask<>("job2", () -> 3, counters, () -> queue.release("job2"));
+        queue.addAll("job1", List.of(first, second));
+        queue.add(other);
+
+        assertSame(first, queue.poll());
+        assertEquals(1, queue.inFlight("job1"));
+
+        // job1 is at its limit so only job2 is served
+        assertSame(other, queue.poll());
+        assertNull(queue.poll());
+        assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+        assertEquals(1, queue.size("job1"));
+
+        // Finishing the first task frees job1
+        first.run();
+        assertEquals(0, queue.inFlight("job1"));
+        assertSame(second, queue.poll(1, TimeUnit.SECONDS));
+        assertTrue(queue.isEmpty());
+
+        // Raising the limit frees a category without waiting for a release
+        JobTask<Integer> third = new JobTask<>("job1", () -> 4, counters, release);
+        queue.add(third);
+        assertNull(queue.poll());
+        queue.setMaxInFlight(0);
+        assertSame(third, queue.poll());
+    }
+}
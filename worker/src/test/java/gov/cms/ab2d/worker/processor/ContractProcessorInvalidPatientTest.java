@@ -6,14 +6,17 @@ import gov.cms.ab2d.common.repository.JobRepository;
 import gov.cms.ab2d.filter.FilterOutByDate;
 import gov.cms.ab2d.eventlogger.LogManager;
 import gov.cms.ab2d.worker.TestUtil;
-import gov.cms.ab2d.worker.config.RoundRobinBlockingQueue;
+import gov.cms.ab2d.worker.config.BfdResponseMonitor;
 import gov.cms.ab2d.worker.processor.coverage.CoverageDriver;
+import gov.cms.ab2d.worker.processor.stub.JobScopedExecutorStub;
 import gov.cms.ab2d.worker.service.JobChannelService;
 import gov.cms.ab2d.worker.service.JobChannelStubServiceImpl;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.api.io.TempDir;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.test.util.ReflectionTestUtils;
@@ -26,6 +29,7 @@ import java.nio.file.Path;
 import java.time.OffsetDateTime;
 import java.util.Date;
 import java.util.List;
+import java.util.function.Function;
 
 import static gov.cms.ab2d.fhir.FhirVersion.STU3;
 import static gov.cms.ab2d.worker.processor.BundleUtils.createIdentifierWithoutMbi;
@@ -33,6 +37,10 @@ import static java.util.Collections.singletonList;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -53,13 +61,12 @@ class ContractProcessorInvalidPatientTest {
     @Mock
     private JobRepository jobRepository;
 
-    @Mock
-    private RoundRobinBlockingQueue<PatientClaimsRequest> requestQueue;
-
     @TempDir
     File tmpDirFolder;
 
     private ContractProcessor cut;
+    private JobProgressServiceImpl jobProgressUpdateService;
+    private JobChannelService jobChannelService;
     private final Job job = new Job();
     private static final String jobId = "1234";
     private final String contractId = "ABC";
@@ -67,14 +74,14 @@ class ContractProcessorInvalidPatientTest {
     @BeforeEach
     void setup() {
 
-        patientClaimsProcessor = new PatientClaimsProcessorImpl(bfdClient, eventLogger);
-        JobProgressServiceImpl jobProgressUpdateService = new JobProgressServiceImpl(jobRepository);
+        patientClaimsProcessor = new PatientClaimsProcessorImpl(bfdClient, eventLogger, new BfdResponseMonitor());
+        jobProgressUpdateService = new JobProgressServiceImpl(jobRepository);
         jobProgressUpdateService.initJob(jobId);
-        JobChannelService jobChannelService = new JobChannelStubServiceImpl(jobProgressUpdateService);
+        jobChannelService = new JobChannelStubServiceImpl(jobProgressUpdateService);
 
 
         cut = new ContractProcessorImpl(jobRepository, coverageDriver, patientClaimsProcessor, eventLogger,
-                requestQueue, jobChannelService, jobProgressUpdateService);
+                new JobScopedExecutorStub(), jobChannelService, jobProgressUpdateService, null, null);
         jobChannelService.sendUpdate(jobId, JobMeasure.FAILURE_THRESHHOLD, 100);
 
         Contract contract = new Contract();
@@ -135,6 +142,7 @@ class ContractProcessorInvalidPatientTest {
         ContractData contractData = new ContractData(job, helper);
 
         ((ContractProcessorImpl) cut).writeExceptionToContractErrorFile(contractData, val, new RuntimeException("Exception"));
+        helper.closeLastStream();
         String result = Files.readString(Path.of(tmpDirFolder.getAbsolutePath() + File.separator + contractId + "_error.ndjson"));
         assertEquals(val, result);
     }
@@ -149,6 +157,69 @@ class ContractProcessorInvalidPatientTest {
         assertThrows(NoSuchFileException.class, () -> Files.readString(Path.of(tmpDirFolder.getAbsolutePath() + File.separator + contractId + "_error.ndjson")));
     }
 
+    @Test
+    void testEncodingErrorOnContractThread() throws IOException {
+        IBaseResource unencodable = createUnencodableResource();
+        Exception expected = assertThrows(Exception.class, () -> new ResourceEncoder().encode(STU3, unencodable));
+
+        Exception written = processUnencodableClaim(unencodable, request -> new EobSearchResult(jobId, contractId, List.of(unencodable)));
+
+        assertEquals(expected.getClass(), written.getClass());
+        assertEquals(expected.getMessage(), written.getMessage());
+    }
+
+    @Test
+    void testEncodingErrorOnWorker() throws IOException {
+        IBaseResource unencodable = createUnencodableResource();
+        Exception expected = assertThrows(Exception.class, () -> new ResourceEncoder().encode(STU3, unencodable));
+
+        PatientClaimsProcessorImpl workerEncoder = (PatientClaimsProcessorImpl) patientClaimsProcessor;
+        Exception written = processUnencodableClaim(unencodable, request -> workerEncoder.encodeResults(request, List.of(unencodable)));
+
+        // Written to the error file the same way as failing to encode on the contract thread
+        assertEquals(expected.getClass(), written.getClass());
+        assertEquals(expected.getMessage(), written.getMessage());
+    }
+
+    /**
+     * Run a job with two patients where the first patient has a claim that cannot be encoded
+     *
+     * @return the exception written to the error file for the claim
+     */
+    private Exception processUnencodableClaim(IBaseResource unencodable, Function<PatientClaimsRequest, EobSearchResult> claims)
+            throws IOException {
+        PatientClaimsProcessor claimsProcessor = mock(PatientClaimsProcessor.class);
+        when(claimsProcessor.process(any(PatientClaimsRequest.class))).thenAnswer(invocation -> {
+            PatientClaimsRequest request = invocation.getArgument(0);
+            return request.getCoverageSummary().getIdentifiers().getBeneficiaryId() == 1L
+                    ? claims.apply(request) : new EobSearchResult(jobId, contractId, List.of());
+        });
+
+        ContractProcessorImpl processor = spy(new ContractProcessorImpl(jobRepository, coverageDriver, claimsProcessor,
+                eventLogger, new JobScopedExecutorStub(), jobChannelService, jobProgressUpdateService, null, null));
+
+        when(coverageDriver.numberOfBeneficiariesToProcess(any(Job.class))).thenReturn(2);
+        List<FilterOutByDate.DateRange> dates = singletonList(TestUtil.getOpenRange());
+        List<CoverageSummary> summaries = List.of(new CoverageSummary(createIdentifierWithoutMbi(1L), null, dates),
+                new CoverageSummary(createIdentifierWithoutMbi(2L), null, dates));
+        when(coverageDriver.pageCoverage(any(CoveragePagingRequest.class))).thenReturn(
+                new CoveragePagingResult(summaries, null));
+
+        processor.process(tmpDirFolder.toPath(), job);
+
+        ArgumentCaptor<Exception> exception = ArgumentCaptor.forClass(Exception.class);
+        verify(processor).writeExceptionToContractErrorFile(any(ContractData.class), eq(""), exception.capture());
+        assertEquals(1, jobProgressUpdateService.getStatus(jobId).getPatientFailureCount());
+
+        return exception.getValue();
+    }
+
+    private static IBaseResource createUnencodableResource() {
+        IBaseResource resource = mock(IBaseResource.class);
+        lenient().when(resource.getIdElement()).thenReturn(new org.hl7.fhir.dstu3.model.IdType("ExplanationOfBenefit", "-1"));
+        return resource;
+    }
+
     private static org.hl7.fhir.dstu3.model.ExplanationOfBenefit createEOB(String patientId) {
         org.hl7.fhir.dstu3.model.ExplanationOfBenefit b = new org.hl7.fhir.dstu3.model.ExplanationOfBenefit();
         org.hl7.fhir.dstu3.model.Period p = new org.hl7.fhir.dstu3.model.Period();
@@ -5,12 +5,13 @@ import gov.cms.ab2d.common.repository.JobRepository;
 import gov.cms.ab2d.filter.FilterOutByDate;
 import gov.cms.ab2d.eventlogger.LogManager;
 import gov.cms.ab2d.worker.TestUtil;
-import gov.cms.ab2d.worker.config.RoundRobinBlockingQueue;
+import gov.cms.ab2d.worker.config.JobScopedExecutor;
+import gov.cms.ab2d.worker.config.JobTaskCounts;
 import gov.cms.ab2d.worker.processor.coverage.CoverageDriver;
+import gov.cms.ab2d.worker.processor.stub.JobScopedExecutorStub;
 import gov.cms.ab2d.worker.processor.stub.PatientClaimsProcessorStub;
 import gov.cms.ab2d.worker.service.JobChannelService;
 import gov.cms.ab2d.worker.service.JobChannelStubServiceImpl;
-import org.jetbrains.annotations.NotNull;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -53,7 +54,7 @@ class ContractProcessorUnitTest {
     @Mock private JobRepository jobRepository;
     @Mock private CoverageDriver coverageDriver;
     @Mock private LogManager eventLogger;
-    @Mock private RoundRobinBlockingQueue<PatientClaimsRequest> requestQueue;
+    private JobScopedExecutor patientProcessorExecutor;
     private PatientClaimsProcessor patientClaimsProcessor;
     private JobChannelService jobChannelService;
 
@@ -66,6 +67,7 @@ class ContractProcessorUnitTest {
         MockitoAnnotations.initMocks(this);
 
         patientClaimsProcessor = spy(PatientClaimsProcessorStub.class);
+        patientProcessorExecutor = spy(JobScopedExecutorStub.class);
 
         JobProgressServiceImpl jobProgressImpl = new JobProgressServiceImpl(jobRepository);
         jobProgressImpl.initJob(jobUuid);
@@ -78,10 +80,13 @@ class ContractProcessorUnitTest {
                 coverageDriver,
                 patientClaimsProcessor,
                 eventLogger,
-                requestQueue,
+                patientProcessorExecutor,
                 jobChannelService,
-                jobProgressImpl);
+                jobProgressImpl,
+                Executors.newCachedThreadPool(),
+                Executors.newCachedThreadPool());
         ReflectionTestUtils.setField(cut, "tryLockTimeout", 30);
+        ReflectionTestUtils.setField(cut, "eobJobPatientQueuePrefetchPages", 2);
 
         PdpClient pdpClient = createClient();
         job = createJob(pdpClient);
@@ -169,32 +174,8 @@ class ContractProcessorUnitTest {
             jobChannelService.sendUpdate(job.getJobUuid(), JobMeasure.FAILURE_THRESHHOLD, 20);
             jobChannelService.sendUpdate(job.getJobUuid(), JobMeasure.PATIENTS_EXPECTED, 20);
 
-            contractData.addEobRequestHandle(new Future<EobSearchResult>() {
-                @Override
-                public boolean cancel(boolean mayInterruptIfRunning) {
-                    return false;
-                }
-
-                @Override
-                public boolean isCancelled() {
-                    return false;
-                }
-
-                @Override
-                public boolean isDone() {
-                    return true;
-                }
-
-                @Override
-                public EobSearchResult get() throws InterruptedException, ExecutionException {
-                    return new EobSearchResult(job.getJobUuid(), contract.getContractNumber(), Collections.emptyList());
-                }
-
-                @Override
-                public EobSearchResult get(long timeout, @NotNull TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
-                    return null;
-                }
-            });
+            contractData.addEobRequestHandle(CompletableFuture.completedFuture(
+                    new EobSearchResult(job.getJobUuid(), contract.getContractNumber(), Collections.emptyList())));
 
             ReflectionTestUtils.invokeMethod(cut, "processRemainingRequests", contractData);
 
@@ -215,7 +196,7 @@ class ContractProcessorUnitTest {
         jobChannelService.sendUpdate(jobUuid, JobMeasure.PATIENTS_EXPECTED, 2);
         jobChannelService.sendUpdate(jobUuid, JobMeasure.FAILURE_THRESHHOLD, 1);
 
-        when(requestQueue.size(anyString())).thenReturn(1_0000_000);
+        doReturn(new JobTaskCounts(1_0000_000, 0, 0)).when(patientProcessorExecutor).getJobTaskCounts(anyString());
 
         ExecutorService singleThreadedExecutor = Executors.newSingleThreadExecutor();
 
@@ -89,12 +89,18 @@ class JobDataWriterTest {
     }
 
     @Test
-    void addMultipleErrorEntries_createsOneErrorFile() throws IOException {
+    void addMultipleErrorEntriesThatCrossMaxFileSize_shouldCreateMultipleErrorFiles() throws IOException {
         cut.addError(poem);
         cut.addError(poem);
         cut.addError(poem);
-        var errorFiles = cut.getErrorFiles();
         cut.close();
-        assertThat(errorFiles.size(), is(1));
+
+        var errorFiles = cut.getErrorFiles();
+        assertThat(errorFiles.size(), is(3));
+        errorFiles.forEach(file -> {
+            var size = file.toFile().length();
+            assertThat(size, is((long) line.length));
+        });
+        assertThat(cut.getErrorOutputs().size(), is(3));
     }
 }
\ No newline at end of file
@@ -16,7 +16,8 @@ import gov.cms.ab2d.eventlogger.eventloggers.sql.SqlEventLogger;
 import gov.cms.ab2d.eventlogger.events.*;
 import gov.cms.ab2d.eventlogger.reports.sql.LoggerEventRepository;
 import gov.cms.ab2d.eventlogger.utils.UtilMethods;
-import gov.cms.ab2d.worker.config.RoundRobinBlockingQueue;
+import gov.cms.ab2d.worker.config.BfdResponseMonitor;
+import gov.cms.ab2d.worker.config.JobScopedExecutor;
 import gov.cms.ab2d.worker.processor.coverage.CoverageDriver;
 import gov.cms.ab2d.worker.service.FileService;
 import gov.cms.ab2d.worker.service.JobChannelService;
@@ -42,6 +43,7 @@ import org.testcontainers.junit.jupiter.Testcontainers;
 import java.io.File;
 import java.time.OffsetDateTime;
 import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.stream.LongStream;
 
 import static gov.cms.ab2d.common.util.Constants.NDJSON_FIRE_CONTENT_TYPE;
@@ -95,7 +97,13 @@ class JobProcessorIntegrationTest {
     private JobOutputRepository jobOutputRepository;
 
     @Autowired
-    private RoundRobinBlockingQueue<PatientClaimsRequest> eobClaimRequestsQueue;
+    private JobScopedExecutor patientProcessorExecutor;
+
+    @Autowired
+    private Executor coveragePagingPool;
+
+    @Autowired
+    private Executor ndjsonShardPool;
 
     @Autowired
     private SqlEventLogger sqlEventLogger;
@@ -160,16 +168,18 @@ class JobProcessorIntegrationTest {
         when(mockCoverageDriver.pageCoverage(any(CoveragePagingRequest.class))).thenReturn(
                 new CoveragePagingResult(loadFauxMetadata(contract, 99), null));
 
-        PatientClaimsProcessor patientClaimsProcessor = new PatientClaimsProcessorImpl(mockBfdClient, logManager);
+        PatientClaimsProcessor patientClaimsProcessor = new PatientClaimsProcessorImpl(mockBfdClient, logManager, new BfdResponseMonitor());
         ReflectionTestUtils.setField(patientClaimsProcessor, "earliestDataDate", "01/01/1900");
         ContractProcessor contractProcessor = new ContractProcessorImpl(
                 jobRepository,
                 mockCoverageDriver,
                 patientClaimsProcessor,
                 logManager,
-                eobClaimRequestsQueue,
+                patientProcessorExecutor,
                 jobChannelService,
-                jobProgressService);
+                jobProgressService,
+                coveragePagingPool,
+                ndjsonShardPool);
 
 
         cut = new JobProcessorImpl(
@@ -6,6 +6,7 @@ import gov.cms.ab2d.common.model.Contract;
 import gov.cms.ab2d.common.model.CoverageSummary;
 import gov.cms.ab2d.eventlogger.LogManager;
 import gov.cms.ab2d.worker.TestUtil;
+import gov.cms.ab2d.worker.config.BfdResponseMonitor;
 import lombok.extern.slf4j.Slf4j;
 import org.hl7.fhir.dstu3.model.ExplanationOfBenefit;
 import org.junit.jupiter.api.BeforeEach;
@@ -18,6 +19,7 @@ import org.springframework.test.util.ReflectionTestUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -27,7 +29,6 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
-import java.util.concurrent.ExecutionException;
 
 import static gov.cms.ab2d.fhir.FhirVersion.STU3;
 import static gov.cms.ab2d.worker.processor.BundleUtils.createIdentifierWithoutMbi;
@@ -81,7 +82,8 @@ class PatientClaimsProcessorUnitTest {
     void setUp() throws Exception {
         cut = new PatientClaimsProcessorImpl(
                 mockBfdClient,
-                eventLogger
+                eventLogger,
+                new BfdResponseMonitor()
         );
 
         ReflectionTestUtils.setField(cut, "earliestDataDate", "01/01/1900");
@@ -104,7 +106,7 @@ class PatientClaimsProcessorUnitTest {
     }
 
     @Test
-    void process_whenPatientHasDataWithBadLastUpdated() throws ExecutionException, InterruptedException {
+    void process_whenPatientHasDataWithBadLastUpdated() {
         ExplanationOfBenefit firstEob = eob.copy();
         eob.getMeta().setLastUpdated(null);
         org.hl7.fhir.dstu3.model.Bundle bundle1 = EobTestDataUtil.createBundle(eob.copy());
@@ -128,24 +130,24 @@ class PatientClaimsProcessorUnitTest {
                 "contractNum", Contract.ContractType.NORMAL, noOpToken, STU3);
         when(mockBfdClient.requestEOBFromServer(STU3, patientId, request2.getAttTime())).thenReturn(bundle1);
 
-        EobSearchResult results = cut.process(request2).get();
+        EobSearchResult results = cut.process(request2);
         assertEquals(1, results.getEobs().size());
 
     }
 
     @Test
-    void process_whenPatientHasSinglePageOfClaimsData() throws ExecutionException, InterruptedException {
+    void process_whenPatientHasSinglePageOfClaimsData() {
         org.hl7.fhir.dstu3.model.Bundle bundle1 = EobTestDataUtil.createBundle(eob.copy());
         when(mockBfdClient.requestEOBFromServer(STU3, patientId, request.getAttTime())).thenReturn(bundle1);
 
-        cut.process(request).get();
+        cut.process(request);
 
         verify(mockBfdClient).requestEOBFromServer(STU3, patientId, request.getAttTime());
         verify(mockBfdClient, never()).requestNextBundleFromServer(STU3, bundle1);
     }
 
     @Test
-    void process_whenPatientHasMultiplePagesOfClaimsData() throws ExecutionException, InterruptedException {
+    void process_whenPatientHasMultiplePagesOfClaimsData() {
         org.hl7.fhir.dstu3.model.Bundle bundle1 = EobTestDataUtil.createBundle(eob.copy());
         bundle1.addLink(EobTestDataUtil.addNextLink());
 
@@ -154,39 +156,59 @@ class PatientClaimsProcessorUnitTest {
         when(mockBfdClient.requestEOBFromServer(STU3, patientId, request.getAttTime())).thenReturn(bundle1);
         when(mockBfdClient.requestNextBundleFromServer(STU3, bundle1)).thenReturn(bundle2);
 
-        cut.process(request).get();
+        cut.process(request);
 
         verify(mockBfdClient).requestEOBFromServer(STU3, patientId, request.getAttTime());
         verify(mockBfdClient).requestNextBundleFromServer(STU3, bundle1);
     }
 
+    @Test
+    void process_whenSerializingOnWorkerReturnsEncodedClaims() {
+        ReflectionTestUtils.setField(cut, "serializeOnWorker", true);
+
+        org.hl7.fhir.dstu3.model.Bundle bundle1 = EobTestDataUtil.createBundle(eob.copy());
+        when(mockBfdClient.requestEOBFromServer(STU3, patientId, request.getAttTime())).thenReturn(bundle1);
+
+        EobSearchResult result = cut.process(request);
+
+        assertTrue(result.isEncoded());
+        assertNull(result.getEobs());
+        assertEquals(1, result.getEobsFetched());
+        assertEquals(0, result.getEncodingErrors());
+        assertEquals(1, result.getEncodedEobs().size());
+
+        String line = new String(result.getEncodedEobs().get(0), StandardCharsets.UTF_8);
+        assertTrue(line.startsWith("{\"resourceType\":\"ExplanationOfBenefit\""));
+        assertTrue(line.endsWith(System.lineSeparator()));
+    }
+
     @Test
     void process_whenBfdClientThrowsException() {
         org.hl7.fhir.dstu3.model.Bundle bundle1 = EobTestDataUtil.createBundle(eob.copy());
         when(mockBfdClient.requestEOBFromServer(STU3, patientId, request.getAttTime())).thenThrow(new RuntimeException("Test Exception"));
 
-        var exceptionThrown = assertThrows(ExecutionException.class,
-                () -> cut.process(request).get());
+        var exceptionThrown = assertThrows(RuntimeException.class,
+                () -> cut.process(request));
 
-        assertTrue(exceptionThrown.getCause().getMessage().startsWith("Test Exception"));
+        assertTrue(exceptionThrown.getMessage().startsWith("Test Exception"));
 
         verify(mockBfdClient).requestEOBFromServer(STU3, patientId, request.getAttTime());
         verify(mockBfdClient, never()).requestNextBundleFromServer(STU3, bundle1);
     }
 
     @Test
-    void process_whenPatientHasNoEOBClaimsData() throws ExecutionException, InterruptedException {
+    void process_whenPatientHasNoEOBClaimsData() {
         org.hl7.fhir.dstu3.model.Bundle bundle1 = new org.hl7.fhir.dstu3.model.Bundle();
         when(mockBfdClient.requestEOBFromServer(STU3, patientId, request.getAttTime())).thenReturn(bundle1);
 
-        cut.process(request).get();
+        cut.process(request);
 
         verify(mockBfdClient).requestEOBFromServer(STU3, patientId, request.getAttTime());
         verify(mockBfdClient, never()).requestNextBundleFromServer(STU3, bundle1);
     }
 
     @Test
-    void process_whenPatientHasSinglePageOfClaimsDataSince() throws ExecutionException, InterruptedException {
+    void process_whenPatientHasSinglePageOfClaimsDataSince() {
         // Override default behavior of setup
         coverageSummary = new CoverageSummary(createIdentifierWithoutMbi(patientId), null, List.of(TestUtil.getOpenRange()));
 
@@ -198,14 +220,14 @@ class PatientClaimsProcessorUnitTest {
         org.hl7.fhir.dstu3.model.Bundle bundle1 = EobTestDataUtil.createBundle(eob.copy());
         when(mockBfdClient.requestEOBFromServer(STU3, patientId, LATER_ATT_DATE)).thenReturn(bundle1);
 
-        cut.process(request).get();
+        cut.process(request);
 
         verify(mockBfdClient).requestEOBFromServer(STU3, patientId, LATER_ATT_DATE);
         verify(mockBfdClient, never()).requestNextBundleFromServer(STU3, bundle1);
     }
 
     @Test
-    void process_whenPatientHasSinglePageOfClaimsDataEarlyAttDate() throws ExecutionException, InterruptedException {
+    void process_whenPatientHasSinglePageOfClaimsDataEarlyAttDate() {
         // Override default behavior of setup
         coverageSummary = new CoverageSummary(createIdentifierWithoutMbi(patientId), null, List.of(TestUtil.getOpenRange()));
 
@@ -215,14 +237,14 @@ class PatientClaimsProcessorUnitTest {
         org.hl7.fhir.dstu3.model.Bundle bundle1 = EobTestDataUtil.createBundle(eob.copy());
         when(mockBfdClient.requestEOBFromServer(STU3, patientId, null)).thenReturn(bundle1);
 
-        cut.process(request).get();
+        cut.process(request);
 
         verify(mockBfdClient).requestEOBFromServer(STU3, patientId, null);
         verify(mockBfdClient, never()).requestNextBundleFromServer(STU3, bundle1);
     }
 
     @Test
-    void process_whenPatientHasSinglePageOfClaimsDataEarlySinceDate() throws ExecutionException, InterruptedException {
+    void process_whenPatientHasSinglePageOfClaimsDataEarlySinceDate() {
         // Override default behavior of setup
         coverageSummary = new CoverageSummary(createIdentifierWithoutMbi(patientId), null, List.of(TestUtil.getOpenRange()));
 
@@ -232,7 +254,7 @@ class PatientClaimsProcessorUnitTest {
         org.hl7.fhir.dstu3.model.Bundle bundle1 = EobTestDataUtil.createBundle(eob.copy());
         when(mockBfdClient.requestEOBFromServer(STU3, patientId, null)).thenReturn(bundle1);
 
-        cut.process(request).get();
+        cut.process(request);
 
         verify(mockBfdClient).requestEOBFromServer(STU3, patientId, null);
         verify(mockBfdClient, never()).requestNextBundleFromServer(STU3, bundle1);
@@ -0,0 +1,130 @@
+package gov.cms.ab2d.worker.processor;
+
+import gov.cms.ab2d.eventlogger.LogManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardedStreamHelperImplTest {
+    @TempDir
+    File tmpDirFolder;
+    @Mock
+    private LogManager eventLogger;
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    void init() {
+        MockitoAnnotations.openMocks(this);
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void cleanup() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void allDataWrittenAcrossShards() throws IOException {
+        ShardedStreamHelperImpl helper = new ShardedStreamHelperImpl(
+                tmpDirFolder.toPath(), "C1111", 30, 20, eventLogger, null, 3, executor);
+
+        Set<String> expected = new HashSet<>();
+        for (int idx = 0; idx < 100; idx++) {
+            String line = "line " + idx;
+            expected.add(line);
+            helper.addData((line + "\n").getBytes());
+        }
+        helper.close();
+
+        List<Path> dataFiles = helper.getDataFiles();
+        assertEquals(dataFiles.size(), helper.getDataOutputs().size());
+        assertEquals(dataFiles.size(), dataFiles.stream().map(Path::getFileName).collect(Collectors.toSet()).size());
+
+        Set<String> actual = new HashSet<>();
+        for (Path dataFile : dataFiles) {
+            assertTrue(dataFile.getFileName().toString().matches("C1111_\\d{4}\\.ndjson"));
+
+            // Rollover is applied per shard
+            assertTrue(Files.size(dataFile) <= 30);
+            actual.addAll(Files.readAllLines(dataFile));
+        }
+        assertEquals(expected, actual);
+
+        for (StreamOutput output : helper.getDataOutputs()) {
+            assertEquals(Files.size(tmpDirFolder.toPath().resolve(output.getFilePath())), output.getFileLength());
+        }
+    }
+
+    @Test
+    void noEmptyFiles() throws IOException {
+        ShardedStreamHelperImpl helper = new ShardedStreamHelperImpl(
+                tmpDirFolder.toPath(), "C1111", 30, 20, eventLogger, null, 4, executor);
+        helper.addData("only line\n".getBytes());
+        helper.close();
+
+        assertEquals(1, helper.getDataFiles().size());
+        assertEquals(1, helper.getDataOutputs().size());
+        assertEquals("C1111_0001.ndjson", helper.getDataOutputs().get(0).getFilePath());
+    }
+
+    @Test
+    void writeAfterCloseFails() throws IOException {
+        ShardedStreamHelperImpl helper = new ShardedStreamHelperImpl(
+                tmpDirFolder.toPath(), "C1111", 30, 20, eventLogger, null, 2, executor);
+        helper.closeLastStream();
+
+        assertTrue(helper.getDataOutputs().isEmpty());
+        assertThrows(IOException.class, () -> helper.addData("Hello".getBytes()));
+        assertDoesNotThrow(helper::close);
+    }
+
+    @Test
+    void shardWriteFailureReported() throws IOException {
+        // Files cannot be created under a regular file
+        Path notDirectory = Files.createFile(tmpDirFolder.toPath().resolve("not-a-directory"));
+        ShardedStreamHelperImpl helper = new ShardedStreamHelperImpl(
+                notDirectory, "C1111", 30, 20, eventLogger, null, 2, executor);
+        helper.addData("only line\n".getBytes());
+
+        IOException exception = assertThrows(IOException.class, helper::closeLastStream);
+        assertTrue(exception.getCause() instanceof FileNotFoundException);
+        assertTrue(helper.getDataOutputs().isEmpty());
+
+        // Every shard has given its thread back
+        executor.shutdown();
+        assertDoesNotThrow(() -> assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS)));
+    }
+
+    @Test
+    void noThreadForShard() {
+        ThreadPoolExecutor singleThread = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new SynchronousQueue<>());
+
+        assertThrows(IOException.class, () -> new ShardedStreamHelperImpl(
+                tmpDirFolder.toPath(), "C1111", 30, 20, eventLogger, null, 2, singleThread));
+
+        // The shard that did start is stopped
+        singleThread.shutdown();
+        assertDoesNotThrow(() -> assertTrue(singleThread.awaitTermination(5, TimeUnit.SECONDS)));
+    }
+}
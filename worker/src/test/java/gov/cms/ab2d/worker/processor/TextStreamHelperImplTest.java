@@ -1,6 +1,7 @@
 package gov.cms.ab2d.worker.processor;
 
 import gov.cms.ab2d.eventlogger.LogManager;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
@@ -11,15 +12,18 @@ import org.mockito.MockitoAnnotations;
 import java.io.File;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.PosixFilePermission;
 import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 
+import static gov.cms.ab2d.fhir.FhirVersion.STU3;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
@@ -45,18 +49,16 @@ class TextStreamHelperImplTest {
     }
 
     @Test
-    void testSomePermsAppend() throws IOException {
-        Path loc = Path.of(tmpDirFolder + "/testfile");
-        Files.createFile(loc);
+    void testSomePermsAddError() throws IOException {
+        Path loc = Path.of(tmpDirFolder + "/testdir");
+        Files.createDirectory(loc);
         TextStreamHelperImpl helper = new TextStreamHelperImpl(
-                Path.of(tmpDirFolder.toString()), "C1111", 10, 20, eventLogger, null);
+                loc, "C1111", 10, 20, eventLogger, null);
         Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("r-xr-xr-x");
         Files.setPosixFilePermissions(loc, permissions);
-        byte[] val = new byte[2];
-        val[0] = 'a';
-        val[1] = 'b';
-        assertThrows(UncheckedIOException.class, () -> helper.appendToFile(loc, val));
-        Set<PosixFilePermission> permissionsBack = PosixFilePermissions.fromString("rw-r-xr-x");
+        assertThrows(UncheckedIOException.class, () -> helper.addError("Error Info\n"));
+        assertTrue(helper.getErrorFiles().isEmpty());
+        Set<PosixFilePermission> permissionsBack = PosixFilePermissions.fromString("rwxr-xr-x");
         // Set them back so that the junit can remove directory
         Files.setPosixFilePermissions(loc, permissionsBack);
         helper.close();
@@ -83,7 +85,7 @@ class TextStreamHelperImplTest {
     }
 
     @Test
-    void appendToFileTest() throws IOException {
+    void nullPathAndLock() throws IOException {
         assertThrows(NullPointerException.class, () -> new TextStreamHelperImpl(
                 null, "C1111", 10, 20, eventLogger, null));
         TextStreamHelperImpl helper = new TextStreamHelperImpl(
@@ -95,7 +97,7 @@ class TextStreamHelperImplTest {
     @Test
     void addError() throws IOException {
         TextStreamHelperImpl helper = new TextStreamHelperImpl(
-                tmpDirFolder.toPath(), "C1111", 10, 20, eventLogger, null);
+                tmpDirFolder.toPath(), "C1111", 100, 20, eventLogger, null);
         List<Path> errorFiles = helper.getErrorFiles();
         assertTrue(errorFiles.isEmpty());
         helper.addError("Error Info\n");
@@ -175,6 +177,79 @@ class TextStreamHelperImplTest {
         helper.close();
     }
 
+    @Test
+    void addResourceMatchesEncodedBytes() throws IOException {
+        org.hl7.fhir.dstu3.model.ExplanationOfBenefit eob = new org.hl7.fhir.dstu3.model.ExplanationOfBenefit();
+        eob.setPatient(new org.hl7.fhir.dstu3.model.Reference("Patient/1"));
+        String expected = STU3.getJsonParser().setPrettyPrint(false).encodeResourceToString(eob) + System.lineSeparator();
+        long expectedLength = expected.getBytes(StandardCharsets.UTF_8).length;
+
+        // Room for exactly two resources per file
+        TextStreamHelperImpl helper = new TextStreamHelperImpl(
+                tmpDirFolder.toPath(), "C1111", expectedLength * 2, 20, eventLogger, null);
+
+        helper.addResource(STU3, eob);
+        helper.addResource(STU3, eob);
+        assertEquals(2 * expectedLength, helper.getTotalBytesWritten());
+        assertTrue(helper.getDataOutputs().isEmpty());
+
+        helper.addResource(STU3, eob);
+        assertEquals(1, helper.getDataOutputs().size());
+        assertEquals(expectedLength, helper.getTotalBytesWritten());
+        helper.close();
+
+        List<Path> dataFiles = helper.getDataFiles();
+        assertEquals(2, dataFiles.size());
+        assertEquals(expected + expected, Files.readString(dataFiles.get(0)));
+        assertEquals(expected, Files.readString(dataFiles.get(1)));
+        assertEquals(2 * expectedLength, helper.getDataOutputs().get(0).getFileLength());
+    }
+
+    @Test
+    void errorsWrittenOnCloseAndRollOver() throws IOException {
+        TextStreamHelperImpl helper = new TextStreamHelperImpl(
+                tmpDirFolder.toPath(), "C1111", 15, 20, eventLogger, null);
+        helper.addError("Error Info\n");
+
+        // Error file is created on the first error but buffered until the last stream is closed
+        Path firstErrorFile = tmpDirFolder.toPath().resolve("C1111_error.ndjson");
+        assertTrue(Files.exists(firstErrorFile));
+        assertEquals(0, Files.size(firstErrorFile));
+
+        helper.addError("Error Info 2\n");
+        helper.closeLastStream();
+
+        List<Path> errorFiles = helper.getErrorFiles();
+        assertEquals(2, errorFiles.size());
+        assertEquals(firstErrorFile, errorFiles.get(0));
+        assertEquals("C1111_0002_error.ndjson", errorFiles.get(1).getFileName().toString());
+        assertEquals("Error Info\n", Files.readString(errorFiles.get(0)));
+        assertEquals("Error Info 2\n", Files.readString(errorFiles.get(1)));
+        assertEquals(2, helper.getErrorOutputs().size());
+
+        helper.close();
+    }
+
+    @Test
+    void checksumAndLengthMatchFiles() throws IOException {
+        TextStreamHelperImpl helper = new TextStreamHelperImpl(
+                tmpDirFolder.toPath(), "C1111", 10, 20, eventLogger, null);
+        helper.addData("Hello".getBytes());
+        helper.addData("Once upon a time in America".getBytes());
+        helper.addError("Error Info\n");
+        helper.close();
+
+        List<StreamOutput> outputs = new ArrayList<>(helper.getDataOutputs());
+        outputs.addAll(helper.getErrorOutputs());
+        assertEquals(3, outputs.size());
+
+        for (StreamOutput output : outputs) {
+            byte[] contents = Files.readAllBytes(tmpDirFolder.toPath().resolve(output.getFilePath()));
+            assertEquals(contents.length, output.getFileLength());
+            assertEquals(DigestUtils.sha256Hex(contents), output.getChecksum());
+        }
+    }
+
     @Test
     void closeEmptyFileNothingReturned() throws IOException {
         TextStreamHelperImpl helper = new TextStreamHelperImpl(
@@ -0,0 +1,90 @@
+package gov.cms.ab2d.worker.processor;
+
+import gov.cms.ab2d.eventlogger.LogManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZipStreamHelperImplTest {
+    @TempDir
+    File tmpDirFolder;
+    @Mock
+    private LogManager eventLogger;
+
+    @BeforeEach
+    void init() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    void dataIsCompressedIntoSingleEntry() throws IOException {
+        ZipStreamHelperImpl helper = new ZipStreamHelperImpl(
+                tmpDirFolder.toPath(), "C1111", 1_000_000, 20, eventLogger, null);
+
+        StringBuilder expected = new StringBuilder();
+        for (int idx = 0; idx < 1000; idx++) {
+            String line = "{\"resourceType\":\"ExplanationOfBenefit\",\"id\":\"" + idx + "\"}\n";
+            expected.append(line);
+            helper.addData(line.getBytes(StandardCharsets.UTF_8));
+        }
+        helper.close();
+
+        List<Path> dataFiles = helper.getDataFiles();
+        assertEquals(1, dataFiles.size());
+        assertEquals("C1111_0001.zip", dataFiles.get(0).getFileName().toString());
+
+        // Repetitive NDJSON should compress well
+        assertTrue(Files.size(dataFiles.get(0)) < expected.length() / 4);
+
+        StreamOutput output = helper.getDataOutputs().get(0);
+        assertEquals(Files.size(dataFiles.get(0)), output.getFileLength());
+        assertFalse(output.getChecksum().isEmpty());
+
+        try (InputStream in = Files.newInputStream(dataFiles.get(0)); ZipInputStream zip = new ZipInputStream(in)) {
+            ZipEntry entry = zip.getNextEntry();
+            assertNotNull(entry);
+            assertEquals("C1111_0001.ndjson", entry.getName());
+            assertEquals(expected.toString(), new String(zip.readAllBytes(), StandardCharsets.UTF_8));
+            assertNull(zip.getNextEntry());
+        }
+    }
+
+    @Test
+    void rolloverOnCompressedSize() throws IOException {
+        ZipStreamHelperImpl helper = new ZipStreamHelperImpl(
+                tmpDirFolder.toPath(), "C1111", 200, 20, eventLogger, null);
+
+        for (int idx = 0; idx < 50; idx++) {
+            helper.addData(("line " + idx + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        helper.close();
+
+        assertTrue(helper.getDataFiles().size() > 1);
+        assertEquals(helper.getDataFiles().size(), helper.getDataOutputs().size());
+    }
+
+    @Test
+    void emptyZipRemoved() throws IOException {
+        ZipStreamHelperImpl helper = new ZipStreamHelperImpl(
+                tmpDirFolder.toPath(), "C1111", 200, 20, eventLogger, null);
+        helper.close();
+
+        assertTrue(helper.getDataFiles().isEmpty());
+        assertTrue(helper.getDataOutputs().isEmpty());
+        assertFalse(Files.exists(tmpDirFolder.toPath().resolve("C1111_0001.zip")));
+    }
+}
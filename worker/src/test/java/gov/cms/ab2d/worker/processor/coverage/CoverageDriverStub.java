@@ -62,6 +62,18 @@ public class CoverageDriverStub implements CoverageDriver {
         return new CoveragePagingResult(results, nextRequest);
     }
 
+    @Override
+    public void streamCoverage(CoveragePagingRequest request, CoveragePageHandler handler) throws InterruptedException {
+        CoveragePagingRequest nextRequest = request;
+        while (nextRequest != null) {
+            CoveragePagingResult result = pageCoverage(nextRequest);
+            if (!handler.handle(result)) {
+                return;
+            }
+            nextRequest = result.getNextRequest().orElse(null);
+        }
+    }
+
     @Override
     public void verifyCoverage() {}
 
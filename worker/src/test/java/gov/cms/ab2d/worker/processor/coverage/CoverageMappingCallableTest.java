@@ -3,6 +3,7 @@ package gov.cms.ab2d.worker.processor.coverage;
 import gov.cms.ab2d.bfd.client.BFDClient;
 import gov.cms.ab2d.common.model.*;
 import gov.cms.ab2d.common.model.Contract;
+import gov.cms.ab2d.common.service.CoverageService;
 import org.hl7.fhir.dstu3.model.Coding;
 import org.hl7.fhir.dstu3.model.Extension;
 import org.hl7.fhir.dstu3.model.Identifier;
@@ -13,8 +14,16 @@ import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static gov.cms.ab2d.fhir.FhirVersion.STU3;
 import static gov.cms.ab2d.fhir.IdentifierUtils.BENEFICIARY_ID;
@@ -26,6 +35,12 @@ import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 class CoverageMappingCallableTest {
@@ -388,6 +403,232 @@ class CoverageMappingCallableTest {
         assertTrue(callable.isCompleted());
     }
 
+    @DisplayName("Streaming inserts each page without duplicates and leaves the mapping empty")
+    @Test
+    void streamInserts() {
+
+        org.hl7.fhir.dstu3.model.Bundle bundle1 = buildBundle(0, 10, 2020);
+        bundle1.setLink(singletonList(new org.hl7.fhir.dstu3.model.Bundle.BundleLinkComponent().setRelation(org.hl7.fhir.dstu3.model.Bundle.LINK_NEXT)));
+
+        // Overlaps the first page by five beneficiaries
+        org.hl7.fhir.dstu3.model.Bundle bundle2 = buildBundle(5, 20, 2020);
+
+        when(bfdClient.requestPartDEnrolleesFromServer(eq(STU3), anyString(), anyInt(), anyInt())).thenReturn(bundle1);
+        when(bfdClient.requestNextBundleFromServer(eq(STU3), any(org.hl7.fhir.dstu3.model.Bundle.class))).thenReturn(bundle2);
+
+        CoverageMapping mapping = buildMapping();
+
+        List<Set<Identifiers>> pages = new ArrayList<>();
+        CoverageService coverageService = Mockito.mock(CoverageService.class);
+        doAnswer(invocation -> {
+            Set<Identifiers> page = invocation.getArgument(1);
+            pages.add(new HashSet<>(page));
+            return null;
+        }).when(coverageService).insertCoveragePage(eq(1L), any());
+
+        CoverageStreamWriter writer = new CoverageStreamWriter(coverageService, 1L, Runnable::run);
+        CoverageMappingCallable callable = new CoverageMappingCallable(STU3, mapping, bfdClient, writer);
+
+        callable.call();
+
+        assertTrue(mapping.isSuccessful());
+        assertTrue(mapping.getBeneficiaryIds().isEmpty());
+
+        assertEquals(2, pages.size());
+        assertEquals(10, pages.get(0).size());
+        assertEquals(10, pages.get(1).size());
+        assertTrue(Collections.disjoint(pages.get(0), pages.get(1)));
+        assertEquals(20, writer.size());
+
+        verify(coverageService, never()).deleteCoverage(anyLong());
+    }
+
+    @DisplayName("Streaming failure removes coverage already inserted")
+    @Test
+    void streamInsertsRolledBack() {
+
+        org.hl7.fhir.dstu3.model.Bundle bundle1 = buildBundle(0, 10, 2020);
+        bundle1.setLink(singletonList(new org.hl7.fhir.dstu3.model.Bundle.BundleLinkComponent().setRelation(org.hl7.fhir.dstu3.model.Bundle.LINK_NEXT)));
+
+        when(bfdClient.requestPartDEnrolleesFromServer(eq(STU3), anyString(), anyInt(), anyInt())).thenReturn(bundle1);
+        when(bfdClient.requestNextBundleFromServer(eq(STU3), any(org.hl7.fhir.dstu3.model.Bundle.class)))
+                .thenThrow(new RuntimeException("exception"));
+
+        CoverageMapping mapping = buildMapping();
+
+        CoverageService coverageService = Mockito.mock(CoverageService.class);
+        CoverageStreamWriter writer = new CoverageStreamWriter(coverageService, 1L, Runnable::run);
+        CoverageMappingCallable callable = new CoverageMappingCallable(STU3, mapping, bfdClient, writer);
+
+        assertThrows(RuntimeException.class, callable::call);
+
+        assertFalse(mapping.isSuccessful());
+        assertTrue(callable.isCompleted());
+
+        verify(coverageService).insertCoveragePage(eq(1L), any());
+        verify(coverageService).deleteCoverage(1L);
+    }
+
+    @DisplayName("Streaming fails the search when a page cannot be inserted")
+    @Test
+    void streamInsertFailure() {
+
+        org.hl7.fhir.dstu3.model.Bundle bundle1 = buildBundle(0, 10, 2020);
+
+        when(bfdClient.requestPartDEnrolleesFromServer(eq(STU3), anyString(), anyInt(), anyInt())).thenReturn(bundle1);
+
+        CoverageMapping mapping = buildMapping();
+
+        CoverageService coverageService = Mockito.mock(CoverageService.class);
+        doThrow(new RuntimeException("database unavailable")).when(coverageService).insertCoveragePage(eq(1L), any());
+
+        CoverageStreamWriter writer = new CoverageStreamWriter(coverageService, 1L, Runnable::run);
+        CoverageMappingCallable callable = new CoverageMappingCallable(STU3, mapping, bfdClient, writer);
+
+        assertThrows(CoverageStreamException.class, callable::call);
+
+        assertFalse(mapping.isSuccessful());
+        verify(coverageService).deleteCoverage(1L);
+    }
+
+    @DisplayName("Looking ahead collects every page and keeps statistics for each page")
+    @Test
+    void pipelinedFetch() {
+
+        org.hl7.fhir.dstu3.model.Bundle bundle1 = buildBundle(0, 10, 2020);
+        bundle1.setLink(singletonList(new org.hl7.fhir.dstu3.model.Bundle.BundleLinkComponent().setRelation(org.hl7.fhir.dstu3.model.Bundle.LINK_NEXT)));
+
+        org.hl7.fhir.dstu3.model.Bundle bundle2 = buildBundle(10, 20, 2019);
+        bundle2.setLink(singletonList(new org.hl7.fhir.dstu3.model.Bundle.BundleLinkComponent().setRelation(org.hl7.fhir.dstu3.model.Bundle.LINK_NEXT)));
+
+        org.hl7.fhir.dstu3.model.Bundle bundle3 = buildBundle(20, 30, 2020);
+        bundle3.getEntry().subList(0, 5).forEach(ec -> {
+            org.hl7.fhir.dstu3.model.Patient patient = (org.hl7.fhir.dstu3.model.Patient) ec.getResource();
+            patient.setIdentifier(emptyList());
+        });
+
+        when(bfdClient.requestPartDEnrolleesFromServer(eq(STU3), anyString(), anyInt(), anyInt())).thenReturn(bundle1);
+        when(bfdClient.requestNextBundleFromServer(eq(STU3), any(org.hl7.fhir.dstu3.model.Bundle.class)))
+                .thenReturn(bundle2, bundle3);
+
+        CoverageMapping mapping = buildMapping();
+
+        ExecutorService fetchExecutor = Executors.newSingleThreadExecutor();
+        try {
+            CoverageMappingCallable callable = new CoverageMappingCallable(STU3, mapping, bfdClient, null, fetchExecutor);
+            callable.call();
+
+            assertTrue(mapping.isSuccessful());
+            assertEquals(15, mapping.getBeneficiaryIds().size());
+
+            Map<Integer, Integer> referenceYears = (Map<Integer, Integer>) ReflectionTestUtils
+                    .getField(callable, "referenceYears");
+            assertEquals(Map.of(2019, 10, 2020, 20), referenceYears);
+            assertEquals(10, (int) ReflectionTestUtils.getField(callable, "pastReferenceYear"));
+            assertEquals(5, (int) ReflectionTestUtils.getField(callable, "missingBeneId"));
+        } finally {
+            fetchExecutor.shutdownNow();
+        }
+    }
+
+    @DisplayName("Looking ahead fails the search when the next page cannot be pulled")
+    @Test
+    void pipelinedFetchFailure() {
+
+        org.hl7.fhir.dstu3.model.Bundle bundle1 = buildBundle(0, 10, 2020);
+        bundle1.setLink(singletonList(new org.hl7.fhir.dstu3.model.Bundle.BundleLinkComponent().setRelation(org.hl7.fhir.dstu3.model.Bundle.LINK_NEXT)));
+
+        when(bfdClient.requestPartDEnrolleesFromServer(eq(STU3), anyString(), anyInt(), anyInt())).thenReturn(bundle1);
+        when(bfdClient.requestNextBundleFromServer(eq(STU3), any(org.hl7.fhir.dstu3.model.Bundle.class)))
+                .thenThrow(new RuntimeException("exception"));
+
+        CoverageMapping mapping = buildMapping();
+
+        ExecutorService fetchExecutor = Executors.newSingleThreadExecutor();
+        try {
+            CoverageMappingCallable callable = new CoverageMappingCallable(STU3, mapping, bfdClient, null, fetchExecutor);
+
+            RuntimeException exception = assertThrows(RuntimeException.class, callable::call);
+            assertEquals("exception", exception.getMessage());
+
+            assertFalse(mapping.isSuccessful());
+            assertTrue(callable.isCompleted());
+        } finally {
+            fetchExecutor.shutdownNow();
+        }
+    }
+
+    @DisplayName("Looking ahead interrupts the request for the next page when the search fails")
+    @Test
+    void pipelinedFetchCancelled() throws InterruptedException {
+
+        org.hl7.fhir.dstu3.model.Bundle bundle1 = buildBundle(0, 10, 2020);
+        bundle1.setLink(singletonList(new org.hl7.fhir.dstu3.model.Bundle.BundleLinkComponent().setRelation(org.hl7.fhir.dstu3.model.Bundle.LINK_NEXT)));
+
+        org.hl7.fhir.dstu3.model.Bundle bundle2 = buildBundle(10, 20, 2020);
+        bundle2.setLink(singletonList(new org.hl7.fhir.dstu3.model.Bundle.BundleLinkComponent().setRelation(org.hl7.fhir.dstu3.model.Bundle.LINK_NEXT)));
+
+        CountDownLatch requested = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+
+        // The third page never arrives unless the request is interrupted
+        when(bfdClient.requestPartDEnrolleesFromServer(eq(STU3), anyString(), anyInt(), anyInt())).thenReturn(bundle1);
+        when(bfdClient.requestNextBundleFromServer(eq(STU3), any(org.hl7.fhir.dstu3.model.Bundle.class)))
+                .thenReturn(bundle2)
+                .thenAnswer(invocation -> {
+                    requested.countDown();
+                    try {
+                        Thread.sleep(Long.MAX_VALUE);
+                    } catch (InterruptedException ie) {
+                        interrupted.countDown();
+                    }
+                    return null;
+                });
+
+        CoverageMapping mapping = buildMapping();
+
+        // Inserting the second page fails while the third page is being requested
+        CoverageService coverageService = Mockito.mock(CoverageService.class);
+        CoverageStreamWriter writer = spy(new CoverageStreamWriter(coverageService, 1L, Runnable::run));
+        doCallRealMethod().doAnswer(invocation -> {
+            assertTrue(requested.await(5, TimeUnit.SECONDS));
+            throw new RuntimeException("database unavailable");
+        }).when(writer).flush();
+
+        ExecutorService fetchExecutor = Executors.newSingleThreadExecutor();
+        try {
+            CoverageMappingCallable callable = new CoverageMappingCallable(STU3, mapping, bfdClient, writer, fetchExecutor);
+
+            RuntimeException exception = assertThrows(RuntimeException.class, callable::call);
+            assertEquals("database unavailable", exception.getMessage());
+
+            assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+            assertFalse(mapping.isSuccessful());
+        } finally {
+            fetchExecutor.shutdownNow();
+        }
+    }
+
+    private CoverageMapping buildMapping() {
+        Contract contract = new Contract();
+        contract.setContractNumber("TESTING");
+        contract.setContractName("TESTING");
+
+        CoveragePeriod period = new CoveragePeriod();
+        period.setContract(contract);
+        period.setYear(2020);
+        period.setMonth(1);
+
+        CoverageSearchEvent cse = new CoverageSearchEvent();
+        cse.setId(1L);
+        cse.setCoveragePeriod(period);
+
+        CoverageSearch search = new CoverageSearch();
+        search.setPeriod(period);
+
+        return new CoverageMapping(cse, search);
+    }
+
     @Test
     void testNullMbi() {
         Contract contract = new Contract();
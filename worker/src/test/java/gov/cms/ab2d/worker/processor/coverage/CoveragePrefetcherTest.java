@@ -0,0 +1,135 @@
+package gov.cms.ab2d.worker.processor.coverage;
+
+import gov.cms.ab2d.common.model.Contract;
+import gov.cms.ab2d.common.model.CoveragePageHandler;
+import gov.cms.ab2d.common.model.CoveragePagingRequest;
+import gov.cms.ab2d.common.model.CoveragePagingResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CoveragePrefetcherTest {
+
+    private ExecutorService executor;
+    private CoveragePagingRequest firstRequest;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newSingleThreadExecutor();
+
+        Contract contract = new Contract();
+        contract.setContractNumber("TEST");
+        firstRequest = new CoveragePagingRequest(10, 0L, contract, OffsetDateTime.now());
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @DisplayName("Prefetched pages are returned in order and every beneficiary is seen once")
+    @Test
+    void prefetchAllPages() throws InterruptedException {
+        try (CoveragePrefetcher pages = new CoveragePrefetcher(new CoverageDriverStub(10, 95), firstRequest,
+                executor, 2)) {
+            assertEquals(95, countBeneficiaries(pages));
+            assertFalse(pages.hasNext());
+            assertNull(pages.poll(10, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    @DisplayName("Streamed pages are returned in order and every beneficiary is seen once")
+    @Test
+    void streamAllPages() throws InterruptedException {
+        AtomicInteger streams = new AtomicInteger();
+        CoverageDriverStub driver = new CoverageDriverStub(10, 95) {
+            @Override
+            public void streamCoverage(CoveragePagingRequest request, CoveragePageHandler handler)
+                    throws InterruptedException {
+                streams.incrementAndGet();
+                super.streamCoverage(request, handler);
+            }
+        };
+
+        try (CoveragePrefetcher pages = new CoveragePrefetcher(driver, firstRequest, executor, 1, true)) {
+            assertEquals(95, countBeneficiaries(pages));
+            assertFalse(pages.hasNext());
+        }
+        assertEquals(1, streams.get());
+    }
+
+    @DisplayName("Closing stops streaming pages")
+    @Test
+    void closeStopsStreaming() throws InterruptedException {
+        CountDownLatch stopped = new CountDownLatch(1);
+        CoverageDriverStub driver = new CoverageDriverStub(10, 95) {
+            @Override
+            public void streamCoverage(CoveragePagingRequest request, CoveragePageHandler handler)
+                    throws InterruptedException {
+                super.streamCoverage(request, handler);
+                stopped.countDown();
+            }
+        };
+
+        CoveragePrefetcher pages = new CoveragePrefetcher(driver, firstRequest, executor, 1, true);
+        assertNotNull(pages.poll(1, TimeUnit.SECONDS));
+        pages.close();
+
+        assertTrue(stopped.await(5, TimeUnit.SECONDS));
+    }
+
+    @DisplayName("Without prefetching pages are loaded on the calling thread")
+    @Test
+    void loadPagesOnCallingThread() throws InterruptedException {
+        try (CoveragePrefetcher pages = new CoveragePrefetcher(new CoverageDriverStub(10, 95), firstRequest,
+                null, 0)) {
+            assertEquals(95, countBeneficiaries(pages));
+        }
+    }
+
+    @DisplayName("A failure loading a page is thrown to the caller")
+    @Test
+    void failureThrownToCaller() {
+        CoverageDriver failing = new CoverageDriverStub(10, 95) {
+            @Override
+            public CoveragePagingResult pageCoverage(CoveragePagingRequest request) {
+                if (request.getCursor().orElse(0L) >= 30) {
+                    throw new CoverageDriverException("failed");
+                }
+                return super.pageCoverage(request);
+            }
+        };
+
+        try (CoveragePrefetcher pages = new CoveragePrefetcher(failing, firstRequest, executor, 2)) {
+            CoverageDriverException exception = assertThrows(CoverageDriverException.class,
+                    () -> countBeneficiaries(pages));
+            assertEquals("failed", exception.getMessage());
+            assertFalse(pages.hasNext());
+        }
+    }
+
+    private int countBeneficiaries(CoveragePrefetcher pages) throws InterruptedException {
+        int beneficiaries = 0;
+        long expectedId = 0;
+        while (pages.hasNext()) {
+            CoveragePagingResult page = pages.poll(1, TimeUnit.SECONDS);
+            if (page != null) {
+                for (var summary : page.getCoverageSummaries()) {
+                    assertEquals(expectedId++, summary.getIdentifiers().getBeneficiaryId());
+                }
+                beneficiaries += page.size();
+            }
+        }
+        return beneficiaries;
+    }
+}
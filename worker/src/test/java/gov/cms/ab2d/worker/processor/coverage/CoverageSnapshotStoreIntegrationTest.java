@@ -0,0 +1,175 @@
+package gov.cms.ab2d.worker.processor.coverage;
+
+import gov.cms.ab2d.common.model.*;
+import gov.cms.ab2d.common.repository.ContractRepository;
+import gov.cms.ab2d.common.repository.CoverageSearchRepository;
+import gov.cms.ab2d.common.service.CoverageService;
+import gov.cms.ab2d.common.service.PdpClientService;
+import gov.cms.ab2d.common.util.AB2DPostgresqlContainer;
+import gov.cms.ab2d.common.util.DataSetup;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static gov.cms.ab2d.common.util.DateUtil.AB2D_ZONE;
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.AdditionalAnswers.delegatesTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@SpringBootTest(properties = "coverage.update.initial.delay=1000000")
+@Testcontainers
+class CoverageSnapshotStoreIntegrationTest {
+
+    @Container
+    private static final PostgreSQLContainer postgres = new AB2DPostgresqlContainer();
+
+    @Autowired
+    private ContractRepository contractRepo;
+
+    @Autowired
+    private CoverageSearchRepository coverageSearchRepo;
+
+    @Autowired
+    private CoverageService coverageService;
+
+    @Autowired
+    private PdpClientService pdpClientService;
+
+    @Autowired
+    private DataSetup dataSetup;
+
+    @TempDir
+    Path directory;
+
+    private static final ZonedDateTime CURRENT_TIME = OffsetDateTime.now().atZoneSameInstant(AB2D_ZONE);
+
+    private Contract contract;
+    private List<Contract> enabledContracts;
+    private CoveragePeriod period;
+    private CoverageSnapshotStore snapshotStore;
+
+    @BeforeEach
+    void setUp() {
+        enabledContracts = pdpClientService.getAllEnabledContracts();
+        enabledContracts.forEach(contract -> pdpClientService.disableClient(contract.getContractNumber()));
+
+        PdpClient client = dataSetup.setupNonStandardClient("special", "TEST", List.of("SPONSOR"));
+        contract = client.getContract();
+        contract.setAttestedOn(CURRENT_TIME.toOffsetDateTime());
+        contractRepo.saveAndFlush(contract);
+
+        period = dataSetup.createCoveragePeriod(contract, CURRENT_TIME.getMonthValue(), CURRENT_TIME.getYear());
+
+        // Write snapshots on the calling thread
+        snapshotStore = new CoverageSnapshotStore(coverageService, Runnable::run, directory.toString(), true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        enabledContracts.forEach(contract -> pdpClientService.enableClient(contract.getContractNumber()));
+        dataSetup.cleanup();
+    }
+
+    @DisplayName("Snapshot is written again after a search only writes coverage changes")
+    @Test
+    void exportAfterChangesOnlyRefresh() {
+        coverageService.submitSearch(period.getId(), "testing");
+        CoverageSearchEvent first = startSearchAndPullEvent();
+        coverageService.insertCoverage(first.getId(), createIdentifiers(0, 10));
+        coverageService.completeSearch(period.getId(), "testing");
+
+        assertTrue(snapshotStore.export(contract));
+        assertEquals(List.of(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L), pageBeneficiaries());
+
+        // Drop one beneficiary and add another, rewriting the coverage stored under the first search
+        coverageService.submitSearch(period.getId(), "testing");
+        CoverageSearchEvent second = startSearchAndPullEvent();
+        CoverageSearchEvent changed = coverageService.insertCoverageChanges(second.getId(), createIdentifiers(1, 11));
+        assertEquals(first.getId(), changed.getCoverageEventId());
+        coverageService.completeSearch(period.getId(), "testing");
+
+        assertEquals(Map.of(period.getId(), second.getId()),
+                coverageService.findCompletedSearchEvents(List.of(period.getId())));
+
+        // The old snapshot is no longer current so the page comes from the database while a new snapshot is written
+        assertTrue(snapshotStore.page(snapshotStore.resolveVersion(createRequest(100))).isEmpty());
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L), pageBeneficiaries());
+    }
+
+    @DisplayName("Only the first page of a job looks up the current snapshot")
+    @Test
+    void laterPagesSkipDatabase() {
+        coverageService.submitSearch(period.getId(), "testing");
+        CoverageSearchEvent search = startSearchAndPullEvent();
+        coverageService.insertCoverage(search.getId(), createIdentifiers(0, 10));
+        coverageService.completeSearch(period.getId(), "testing");
+        assertTrue(snapshotStore.export(contract));
+
+        CoverageService countingService = mock(CoverageService.class, delegatesTo(coverageService));
+        CoverageSnapshotStore countingStore = new CoverageSnapshotStore(countingService, Runnable::run, directory.toString(), true);
+
+        List<Long> beneficiaries = new ArrayList<>();
+        CoveragePagingRequest request = countingStore.resolveVersion(createRequest(3));
+        while (request != null) {
+            Optional<CoveragePagingResult> page = countingStore.page(request);
+            assertTrue(page.isPresent());
+
+            page.get().getCoverageSummaries().forEach(summary -> beneficiaries.add(summary.getIdentifiers().getBeneficiaryId()));
+            request = page.get().getNextRequest().orElse(null);
+        }
+
+        assertEquals(List.of(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L), beneficiaries);
+        verify(countingService, times(1)).findAssociatedCoveragePeriods(anyLong());
+        verify(countingService, times(1)).findCompletedSearchEvents(any());
+        verify(countingService, never()).pageCoverage(any());
+    }
+
+    private List<Long> pageBeneficiaries() {
+        Optional<CoveragePagingResult> page = snapshotStore.page(snapshotStore.resolveVersion(createRequest(100)));
+        assertTrue(page.isPresent());
+
+        return page.get().getCoverageSummaries().stream()
+                .map(summary -> summary.getIdentifiers().getBeneficiaryId()).collect(toList());
+    }
+
+    private CoveragePagingRequest createRequest(int pageSize) {
+        return new CoveragePagingRequest(pageSize, null, contract, OffsetDateTime.now());
+    }
+
+    private CoverageSearchEvent startSearchAndPullEvent() {
+        Optional<CoverageSearch> search = coverageSearchRepo.findFirstByOrderByCreatedAsc();
+        coverageSearchRepo.delete(search.get());
+        return coverageService.startSearch(search.get(), "testing").get().getCoverageSearchEvent();
+    }
+
+    private Set<Identifiers> createIdentifiers(long from, long to) {
+        Set<Identifiers> identifiers = new LinkedHashSet<>();
+        for (long idx = from; idx < to; idx++) {
+            identifiers.add(new Identifiers(idx, "mbi-" + idx, new LinkedHashSet<>()));
+        }
+        return identifiers;
+    }
+}
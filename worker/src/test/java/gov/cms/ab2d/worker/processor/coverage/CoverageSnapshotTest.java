@@ -0,0 +1,146 @@
+package gov.cms.ab2d.worker.processor.coverage;
+
+import gov.cms.ab2d.common.model.Contract;
+import gov.cms.ab2d.common.model.CoveragePagingRequest;
+import gov.cms.ab2d.common.model.CoveragePagingResult;
+import gov.cms.ab2d.common.model.CoverageSummary;
+import gov.cms.ab2d.common.model.Identifiers;
+import gov.cms.ab2d.filter.FilterOutByDate;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import static gov.cms.ab2d.common.model.CoverageSummary.asEnrolledMonths;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CoverageSnapshotTest {
+
+    @TempDir
+    Path directory;
+
+    private Contract contract;
+
+    @BeforeEach
+    void before() {
+        contract = new Contract();
+        contract.setContractNumber("Z0000");
+    }
+
+    @DisplayName("Snapshot pages match the coverage written")
+    @Test
+    void pageSnapshot() throws IOException {
+        Path path = directory.resolve("Z0000.snapshot");
+        Map<Integer, Long> events = Map.of(1, 10L, 2, 20L);
+
+        try (CoverageSnapshot.Writer writer = new CoverageSnapshot.Writer(directory, events, 80)) {
+            writer.add(CoverageSummary.ofEnrolledMonths(new Identifiers(-5L, "mbi-5", new LinkedHashSet<>()),
+                    contract, asEnrolledMonths(0, 1)));
+            writer.add(CoverageSummary.ofEnrolledMonths(new Identifiers(3L, "mbi-3", new LinkedHashSet<>(List.of("old-3"))),
+                    contract, asEnrolledMonths(12, 70)));
+            writer.add(CoverageSummary.ofEnrolledMonths(new Identifiers(8L, null, new LinkedHashSet<>(List.of("old-8"))),
+                    contract, asEnrolledMonths(1)));
+            writer.finish(path);
+        }
+
+        // Only the snapshot is left behind
+        assertEquals(List.of(path), Files.list(directory).toList());
+
+        CoverageSnapshot snapshot = CoverageSnapshot.open(path);
+        assertEquals(events, snapshot.getSearchEvents());
+        assertEquals(3, snapshot.size());
+
+        CoveragePagingRequest request = new CoveragePagingRequest(2, null, contract, OffsetDateTime.now());
+        CoveragePagingResult page = snapshot.page(request, 0, 83);
+
+        assertEquals(2, page.size());
+        Identifiers first = page.getCoverageSummaries().get(0).getIdentifiers();
+        assertEquals(-5L, first.getBeneficiaryId());
+        assertEquals("mbi-5", first.getCurrentMbi());
+        assertTrue(first.getHistoricMbis().isEmpty());
+
+        CoverageSummary second = page.getCoverageSummaries().get(1);
+        assertEquals(List.of("old-3"), List.copyOf(second.getIdentifiers().getHistoricMbis()));
+        assertTrue(second.isEnrolled(2021, 1));
+        assertTrue(second.isEnrolled(2025, 11));
+
+        assertTrue(page.getNextRequest().isPresent());
+        assertEquals(8L, page.getNextRequest().get().getCursor().get());
+
+        page = snapshot.page(page.getNextRequest().get(), 0, 83);
+        assertEquals(1, page.size());
+        assertNull(page.getCoverageSummaries().get(0).getIdentifiers().getCurrentMbi());
+        assertEquals(List.of("old-8"), List.copyOf(page.getCoverageSummaries().get(0).getIdentifiers().getHistoricMbis()));
+        assertTrue(page.getNextRequest().isEmpty());
+    }
+
+    @DisplayName("Snapshot pages only include months in range")
+    @Test
+    void pageSnapshotMonths() throws IOException {
+        Path path = directory.resolve("Z0000.snapshot");
+
+        try (CoverageSnapshot.Writer writer = new CoverageSnapshot.Writer(directory, Map.of(1, 10L), 80)) {
+            writer.add(CoverageSummary.ofEnrolledMonths(new Identifiers(1L, "mbi-1", new LinkedHashSet<>()),
+                    contract, asEnrolledMonths(0)));
+            writer.add(CoverageSummary.ofEnrolledMonths(new Identifiers(2L, "mbi-2", new LinkedHashSet<>()),
+                    contract, asEnrolledMonths(11, 12, 70)));
+            writer.finish(path);
+        }
+
+        CoverageSnapshot snapshot = CoverageSnapshot.open(path);
+
+        // Beneficiaries only enrolled outside of the range are skipped
+        CoveragePagingResult page = snapshot.page(new CoveragePagingRequest(10, null, contract, OffsetDateTime.now()), 12, 23);
+        assertEquals(1, page.size());
+
+        CoverageSummary summary = page.getCoverageSummaries().get(0);
+        assertEquals(2L, summary.getIdentifiers().getBeneficiaryId());
+        assertFalse(summary.isEnrolled(2020, 12));
+        assertTrue(summary.isEnrolled(2021, 1));
+        assertFalse(summary.isEnrolled(2025, 11));
+    }
+
+    @DisplayName("Snapshots can be written from summaries built from date ranges")
+    @Test
+    void writeDateRanges() throws IOException {
+        Path path = directory.resolve("Z0000.snapshot");
+
+        try (CoverageSnapshot.Writer writer = new CoverageSnapshot.Writer(directory, Map.of(1, 10L), 23)) {
+            writer.add(new CoverageSummary(new Identifiers(1L, "mbi-1", new LinkedHashSet<>()), contract,
+                    List.of(FilterOutByDate.getDateRange(12, 2020, 2, 2021))));
+            writer.finish(path);
+        }
+
+        CoverageSnapshot snapshot = CoverageSnapshot.open(path);
+        CoverageSummary summary = snapshot.page(new CoveragePagingRequest(10, null, contract, OffsetDateTime.now()), 0, 23)
+                .getCoverageSummaries().get(0);
+
+        assertFalse(summary.isEnrolled(2020, 11));
+        assertTrue(summary.isEnrolled(2020, 12));
+        assertTrue(summary.isEnrolled(2021, 2));
+        assertFalse(summary.isEnrolled(2021, 3));
+    }
+
+    @DisplayName("Snapshots must be written in order of beneficiary id")
+    @Test
+    void writeOutOfOrder() throws IOException {
+        try (CoverageSnapshot.Writer writer = new CoverageSnapshot.Writer(directory, Map.of(1, 10L), 12)) {
+            writer.add(CoverageSummary.ofEnrolledMonths(new Identifiers(2L, "mbi-2", new LinkedHashSet<>()),
+                    contract, asEnrolledMonths(0)));
+
+            assertThrows(IOException.class, () -> writer.add(CoverageSummary.ofEnrolledMonths(
+                    new Identifiers(1L, "mbi-1", new LinkedHashSet<>()), contract, asEnrolledMonths(0))));
+        }
+
+        // Unfinished snapshots are removed
+        assertEquals(0, Files.list(directory).count());
+    }
+}
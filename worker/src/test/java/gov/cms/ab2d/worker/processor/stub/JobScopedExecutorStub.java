@@ -0,0 +1,54 @@
+package gov.cms.ab2d.worker.processor.stub;
+
+import gov.cms.ab2d.worker.config.JobScopedExecutor;
+import gov.cms.ab2d.worker.config.JobTaskCounts;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * Runs every task immediately on the calling thread
+ */
+public class JobScopedExecutorStub implements JobScopedExecutor {
+
+    @Override
+    public void startJob(String jobUuid, int expectedTasks) {
+    }
+
+    @Override
+    public <T> CompletableFuture<T> submit(String jobUuid, Callable<T> task) {
+        try {
+            return CompletableFuture.completedFuture(task.call());
+        } catch (Exception ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
+
+    @Override
+    public <T> List<CompletableFuture<T>> submitAll(String jobUuid, List<? extends Callable<T>> tasks) {
+        return tasks.stream().map(task -> submit(jobUuid, task)).collect(Collectors.toList());
+    }
+
+    @Override
+    public JobTaskCounts getJobTaskCounts(String jobUuid) {
+        return new JobTaskCounts(0, 0, 0);
+    }
+
+    @Override
+    public Map<String, JobTaskCounts> getJobTaskCounts() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public int cancelQueued(String jobUuid) {
+        return 0;
+    }
+
+    @Override
+    public void finishJob(String jobUuid) {
+    }
+}
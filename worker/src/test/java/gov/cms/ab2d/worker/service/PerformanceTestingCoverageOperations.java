@@ -231,8 +231,6 @@ class PerformanceTestingCoverageOperations {
 
         loadDBWithFakeData(dataPoints, periods);
 
-        coverageServiceRepo.vacuumCoverage();
-
         System.out.println("Done loading data");
 
         ExecutorService executor = Executors.newFixedThreadPool(threads);